@@ -0,0 +1,247 @@
+package Game;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An instantiable class which defines the searching AI used by the harder difficulty levels.
+ *
+ * While it's the human's turn, the AI "ponders": it guesses which replies the human is most likely to play, and
+ * searches the position after each of them on a background thread. When the human actually moves, the result for that
+ * reply is used straight away if it was searched deeply enough, and otherwise the search starts with a transposition
+ * table that is already full of the positions the ponder search looked at - which is most of the tree.
+ *
+ * An AIPlayer may be given an AIScheduler client, in which case it ponders on the scheduler's workers instead of a
+ * thread of its own, so many games can have an AI without each of them having a ponder thread.
+ *
+ * @author Daniel Arefjev
+ */
+public class AIPlayer implements Runnable {
+    /**
+     * AI with a depth of at least this many moves (hard) searches as deep as its time allows when playing on a clock.
+     */
+    public static final int MAX_FIXED_DEPTH = 12;
+
+    private final TranspositionTable table;
+    private final SearchEngine moveEngine;
+    private final SearchEngine ponderEngine;
+    private final int depth;
+    private final long timeMillis;
+    private final Map<Long, SearchResult> ponderResults = new ConcurrentHashMap<>();
+    private final AIScheduler.Client client;
+
+    private Thread ponderThread;
+    private Position ponderPosition;
+    private SearchLimits ponderLimits;
+    private int ponderGeneration;
+    private int ponderStartGeneration;
+    private int ponderHits;
+
+    /**
+     * AIPlayer 2 argument constructor.
+     * @param depth the number of moves ahead the AI searches.
+     * @param timeMillis the most time the AI spends on one move, or 0 for no limit.
+     */
+    public AIPlayer(int depth, long timeMillis){
+        this(depth, timeMillis, null);
+    }
+
+    /**
+     * AIPlayer 3 argument constructor.
+     * @param depth the number of moves ahead the AI searches.
+     * @param timeMillis the most time the AI spends on one move, or 0 for no limit.
+     * @param client the scheduler client to ponder on, or null to ponder on a thread of its own.
+     */
+    public AIPlayer(int depth, long timeMillis, AIScheduler.Client client){
+        this.table = new TranspositionTable(1 << 21);
+        this.moveEngine = new SearchEngine(table);
+        this.ponderEngine = new SearchEngine(table);
+        //what the AI works out is kept on disk if the analysis cache is turned on, so it doesn't start from nothing
+        //every time the game is opened
+        this.moveEngine.setPersistent(true);
+        this.ponderEngine.setPersistent(true);
+        this.depth = depth;
+        this.timeMillis = timeMillis;
+        this.client = client;
+    }
+
+    /**
+     * Method to get the number of moves where a pondered result could be used without searching at all.
+     * @return the number of ponder hits so far.
+     */
+    public int getPonderHits(){
+        return ponderHits;
+    }
+
+    /**
+     * Method which chooses a column for the player to move in a position. Any pondering is stopped first.
+     * @param position the position to choose a move in.
+     * @return the column to play.
+     */
+    public int chooseMove(Position position){
+        return chooseMove(position, 0, 0);
+    }
+
+    /**
+     * Method which chooses a column for the player to move in a position, spending a share of the time left on the
+     * player's clock. Hard AI isn't limited by depth when it's playing on a clock, only by time.
+     * @param position the position to choose a move in.
+     * @param remainingMillis the time left on the AI's clock, or 0 if there isn't a clock.
+     * @param incrementMillis the time added to the AI's clock after each move.
+     * @return the column to play.
+     */
+    public int chooseMove(Position position, long remainingMillis, long incrementMillis){
+        stopPondering();
+        //small boards may have a tablebase, which knows the answer without searching
+        Tablebase tablebase = Tablebase.forSize(position.getSize());
+        if(tablebase != null){
+            SearchResult known = tablebase.analyse(position);
+            if(known != null){
+                ponderResults.clear();
+                return known.getBestColumn();
+            }
+        }
+        SearchResult pondered = ponderResults.get(position.getHash());
+        ponderResults.clear();
+
+        int emptyTiles = position.getSize() * position.getSize() - position.getMoveCount();
+        if(pondered != null && (pondered.getDepth() >= Math.min(depth, emptyTiles)
+                || SearchEngine.isWinScore(pondered.getScore()))){
+            ponderHits++;
+            return pondered.getBestColumn();
+        }
+
+        SearchLimits limits = new SearchLimits();
+        if(remainingMillis <= 0){
+            limits.setDepth(depth);
+            limits.setTimeMillis(timeMillis);
+            return moveEngine.search(position, limits, null).getBestColumn();
+        }
+
+        TimeManager timeManager = new TimeManager(remainingMillis, incrementMillis, position);
+        limits.setDepth(depth < MAX_FIXED_DEPTH ? depth : Integer.MAX_VALUE);
+        limits.setTimeMillis(timeManager.getHardLimit());
+        timeManager.setLimits(limits);
+        return moveEngine.search(position, limits, timeManager).getBestColumn();
+    }
+
+    /**
+     * Method which starts pondering the human's replies to a position on a background thread.
+     * @param position the position, where it's the human's turn.
+     */
+    public void startPondering(Position position){
+        if(Tablebase.forSize(position.getSize()) != null){
+            //every reply will be looked up anyway
+            return;
+        }
+        if(client != null){
+            synchronized(this){
+                stopPondering();
+                Position root = new Position(position);
+                int generation = ponderGeneration;
+                ponderResults.clear();
+                //a ponder task which is still finishing holds ponderEngine's lock, so nothing waits for it here
+                client.submit(() -> {
+                    ponder(root, generation);
+                    return null;
+                });
+            }
+            return;
+        }
+        Thread oldThread;
+        synchronized(this){
+            stopPondering();
+            oldThread = ponderThread;
+        }
+        //the old thread stops within a few milliseconds, and must be finished before ponderEngine is reused
+        if(oldThread != null){
+            try {
+                oldThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        synchronized(this){
+            ponderPosition = new Position(position);
+            ponderStartGeneration = ponderGeneration;
+            ponderResults.clear();
+            ponderThread = new Thread(this, "AI Ponder");
+            ponderThread.setDaemon(true);
+            ponderThread.start();
+        }
+    }
+
+    /**
+     * Method which stops pondering. Results which have already been found are kept until the next move.
+     */
+    public synchronized void stopPondering(){
+        ponderGeneration++;
+        if(ponderLimits != null){
+            ponderLimits.stop();
+        }
+    }
+
+    /**
+     * Method which runs on the ponder thread. A short search of the human's position decides the order the replies
+     * are looked at in, then each reply is searched to the AI's full depth.
+     */
+    public void run(){
+        int generation;
+        Position root;
+        synchronized(this){
+            generation = ponderStartGeneration;
+            root = ponderPosition;
+        }
+        ponder(root, generation);
+    }
+
+    /**
+     * Method which ponders a position until it has searched every reply or pondering is stopped.
+     */
+    private void ponder(Position root, int generation){
+        synchronized(ponderEngine){
+            ponderReplies(root, generation);
+        }
+    }
+
+    private void ponderReplies(Position root, int generation){
+        SearchLimits limits = ponderLimits(generation, Math.min(depth, 4));
+        if(limits == null){
+            return;
+        }
+        int predicted = ponderEngine.search(root, limits, null).getBestColumn();
+
+        int[] order = SearchEngine.centreOrder(root.getSize());
+        for(int i = -1; i < order.length; i++){
+            int column = i < 0 ? predicted : order[i];
+            if((i >= 0 && column == predicted) || !root.canPlay(column) || root.isWinningMove(column)){
+                continue;
+            }
+            Position reply = new Position(root);
+            reply.play(column);
+
+            limits = ponderLimits(generation, depth);
+            if(limits == null){
+                return;
+            }
+            SearchResult result = ponderEngine.search(reply, limits, null);
+            if(result.getDepth() > 0){
+                ponderResults.put(reply.getHash(), result);
+            }
+        }
+    }
+
+    /**
+     * Method which creates the limits for the next ponder search, unless pondering has been stopped since the ponder
+     * thread started.
+     */
+    private synchronized SearchLimits ponderLimits(int generation, int searchDepth){
+        if(generation != ponderGeneration){
+            return null;
+        }
+        ponderLimits = new SearchLimits();
+        ponderLimits.setDepth(searchDepth);
+        return ponderLimits;
+    }
+}
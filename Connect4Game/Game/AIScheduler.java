@@ -0,0 +1,345 @@
+package Game;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An instantiable class which runs the AI searches of every game in the window on one bounded set of worker threads,
+ * however many games are open.
+ *
+ * Each game registers as a Client with a budget - the most tasks it may have running at once. Tasks are queued per
+ * client and clients take turns to hand a task to a free worker, so a game which queues a lot of work only ever holds
+ * back its own tasks. On top of that, only a few workers may actually be searching at any moment (about one for each
+ * spare processor), and a search which has used up its time slice steps aside for any search waiting to run, at the
+ * next point it checks its limits (see checkpoint()). So a deep search in one game shares the processors with the
+ * other games rather than holding one until it finishes.
+ *
+ * @author Daniel Arefjev
+ */
+public class AIScheduler {
+    /**
+     * How long a search may run before it has to let a waiting search have a turn.
+     */
+    public static final long SLICE_MILLIS = 20;
+
+    private static AIScheduler shared;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition workAvailable = lock.newCondition();
+    private final ArrayDeque<Client> ready = new ArrayDeque<>();
+    private final Semaphore running;
+    private final Worker[] workers;
+    private boolean shutdown;
+
+    /**
+     * AIScheduler 2 argument constructor, which starts the worker threads.
+     * @param threads the most tasks which may be started at once, across every client.
+     * @param runningThreads the most tasks which may be searching (rather than waiting for a time slice) at once.
+     */
+    public AIScheduler(int threads, int runningThreads){
+        this.running = new Semaphore(runningThreads, true);
+        this.workers = new Worker[threads];
+        for(int i = 0; i < threads; i++){
+            workers[i] = new Worker("AI Worker " + i);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * Method to get the scheduler shared by every game in the window, creating it the first time it's needed. It
+     * searches on one processor less than there are (but at least one), leaving one for the UI.
+     * @return the shared scheduler.
+     */
+    public static synchronized AIScheduler getShared(){
+        if(shared == null){
+            int runningThreads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+            shared = new AIScheduler(Math.max(4, runningThreads * 2), runningThreads);
+        }
+        return shared;
+    }
+
+    /**
+     * Method to get the number of worker threads.
+     * @return the number of threads.
+     */
+    public int getThreadCount(){
+        return workers.length;
+    }
+
+    /**
+     * Method which adds a client, e.g a game tab.
+     * @param name the name of the client.
+     * @param budget the most tasks the client may have running at once.
+     * @return the client, which tasks are submitted through.
+     */
+    public Client register(String name, int budget){
+        return new Client(name, budget);
+    }
+
+    /**
+     * Method which stops the workers once every queued task has run.
+     */
+    public void shutdown(){
+        lock.lock();
+        try {
+            shutdown = true;
+            workAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Method which a long running task should call every so often (searches call it whenever they check their limits).
+     * If the task has had its time slice and another task is waiting to search, it waits for its next turn. Does
+     * nothing on threads which don't belong to an AIScheduler.
+     */
+    public static void checkpoint(){
+        Thread thread = Thread.currentThread();
+        if(thread instanceof Worker){
+            ((Worker) thread).yieldIfDue();
+        }
+    }
+
+    /**
+     * A game (or anything else) which submits tasks to an AIScheduler.
+     */
+    public class Client {
+        private final String name;
+        private final int budget;
+        private final ArrayDeque<Task<?>> queue = new ArrayDeque<>();
+        private int runningTasks;
+        private boolean isReady;
+        private boolean closed;
+        private volatile long cpuNanos;
+
+        private Client(String name, int budget){
+            this.name = name;
+            this.budget = Math.max(1, budget);
+        }
+
+        /**
+         * Method to get the name of a Client object.
+         * @return the name.
+         */
+        public String getName(){
+            return name;
+        }
+
+        /**
+         * Method to get how long a client's tasks have spent searching, not counting time spent waiting for a turn.
+         * @return the time in nanoseconds.
+         */
+        public long getCpuNanos(){
+            return cpuNanos;
+        }
+
+        /**
+         * Method which queues a task to run on a worker.
+         * @param task the task.
+         * @return a future which completes with the result of the task, or is cancelled if the client is closed before
+         * the task starts.
+         */
+        public <T> CompletableFuture<T> submit(Callable<T> task){
+            Task<T> work = new Task<>(task);
+            lock.lock();
+            try {
+                if(closed || shutdown){
+                    work.future.cancel(false);
+                } else {
+                    queue.add(work);
+                    markReady();
+                }
+            } finally {
+                lock.unlock();
+            }
+            return work.future;
+        }
+
+        /**
+         * Method which throws away any tasks which haven't started yet, and stops the client submitting any more.
+         * Tasks which are already running aren't interrupted.
+         */
+        public void close(){
+            lock.lock();
+            try {
+                closed = true;
+                for(Task<?> work : queue){
+                    work.future.cancel(false);
+                }
+                queue.clear();
+                ready.remove(this);
+                isReady = false;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Method which puts the client at the back of the ready queue, if it has a task waiting and room in its budget.
+         * Should be called holding the lock.
+         */
+        private void markReady(){
+            if(!isReady && !queue.isEmpty() && runningTasks < budget){
+                isReady = true;
+                ready.add(this);
+                workAvailable.signal();
+            }
+        }
+    }
+
+    /**
+     * A queued task and the future its result goes to.
+     */
+    private static class Task<T> {
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private final Callable<T> callable;
+
+        Task(Callable<T> callable){
+            this.callable = callable;
+        }
+
+        void run(){
+            if(future.isDone()){
+                return;
+            }
+            try {
+                future.complete(callable.call());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * A worker thread, which takes a task from each ready client in turn.
+     */
+    private class Worker extends Thread {
+        private long sliceStart;
+        private Client client;
+
+        Worker(String name){
+            super(name);
+            setDaemon(true);
+        }
+
+        public void run(){
+            while(true){
+                Task<?> work;
+                lock.lock();
+                try {
+                    while(ready.isEmpty() && !shutdown){
+                        workAvailable.awaitUninterruptibly();
+                    }
+                    if(ready.isEmpty()){
+                        return;
+                    }
+                    client = ready.poll();
+                    client.isReady = false;
+                    work = client.queue.poll();
+                    client.runningTasks++;
+                    //the client goes to the back of the queue, so every other ready client gets a worker first
+                    client.markReady();
+                } finally {
+                    lock.unlock();
+                }
+
+                running.acquireUninterruptibly();
+                sliceStart = System.nanoTime();
+                try {
+                    work.run();
+                } finally {
+                    client.cpuNanos += System.nanoTime() - sliceStart;
+                    running.release();
+                    lock.lock();
+                    try {
+                        client.runningTasks--;
+                        client.markReady();
+                    } finally {
+                        lock.unlock();
+                    }
+                    client = null;
+                }
+            }
+        }
+
+        private void yieldIfDue(){
+            long now = System.nanoTime();
+            if(now - sliceStart > SLICE_MILLIS * 1_000_000L && running.hasQueuedThreads()){
+                client.cpuNanos += now - sliceStart;
+                //the semaphore is fair, so this goes behind every search already waiting
+                running.release();
+                running.acquireUninterruptibly();
+                sliceStart = System.nanoTime();
+            }
+        }
+    }
+
+    /**
+     * Method which shows how the scheduler shares the processors between games, by running one deep search alongside
+     * a stream of shallow searches from other games, and printing how long the shallow searches took to come back.
+     *
+     * Usage: AIScheduler [games] [runningThreads] [deepSearchMillis]
+     * The defaults are 8 games, 1 running thread and a 3000 millisecond deep search.
+     * @param args see above.
+     */
+    public static void main(String[] args) throws Exception {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int runningThreads = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        long deepMillis = args.length > 2 ? Long.parseLong(args[2]) : 3000;
+        AIScheduler scheduler = new AIScheduler(Math.max(4, runningThreads * 2), runningThreads);
+
+        Client deepClient = scheduler.register("Deep", 1);
+        Position empty = new Position(7);
+        CompletableFuture<SearchResult> deep = deepClient.submit(() -> {
+            SearchLimits limits = new SearchLimits();
+            limits.setTimeMillis(deepMillis);
+            return new SearchEngine(new TranspositionTable(1 << 20)).search(empty, limits, null);
+        });
+        Thread.sleep(100);
+
+        Client[] clients = new Client[games - 1];
+        long[] latencies = new long[(games - 1) * 20];
+        int count = 0;
+        for(int i = 0; i < clients.length; i++){
+            clients[i] = scheduler.register("Game " + i, 1);
+        }
+        for(int round = 0; round < 20; round++){
+            CompletableFuture<?>[] futures = new CompletableFuture<?>[clients.length];
+            long[] submitted = new long[clients.length];
+            for(int i = 0; i < clients.length; i++){
+                submitted[i] = System.nanoTime();
+                futures[i] = clients[i].submit(() -> {
+                    SearchLimits limits = new SearchLimits();
+                    limits.setDepth(7);
+                    return new SearchEngine(new TranspositionTable(1 << 14)).search(empty, limits, null);
+                });
+            }
+            for(int i = 0; i < clients.length; i++){
+                futures[i].join();
+                latencies[count++] = System.nanoTime() - submitted[i];
+            }
+        }
+        long deepStart = System.nanoTime();
+        deep.join();
+        long deepRemaining = System.nanoTime() - deepStart;
+        Arrays.sort(latencies);
+        System.out.printf("%d workers, %d running, %d games: one %d ms search alongside %d shallow searches%n",
+                scheduler.getThreadCount(), runningThreads, games, deepMillis, count);
+        System.out.printf("Shallow search latency: p50 %.1f ms, p99 %.1f ms, max %.1f ms (deep search still had %.0f ms to go)%n",
+                latencies[count / 2] / 1e6, latencies[count * 99 / 100] / 1e6, latencies[count - 1] / 1e6,
+                deepRemaining / 1e6);
+        long shallowNanos = 0;
+        for(Client client : clients){
+            shallowNanos += client.getCpuNanos();
+        }
+        System.out.printf("Search time: deep game %.0f ms, other games %.0f ms in total%n", deepClient.getCpuNanos() / 1e6,
+                shallowNanos / 1e6);
+        scheduler.shutdown();
+    }
+}
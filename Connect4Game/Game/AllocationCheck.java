@@ -0,0 +1,162 @@
+package Game;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * A class which checks that the GameBoard methods called for every move - addTile(), getLowestAvailableTile() and
+ * checkForWinner() - don't allocate anything, by measuring how many bytes the current thread allocates while calling
+ * them (with ThreadMXBean.getCurrentThreadAllocatedBytes()).
+ *
+ * Each method is warmed up first (until the JIT has compiled it, since the interpreter allocates where compiled code
+ * doesn't), then called many times, so a method which allocates on every call shows up as thousands of bytes while
+ * one-off allocations by the JVM itself stay well under the threshold. Prints what each method allocated and exits
+ * with 1 if any of them allocated more than that.
+ *
+ * The boards filled a column at a time nearly always have a line of four, which checkForWinner() stops at, so it's
+ * also checked on full boards with no line of four, where it has to check every line and then every window before
+ * finding the draw.
+ *
+ * highlightColumn()/dehighlightColumn() aren't checked, as changing a tile's background fires a Swing property change
+ * event, which may or may not be allocated depending on what the JIT inlines.
+ *
+ * Usage: AllocationCheck [boardSize] [maxBytes]
+ * The defaults are a 7x7 board and 1024 bytes.
+ *
+ * @author Daniel Arefjev
+ */
+public class AllocationCheck {
+    private static final int BOARDS = 200;
+    private static final int REPEATS = 50;
+    private static final int WARM_UP_ROUNDS = 10;
+
+    /**
+     * Method which runs the checks and prints the results.
+     * @param args see the class comment.
+     */
+    public static void main(String[] args){
+        int boardSize = args.length > 0 ? Integer.parseInt(args[0]) : 7;
+        long maxBytes = args.length > 1 ? Long.parseLong(args[1]) : 1024;
+        java.lang.management.ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        if(!(threadBean instanceof com.sun.management.ThreadMXBean)
+                || !((com.sun.management.ThreadMXBean) threadBean).isThreadAllocatedMemorySupported()){
+            System.out.println("This JVM can't measure allocations");
+            System.exit(1);
+        }
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threadBean;
+        bean.setThreadAllocatedMemoryEnabled(true);
+
+        //the boards are all created up front, since creating them allocates
+        GameBoard[] warmUp = null;
+        for(int i = 0; i < WARM_UP_ROUNDS; i++){
+            warmUp = createBoards(BOARDS, boardSize);
+            fill(warmUp);
+        }
+        GameBoard[] boards = createBoards(BOARDS, boardSize);
+        long before = bean.getCurrentThreadAllocatedBytes();
+        fill(boards);
+        long addTileBytes = bean.getCurrentThreadAllocatedBytes() - before;
+
+        //the other checks run on the boards which have just been filled
+        for(int i = 0; i < WARM_UP_ROUNDS; i++){
+            lowestAvailableTiles(warmUp);
+        }
+        before = bean.getCurrentThreadAllocatedBytes();
+        lowestAvailableTiles(boards);
+        long lowestBytes = bean.getCurrentThreadAllocatedBytes() - before;
+
+        for(int i = 0; i < WARM_UP_ROUNDS; i++){
+            checkForWinners(warmUp);
+        }
+        before = bean.getCurrentThreadAllocatedBytes();
+        checkForWinners(boards);
+        long winnerBytes = bean.getCurrentThreadAllocatedBytes() - before;
+
+        GameBoard[] drawn = createBoards(BOARDS, boardSize);
+        fillDrawn(drawn);
+        fillDrawn(warmUp);
+        for(int i = 0; i < WARM_UP_ROUNDS; i++){
+            checkForWinners(warmUp);
+        }
+        before = bean.getCurrentThreadAllocatedBytes();
+        checkForWinners(drawn);
+        long drawBytes = bean.getCurrentThreadAllocatedBytes() - before;
+
+        int calls = BOARDS * boardSize * boardSize;
+        boolean failed = report("addTile()", addTileBytes, calls, maxBytes);
+        failed |= report("getLowestAvailableTile()", lowestBytes, BOARDS * boardSize * REPEATS, maxBytes);
+        failed |= report("checkForWinner()", winnerBytes, BOARDS * REPEATS, maxBytes);
+        failed |= report("checkForWinner(), drawn full board", drawBytes, BOARDS * REPEATS, maxBytes);
+        if(drawn[0].checkForWinner() != 3){
+            System.out.println("checkForWinner() didn't find the draw on a full board with no line of four: FAIL");
+            failed = true;
+        }
+        if(failed){
+            System.exit(1);
+        }
+    }
+
+    private static GameBoard[] createBoards(int count, int boardSize){
+        GameBoard[] boards = new GameBoard[count];
+        for(int i = 0; i < count; i++){
+            boards[i] = new GameBoard(boardSize);
+            boards[i].setPlayerNames("Player 1", "Player 2");
+        }
+        return boards;
+    }
+
+    /**
+     * Method which fills every board a column at a time, switching player after every tile, so the boards end up with
+     * a mix of tiles (and no allocation comes from choosing the columns).
+     */
+    private static void fill(GameBoard[] boards){
+        for(int b = 0; b < boards.length; b++){
+            GameBoard board = boards[b];
+            int size = board.getSize();
+            for(int i = 0; i < size * size; i++){
+                board.addTile((i + b) % size);
+                board.switchPlayer();
+            }
+        }
+    }
+
+    /**
+     * Method which fills every board with rows of pairs (1 1 2 2 1 1 ..., starting with 2 2 on every other row, so
+     * columns alternate), which is full but has no line of four for either player.
+     */
+    private static void fillDrawn(GameBoard[] boards){
+        for(GameBoard board : boards){
+            int size = board.getSize();
+            for(int column = 0; column < size; column++){
+                for(int row = 0; row < size; row++){
+                    board.setTileState(column, row, 1 + (column / 2 + row) % 2);
+                }
+            }
+            board.setWinner(0);
+        }
+    }
+
+    private static void lowestAvailableTiles(GameBoard[] boards){
+        for(int r = 0; r < REPEATS; r++){
+            for(GameBoard board : boards){
+                for(int column = 0; column < board.getSize(); column++){
+                    board.getLowestAvailableTile(column);
+                }
+            }
+        }
+    }
+
+    private static void checkForWinners(GameBoard[] boards){
+        for(int r = 0; r < REPEATS; r++){
+            for(GameBoard board : boards){
+                board.checkForWinner();
+            }
+        }
+    }
+
+    private static boolean report(String name, long bytes, int calls, long maxBytes){
+        boolean failed = bytes > maxBytes;
+        System.out.printf("%-40s %10d bytes over %8d calls (%.2f bytes per call) %s%n", name, bytes, calls,
+                (double) bytes / calls, failed ? "FAIL" : "ok");
+        return failed;
+    }
+}
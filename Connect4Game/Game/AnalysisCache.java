@@ -0,0 +1,399 @@
+package Game;
+
+import java.io.*;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * An instantiable class which defines the analysis cache - a transposition table kept in a memory-mapped file, so the
+ * results of deep searches aren't thrown away when the game is closed. SearchEngine keeps the positions it searched
+ * at least MIN_DEPTH moves deep in it alongside its normal table, and looks there when its own table doesn't have a
+ * position, so an AI started on a position it (or another copy of the game on the same computer) has searched before
+ * finds most of the tree already done.
+ *
+ * The cache is off unless the c4.analysisCache system property is set, as each file is 18MB. It names the directory
+ * the files are kept in, or if it's empty (-Dc4.analysisCache) they go in .connect4game in the user's home directory.
+ *
+ * There is one file per board size. Its header records the board size and the version of the Evaluator the scores
+ * came from, and the file is emptied if either doesn't match, since the results would be wrong. Keys are also mixed
+ * with the evaluator's version, so a copy of the game still running with old weights can't mix its results in.
+ *
+ * The file is split into buckets of 4 entries (64 bytes), stored the same way as TranspositionTable's: the packed
+ * entry, and the key xor'd with it. As other processes can have the file mapped at the same time, nothing is locked:
+ * entries are replaced with a compare-and-set of the entry followed by the key, and a torn entry (from two writes at
+ * once) just doesn't match its key and reads as missing. Each bucket also has a word of "referenced" bits and a clock
+ * hand - a probe which finds an entry sets its bit, and when a bucket is full the hand sweeps round clearing bits until
+ * it reaches an entry which hasn't been used since it last went past, which is replaced.
+ *
+ * @author Daniel Arefjev
+ */
+public class AnalysisCache {
+    /**
+     * Positions searched less deeply than this aren't worth the trip to the file.
+     */
+    public static final int MIN_DEPTH = 6;
+    /**
+     * The number of buckets in each file, which makes them 18MB.
+     */
+    public static final int DEFAULT_BUCKETS = 1 << 18;
+
+    private static final int MAGIC = 0x43344143;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 64;
+    private static final int ENTRIES_PER_BUCKET = 4;
+    private static final int BUCKET_BYTES = ENTRIES_PER_BUCKET * 16;
+    private static final int HAND_SHIFT = 8;
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    private static final Map<String, AnalysisCache> caches = new HashMap<>();
+
+    private final int size;
+    private final int buckets;
+    private final int mask;
+    private final long salt;
+    private final int referencesOffset;
+    private final int entriesOffset;
+    private final MappedByteBuffer buffer;
+
+    /**
+     * Method to get the shared cache for a board size and evaluator, opening (or creating) its file the first time
+     * it's needed.
+     * @param size the width/height of the board.
+     * @param evaluator the evaluator the scores come from.
+     * @return the cache, or null if the cache is turned off or the file can't be opened.
+     */
+    public static synchronized AnalysisCache forSize(int size, Evaluator evaluator){
+        File directory = getDirectory();
+        if(directory == null){
+            return null;
+        }
+        String name = size + ":" + evaluator.getVersion();
+        if(!caches.containsKey(name)){
+            AnalysisCache cache = null;
+            try {
+                if(!directory.isDirectory() && !directory.mkdirs()){
+                    throw new IOException("Couldn't create " + directory);
+                }
+                cache = new AnalysisCache(getFile(directory, size), size, evaluator.getVersion(), DEFAULT_BUCKETS);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            //stored even if it couldn't be opened, so it isn't tried again on every search
+            caches.put(name, cache);
+        }
+        return caches.get(name);
+    }
+
+    /**
+     * Method to get the directory set with the c4.analysisCache system property.
+     * @return the directory, .connect4game in the user's home directory if the property is empty, or null if it isn't
+     * set and the cache is turned off.
+     */
+    public static File getDirectory(){
+        String directory = System.getProperty("c4.analysisCache");
+        if(directory == null){
+            return null;
+        } else if(directory.isEmpty()){
+            return new File(System.getProperty("user.home"), ".connect4game");
+        }
+        return new File(directory);
+    }
+
+    /**
+     * Method to get the file the cache for a board size is kept in.
+     * @param directory the directory the cache files are kept in.
+     * @param size the width/height of the board.
+     * @return analysis_cache_NxN.c4a in the directory.
+     */
+    public static File getFile(File directory, int size){
+        return new File(directory, "analysis_cache_" + size + "x" + size + ".c4a");
+    }
+
+    /**
+     * AnalysisCache 4 argument constructor, which maps a cache file, emptying it first if it's for a different board
+     * size or evaluator version. The file is locked while it's checked, so two processes opening it at once don't both
+     * empty it.
+     * @param file the file.
+     * @param size the width/height of the board.
+     * @param evaluatorVersion the version of the evaluator the scores come from.
+     * @param buckets the number of buckets, rounded up to a power of 2.
+     * @throws IOException if the file can't be opened.
+     */
+    public AnalysisCache(File file, int size, long evaluatorVersion, int buckets) throws IOException {
+        this.size = size;
+        this.buckets = Integer.highestOneBit(Math.max(buckets - 1, 1)) << 1;
+        this.mask = this.buckets - 1;
+        //never 0, so a position whose canonical hash is 0 (the empty board) doesn't have a key of 0
+        this.salt = evaluatorVersion * 0x9E3779B97F4A7C15L | 1;
+        this.referencesOffset = HEADER_BYTES;
+        this.entriesOffset = HEADER_BYTES + this.buckets * 8;
+        long length = (long) entriesOffset + (long) this.buckets * BUCKET_BYTES;
+
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)){
+            //held while the header is checked and the file is emptied, so two processes don't both initialise it
+            FileLock lock = channel.lock();
+            try {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+                boolean valid = false;
+                if(channel.size() == length && channel.read(header, 0) == HEADER_BYTES){
+                    valid = header.getInt(0) == MAGIC && header.getInt(4) == VERSION && header.getInt(8) == size
+                            && header.getInt(12) == this.buckets && header.getLong(16) == evaluatorVersion;
+                } else if(channel.size() != length){
+                    //the wrong length can only be a file from something else, which nothing else will be using
+                    channel.truncate(0);
+                }
+                //mapping extends the file with zeros if it was just created
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+                if(!valid){
+                    //emptied in place rather than truncated, as another process may still have it mapped
+                    for(int offset = 0; offset < length; offset += 8){
+                        buffer.putLong(offset, 0);
+                    }
+                    buffer.putInt(0, MAGIC);
+                    buffer.putInt(4, VERSION);
+                    buffer.putInt(8, size);
+                    buffer.putInt(12, this.buckets);
+                    buffer.putLong(16, evaluatorVersion);
+                    buffer.force();
+                }
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    /**
+     * Method to get the width/height of the board an AnalysisCache is for.
+     * @return the board size.
+     */
+    public int getSize(){
+        return size;
+    }
+
+    /**
+     * Method to get the number of entries in an AnalysisCache object.
+     * @return the number of entries.
+     */
+    public int getCapacity(){
+        return buckets * ENTRIES_PER_BUCKET;
+    }
+
+    /**
+     * Method to look up a position.
+     * @param hash the canonical hash of the position.
+     * @return the packed entry (read with TranspositionTable.scoreOf, depthOf, flagOf and moveOf), or 0 if the position
+     * isn't stored.
+     */
+    public long probe(long hash){
+        long key = hash ^ salt;
+        int bucket = (int) key & mask;
+        int base = entriesOffset + bucket * BUCKET_BYTES;
+        for(int i = 0; i < ENTRIES_PER_BUCKET; i++){
+            long entry = (long) LONGS.getVolatile(buffer, base + i * 16 + 8);
+            if(entry != 0 && ((long) LONGS.getVolatile(buffer, base + i * 16) ^ entry) == key){
+                reference(bucket, i);
+                return entry;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Method which stores a search result, replacing the same position unless it was searched to a greater depth,
+     * otherwise an empty entry, otherwise the entry the bucket's clock hand chooses.
+     * @param hash the canonical hash of the position.
+     * @param score the score of the position.
+     * @param depth the depth the position was searched to.
+     * @param flag TranspositionTable.EXACT, LOWER_BOUND or UPPER_BOUND.
+     * @param move the best column found (in the canonical position), or -1 if there isn't one.
+     */
+    public void store(long hash, int score, int depth, int flag, int move){
+        long key = hash ^ salt;
+        int bucket = (int) key & mask;
+        int base = entriesOffset + bucket * BUCKET_BYTES;
+        int slot = -1;
+        int empty = -1;
+        for(int i = 0; i < ENTRIES_PER_BUCKET; i++){
+            long entry = (long) LONGS.getVolatile(buffer, base + i * 16 + 8);
+            if(entry == 0){
+                if(empty < 0){
+                    empty = i;
+                }
+            } else if(((long) LONGS.getVolatile(buffer, base + i * 16) ^ entry) == key){
+                if(TranspositionTable.depthOf(entry) > depth){
+                    return;
+                }
+                slot = i;
+                break;
+            }
+        }
+        if(slot < 0){
+            slot = empty >= 0 ? empty : clockVictim(bucket);
+        }
+        int offset = base + slot * 16;
+        long old = (long) LONGS.getVolatile(buffer, offset + 8);
+        long entry = TranspositionTable.pack(score, depth, flag, move);
+        //if someone else has just written this entry, theirs is kept
+        if(LONGS.compareAndSet(buffer, offset + 8, old, entry)){
+            LONGS.setVolatile(buffer, offset, key ^ entry);
+            reference(bucket, slot);
+        }
+    }
+
+    /**
+     * Method which marks an entry as used since the clock hand last went past it.
+     */
+    private void reference(int bucket, int slot){
+        int offset = referencesOffset + bucket * 8;
+        long bit = 1L << slot;
+        //only written if it isn't already set, so busy entries don't keep other processes' caches in contention
+        if(((long) LONGS.getVolatile(buffer, offset) & bit) == 0){
+            LONGS.getAndBitwiseOr(buffer, offset, bit);
+        }
+    }
+
+    /**
+     * Method which moves a full bucket's clock hand on until it finds an entry which hasn't been used since it last
+     * went past, clearing the bits of the ones which have.
+     * @return the entry to replace.
+     */
+    private int clockVictim(int bucket){
+        int offset = referencesOffset + bucket * 8;
+        int hand = 0;
+        //two sweeps is always enough, as the first clears every bit - unless other threads keep setting them
+        for(int tries = 0; tries < ENTRIES_PER_BUCKET * 2 + 1; tries++){
+            long references = (long) LONGS.getVolatile(buffer, offset);
+            hand = (int) (references >>> HAND_SHIFT) & (ENTRIES_PER_BUCKET - 1);
+            long next = (references & ~((long) (ENTRIES_PER_BUCKET - 1) << HAND_SHIFT))
+                    | ((long) ((hand + 1) & (ENTRIES_PER_BUCKET - 1)) << HAND_SHIFT);
+            boolean referenced = (references & (1L << hand)) != 0;
+            if(referenced){
+                next &= ~(1L << hand);
+            }
+            if(LONGS.compareAndSet(buffer, offset, references, next) && !referenced){
+                return hand;
+            }
+        }
+        return hand;
+    }
+
+    /**
+     * Method which writes any changes to the file. The operating system does this by itself eventually, and the
+     * file is shared with other processes through memory either way, so it's only needed to be sure of surviving a
+     * crash of the whole computer.
+     */
+    public void force(){
+        buffer.force();
+    }
+
+    /**
+     * Method which measures how much faster the AI is at positions which were searched in an earlier session. Random
+     * openings are searched to a fixed depth with a new cache file, and then searched again in a new process (as if
+     * the game had been closed and opened again) with fresh transposition tables but the same file. This is done once
+     * for the AI's searches, and once with a second file for analysis mode's, which score every column and so can't
+     * just use the position's own entry.
+     *
+     * Usage: AnalysisCache [positions] [depth] [boardSize]
+     * The defaults are 20 positions searched 12 moves deep on a 7x7 board.
+     * @param args see above.
+     */
+    public static void main(String[] args) throws Exception {
+        if(args.length > 0 && args[0].equals("-warm")){
+            //the second process
+            int boardSize = Integer.parseInt(args[5]);
+            for(int i = 0; i < 2; i++){
+                AnalysisCache cache = new AnalysisCache(new File(args[1 + i]), boardSize, new Evaluator().getVersion(), DEFAULT_BUCKETS);
+                for(long nanos : searchAll(cache, Integer.parseInt(args[3]), Integer.parseInt(args[4]), i == 1)){
+                    System.out.println(nanos);
+                }
+            }
+            return;
+        }
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int depth = args.length > 1 ? Integer.parseInt(args[1]) : 12;
+        int boardSize = args.length > 2 ? Integer.parseInt(args[2]) : 7;
+        File[] files = {File.createTempFile("analysis_cache", ".c4a"), File.createTempFile("analysis_cache", ".c4a")};
+        long[][] cold = new long[2][];
+        for(int i = 0; i < 2; i++){
+            files[i].deleteOnExit();
+            AnalysisCache cache = new AnalysisCache(files[i], boardSize, new Evaluator().getVersion(), DEFAULT_BUCKETS);
+            cold[i] = searchAll(cache, count, depth, i == 1);
+        }
+
+        Process process = new ProcessBuilder(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java",
+                "-cp", System.getProperty("java.class.path"), AnalysisCache.class.getName(), "-warm", files[0].getPath(),
+                files[1].getPath(), Integer.toString(count), Integer.toString(depth), Integer.toString(boardSize))
+                .redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        long[][] warm = new long[2][count];
+        try(BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))){
+            for(int i = 0; i < 2; i++){
+                for(int j = 0; j < count; j++){
+                    warm[i][j] = Long.parseLong(reader.readLine());
+                }
+            }
+        }
+        process.waitFor();
+
+        System.out.printf("%d positions on %dx%d searched %d deep, cache of %d entries (%d bytes)%n", count, boardSize,
+                boardSize, depth, DEFAULT_BUCKETS * ENTRIES_PER_BUCKET, files[0].length());
+        String[] names = {"AI move", "Analysis (every column)"};
+        for(int i = 0; i < 2; i++){
+            long coldTotal = 0;
+            long warmTotal = 0;
+            for(int j = 0; j < count; j++){
+                coldTotal += cold[i][j];
+                warmTotal += warm[i][j];
+            }
+            System.out.printf("%s: cold %.1f ms, warm (new process, same file) %.2f ms, %.1fx faster%n", names[i],
+                    coldTotal / 1e6 / count, warmTotal / 1e6 / count, (double) coldTotal / warmTotal);
+        }
+    }
+
+    /**
+     * Method which searches the benchmark's positions, each with a new SearchEngine and transposition table like a
+     * newly started game.
+     * @return the time each search took.
+     */
+    private static long[] searchAll(AnalysisCache cache, int count, int depth, boolean allColumns){
+        List<Position> positions = new ArrayList<>();
+        SplittableRandom random = new SplittableRandom(42);
+        while(positions.size() < count){
+            Position position = new Position(cache.getSize());
+            int plies = random.nextInt(4, 9);
+            boolean won = false;
+            for(int i = 0; i < plies && !won; i++){
+                int column;
+                do {
+                    column = random.nextInt(cache.getSize());
+                } while(!position.canPlay(column));
+                won = position.isWinningMove(column);
+                position.play(column);
+            }
+            if(!won){
+                positions.add(position);
+            }
+        }
+        long[] nanos = new long[count];
+        for(int i = 0; i < count; i++){
+            SearchEngine engine = new SearchEngine(new TranspositionTable(1 << 21));
+            engine.setCache(cache);
+            SearchLimits limits = new SearchLimits();
+            limits.setDepth(depth);
+            limits.setAllColumns(allColumns);
+            long start = System.nanoTime();
+            engine.search(positions.get(i), limits, null);
+            nanos[i] = System.nanoTime() - start;
+        }
+        return nanos;
+    }
+}
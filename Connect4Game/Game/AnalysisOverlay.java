@@ -0,0 +1,156 @@
+package Game;
+
+import javax.swing.*;
+import java.awt.*;
+
+/**
+ * An instantiable class which draws the analysis scores over the game board.
+ * It's used as the main window's glass pane, and since it doesn't have any mouse listeners, clicks still go through
+ * to the GameTile objects underneath it.
+ *
+ * Scores are shown above each column from the point of view of the player whose turn it is - "+5"/"-5" for
+ * heuristic scores, and "W3"/"L3" for a forced win/loss in 3 moves.
+ *
+ * When the opening explorer is on, the number of games in the history which played each column from the current board
+ * is shown at the bottom of the column, along with the percentage of them which the player whose turn it is won, drew
+ * and lost.
+ *
+ * @author Daniel Arefjev
+ */
+public class AnalysisOverlay extends JComponent {
+    private static final long serialVersionUID = 1L;
+
+    private JPanel boardPanel;
+    private int boardSize;
+    private SearchResult result;
+    private int[][] explorerStats;
+    private int explorerPlayer;
+
+    /**
+     * Method to set which panel the board is drawn in, so the scores can be lined up with its columns.
+     * @param boardPanel the panel containing the GameTile objects.
+     * @param boardSize the width/height of the board.
+     */
+    public void setBoard(JPanel boardPanel, int boardSize){
+        this.boardPanel = boardPanel;
+        this.boardSize = boardSize;
+        this.result = null;
+        this.explorerStats = null;
+        repaint();
+    }
+
+    /**
+     * Method to display how the games in the history which played each column went.
+     * @param stats for each column, {Player 1 wins, draws, Player 2 wins}, or null if no game played it.
+     * @param player the player whose turn it is.
+     */
+    public void showExplorer(int[][] stats, int player){
+        this.explorerStats = stats;
+        this.explorerPlayer = player;
+        repaint();
+    }
+
+    /**
+     * Method to display the result of a search.
+     * @param result the result to show.
+     */
+    public void showResult(SearchResult result){
+        this.result = result;
+        repaint();
+    }
+
+    /**
+     * Method which removes any displayed scores.
+     */
+    public void clearResult(){
+        this.result = null;
+        repaint();
+    }
+
+    /**
+     * Method to format a score for display.
+     * @param score the score to format.
+     * @return a short string representing the score.
+     */
+    public static String formatScore(int score){
+        if(SearchEngine.isWinScore(score)){
+            return (score > 0 ? "W" : "L") + SearchEngine.movesToWin(score);
+        }
+        return String.format("%+d", score);
+    }
+
+    protected void paintComponent(Graphics g){
+        if((result == null && explorerStats == null) || boardPanel == null || !boardPanel.isShowing()){
+            return;
+        }
+        Graphics2D g2 = (Graphics2D) g;
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g2.setFont(getFont() != null ? getFont().deriveFont(Font.BOLD) : new Font(Font.SANS_SERIF, Font.BOLD, 12));
+        FontMetrics metrics = g2.getFontMetrics();
+
+        Point origin = SwingUtilities.convertPoint(boardPanel, 0, 0, this);
+        int columnWidth = boardPanel.getWidth() / boardSize;
+        if(explorerStats != null){
+            paintExplorer(g2, metrics, origin, columnWidth);
+        }
+        if(result == null){
+            return;
+        }
+        int[] scores = result.getColumnScores();
+
+        for(int i = 0; i < boardSize; i++){
+            if(scores[i] == SearchEngine.NO_SCORE){
+                continue;
+            }
+            String text = formatScore(scores[i]);
+            int width = metrics.stringWidth(text) + 6;
+            int x = origin.x + i * columnWidth + (columnWidth - width) / 2;
+            int y = origin.y + 4;
+
+            if(i == result.getBestColumn()){
+                g2.setColor(new Color(0, 120, 0, 200));
+            } else if(scores[i] < 0){
+                g2.setColor(new Color(150, 0, 0, 180));
+            } else {
+                g2.setColor(new Color(60, 60, 60, 180));
+            }
+            g2.fillRoundRect(x, y, width, metrics.getHeight(), 6, 6);
+            g2.setColor(Color.WHITE);
+            g2.drawString(text, x + 3, y + metrics.getAscent());
+        }
+
+        String depth = "Depth " + result.getDepth();
+        g2.setColor(new Color(60, 60, 60, 180));
+        g2.drawString(depth, origin.x + 4, origin.y + boardPanel.getHeight() - metrics.getDescent() - 2);
+    }
+
+    /**
+     * Method which draws the opening explorer's stats at the bottom of each column, above the search depth.
+     */
+    private void paintExplorer(Graphics2D g2, FontMetrics metrics, Point origin, int columnWidth){
+        int y = origin.y + boardPanel.getHeight() - metrics.getHeight() * 3 - 4;
+        for(int i = 0; i < boardSize && i < explorerStats.length; i++){
+            int[] stats = explorerStats[i];
+            if(stats == null){
+                continue;
+            }
+            int games = stats[0] + stats[1] + stats[2];
+            if(games == 0){
+                continue;
+            }
+            int wins = stats[explorerPlayer == 1 ? 0 : 2];
+            int losses = stats[explorerPlayer == 1 ? 2 : 0];
+            String[] lines = {games + (games == 1 ? " game" : " games"),
+                    Math.round(wins * 100.0 / games) + "/" + Math.round(stats[1] * 100.0 / games) + "/" + Math.round(losses * 100.0 / games)};
+            int width = Math.max(metrics.stringWidth(lines[0]), metrics.stringWidth(lines[1])) + 6;
+            int x = origin.x + i * columnWidth + (columnWidth - width) / 2;
+
+            g2.setColor(new Color(0, 60, 120, 180));
+            g2.fillRoundRect(x, y, width, metrics.getHeight() * 2, 6, 6);
+            g2.setColor(Color.WHITE);
+            for(int j = 0; j < lines.length; j++){
+                g2.drawString(lines[j], x + (width - metrics.stringWidth(lines[j])) / 2, y + j * metrics.getHeight() + metrics.getAscent());
+            }
+        }
+    }
+}
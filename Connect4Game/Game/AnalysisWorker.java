@@ -0,0 +1,106 @@
+package Game;
+
+import javax.swing.*;
+
+/**
+ * An instantiable class which defines the background thread behind analysis mode.
+ * Whenever analyse() is called with a new position, the search of the old position is stopped and the new one is
+ * searched with iterative deepening until it's solved or another position comes along. The scores from each completed
+ * depth are passed to an AnalysisOverlay on the Swing thread.
+ *
+ * @author Daniel Arefjev
+ */
+public class AnalysisWorker implements Runnable {
+    private final AnalysisOverlay overlay;
+    private final SearchEngine engine;
+    private Thread thread;
+    private Position pending;
+    private SearchLimits currentLimits;
+    private volatile int generation;
+
+    /**
+     * AnalysisWorker 1 argument constructor.
+     * @param overlay the overlay to display the scores on.
+     */
+    public AnalysisWorker(AnalysisOverlay overlay){
+        this.overlay = overlay;
+        this.engine = new SearchEngine(new TranspositionTable(1 << 20));
+        this.engine.setPersistent(true);
+    }
+
+    /**
+     * Method which starts analysing a position, stopping the analysis of any previous position.
+     * @param position the position to analyse.
+     */
+    public synchronized void analyse(Position position){
+        generation++;
+        pending = position;
+        if(currentLimits != null){
+            currentLimits.stop();
+        }
+        if(thread == null){
+            thread = new Thread(this, "Analysis");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            thread.start();
+        }
+        notifyAll();
+    }
+
+    /**
+     * Method which stops any running analysis and clears the scores from the overlay.
+     */
+    public synchronized void clear(){
+        generation++;
+        pending = null;
+        if(currentLimits != null){
+            currentLimits.stop();
+        }
+        overlay.clearResult();
+    }
+
+    /**
+     * Method which runs on the analysis thread - waits for a position and searches it.
+     */
+    public void run(){
+        while(true){
+            Position position;
+            SearchLimits limits;
+            int searchGeneration;
+            synchronized(this){
+                while(pending == null){
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                position = pending;
+                pending = null;
+                searchGeneration = generation;
+                limits = new SearchLimits();
+                limits.setAllColumns(true);
+                currentLimits = limits;
+            }
+
+            //positions in a tablebase are shown straight away, without searching
+            Tablebase tablebase = Tablebase.forSize(position.getSize());
+            SearchResult known = tablebase != null ? tablebase.analyse(position) : null;
+            if(known != null){
+                SwingUtilities.invokeLater(() -> {
+                    if(searchGeneration == generation){
+                        overlay.showResult(known);
+                    }
+                });
+                continue;
+            }
+
+            engine.search(position, limits, result -> SwingUtilities.invokeLater(() -> {
+                //results of a position which has since been replaced are thrown away
+                if(searchGeneration == generation){
+                    overlay.showResult(result);
+                }
+            }));
+        }
+    }
+}
@@ -0,0 +1,332 @@
+package Game;
+
+import java.util.SplittableRandom;
+
+/**
+ * A class which checks many positions for a line of four at once, for code which scores large batches of positions
+ * (rollouts, tablebases, analysis) where checking every position with GameBoard.checkForWinner() would take most of
+ * the time.
+ *
+ * Each position is packed into a bitboard - a long holding one player's tiles, with bit column * (size + 1) + row set
+ * for each of their tiles (row 0 being the bottom of the board, and the extra bit at the top of each column always
+ * clear, so lines can't run from the top of one column into the bottom of the next). Shifting a bitboard by 1 lines
+ * each tile up with the one below it, by size + 1 with the one to its left and by size or size + 2 with the ones
+ * diagonally below it, so ANDing a bitboard with itself shifted 1 step and then 2 steps leaves a bit wherever 4 tiles
+ * are in a line. Only boards up to MAX_SIZE x MAX_SIZE fit in a long.
+ *
+ * wins() runs those shifts and ANDs over a whole array of bitboards. When VectorWinCheck has been compiled (it's kept
+ * out of the game's sources, see VectorAPI/Game/VectorWinCheck.java) and the program is run with --add-modules
+ * jdk.incubator.vector, it's loaded by name and uses the Vector API. Otherwise wins() uses one flat loop with no
+ * branches, which the JIT can usually compile to SIMD instructions itself. hasWin() checks a single
+ * bitboard one direction at a time, stopping at the first line it finds.
+ *
+ * @author Daniel Arefjev
+ */
+public class BatchWinCheck {
+    /**
+     * The biggest board whose bitboard fits in a long.
+     */
+    public static final int MAX_SIZE = 7;
+
+    private static final Batch VECTOR = loadVector();
+
+    /**
+     * Whether wins() uses the Vector API, which is only there when VectorWinCheck has been compiled and
+     * jdk.incubator.vector has been added.
+     */
+    public static final boolean VECTOR_API = VECTOR != null;
+
+    /**
+     * An interface for the Vector API version of wins(), so BatchWinCheck compiles without it.
+     */
+    interface Batch {
+        /**
+         * Method which checks a batch of bitboards for lines of four. See BatchWinCheck.wins().
+         * @param boards the bitboards.
+         * @param count how many of the bitboards to check, from index 0.
+         * @param size the width/height of the board they were packed from.
+         * @param lines set to a bit for every line of four in each bitboard.
+         */
+        void wins(long[] boards, int count, int size, long[] lines);
+
+        /**
+         * Method to get how many bitboards are checked at once.
+         * @return the number of lanes in the vectors used.
+         */
+        int lanes();
+    }
+
+    /**
+     * Method which loads VectorWinCheck by name, if both it and the jdk.incubator.vector module are there.
+     * @return the Vector API version of wins(), or null.
+     */
+    private static Batch loadVector(){
+        if(!ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()){
+            return null;
+        }
+        try {
+            return (Batch) Class.forName("Game.VectorWinCheck").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * Method to check whether positions on a board size can be packed into bitboards.
+     * @param size the width/height of the board.
+     * @return true if the board is no bigger than MAX_SIZE x MAX_SIZE.
+     */
+    public static boolean fits(int size){
+        return size >= 4 && size <= MAX_SIZE;
+    }
+
+    /**
+     * Method which packs one player's tiles in a position into a bitboard.
+     * @param position the position, which must fit (see fits()).
+     * @param player the player whose tiles are packed.
+     * @return the bitboard.
+     */
+    public static long pack(Position position, int player){
+        int size = position.getSize();
+        checkSize(size);
+        long board = 0;
+        for(int column = 0; column < size; column++){
+            for(int row = 0; row < position.getHeight(column); row++){
+                if(position.getTile(column, row) == player){
+                    board |= 1L << (column * (size + 1) + row);
+                }
+            }
+        }
+        return board;
+    }
+
+    /**
+     * Method which packs one player's tiles on a GameBoard into a bitboard.
+     * @param gameBoard the board, which must fit (see fits()).
+     * @param player the player whose tiles are packed.
+     * @return the bitboard.
+     */
+    public static long pack(GameBoard gameBoard, int player){
+        int size = gameBoard.getSize();
+        checkSize(size);
+        long board = 0;
+        for(int column = 0; column < size; column++){
+            for(int row = 0; row < size; row++){
+                //GameBoard's row 0 is the top of the board
+                if(gameBoard.getTileState(column, size - 1 - row) == player){
+                    board |= 1L << (column * (size + 1) + row);
+                }
+            }
+        }
+        return board;
+    }
+
+    /**
+     * Method which checks a batch of bitboards for lines of four.
+     * @param boards the bitboards.
+     * @param count how many of the bitboards to check, from index 0.
+     * @param size the width/height of the board they were packed from.
+     * @param lines set to a bit for every line of four in each bitboard (the lowest tile of the line, or the leftmost
+     * for horizontal lines), so 0 where a bitboard has no line of four.
+     */
+    public static void wins(long[] boards, int count, int size, long[] lines){
+        checkSize(size);
+        if(VECTOR_API){
+            VECTOR.wins(boards, count, size, lines);
+        } else {
+            loop(boards, count, size, lines);
+        }
+    }
+
+    /**
+     * Method which checks a batch of bitboards for lines of four without the Vector API. See wins().
+     */
+    static void loop(long[] boards, int count, int size, long[] lines){
+        int left = size + 1;
+        int down = size;
+        int up = size + 2;
+        for(int i = 0; i < count; i++){
+            long board = boards[i];
+            long vertical = board & (board >>> 1);
+            long horizontal = board & (board >>> left);
+            long descending = board & (board >>> down);
+            long ascending = board & (board >>> up);
+            lines[i] = (vertical & (vertical >>> 2))
+                    | (horizontal & (horizontal >>> 2 * left))
+                    | (descending & (descending >>> 2 * down))
+                    | (ascending & (ascending >>> 2 * up));
+        }
+    }
+
+    /**
+     * Method which checks a single bitboard for a line of four.
+     * @param board the bitboard.
+     * @param size the width/height of the board it was packed from.
+     * @return true if the bitboard has a line of four.
+     */
+    public static boolean hasWin(long board, int size){
+        return line(board, 1) != 0 || line(board, size + 1) != 0 || line(board, size) != 0 || line(board, size + 2) != 0;
+    }
+
+    /**
+     * Method to find the lines of four in a bitboard in one direction.
+     * @param board the bitboard.
+     * @param shift 1 for vertical lines, size + 1 for horizontal, size for descending diagonals and size + 2 for
+     * ascending diagonals.
+     * @return a bit for every line of four.
+     */
+    static long line(long board, int shift){
+        long pairs = board & (board >>> shift);
+        return pairs & (pairs >>> 2 * shift);
+    }
+
+    private static void checkSize(int size){
+        if(!fits(size)){
+            throw new IllegalArgumentException("A " + size + "x" + size + " board doesn't fit in a bitboard");
+        }
+    }
+
+    /**
+     * Method which checks the results against GameBoard.checkForWinner() and prints how many positions per second
+     * checkForWinner(), hasWin() and both versions of wins() (the loop, and the Vector API when it's there) each get
+     * through.
+     *
+     * The positions are random games stopped after a random number of moves (or when someone wins), and each is
+     * checked for the player who moved last, like GameTab does after a move. checkForWinner() is only run on the first
+     * few thousand, since every GameBoard is a grid of Swing components.
+     *
+     * Usage: BatchWinCheck [positions] [boardSize] [rounds]
+     * The defaults are 1000000 positions on a 7x7 board, each checked 20 times.
+     * @param args see above.
+     */
+    public static void main(String[] args){
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int boardSize = args.length > 1 ? Integer.parseInt(args[1]) : 7;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        int gameBoards = Math.min(count, 5000);
+        checkSize(boardSize);
+
+        SplittableRandom random = new SplittableRandom(7);
+        long[] boards = new long[count];
+        long[] lines = new long[count];
+        GameBoard[] checked = new GameBoard[gameBoards];
+        int[] movers = new int[gameBoards];
+        for(int i = 0; i < count; i++){
+            Position position = new Position(boardSize);
+            GameBoard gameBoard = i < gameBoards ? new GameBoard(boardSize) : null;
+            int plies = 1 + random.nextInt(boardSize * boardSize);
+            int mover = 1;
+            for(int ply = 0; ply < plies; ply++){
+                int column;
+                do {
+                    column = random.nextInt(boardSize);
+                } while(!position.canPlay(column));
+                mover = position.getPlayer();
+                position.play(column);
+                if(gameBoard != null){
+                    gameBoard.addTile(column);
+                    gameBoard.switchPlayer();
+                }
+                if(position.lastMoveWon() || position.isFull()){
+                    break;
+                }
+            }
+            boards[i] = pack(position, mover);
+            if(gameBoard != null){
+                gameBoard.setPlayer(mover);
+                checked[i] = gameBoard;
+                movers[i] = mover;
+            }
+        }
+
+        //checkForWinner() finds a line for the player who moved, or a draw (or nothing) when there isn't one
+        wins(boards, count, boardSize, lines);
+        int agreed = 0;
+        for(int i = 0; i < gameBoards; i++){
+            int winner = checked[i].checkForWinner();
+            if((winner == movers[i]) == (lines[i] != 0)){
+                agreed++;
+            }
+        }
+        System.out.printf("checkForWinner() agreed on %d of %d positions%n", agreed, gameBoards);
+        int mismatches = 0;
+        for(int i = 0; i < count; i++){
+            if(hasWin(boards[i], boardSize) != (lines[i] != 0)){
+                mismatches++;
+            }
+        }
+        System.out.printf("hasWin() and wins() disagreed on %d of %d positions%n", mismatches, count);
+        if(VECTOR_API){
+            long[] looped = new long[count];
+            loop(boards, count, boardSize, looped);
+            mismatches = 0;
+            for(int i = 0; i < count; i++){
+                if(looped[i] != lines[i]){
+                    mismatches++;
+                }
+            }
+            System.out.printf("The Vector API and the loop disagreed on %d of %d positions%n", mismatches, count);
+        }
+
+        //each is warmed up before it's timed, and the totals are printed so the JIT can't drop the work
+        long total = 0;
+        for(int warmUp = 0; warmUp < 3; warmUp++){
+            for(int i = 0; i < gameBoards; i++){
+                total += checked[i].checkForWinner();
+            }
+            total += scalar(boards, count, boardSize);
+            loop(boards, count, boardSize, lines);
+            if(VECTOR_API){
+                VECTOR.wins(boards, count, boardSize, lines);
+            }
+        }
+        long start = System.nanoTime();
+        for(int r = 0; r < rounds; r++){
+            for(int i = 0; i < gameBoards; i++){
+                total += checked[i].checkForWinner();
+            }
+        }
+        double gameBoardRate = (double) gameBoards * rounds / ((System.nanoTime() - start) / 1e9);
+
+        start = System.nanoTime();
+        for(int r = 0; r < rounds; r++){
+            total += scalar(boards, count, boardSize);
+        }
+        double scalarRate = (double) count * rounds / ((System.nanoTime() - start) / 1e9);
+
+        start = System.nanoTime();
+        for(int r = 0; r < rounds; r++){
+            loop(boards, count, boardSize, lines);
+            total += lines[r % count];
+        }
+        double loopRate = (double) count * rounds / ((System.nanoTime() - start) / 1e9);
+
+        System.out.printf("GameBoard.checkForWinner() %,15.0f positions/s%n", gameBoardRate);
+        System.out.printf("hasWin()                   %,15.0f positions/s%n", scalarRate);
+        System.out.printf("wins(), loop               %,15.0f positions/s (%.1fx hasWin())%n", loopRate,
+                loopRate / scalarRate);
+        if(VECTOR_API){
+            start = System.nanoTime();
+            for(int r = 0; r < rounds; r++){
+                VECTOR.wins(boards, count, boardSize, lines);
+                total += lines[r % count];
+            }
+            double vectorRate = (double) count * rounds / ((System.nanoTime() - start) / 1e9);
+            System.out.printf("wins(), Vector API x%d      %,15.0f positions/s (%.1fx hasWin(), %.1fx the loop)%n",
+                    VECTOR.lanes(), vectorRate, vectorRate / scalarRate, vectorRate / loopRate);
+        } else {
+            System.out.println("wins(), Vector API         not available (see VectorAPI/Game/VectorWinCheck.java)");
+        }
+        System.out.println("(" + total + ")");
+    }
+
+    private static int scalar(long[] boards, int count, int size){
+        int won = 0;
+        for(int i = 0; i < count; i++){
+            if(hasWin(boards[i], size)){
+                won++;
+            }
+        }
+        return won;
+    }
+}
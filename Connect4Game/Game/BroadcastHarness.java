@@ -0,0 +1,207 @@
+package Game;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A class which stress tests GameBroadcaster with one game and a large number of in-process spectators.
+ *
+ * A random game (which avoids winning for as long as it can) is played on a large board, publishing a move every so often, while a few reader threads poll every
+ * spectator. Most spectators read everything straight away, but some only read one event every so often, so they fall
+ * behind and have to catch up with snapshots (or are dropped). At the end, every spectator which is still subscribed is
+ * checked to have seen every event with no gaps, and to have ended up with the same result as the game.
+ *
+ * Usage: BroadcastHarness [spectators] [readerThreads] [slowPercent] [boardSize] [moveIntervalMicros] [drop]
+ * The defaults are 50000 spectators, a reader thread for every 2 processors, 1% slow spectators and a move every 5000
+ * microseconds on a 24x24 board, catching up slow spectators with snapshots (or dropping them if "drop" is given).
+ *
+ * @author Daniel Arefjev
+ */
+public class BroadcastHarness {
+    private static final long SLOW_READ_INTERVAL_NANOS = 20_000_000L;
+    //delivery latencies are counted in 100 microsecond buckets, up to 10 seconds
+    private static final int HISTOGRAM_BUCKETS = 100_001;
+
+    /**
+     * Method which runs the harness and prints its results.
+     * @param args see the class comment.
+     */
+    public static void main(String[] args) throws Exception {
+        int spectators = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+        int readerThreads = args.length > 1 ? Integer.parseInt(args[1]) : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        int slowPercent = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+        int boardSize = args.length > 3 ? Integer.parseInt(args[3]) : 24;
+        long moveIntervalNanos = (args.length > 4 ? Long.parseLong(args[4]) : 5000) * 1000L;
+        int slowPolicy = args.length > 5 && args[5].equals("drop") ? GameBroadcaster.DROP_SLOW : GameBroadcaster.SNAPSHOT_SLOW;
+
+        ExecutorService fanOutExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Fan Out");
+            thread.setDaemon(true);
+            return thread;
+        });
+        GameBroadcaster broadcaster = new GameBroadcaster(new Position(boardSize), 64, slowPolicy, fanOutExecutor);
+        GameBroadcaster.Subscription[] subscriptions = new GameBroadcaster.Subscription[spectators];
+        for(int i = 0; i < spectators; i++){
+            subscriptions[i] = broadcaster.subscribe();
+        }
+
+        long[] lastSequence = new long[spectators];
+        int[] winners = new int[spectators];
+        long[] nextRead = new long[spectators];
+        AtomicInteger gaps = new AtomicInteger();
+        AtomicInteger finished = new AtomicInteger();
+        long[][] latencyHistograms = new long[readerThreads][HISTOGRAM_BUCKETS];
+        Thread[] readers = new Thread[readerThreads];
+        for(int t = 0; t < readerThreads; t++){
+            int reader = t;
+            readers[t] = new Thread(() -> {
+                long[] histogram = latencyHistograms[reader];
+                while(finished.get() < spectators){
+                    boolean read = false;
+                    for(int i = reader; i < spectators; i += readerThreads){
+                        GameBroadcaster.Subscription subscription = subscriptions[i];
+                        if(winners[i] != 0 || lastSequence[i] < 0){
+                            continue;
+                        }
+                        boolean slow = i % 100 < slowPercent;
+                        long now = System.nanoTime();
+                        if(slow && now < nextRead[i]){
+                            continue;
+                        }
+                        nextRead[i] = now + SLOW_READ_INTERVAL_NANOS;
+
+                        //checked before polling, so an empty buffer really means nothing else is coming
+                        boolean closed = subscription.isClosed();
+                        GameEvent event;
+                        while((event = subscription.poll()) != null){
+                            if(event.getType() == GameEvent.SNAPSHOT){
+                                if(event.getSequence() < lastSequence[i]){
+                                    gaps.incrementAndGet();
+                                }
+                            } else {
+                                if(event.getSequence() != lastSequence[i] + 1){
+                                    gaps.incrementAndGet();
+                                }
+                                if(!slow){
+                                    histogram[(int) Math.min(HISTOGRAM_BUCKETS - 1, (System.nanoTime() - event.getTimeNanos()) / 100_000)]++;
+                                }
+                            }
+                            read = true;
+                            lastSequence[i] = event.getSequence();
+                            winners[i] = event.getWinner();
+                            if(winners[i] != 0 || slow){
+                                break;
+                            }
+                        }
+                        if(winners[i] != 0){
+                            finished.incrementAndGet();
+                        } else if(closed && event == null){
+                            lastSequence[i] = -1;
+                            finished.incrementAndGet();
+                        }
+                    }
+                    //back off when there was nothing to read, so the readers don't starve the fan out of CPU
+                    if(!read){
+                        LockSupport.parkNanos(200_000);
+                    }
+                }
+            }, "Spectator Reader " + t);
+            readers[t].setDaemon(true);
+            readers[t].start();
+        }
+
+        //play a random game, publishing each move like a real game would
+        SplittableRandom random = new SplittableRandom(42);
+        Position position = new Position(boardSize);
+        long[] publishNanos = new long[boardSize * boardSize + 1];
+        int published = 0;
+        int winner = 0;
+        long start = System.nanoTime();
+        long nextMove = start;
+        while(winner == 0){
+            long wait;
+            while((wait = nextMove - System.nanoTime()) > 0){
+                LockSupport.parkNanos(wait);
+            }
+            nextMove += moveIntervalNanos;
+            //winning moves are avoided for as long as possible, so the game lasts long enough to test catching up
+            int column = -1;
+            for(int tries = 0; tries < boardSize * 4 && (column < 0 || position.isWinningMove(column)); tries++){
+                do {
+                    column = random.nextInt(boardSize);
+                } while(!position.canPlay(column));
+            }
+            boolean won = position.isWinningMove(column);
+            int player = position.getPlayer();
+            position.play(column);
+
+            long before = System.nanoTime();
+            broadcaster.publishMove(column, player);
+            publishNanos[published++] = System.nanoTime() - before;
+            if(won){
+                winner = player;
+            } else if(position.isFull()){
+                winner = 3;
+            }
+        }
+        broadcaster.publishResult(winner);
+        long gameNanos = System.nanoTime() - start;
+
+        for(Thread reader : readers){
+            reader.join(60_000);
+        }
+        long totalNanos = System.nanoTime() - start;
+
+        int wrong = 0;
+        int dropped = 0;
+        for(int i = 0; i < spectators; i++){
+            if(lastSequence[i] < 0){
+                dropped++;
+            } else if(winners[i] != winner || lastSequence[i] != published + 1){
+                wrong++;
+            }
+        }
+        long[] histogram = new long[HISTOGRAM_BUCKETS];
+        long delivered = 0;
+        for(long[] readerHistogram : latencyHistograms){
+            for(int i = 0; i < histogram.length; i++){
+                histogram[i] += readerHistogram[i];
+                delivered += readerHistogram[i];
+            }
+        }
+        long[] sortedPublish = Arrays.copyOf(publishNanos, published);
+        Arrays.sort(sortedPublish);
+
+        System.out.printf("Spectators: %d (%d%% slow), %d reader threads, %s%n", spectators, slowPercent, readerThreads,
+                slowPolicy == GameBroadcaster.DROP_SLOW ? "dropping slow spectators" : "catching up slow spectators with snapshots");
+        System.out.printf("Game: %d moves on %dx%d, winner %d, played in %.1f ms, all spectators done after %.1f ms%n",
+                published, boardSize, boardSize, winner, gameNanos / 1e6, totalNanos / 1e6);
+        System.out.printf("Publish cost to the player: p50 %.1f us, p99 %.1f us, max %.1f us%n",
+                sortedPublish[published / 2] / 1e3, sortedPublish[Math.min(published - 1, published * 99 / 100)] / 1e3,
+                sortedPublish[published - 1] / 1e3);
+        System.out.printf("Delivery latency to fast spectators (%d events): p50 %.2f ms, p99 %.2f ms%n", delivered,
+                percentile(histogram, delivered, 0.5) / 10.0, percentile(histogram, delivered, 0.99) / 10.0);
+        System.out.printf("Catch up snapshots: %d, dropped: %d (seen by readers: %d)%n", broadcaster.getSnapshotCount(),
+                broadcaster.getDroppedCount(), dropped);
+        System.out.printf("Gaps in event sequence: %d, spectators with the wrong result: %d%n", gaps.get(), wrong);
+        if(gaps.get() > 0 || wrong > 0){
+            System.exit(1);
+        }
+    }
+
+    private static long percentile(long[] histogram, long total, double fraction){
+        long target = (long) (total * fraction);
+        long count = 0;
+        for(int i = 0; i < histogram.length; i++){
+            count += histogram[i];
+            if(count > target){
+                return i;
+            }
+        }
+        return histogram.length - 1;
+    }
+}
@@ -6,8 +6,8 @@ import javax.swing.filechooser.FileNameExtensionFilter;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.awt.event.MouseEvent;
-import java.awt.event.MouseListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.io.*;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -18,14 +18,17 @@ import java.util.GregorianCalendar;
  * The driver class for my Connect Four game.
  * @author Daniel Arefjev
  */
-public class Connect4Game extends JFrame implements MouseListener, ActionListener {
-    GameBoard gameBoard;
+public class Connect4Game extends JFrame implements ActionListener {
+    JTabbedPane tabs;
+    GameTab shownTab;
     JMenu gameMenu;
-    GameTimer timer;
     JFrame settingsMenu;
     GridLayout mainLayout;
-    ArrayList<SimpleGameBoard> gameHistory = new ArrayList<>();
-    File gameHistoryFile = new File("game_history.c4g");
+    File gameHistoryFile = new File("game_history.c4h");
+    File oldGameHistoryFile = new File("game_history.c4g");
+    File journalDirectory = new File("journal");
+    File openingExplorerFile = new File("opening_explorer.c4o");
+    GamePersistence persistence = new GamePersistence();
     File selectedFile;
     FileNameExtensionFilter fileFilter = new FileNameExtensionFilter("Connect 4 Save Files", "c4g");
 
@@ -42,7 +45,7 @@ public class Connect4Game extends JFrame implements MouseListener, ActionListene
     //settings fields and stuff
     JCheckBox aiToggle;
     JComboBox aiDifficulty;
-    String aiDifficultyOptions[] = {"Very Easy", "Easy"};
+    String aiDifficultyOptions[] = {"Very Easy", "Easy", "Medium", "Hard"};
     JTextField p1Name;
     JTextField p2Name;
     String pColorOptions[] = {"Red", "Blue", "Cyan", "Green", "Magenta", "Yellow", "Orange"};
@@ -50,15 +53,26 @@ public class Connect4Game extends JFrame implements MouseListener, ActionListene
     JComboBox p2Colour;
     SpinnerNumberModel bSizeModel;
     JSpinner bSize;
+    JSpinner clockMinutes;
+    JSpinner clockIncrement;
     JButton settingsStartButton;
 
     //other UI elements
     TitledBorder title;
     JPanel panel;
     JPanel gamePanel;
+    JPanel clockPanel;
+    JLabel savingLabel;
     JLabel currentPlayerName;
     JButton mainStartButton;
     JFileChooser fileChooser;
+    JCheckBoxMenuItem analysisToggle;
+    JCheckBoxMenuItem explorerToggle;
+
+    //analysis
+    AnalysisOverlay analysisOverlay;
+    AnalysisWorker analysisWorker;
+    volatile OpeningExplorer openingExplorer;
 
     //main UI
 
@@ -82,14 +96,35 @@ public class Connect4Game extends JFrame implements MouseListener, ActionListene
         //not the cleanest solution, but JSeparator was acting very strangely with the menu bar. this looks nice anyways.
         currentPlayerName.setBorder(BorderFactory.createEmptyBorder(0, 0, 0, 5));
 
-        timer = new GameTimer();
-        menuBar.add(timer);
+        //the game timer and player clocks share the middle of the menu bar
+        clockPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 10, 0));
+        clockPanel.setOpaque(false);
+        menuBar.add(clockPanel);
+
+        savingLabel = new JLabel("Saving\u2026");
+        savingLabel.setVisible(false);
+        clockPanel.add(savingLabel);
+        persistence.setStatusListener(() -> SwingUtilities.invokeLater(() -> savingLabel.setVisible(persistence.isSaving())));
+
+        analysisOverlay = new AnalysisOverlay();
+        setGlassPane(analysisOverlay);
+        analysisWorker = new AnalysisWorker(analysisOverlay);
+
+        //each game is played in its own tab, and the menu bar shows the selected game's player, timer and clocks
+        tabs = new JTabbedPane();
+        tabs.addChangeListener(e -> selectedTabChanged());
 
         createStartArea();
+        WindowEventHandler windowEventHandler = new WindowEventHandler();
+        addWindowFocusListener(windowEventHandler);
+        addWindowListener(windowEventHandler);
 
         setSize(500, 500);
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         setVisible(true);
+
+        recoverUnfinishedGames();
+        openOpeningExplorer();
     }
 
     /**
@@ -111,28 +146,39 @@ public class Connect4Game extends JFrame implements MouseListener, ActionListene
         item.addActionListener(this);
         gameMenu.add(item);
 
+        item = new JMenuItem("Close Game");
+        item.addActionListener(this);
+        gameMenu.add(item);
+
         JSeparator separator = new JSeparator();
         gameMenu.add(separator);
 
         item = new JMenuItem("View History");
         item.addActionListener(this);
         gameMenu.add(item);
+
+        gameMenu.add(new JSeparator());
+
+        analysisToggle = new JCheckBoxMenuItem("Analysis Mode");
+        analysisToggle.addActionListener(this);
+        gameMenu.add(analysisToggle);
+
+        explorerToggle = new JCheckBoxMenuItem("Opening Explorer");
+        explorerToggle.addActionListener(this);
+        gameMenu.add(explorerToggle);
     }
 
     /**
-     * Method to reset and create the "start" area for the main game window.
+     * Method to reset and create the "start" area for the main game window, which is shown when no games are open.
      */
     public void createStartArea(){
         //getting rid of any now unnecessary objects
         if(gamePanel != null){
             remove(gamePanel);
         }
-        if(gameBoard != null){
-            gameBoard = null;
-        }
-        if(timer != null){
-            timer.setVisible(false);
-        }
+        remove(tabs);
+        currentPlayerName.setVisible(false);
+        updateAnalysis();
 
         /* I didn't intend for the button to take up the full area, but I actually like the look of it. */
         gamePanel = new JPanel();
@@ -146,23 +192,12 @@ public class Connect4Game extends JFrame implements MouseListener, ActionListene
     }
 
     /**
-     * Method to reset the main window area and populate it with the actual game elements.
+     * Method which starts a new game with the options in the settings menu, in a new tab. Any games which are already
+     * open carry on in their own tabs.
      */
     public void createGameArea(){
-        remove(gamePanel);
-
         int boardSize = (int)bSize.getValue();
 
-        if(timer!=null){
-            getJMenuBar().remove(timer);
-            timer = null;
-            timer = new GameTimer();
-            getJMenuBar().add(timer);
-        }
-
-        gamePanel = new JPanel();
-        gamePanel.setLayout(new GridLayout(boardSize, boardSize));
-
         //ensuring players don't get the same colours
         int p1index = p1Colour.getSelectedIndex();
         int p2index = p2Colour.getSelectedIndex();
@@ -174,34 +209,111 @@ public class Connect4Game extends JFrame implements MouseListener, ActionListene
             JOptionPane.showMessageDialog(null, "Players cannot be the same colour. Setting player 2 to " + pColorOptions[p2index] + ".");
         }
 
-        timer.setVisible(true);
-        timer.startTimer();
-
-        gameBoard = new GameBoard(boardSize);
+        GameBoard gameBoard = new GameBoard(boardSize);
         gameBoard.setTimeStarted(new GregorianCalendar());
         gameBoard.setPlayerIcons(imageIcons[p1index], imageIcons[p2index]);
         gameBoard.setAIStuff(aiToggle.isSelected(), aiDifficulty.getSelectedIndex());
         gameBoard.setPlayerNames(p1Name.getText(), p2Name.getText());
 
-        for(int i = 0; i < boardSize; i++){
-            for(int j = 0; j < boardSize; j++){
-                gamePanel.add(gameBoard.getGameBoard()[j][i]);
-                gameBoard.getGameBoard()[j][i].addMouseListener(this);
-            }
+        GameTab tab = new GameTab(this, gameBoard, null);
+        long clockMillis = (int)clockMinutes.getValue() * 60000L;
+        if(clockMillis > 0){
+            tab.startPlayerClock(clockMillis, clockMillis, (int)clockIncrement.getValue() * 1000L);
         }
 
         settingsMenu.setVisible(false);
+        addTab(tab);
+    }
 
-        updatePlayerLabel();
-        currentPlayerName.setVisible(true);
+    /**
+     * Method which adds a game's tab to the main window and selects it, replacing the start area if no other games
+     * are open.
+     * @param tab the tab to add.
+     */
+    public void addTab(GameTab tab){
+        if(tabs.getTabCount() == 0){
+            remove(gamePanel);
+            add(tabs);
+        }
+        tabs.addTab(tab.getTitle(), tab);
+        tabs.setSelectedComponent(tab);
         /*
         need to poke the main window for it to update for some reason - otherwise borders aren't displayed
         goal with size is for the 7x7 (default) board size to result in window being roughly 500x500
         this might be too big on standard resolutions though as I'm running in 3440*1440
         needs further testing - could possibly grab the user's monitor resolution and do something with that if necessary.
          */
-        add(gamePanel);
-        this.setSize(72*boardSize, 72 * boardSize + getJMenuBar().getHeight());
+        int boardSize = tab.getGameBoard().getSize();
+        this.setSize(72*boardSize, 72 * boardSize + getJMenuBar().getHeight() + 30);
+        tab.startJournal();
+    }
+
+    /**
+     * Method which removes a game's tab, stopping anything the game still has running. The start area is shown again
+     * once the last game has been closed.
+     * @param tab the tab to remove.
+     */
+    public void closeTab(GameTab tab){
+        tab.close();
+        tabs.remove(tab);
+        if(tabs.getTabCount() == 0){
+            createStartArea();
+            //need to poke main window again to redraw it I guess
+            setSize(500, 500 + getJMenuBar().getHeight());
+        }
+    }
+
+    /**
+     * Method to get the tab of the game which is being shown.
+     * @return the selected tab, or null if no games are open.
+     */
+    public GameTab getSelectedTab(){
+        return (GameTab) tabs.getSelectedComponent();
+    }
+
+    /**
+     * Method which is called when a different tab is selected, which moves the selected game's timer and clocks into
+     * the menu bar and lets only that game's AI ponder.
+     */
+    public void selectedTabChanged(){
+        GameTab selected = getSelectedTab();
+        if(shownTab != null){
+            clockPanel.remove(shownTab.getTimer());
+            if(shownTab.getPlayerClock() != null){
+                clockPanel.remove(shownTab.getPlayerClock());
+            }
+        }
+        for(int i = 0; i < tabs.getTabCount(); i++){
+            GameTab tab = (GameTab) tabs.getComponentAt(i);
+            tab.setSelected(tab == selected && isFocused());
+        }
+        shownTab = selected;
+        if(selected != null){
+            clockPanel.add(selected.getTimer(), 0);
+            if(selected.getPlayerClock() != null){
+                clockPanel.add(selected.getPlayerClock(), 1);
+            }
+            currentPlayerName.setVisible(true);
+            tabChanged(selected);
+        }
+        clockPanel.revalidate();
+        clockPanel.repaint();
+    }
+
+    /**
+     * Method which is called whenever a move is played in a tab, to update its title and, if it's the selected tab,
+     * the menu bar and analysis. A tab whose AI is thinking has an ellipsis after its title.
+     * @param tab the tab which changed.
+     */
+    public void tabChanged(GameTab tab){
+        int index = tabs.indexOfComponent(tab);
+        if(index >= 0){
+            tabs.setTitleAt(index, tab.getTitle() + (tab.isAIThinking() ? " \u2026" : ""));
+        }
+        if(tab == getSelectedTab()){
+            updatePlayerLabel();
+            updateAnalysis();
+        }
     }
 
     /**
@@ -216,7 +328,7 @@ public class Connect4Game extends JFrame implements MouseListener, ActionListene
         GridBagConstraints c = new GridBagConstraints();
         c.fill = GridBagConstraints.HORIZONTAL;
         c.insets = new Insets(0, 10, 0, 10);
-        settingsMenu.setSize(300, 550);
+        settingsMenu.setSize(300, 680);
 
         c.weighty = 1;
         c.weightx = 1;
@@ -238,8 +350,14 @@ public class Connect4Game extends JFrame implements MouseListener, ActionListene
         createBoardSettings();
         settingsMenu.add(panel, c);
 
+        //clock settings
         c.gridx = 0;
         c.gridy = 3;
+        createClockSettings();
+        settingsMenu.add(panel, c);
+
+        c.gridx = 0;
+        c.gridy = 4;
         settingsStartButton = new JButton("Start Game");
         settingsStartButton.addActionListener(new ButtonEventHandler());
         settingsMenu.add(settingsStartButton, c);
@@ -300,6 +418,44 @@ public class Connect4Game extends JFrame implements MouseListener, ActionListene
             }
         });
     }
+
+    /**
+     * Method which creates a panel with chess clock settings to be included in the settings menu.
+     * A time of 0 minutes means the game isn't timed.
+     */
+    public void createClockSettings(){
+        panel = new JPanel();
+        panel.setLayout(new GridBagLayout());
+        title = BorderFactory.createTitledBorder("Clock");
+        panel.setBorder(title);
+
+        JLabel label;
+        GridBagConstraints c = new GridBagConstraints();
+        c.insets = new Insets(10, 0, 10, 0);
+
+        label = new JLabel("Minutes Each");
+        c.weightx = 1;
+        c.gridx = 0;
+        c.gridy = 0;
+        panel.add(label, c);
+        clockMinutes = new JSpinner(new SpinnerNumberModel(0, 0, 60, 1));
+        c.weightx = 2;
+        c.gridx = 1;
+        c.gridy = 0;
+        panel.add(clockMinutes, c);
+
+        label = new JLabel("Increment (s)");
+        c.weightx = 1;
+        c.gridx = 0;
+        c.gridy = 1;
+        panel.add(label, c);
+        clockIncrement = new JSpinner(new SpinnerNumberModel(0, 0, 60, 1));
+        c.weightx = 2;
+        c.gridx = 1;
+        c.gridy = 1;
+        panel.add(clockIncrement, c);
+    }
+
     /**
      * Method which creates a panel with AI related settings to be included in the settings menu.
      */
@@ -426,7 +582,7 @@ public class Connect4Game extends JFrame implements MouseListener, ActionListene
      * Method to load a save file which contains a SimpleGameBoard object, and convert it into a GameBoard object using
      * a JFileChooser.
      */
-    public void loadGame() throws IOException, ClassNotFoundException {
+    public void loadGame() {
         selectedFile = null; //clearing the selected file before opening file chooser again
         fileChooser = new JFileChooser();
         fileChooser.setFileFilter(fileFilter);
@@ -435,80 +591,77 @@ public class Connect4Game extends JFrame implements MouseListener, ActionListene
             selectedFile = fileChooser.getSelectedFile();
         }
 
-        try{
-            if(selectedFile != null){
-                SimpleGameBoard simpleGameBoard;
-
-                FileInputStream inputStream = new FileInputStream(selectedFile);
-                ObjectInputStream objectInputStream = new ObjectInputStream(inputStream);
-                simpleGameBoard = (SimpleGameBoard) objectInputStream.readObject();
-
-                if(timer!=null){
-                    getJMenuBar().remove(timer);
-                    timer = null;
-                    timer = new GameTimer();
-                    getJMenuBar().add(timer);
-                }
-
-                remove(gamePanel);
-
-                int boardSize = simpleGameBoard.getBoardSize();
-
-                gamePanel = new JPanel();
-                gamePanel.setLayout(new GridLayout(boardSize, boardSize));
-
-                timer.setVisible(true);
-                timer.setTimeElapsed(simpleGameBoard.getTimeElapsed());
-                timer.startTimer();
-
-                gameBoard = new GameBoard(boardSize);
-                gameBoard.setPlayerIcons(imageIcons[simpleGameBoard.getPlayer1Icon()], imageIcons[simpleGameBoard.getPlayer2Icon()]);
-                gameBoard.setAIStuff(simpleGameBoard.getAIToggle(), simpleGameBoard.getAiDifficulty());
-                gameBoard.setPlayerNames(simpleGameBoard.getPlayer1Name(), simpleGameBoard.getPlayer2Name());
-                gameBoard.setLastAIMove(simpleGameBoard.getLastAIMove());
-                gameBoard.setAIStuff(simpleGameBoard.getAIToggle(), simpleGameBoard.getAiDifficulty());
-                gameBoard.setPlayer(simpleGameBoard.getPlayer());
-                gameBoard.setTimeStarted(simpleGameBoard.getTimeStarted());
-                gameBoard.setPlayerIcons(imageIcons[simpleGameBoard.getPlayer1Icon()], imageIcons[simpleGameBoard.getPlayer2Icon()]);
-
-                for(int i = 0; i < boardSize; i++){
-                    for(int j = 0; j < boardSize; j++){
-                        gamePanel.add(gameBoard.getGameBoard()[j][i]);
-                        gameBoard.getGameBoard()[i][j].setState(simpleGameBoard.getGameState()[i][j]);
-                        gameBoard.getGameBoard()[j][i].addMouseListener(this);
-                    }
+        if(selectedFile != null){
+            //the file is read on an I/O thread, and the game is opened back on the Swing thread once it's loaded
+            persistence.readObject(selectedFile).whenCompleteAsync((loaded, e) -> {
+                if(e == null && loaded instanceof SimpleGameBoard){
+                    openGame((SimpleGameBoard) loaded);
+                } else if (e != null && e.getCause() instanceof FileNotFoundException){
+                    JOptionPane.showMessageDialog(null, "File could not be found.", "Error", JOptionPane.ERROR_MESSAGE);
+                } else {
+                    JOptionPane.showMessageDialog(null, "File could not be read.", "Error", JOptionPane.ERROR_MESSAGE);
                 }
+            }, GamePersistence.onSwingThread());
+        } else {
+            JOptionPane.showMessageDialog(null, "No file was selected.", "Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
 
-                gameBoard.loadIcons();
-
-                /*
-                Unnecessary, not sure why I put this in.
-                If I wanted to keep it though, it just needs to be wrapped in an if(settingsMenu!=null) statement.
-                 */
-                // settingsMenu.setVisible(false);
+    /**
+     * Method which opens a SimpleGameBoard object (from a save file or a recovered journal) in a new tab, converting
+     * it into a GameBoard.
+     * @param simpleGameBoard the game to open.
+     */
+    public void openGame(SimpleGameBoard simpleGameBoard){
+        int boardSize = simpleGameBoard.getBoardSize();
+
+        GameBoard gameBoard = new GameBoard(boardSize);
+        gameBoard.setPlayerIcons(imageIcons[simpleGameBoard.getPlayer1Icon()], imageIcons[simpleGameBoard.getPlayer2Icon()]);
+        gameBoard.setAIStuff(simpleGameBoard.getAIToggle(), simpleGameBoard.getAiDifficulty());
+        gameBoard.setPlayerNames(simpleGameBoard.getPlayer1Name(), simpleGameBoard.getPlayer2Name());
+        gameBoard.setLastAIMove(simpleGameBoard.getLastAIMove());
+        gameBoard.setPlayer(simpleGameBoard.getPlayer());
+        gameBoard.setTimeStarted(simpleGameBoard.getTimeStarted());
+        if(simpleGameBoard.getMoves() != null){
+            gameBoard.setMoves(simpleGameBoard.getMoves());
+        }
+        for(int i = 0; i < boardSize; i++){
+            for(int j = 0; j < boardSize; j++){
+                gameBoard.setTileState(i, j, simpleGameBoard.getGameState()[i][j]);
+            }
+        }
+        gameBoard.loadIcons();
 
-                updatePlayerLabel();
-                currentPlayerName.setVisible(true);
+        GameTab tab = new GameTab(this, gameBoard, simpleGameBoard.getTimeElapsed());
+        //saves from before clocks were added have 0 for both, meaning the game isn't timed
+        if(simpleGameBoard.getPlayer1Clock() > 0 || simpleGameBoard.getPlayer2Clock() > 0){
+            tab.startPlayerClock(simpleGameBoard.getPlayer1Clock(), simpleGameBoard.getPlayer2Clock(), simpleGameBoard.getClockIncrement());
+        }
+        addTab(tab);
+        //a game saved or journaled while the AI was thinking is opened with the AI to move
+        tab.resumeAIMove();
+    }
 
-                add(gamePanel);
-                this.setSize(72*boardSize, 72 * boardSize + getJMenuBar().getHeight());
-            } else {
-                JOptionPane.showMessageDialog(null, "No file was selected.", "Error", JOptionPane.ERROR_MESSAGE);
+    /**
+     * Method to get the index of an ImageIcon within the imageIcons array, which is how icons are stored in a
+     * SimpleGameBoard.
+     * @param icon the icon to look for.
+     * @return the index of the icon, or 0 if it isn't found.
+     */
+    public int getIconIndex(ImageIcon icon){
+        for(int i = 0; i < imageIcons.length; i++){
+            if(imageIcons[i] == icon){
+                return i;
             }
-        } catch (FileNotFoundException fileNotFoundException){
-            JOptionPane.showMessageDialog(null, "File could not be found.", "Error", JOptionPane.ERROR_MESSAGE);
-        } catch (IOException ioException){
-            JOptionPane.showMessageDialog(null, "File could not be read.", "Error", JOptionPane.ERROR_MESSAGE);
         }
+        return 0;
     }
 
     /**
-     * Method to convert the currently used GameBoard object into a SimpleGameBoard object and to save it to a file
+     * Method to convert the selected game into a SimpleGameBoard object and to save it to a file
      * using a JFileChooser. There is also some code to ensure that it's saved as a .c4g file.
      */
-    public void saveGame() throws IOException {
-        int boardSize = gameBoard.getGameBoard().length;
-
+    public void saveGame() {
         fileChooser = new JFileChooser();
         fileChooser.setFileFilter(fileFilter);
         fileChooser.setApproveButtonText("Save");
@@ -524,78 +677,143 @@ public class Connect4Game extends JFrame implements MouseListener, ActionListene
             }
         }
 
-        try {
-            if (selectedFile != null) {
-                int[][] boardStateAsInt = new int[boardSize][boardSize];
-                for(int i = 0; i<boardSize; i++){
-                    for(int j = 0; j<boardSize; j++){
-                        boardStateAsInt[i][j] = gameBoard.getGameBoard()[i][j].getState();
-                    }
+        if (selectedFile != null) {
+            //the snapshot is taken here, but written on an I/O thread
+            SimpleGameBoard simpleGameBoard = getSelectedTab().createSimpleGameBoard();
+            persistence.writeObject(selectedFile, simpleGameBoard).whenCompleteAsync((result, e) -> {
+                if(e != null){
+                    JOptionPane.showMessageDialog(null, "File could not be written.", "Error", JOptionPane.ERROR_MESSAGE);
                 }
-                SimpleGameBoard simpleGameBoard = new SimpleGameBoard(gameBoard.getGameBoard().length, boardStateAsInt);
-                simpleGameBoard.setAIStuff(gameBoard.getAIToggle(), gameBoard.getAiDifficulty());
-                simpleGameBoard.setPlayerIcons(p1Colour.getSelectedIndex(), p2Colour.getSelectedIndex());
-                simpleGameBoard.setPlayerNames(gameBoard.getPlayer1Name(), gameBoard.getPlayer2Name());
-                simpleGameBoard.setLastAIMove(gameBoard.getLastAIMove());
-                simpleGameBoard.setPlayer(gameBoard.getPlayer());
-                simpleGameBoard.setTimeStarted(gameBoard.getTimeStarted());
-                simpleGameBoard.setTimeElapsed(timer.getTimeElapsed());
-
-                FileOutputStream outputStream = new FileOutputStream(selectedFile);
-                ObjectOutputStream objectOutputStream = new ObjectOutputStream(outputStream);
-                objectOutputStream.writeObject(simpleGameBoard);
-            } else {
-                JOptionPane.showMessageDialog(null, "No file was selected.", "Error", JOptionPane.ERROR_MESSAGE);
+            }, GamePersistence.onSwingThread());
+        } else {
+            JOptionPane.showMessageDialog(null, "No file was selected.", "Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    /**
+     * Method which is called when a game ends, which appends it to the game_history.c4h archive for viewing in the
+     * history window, and adds it to the opening explorer. The file is written on an I/O thread.
+     * @param simpleGameBoard the finished game.
+     */
+    public void saveToHistory(SimpleGameBoard simpleGameBoard) {
+        persistence.submit(gameHistoryFile, () -> {
+            try(HistoryArchive archive = openHistory()){
+                archive.append(simpleGameBoard);
+            }
+            if(openingExplorer != null){
+                openingExplorer.addGame(simpleGameBoard);
+            }
+            return null;
+        }, true).whenComplete((result, e) -> {
+            if(e != null){
+                e.printStackTrace();
+            }
+        });
+    }
+
+    /**
+     * Method which opens the game history archive. If there isn't one yet but there is a history file from before the
+     * archive was used, its games are copied into the archive first. Should only be called from within a task queued
+     * on the history file.
+     * @return the archive.
+     */
+    @SuppressWarnings("unchecked")
+    private HistoryArchive openHistory() throws IOException, ClassNotFoundException {
+        boolean isNew = !gameHistoryFile.exists();
+        HistoryArchive archive = new HistoryArchive(gameHistoryFile);
+        if(isNew && oldGameHistoryFile.exists()){
+            try {
+                archive.append((ArrayList<SimpleGameBoard>) GamePersistence.readObjectNow(oldGameHistoryFile));
+            } catch (EOFException e){
+                //empty file - nothing to do here
+            } catch (IOException | ClassNotFoundException e){
+                archive.close();
+                gameHistoryFile.delete();
+                throw e;
             }
-        } catch (FileNotFoundException fileNotFoundException){
-            JOptionPane.showMessageDialog(null, "File could not be found.", "Error", JOptionPane.ERROR_MESSAGE);
-        } catch (IOException ioException){
-            JOptionPane.showMessageDialog(null, "File could not be written.", "Error", JOptionPane.ERROR_MESSAGE);
         }
+        return archive;
     }
 
     /**
-     * Method which is called when a game ends, which converts the current GameBoard to a SimpleGameBoard and stores
-     * it in an ArrayList<SimpleGameBoard> within the game_history.c4g file for viewing in the history window.
+     * Method which is called on startup to open the opening explorer on an I/O thread. If it's new (or no games with
+     * recorded moves have been added to it yet), it's built from the games already in the history first. It's queued on
+     * the history file, so games which end while it's being built are added after it's opened.
      */
-    public void saveToHistory() throws IOException {
-        int boardSize = gameBoard.getGameBoard().length;
+    public void openOpeningExplorer(){
+        persistence.submit(gameHistoryFile, () -> {
+            OpeningExplorer explorer = new OpeningExplorer(openingExplorerFile);
+            if(explorer.getGameCount() == 0 && (gameHistoryFile.exists() || oldGameHistoryFile.exists())){
+                try(HistoryArchive archive = openHistory()){
+                    explorer.addGames(archive.getAll());
+                } catch (IOException | ClassNotFoundException e){
+                    e.printStackTrace();
+                }
+            }
+            openingExplorer = explorer;
+            return null;
+        }, true).whenCompleteAsync((result, e) -> {
+            if(e != null){
+                e.printStackTrace();
+            }
+            updateAnalysis();
+        }, GamePersistence.onSwingThread());
+    }
+
+    //move journal
 
-        int[][] boardStateAsInt = new int[boardSize][boardSize];
-        for(int i = 0; i<boardSize; i++){
-            for(int j = 0; j<boardSize; j++){
-                boardStateAsInt[i][j] = gameBoard.getGameBoard()[i][j].getState();
+    /**
+     * Method which is called on startup to look for journals of games which didn't finish, and offers to resume them,
+     * each in its own tab. Journals the user doesn't want to resume are deleted.
+     */
+    public void recoverUnfinishedGames(){
+        SimpleDateFormat dateFormat = new SimpleDateFormat("EEE, d MMM yyyy HH:mm");
+        for(File file : MoveJournal.findUnfinished(journalDirectory)){
+            try {
+                SimpleGameBoard recovered = MoveJournal.recover(file);
+                String message = "An unfinished game between " + recovered.getPlayer1Name() + " and " + recovered.getPlayer2Name()
+                        + " from " + dateFormat.format(recovered.getTimeStarted().getTime()) + " was found. Would you like to resume it?";
+                int choice = JOptionPane.showConfirmDialog(null, message, "Resume Game", JOptionPane.YES_NO_OPTION);
+                if(choice == JOptionPane.YES_OPTION){
+                    //opening the game starts a new journal containing everything recovered from this one, and
+                    //restarts the AI's move if the program died while it was thinking (the journal ends on the human's move)
+                    openGame(recovered);
+                }
+            } catch (IOException | ClassNotFoundException | RuntimeException e) {
+                //a journal which can't be read (e.g a header torn by a crash) is deleted rather than offered again
+                e.printStackTrace();
             }
+            file.delete();
         }
-        SimpleGameBoard simpleGameBoard = new SimpleGameBoard(gameBoard.getGameBoard().length, boardStateAsInt);
-        simpleGameBoard.setAIStuff(gameBoard.getAIToggle(), gameBoard.getAiDifficulty());
-        simpleGameBoard.setPlayerIcons(p1Colour.getSelectedIndex(), p2Colour.getSelectedIndex());
-        simpleGameBoard.setPlayerNames(gameBoard.getPlayer1Name(), gameBoard.getPlayer2Name());
-        simpleGameBoard.setLastAIMove(gameBoard.getLastAIMove());
-        simpleGameBoard.setWinner(gameBoard.getWinner());
-        simpleGameBoard.setPlayer(gameBoard.getPlayer());
-        simpleGameBoard.setTimeStarted(gameBoard.getTimeStarted());
-        simpleGameBoard.setTimeElapsed(gameBoard.getTimeElapsed());
-        //System.out.println("SimpleGameboard: " + simpleGameBoard.getTimeElapsed().get(Calendar.SECOND));
-
-        gameHistory.add(simpleGameBoard);
-
-        FileOutputStream outputStream = new FileOutputStream(gameHistoryFile);
-        ObjectOutputStream objectOutputStream = new ObjectOutputStream(outputStream);
-        objectOutputStream.writeObject(gameHistory);
-        outputStream.close();
     }
 
     /**
-     * Method which is called when the history menu is opened, which loads the contents of the game_history.c4g
-     * file to be displayed in the history menu.
+     * Method which is called when the history menu is opened, which loads the contents of the game_history.c4h
+     * archive on an I/O thread, and then displays them in the history menu.
      */
-    public void loadHistory() throws IOException, ClassNotFoundException {
-        FileInputStream inputStream = new FileInputStream(gameHistoryFile);
-        ObjectInputStream objectInputStream = new ObjectInputStream(inputStream);
-        gameHistory = (ArrayList<SimpleGameBoard>) objectInputStream.readObject();
-        inputStream.close();
+    public void loadHistory() {
+        //queued behind any history writes which haven't finished, so the games which just ended are included
+        persistence.submit(gameHistoryFile, () -> {
+            if(!gameHistoryFile.exists() && !oldGameHistoryFile.exists()){
+                throw new FileNotFoundException(gameHistoryFile.toString());
+            }
+            try(HistoryArchive archive = openHistory()){
+                return archive.getAll();
+            }
+        }, false).whenCompleteAsync((history, e) -> {
+            if(e == null){
+                showHistory(history);
+            } else {
+                JOptionPane.showMessageDialog(null, "Game history file not found. Have you finished any games yet?", "Error", JOptionPane.ERROR_MESSAGE);
+            }
+        }, GamePersistence.onSwingThread());
+    }
 
+    /**
+     * Method which creates the history window.
+     * @param gameHistory the games to display.
+     */
+    public void showHistory(ArrayList<SimpleGameBoard> gameHistory) {
         JFrame historyWindow = new JFrame("Game History");
         ArrayList<JPanel> historyPanels = new ArrayList<>();
         GridLayout layout = new GridLayout(0, 1);
@@ -654,6 +872,12 @@ public class Connect4Game extends JFrame implements MouseListener, ActionListene
             c.gridy = 2;
             panel.add(timePlayedLabel, c);
 
+            int gameIndex = i;
+            JButton replayButton = new JButton("Replay");
+            replayButton.addActionListener(e -> new ReplayViewer(gameHistory, gameIndex, imageIcons).setVisible(true));
+            c.gridy = 3;
+            panel.add(replayButton, c);
+
             historyPanels.add(panel);
             historyContainer.add(historyPanels.get(i));
         }
@@ -669,45 +893,41 @@ public class Connect4Game extends JFrame implements MouseListener, ActionListene
      * with the appropriate player's name.
      */
     public void updatePlayerLabel(){
+        GameBoard gameBoard = getSelectedTab().getGameBoard();
         if(gameBoard.getPlayer() == 1){
             currentPlayerName.setText(gameBoard.getPlayer1Name());
         } else if (gameBoard.getPlayer() == 2){
             currentPlayerName.setText(gameBoard.getPlayer2Name());
         }
     }
-    //game stuff
 
     /**
-     * Method which is called when a game ends, which stops the game timer, displays a win/draw message and cleans up
-     * the UI.
+     * Method which is called whenever the board changes, the selected tab changes or analysis mode or the opening
+     * explorer is toggled. If analysis mode is on and there is a game open, the analysis worker is restarted on the
+     * selected game's position (which stops the search of the previous position), otherwise any running analysis is
+     * stopped. If the opening explorer is on, its stats for each column are looked up (which is quick enough to do on
+     * the Swing thread). The overlay is hidden if neither is on.
      */
-    public void gameEnded() {
-        currentPlayerName.setVisible(false);
-
-        timer.stopTimer();
-        gameBoard.setTimeElapsed(timer.getTimeElapsed());
-        if(gameBoard.getWinner() == 1 || gameBoard.getWinner() == 2){
-            String winnerName = "";
-            if(gameBoard.getWinner() == 1){
-                winnerName = gameBoard.getPlayer1Name();
-            } else if (gameBoard.getWinner() == 2){
-                winnerName = gameBoard.getPlayer2Name();
-            }
-            JOptionPane.showMessageDialog(null, winnerName + " wins!", "Victory", JOptionPane.INFORMATION_MESSAGE );
-        } else if (gameBoard.getWinner() == 3){
-            JOptionPane.showMessageDialog(null, "Draw, you both suck!", "Draw", JOptionPane.INFORMATION_MESSAGE);
+    public void updateAnalysis(){
+        GameTab tab = getSelectedTab();
+        boolean analysing = analysisToggle != null && analysisToggle.isSelected() && tab != null;
+        boolean exploring = explorerToggle != null && explorerToggle.isSelected() && tab != null;
+        if(analysing || exploring){
+            analysisOverlay.setBoard(tab, tab.getGameBoard().getSize());
+            analysisOverlay.setVisible(true);
         } else {
-            JOptionPane.showMessageDialog(null, "Descriptive error message", "Error", JOptionPane.ERROR_MESSAGE);
+            analysisOverlay.setVisible(false);
         }
-        try{
-            saveToHistory();
-        } catch (IOException e) {
-            e.printStackTrace();
+        Position position = tab != null ? Position.fromGameBoard(tab.getGameBoard()) : null;
+        if(analysing){
+            analysisWorker.analyse(position);
+        } else {
+            analysisWorker.clear();
+        }
+        OpeningExplorer explorer = openingExplorer;
+        if(exploring && explorer != null){
+            analysisOverlay.showExplorer(explorer.getColumnStats(position), position.getPlayer());
         }
-
-        createStartArea();
-        //need to poke main window again to redraw it I guess
-        setSize(500, 500 + getJMenuBar().getHeight());
     }
 
     //listeners
@@ -725,92 +945,72 @@ public class Connect4Game extends JFrame implements MouseListener, ActionListene
                 settingsMenu.setVisible(true);
                 break;
             case "Load Game":
-                try {
-                    loadGame();
-                } catch (IOException | ClassNotFoundException ex) {
-                    ex.printStackTrace();
-                }
+                loadGame();
                 break;
             case "Save Game":
-                if(gameBoard!=null){
-                    try {
-                        saveGame();
-                    } catch (IOException ex) {
-                        ex.printStackTrace();
-                    }
+                if(getSelectedTab()!=null && getSelectedTab().isAIThinking()){
+                    JOptionPane.showMessageDialog(null, "Wait for the AI to make its move before saving.", "Error", JOptionPane.ERROR_MESSAGE);
+                } else if(getSelectedTab()!=null){
+                    saveGame();
                 } else {
                     JOptionPane.showMessageDialog(null, "You can't save a game when you don't have a game open!", "Error", JOptionPane.ERROR_MESSAGE);
                 }
                 break;
-            case "View History":
-                try {
-                    loadHistory();
-                } catch (EOFException ex){
-                    //nothing to do here - works as intended?
-                } catch (IOException | ClassNotFoundException ex) {
-                    JOptionPane.showMessageDialog(null, "Game history file not found. Have you finished any games yet?", "Error", JOptionPane.ERROR_MESSAGE);
+            case "Close Game":
+                if(getSelectedTab()!=null){
+                    int choice = JOptionPane.showConfirmDialog(null, "Abandon " + getSelectedTab().getTitle() + "?", "Close Game", JOptionPane.YES_NO_OPTION);
+                    if(choice == JOptionPane.YES_OPTION){
+                        getSelectedTab().finishJournal();
+                        closeTab(getSelectedTab());
+                    }
+                } else {
+                    JOptionPane.showMessageDialog(null, "You don't have a game open!", "Error", JOptionPane.ERROR_MESSAGE);
                 }
+                break;
+            case "Analysis Mode":
+            case "Opening Explorer":
+                updateAnalysis();
+                break;
+            case "View History":
+                loadHistory();
         }
     }
 
+    //window handlers
+
     /**
-     * Listener method which handles when a player clicks on any of the game tiles.
-     * It gets the name of the tile which was clicked which contains the index of the column the tile is in and
-     * passes that into GameBoard.addTile. After a tile is added, it checks if there is a winner, if so, it calls gameEnded().
-     * Otherwise, it checks if the player has opted to play vs the AI, and if so it calls the GameBoard.doAIMove() method.
-     * @param e the event which activated the mouseClicked() listener.
+     * Listener which stops the AI pondering while the main window doesn't have focus, so it isn't using CPU in the
+     * background, and starts it again when the window regains focus. When the window is closed, every game's journal is
+     * closed (but kept, so the games can be resumed), the opening explorer is closed and any saves which haven't
+     * finished are given time to be written.
      */
-    public void mouseClicked(MouseEvent e) {
-        JLabel buttonClicked = (JLabel) e.getSource();
-        int colClicked = Integer.parseInt(buttonClicked.getName());
-        if(gameBoard.getLowestAvailableTile(colClicked) >= 0){
-            gameBoard.addTile(colClicked);
-            if(gameBoard.checkForWinner() != 0){
-                gameEnded();
+    private class WindowEventHandler extends WindowAdapter {
+        public void windowClosing(WindowEvent e) {
+            for(int i = 0; i < tabs.getTabCount(); i++){
+                GameTab tab = (GameTab) tabs.getComponentAt(i);
+                tab.getGameBoard().stopPondering();
+                tab.closeJournal();
             }
-            if(gameBoard!=null){
-                if(!gameBoard.getAIToggle()){
-                    gameBoard.switchPlayer();
-                    updatePlayerLabel();
-                } else {
-                    gameBoard.doAIMove();
-                    if(gameBoard.checkForWinner() != 0){
-                        gameEnded();
-                    } else {
-                        gameBoard.switchPlayer();
-                        updatePlayerLabel();
-                    }
+            persistence.submit(gameHistoryFile, () -> {
+                if(openingExplorer != null){
+                    openingExplorer.close();
                 }
-            }
+                return null;
+            }, true);
+            persistence.shutdown(5000);
         }
-    }
 
-    public void mousePressed(MouseEvent e) {}
-
-    public void mouseReleased(MouseEvent e) {}
-
-    /**
-     *  Listener method which handles when a player hovers over any of the game tiles.
-     *  It gets the name of the tile which was hovered which contains the index of the column the tile is in and
-     *  passes that into the GameBoard.highlightColumn() method, which changes the background of all the tiles within
-     *  the column to "highlight" it.
-     */
-    public void mouseEntered(MouseEvent e) {
-        JLabel buttonEntered = (JLabel) e.getSource();
-        int colEntered = Integer.parseInt(buttonEntered.getName());
-        gameBoard.highlightColumn(colEntered);
-    }
+        public void windowGainedFocus(WindowEvent e) {
+            if(getSelectedTab() != null){
+                getSelectedTab().setSelected(true);
+            }
+        }
 
-    /**
-     *  Listener method which handles when a player hovers out any of the game tiles.
-     *  It gets the name of the tile which was hovered out of, which contains the index of the column the tile is in and
-     *  passes that into the GameBoard.dehighlightColumn() method, which changes the background of all the tiles within
-     *  the column back to their regular colour, white.
-     */
-    public void mouseExited(MouseEvent e) {
-        JLabel buttonEntered = (JLabel) e.getSource();
-        int colEntered = Integer.parseInt(buttonEntered.getName());
-        gameBoard.dehighlightColumn(colEntered);
+        public void windowLostFocus(WindowEvent e) {
+            if(getSelectedTab() != null){
+                getSelectedTab().setSelected(false);
+            }
+        }
     }
 
     //menu button handlers
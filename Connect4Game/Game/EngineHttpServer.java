@@ -0,0 +1,341 @@
+package Game;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * An instantiable class which serves the AI over HTTP, using the JDK's built in HTTP server, so other programs can get
+ * moves and evaluations without any Swing.
+ *
+ * Positions are written either as a board size and a MoveNotation string ("7 ddce"), or as a grid in the layout used by
+ * SimpleGameBoard: one group of digits per column, each column from top to bottom, separated by '/', optionally
+ * followed by the player to move (otherwise it's worked out from the number of tiles) - e.g "0000/0001/0002/0000 1".
+ * <pre>
+ * GET  /move?size=7&amp;moves=ddce[&amp;depth=8][&amp;time=1000]   one position, as a JSON object
+ * GET  /move?grid=...[&amp;player=1][&amp;depth=8][&amp;time=1000]
+ * POST /batch[?depth=8][&amp;time=1000]                     one position per line, as a JSON object with a results array
+ * </pre>
+ * The time limit applies to each position. Requests are handled on virtual threads (where the JVM has them), but the
+ * searches themselves run on a fixed pool of worker threads, one per processor, so lots of requests at once queue up
+ * rather than fighting over the CPU. All of the positions in a batch share one transposition table, so positions from
+ * the same game reuse each other's results.
+ *
+ * @author Daniel Arefjev
+ */
+public class EngineHttpServer {
+    public static final int DEFAULT_PORT = 8044;
+    public static final int DEFAULT_DEPTH = 8;
+    public static final int MAX_DEPTH = 64;
+    public static final long DEFAULT_TIME_MILLIS = 1000;
+    public static final long MAX_TIME_MILLIS = 10_000;
+    public static final int MAX_BATCH = 10_000;
+
+    private static final int ENTRIES_PER_POSITION = 1 << 14;
+    private static final int MAX_ENTRIES = 1 << 21;
+
+    private final HttpServer server;
+    private final ExecutorService requestExecutor;
+    private final ExecutorService workers;
+
+    /**
+     * EngineHttpServer 1 argument constructor. The server doesn't handle requests until start() is called.
+     * @param address the address and port to listen on.
+     */
+    public EngineHttpServer(InetSocketAddress address) throws IOException {
+        this.server = HttpServer.create(address, 0);
+        this.requestExecutor = GameServer.newThreadPerTaskExecutor("Engine HTTP");
+        this.workers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+            Thread thread = new Thread(runnable, "Engine Worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(requestExecutor);
+        server.createContext("/move", this::handleMove);
+        server.createContext("/batch", this::handleBatch);
+    }
+
+    /**
+     * Method to get the port an EngineHttpServer object is listening on.
+     * @return the port.
+     */
+    public int getPort(){
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Method which starts handling requests.
+     */
+    public void start(){
+        server.start();
+    }
+
+    /**
+     * Method which stops handling requests, waiting up to a second for the ones in progress.
+     */
+    public void stop(){
+        server.stop(1);
+        requestExecutor.shutdown();
+        workers.shutdown();
+    }
+
+    //request handlers
+
+    private void handleMove(HttpExchange exchange) throws IOException {
+        if(!exchange.getRequestMethod().equals("GET")){
+            send(exchange, 405, "{\"error\":\"Use GET\"}");
+            return;
+        }
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        String line;
+        if(query.containsKey("grid")){
+            line = query.get("grid") + (query.containsKey("player") ? " " + query.get("player") : "");
+        } else {
+            line = query.getOrDefault("size", "") + " " + query.getOrDefault("moves", MoveNotation.EMPTY);
+        }
+        try {
+            List<String> lines = new ArrayList<>();
+            lines.add(line);
+            List<String> results = analyse(lines, getDepth(query), getTimeMillis(query));
+            send(exchange, results.get(0).contains(",\"error\":") ? 400 : 200, results.get(0));
+        } catch (IllegalArgumentException e) {
+            send(exchange, 400, "{\"error\":" + quote(e.getMessage()) + "}");
+        }
+    }
+
+    private void handleBatch(HttpExchange exchange) throws IOException {
+        if(!exchange.getRequestMethod().equals("POST")){
+            send(exchange, 405, "{\"error\":\"Use POST\"}");
+            return;
+        }
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        List<String> lines = new ArrayList<>();
+        try(BufferedReader reader = new BufferedReader(new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8))){
+            String line;
+            while((line = reader.readLine()) != null){
+                if(!line.isBlank()){
+                    lines.add(line.trim());
+                }
+            }
+        }
+        if(lines.size() > MAX_BATCH){
+            send(exchange, 413, "{\"error\":\"Batches can have at most " + MAX_BATCH + " positions\"}");
+            return;
+        }
+        try {
+            long start = System.nanoTime();
+            List<String> results = analyse(lines, getDepth(query), getTimeMillis(query));
+            StringBuilder json = new StringBuilder();
+            json.append("{\"positions\":").append(lines.size())
+                    .append(",\"timeMicros\":").append((System.nanoTime() - start) / 1000)
+                    .append(",\"results\":[");
+            for(int i = 0; i < results.size(); i++){
+                json.append(i == 0 ? "\n" : ",\n").append(results.get(i));
+            }
+            json.append("\n]}");
+            send(exchange, 200, json.toString());
+        } catch (IllegalArgumentException e) {
+            send(exchange, 400, "{\"error\":" + quote(e.getMessage()) + "}");
+        }
+    }
+
+    //analysis
+
+    /**
+     * Method which searches a list of positions on the worker threads, sharing one transposition table between them.
+     * @param lines the positions, in either of the formats in the class comment.
+     * @param depth the depth to search each position to.
+     * @param timeMillis the most time to spend on each position.
+     * @return a JSON object for each position, in the same order.
+     */
+    public List<String> analyse(List<String> lines, int depth, long timeMillis){
+        TranspositionTable table = new TranspositionTable(Math.min(MAX_ENTRIES, Math.max(1, lines.size()) * ENTRIES_PER_POSITION));
+        List<Future<String>> futures = new ArrayList<>();
+        for(String line : lines){
+            futures.add(workers.submit(() -> analyse(line, table, depth, timeMillis)));
+        }
+
+        List<String> results = new ArrayList<>();
+        for(int i = 0; i < futures.size(); i++){
+            try {
+                results.add(futures.get(i).get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                results.add(error(lines.get(i), "Interrupted"));
+            } catch (ExecutionException e) {
+                results.add(error(lines.get(i), String.valueOf(e.getCause())));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Method which searches one position and converts the result to JSON.
+     */
+    private static String analyse(String line, TranspositionTable table, int depth, long timeMillis){
+        Position position;
+        try {
+            position = parsePosition(line);
+        } catch (IllegalArgumentException e) {
+            return error(line, e.getMessage());
+        }
+        if(position.isDeadDraw() || position.lastMoveWon() || hasFourInARow(position)){
+            return error(line, "Game is over");
+        }
+
+        SearchLimits limits = new SearchLimits();
+        limits.setDepth(depth);
+        limits.setTimeMillis(timeMillis);
+        SearchResult result = new SearchEngine(table).search(position, limits, null);
+
+        int score = result.getScore();
+        String evaluation;
+        if(SearchEngine.isWinScore(score)){
+            evaluation = (score > 0 ? "W" : "L") + SearchEngine.movesToWin(score);
+        } else {
+            evaluation = String.format("%+d", score);
+        }
+        return "{\"position\":" + quote(line)
+                + ",\"best\":\"" + MoveNotation.toLetter(result.getBestColumn()) + "\""
+                + ",\"column\":" + result.getBestColumn()
+                + ",\"score\":" + score
+                + ",\"eval\":\"" + evaluation + "\""
+                + ",\"depth\":" + result.getDepth()
+                + ",\"nodes\":" + result.getNodes()
+                + ",\"timeMicros\":" + result.getTimeNanos() / 1000
+                + ",\"nodesPerSecond\":" + result.getNodesPerSecond() + "}";
+    }
+
+    /**
+     * Method which reads a position in either of the formats in the class comment.
+     * @param line the position.
+     * @return the position.
+     * @throws IllegalArgumentException if the position can't be read.
+     */
+    public static Position parsePosition(String line){
+        String[] parts = line.trim().split("\\s+");
+        if(parts[0].indexOf('/') < 0){
+            int size;
+            try {
+                size = Integer.parseInt(parts[0]);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Expected a board size or a grid");
+            }
+            if(size < 4 || size > 24){
+                throw new IllegalArgumentException("Board size must be from 4 to 24");
+            }
+            return MoveNotation.parse(parts.length > 1 ? parts[1] : MoveNotation.EMPTY, size);
+        }
+
+        String[] columns = parts[0].split("/");
+        int[][] gameState = new int[columns.length][];
+        int[] tiles = new int[3];
+        for(int i = 0; i < columns.length; i++){
+            gameState[i] = new int[columns[i].length()];
+            for(int j = 0; j < columns[i].length(); j++){
+                gameState[i][j] = Character.digit(columns[i].charAt(j), 10);
+                if(gameState[i][j] >= 0 && gameState[i][j] <= 2){
+                    tiles[gameState[i][j]]++;
+                }
+            }
+        }
+        int player = tiles[1] > tiles[2] ? 2 : 1;
+        if(parts.length > 1){
+            player = parts[1].equals("2") ? 2 : 1;
+        }
+        return Position.fromGameState(gameState, player);
+    }
+
+    /**
+     * Method to check a position for a line of four anywhere on the board, for positions whose last move isn't known.
+     */
+    private static boolean hasFourInARow(Position position){
+        int[] windows = Position.getWindows(position.getSize());
+        for(int i = 0; i < windows.length; i += 4){
+            int tile = position.getTile(windows[i]);
+            if(tile != 0 && position.getTile(windows[i + 1]) == tile && position.getTile(windows[i + 2]) == tile
+                    && position.getTile(windows[i + 3]) == tile){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //helpers
+
+    private static int getDepth(Map<String, String> query){
+        int depth = Integer.parseInt(query.getOrDefault("depth", String.valueOf(DEFAULT_DEPTH)));
+        return Math.max(1, Math.min(depth, MAX_DEPTH));
+    }
+
+    private static long getTimeMillis(Map<String, String> query){
+        long timeMillis = Long.parseLong(query.getOrDefault("time", String.valueOf(DEFAULT_TIME_MILLIS)));
+        return Math.max(1, Math.min(timeMillis, MAX_TIME_MILLIS));
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery){
+        Map<String, String> query = new HashMap<>();
+        if(rawQuery == null){
+            return query;
+        }
+        for(String pair : rawQuery.split("&")){
+            int equals = pair.indexOf('=');
+            if(equals > 0){
+                query.put(URLDecoder.decode(pair.substring(0, equals), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return query;
+    }
+
+    private static String error(String line, String message){
+        return "{\"position\":" + quote(line) + ",\"error\":" + quote(message) + "}";
+    }
+
+    private static String quote(String text){
+        StringBuilder builder = new StringBuilder(text.length() + 2).append('"');
+        for(int i = 0; i < text.length(); i++){
+            char c = text.charAt(i);
+            if(c == '"' || c == '\\'){
+                builder.append('\\').append(c);
+            } else if(c < 0x20){
+                builder.append(String.format("\\u%04x", (int) c));
+            } else {
+                builder.append(c);
+            }
+        }
+        return builder.append('"').toString();
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try(OutputStream outputStream = exchange.getResponseBody()){
+            outputStream.write(bytes);
+        }
+    }
+
+    /**
+     * Method which runs the server from the command line.
+     * @param args the port to listen on (optional).
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        EngineHttpServer server = new EngineHttpServer(new InetSocketAddress(port));
+        server.start();
+        System.out.println("Engine API listening on port " + server.getPort());
+    }
+}
@@ -0,0 +1,421 @@
+package Game;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * An instantiable class which drives the AI with text commands, one per line, and writes its replies as lines of text,
+ * so other programs (e.g tournament managers) can pipe positions through one running engine over stdin and stdout
+ * without any Swing. It's modelled on the protocols chess engines use:
+ * <pre>
+ * newgame [size]                            clears the transposition table, and sets the board size (default 7)
+ * position [size] moves                     sets the position, as a MoveNotation string ("-" for an empty board)
+ * go [depth N] [nodes N] [time MS] [all]    searches the position (until stopped if there are no limits), where
+ *                                           "all" scores every column exactly like analysis mode does
+ * stop                                      stops the search, which still replies with its best move
+ * isready                                   replies "readyok"
+ * quit                                      stops the search and exits
+ * </pre>
+ * While a search is running, one line is written for each depth it completes, and then its best move:
+ * <pre>
+ * info depth 8 score 12 nodes 5780 nps 1520000 time 3 best d
+ * bestmove d
+ * </pre>
+ * Scores are from the point of view of the player to move, and a forced win or loss is written as "score win 5" or
+ * "score loss 5" (the number of moves until the game ends). Positions where the game is already over (won, or drawn
+ * because neither player can make a line of four any more) reply "bestmove none". Commands which can't be understood
+ * reply "info string error ..." and are otherwise ignored.
+ *
+ * The search runs on its own thread so "stop" can be read while it's searching. A new position or search waits for the
+ * running search to finish first. Positions are parsed into a spare Position which is swapped with the current one once
+ * the whole move string has been read, so a bad move string leaves the previous position in place, and replies are
+ * built in one reused StringBuilder, so piping lots of positions through doesn't create much garbage.
+ *
+ * @author Daniel Arefjev
+ */
+public class EngineProtocol {
+    public static final int DEFAULT_SIZE = 7;
+
+    private final BufferedReader in;
+    private final Writer out;
+    private final TranspositionTable table = new TranspositionTable(1 << 20);
+    private final SearchEngine engine = new SearchEngine(table);
+    private final ExecutorService searchThread = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Engine Search");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final StringBuilder line = new StringBuilder(128);
+
+    private Position position = new Position(DEFAULT_SIZE);
+    private Position scratch = new Position(DEFAULT_SIZE);
+    private Future<?> search;
+    private volatile SearchLimits limits;
+
+    /**
+     * EngineProtocol 2 argument constructor.
+     * @param in where the commands are read from.
+     * @param out where the replies are written to.
+     */
+    public EngineProtocol(Reader in, Writer out){
+        this.in = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in);
+        this.out = out;
+    }
+
+    /**
+     * Method which reads and runs commands until "quit" or the end of the input. Any search which is still running at
+     * the end of the input is finished first, so piped positions all get their replies.
+     * @throws IOException if reading or writing fails.
+     */
+    public void run() throws IOException {
+        try {
+            String command;
+            while((command = in.readLine()) != null){
+                if(!handle(command)){
+                    stop();
+                    break;
+                }
+            }
+            waitForSearch();
+        } finally {
+            searchThread.shutdownNow();
+            synchronized(out){
+                out.flush();
+            }
+        }
+    }
+
+    /**
+     * Method which runs one command.
+     * @param command the line of input.
+     * @return false if the command was "quit".
+     */
+    boolean handle(String command) throws IOException {
+        int start = skipSpaces(command, 0);
+        int end = tokenEnd(command, start);
+        if(start == end){
+            return true;
+        }
+        try {
+            if(matches(command, start, end, "go")){
+                go(command, skipSpaces(command, end));
+            } else if(matches(command, start, end, "position")){
+                waitForSearch();
+                setPosition(command, skipSpaces(command, end));
+            } else if(matches(command, start, end, "stop")){
+                stop();
+            } else if(matches(command, start, end, "isready")){
+                write("readyok");
+            } else if(matches(command, start, end, "newgame")){
+                waitForSearch();
+                table.clear();
+                int sizeStart = skipSpaces(command, end);
+                if(sizeStart < command.length()){
+                    position = new Position(parseSize(command, sizeStart, tokenEnd(command, sizeStart)));
+                } else {
+                    position.reset();
+                }
+            } else if(matches(command, start, end, "quit")){
+                return false;
+            } else {
+                throw new IllegalArgumentException("Unknown command " + command.substring(start, end));
+            }
+        } catch (IllegalArgumentException e) {
+            write("info string error " + e.getMessage());
+        }
+        return true;
+    }
+
+    /**
+     * Method which handles "position [size] moves".
+     */
+    private void setPosition(String command, int start){
+        int end = tokenEnd(command, start);
+        int next = skipSpaces(command, end);
+        int size = position.getSize();
+        if(next < command.length()){
+            //a size as well as the moves
+            size = parseSize(command, start, end);
+            start = next;
+            end = tokenEnd(command, start);
+        }
+        if(start == end){
+            throw new IllegalArgumentException("No moves given");
+        }
+        //the moves are read into the scratch position, so a bad move string leaves the previous position in place
+        if(size != scratch.getSize()){
+            scratch = new Position(size);
+        }
+        MoveNotation.parse(command, start, end, scratch);
+        Position previous = position;
+        position = scratch;
+        scratch = previous;
+    }
+
+    /**
+     * Method which handles "go", starting a search on the search thread.
+     */
+    private void go(String command, int start) throws IOException {
+        SearchLimits newLimits = new SearchLimits();
+        while(start < command.length()){
+            int end = tokenEnd(command, start);
+            if(matches(command, start, end, "all")){
+                newLimits.setAllColumns(true);
+                start = skipSpaces(command, end);
+                continue;
+            }
+            int valueStart = skipSpaces(command, end);
+            int valueEnd = tokenEnd(command, valueStart);
+            long value = parseNumber(command, valueStart, valueEnd);
+            if(matches(command, start, end, "depth")){
+                newLimits.setDepth((int) Math.min(value, Integer.MAX_VALUE));
+            } else if(matches(command, start, end, "nodes")){
+                newLimits.setNodes(value);
+            } else if(matches(command, start, end, "time")){
+                newLimits.setTimeMillis(value);
+            } else {
+                throw new IllegalArgumentException("Unknown limit " + command.substring(start, end));
+            }
+            start = skipSpaces(command, valueEnd);
+        }
+
+        waitForSearch();
+        if(position.lastMoveWon() || position.isDeadDraw()){
+            write("bestmove none");
+            return;
+        }
+        Position root = new Position(position);
+        limits = newLimits;
+        search = searchThread.submit(() -> {
+            SearchResult result = engine.search(root, newLimits, this::writeInfo);
+            synchronized(out){
+                line.setLength(0);
+                line.append("bestmove ").append(MoveNotation.toLetter(result.getBestColumn()));
+                writeLine();
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Method which stops the running search, if there is one.
+     */
+    private void stop(){
+        SearchLimits running = limits;
+        if(running != null){
+            running.stop();
+        }
+    }
+
+    /**
+     * Method which waits until the running search (if there is one) has written its best move.
+     */
+    private void waitForSearch() throws IOException {
+        if(search == null){
+            return;
+        }
+        try {
+            search.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            if(e.getCause() instanceof IOException){
+                throw (IOException) e.getCause();
+            }
+            e.printStackTrace();
+        }
+        search = null;
+        limits = null;
+    }
+
+    //output
+
+    /**
+     * Method which writes the info line for a completed depth. Called on the search thread.
+     */
+    private void writeInfo(SearchResult result){
+        synchronized(out){
+            line.setLength(0);
+            line.append("info depth ").append(result.getDepth()).append(" score ");
+            int score = result.getScore();
+            if(SearchEngine.isWinScore(score)){
+                line.append(score > 0 ? "win " : "loss ").append(SearchEngine.movesToWin(score));
+            } else {
+                line.append(score);
+            }
+            line.append(" nodes ").append(result.getNodes())
+                    .append(" nps ").append(result.getNodesPerSecond())
+                    .append(" time ").append(result.getTimeNanos() / 1_000_000)
+                    .append(" best ").append(MoveNotation.toLetter(result.getBestColumn()));
+            try {
+                writeLine();
+            } catch (IOException e) {
+                //nobody is reading any more, so there's no point carrying on
+                stop();
+            }
+        }
+    }
+
+    private void write(String text) throws IOException {
+        synchronized(out){
+            line.setLength(0);
+            line.append(text);
+            writeLine();
+        }
+    }
+
+    /**
+     * Method which writes the line being built. Must be called while synchronized on out.
+     */
+    private void writeLine() throws IOException {
+        line.append('\n');
+        out.append(line);
+        out.flush();
+    }
+
+    //parsing
+
+    private static int skipSpaces(String text, int index){
+        while(index < text.length() && Character.isWhitespace(text.charAt(index))){
+            index++;
+        }
+        return index;
+    }
+
+    private static int tokenEnd(String text, int index){
+        while(index < text.length() && !Character.isWhitespace(text.charAt(index))){
+            index++;
+        }
+        return index;
+    }
+
+    private static boolean matches(String text, int start, int end, String word){
+        return end - start == word.length() && text.regionMatches(start, word, 0, word.length());
+    }
+
+    private static long parseNumber(String text, int start, int end){
+        if(start == end || end - start > 18){
+            throw new IllegalArgumentException("Expected a number");
+        }
+        long value = 0;
+        for(int i = start; i < end; i++){
+            char c = text.charAt(i);
+            if(c < '0' || c > '9'){
+                throw new IllegalArgumentException("Invalid number " + text.substring(start, end));
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static int parseSize(String text, int start, int end){
+        long size = parseNumber(text, start, end);
+        if(size < 4 || size > 24){
+            throw new IllegalArgumentException("Board size must be from 4 to 24");
+        }
+        return (int) size;
+    }
+
+    /**
+     * Method which runs the protocol on stdin and stdout.
+     *
+     * Usage: EngineProtocol
+     *        EngineProtocol -bench [positions] [depth] [boardSize]
+     * With -bench, random positions are piped through the protocol in memory instead, and the number of positions per
+     * second is printed along with the speed of reading and writing their move strings. The defaults are 100000
+     * positions searched 4 moves deep on a 7x7 board.
+     * @param args see above.
+     */
+    public static void main(String[] args) throws IOException {
+        if(args.length == 0 || !args[0].equals("-bench")){
+            Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.US_ASCII));
+            new EngineProtocol(new InputStreamReader(System.in, StandardCharsets.US_ASCII), out).run();
+            return;
+        }
+        int count = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+        int depth = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        int boardSize = args.length > 3 ? Integer.parseInt(args[3]) : 7;
+
+        //random positions part way through a game
+        SplittableRandom random = new SplittableRandom(42);
+        String[] moves = new String[count];
+        Position position = new Position(boardSize);
+        StringBuilder builder = new StringBuilder();
+        for(int i = 0; i < count; i++){
+            position.reset();
+            int plies = random.nextInt(boardSize * boardSize / 2);
+            for(int j = 0; j < plies; j++){
+                int column;
+                do {
+                    column = random.nextInt(boardSize);
+                } while(!position.canPlay(column));
+                if(position.isWinningMove(column)){
+                    break;
+                }
+                position.play(column);
+            }
+            builder.setLength(0);
+            MoveNotation.format(position, builder);
+            moves[i] = builder.toString();
+        }
+
+        //reading and writing the move strings on their own
+        long checksum = 0;
+        long start = System.nanoTime();
+        for(int round = 0; round < 5; round++){
+            for(String game : moves){
+                MoveNotation.parse(game, 0, game.length(), position);
+                builder.setLength(0);
+                MoveNotation.format(position, builder);
+                checksum += builder.length() + position.getHash();
+            }
+        }
+        long notationNanos = System.nanoTime() - start;
+
+        StringBuilder commands = new StringBuilder(count * 40);
+        commands.append("newgame ").append(boardSize).append('\n');
+        for(String game : moves){
+            commands.append("position ").append(game).append('\n');
+            commands.append("go depth ").append(depth).append('\n');
+        }
+        commands.append("quit\n");
+        long[] replies = new long[2];
+        Writer counter = new Writer(){
+            //every reply is written as one whole line with append()
+            public void write(char[] buffer, int offset, int length){
+                append(java.nio.CharBuffer.wrap(buffer, offset, length));
+            }
+
+            public Writer append(CharSequence text){
+                for(int i = 0; i < text.length(); i++){
+                    if(text.charAt(i) == '\n'){
+                        replies[0]++;
+                    }
+                }
+                if(text.length() > 0 && text.charAt(0) == 'b'){
+                    replies[1]++;
+                }
+                return this;
+            }
+
+            public void flush(){
+            }
+
+            public void close(){
+            }
+        };
+        start = System.nanoTime();
+        new EngineProtocol(new StringReader(commands.toString()), counter).run();
+        long protocolNanos = System.nanoTime() - start;
+
+        System.out.printf("Move strings: %.0f ns to read and write one (%d positions, checksum %d)%n",
+                notationNanos / (5.0 * count), count, checksum);
+        System.out.printf("Protocol: %d positions searched %d deep in %.1f s, %.0f positions/s (%d lines, %d best moves)%n",
+                count, depth, protocolNanos / 1e9, count / (protocolNanos / 1e9), replies[0], replies[1]);
+    }
+}
@@ -0,0 +1,226 @@
+package Game;
+
+import java.io.*;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * An instantiable class which defines how the AI scores a position that it hasn't searched to the end.
+ * Every possible line of four on the board is looked at, and lines which only contain one player's tiles count towards
+ * that player's score - the more tiles in the line, the more it's worth. Tiles in the middle column(s) are also worth a
+ * little bit, since they are part of the most lines.
+ *
+ * The weights can be tuned by EvaluatorTuner, which writes them to WEIGHTS_FILE. The first time an Evaluator is created
+ * with the default constructor (when the AI first moves), the weights are loaded from that file if there is one.
+ *
+ * @author Daniel Arefjev
+ */
+public class Evaluator {
+    /**
+     * Default weights, in order: an open line with 2 tiles, an open line with 3 tiles, a tile in a centre column.
+     */
+    public static final int[] DEFAULT_WEIGHTS = {4, 32, 3};
+    /**
+     * The file tuned weights are kept in, in the working directory.
+     */
+    public static final File WEIGHTS_FILE = new File("evaluator_weights.properties");
+
+    /**
+     * Changed whenever evaluate() itself changes, so results cached on disk by older versions aren't used.
+     */
+    public static final int FORMULA_VERSION = 1;
+
+    private static final String[] WEIGHT_NAMES = {"line2", "line3", "centre"};
+    private static int[] startupWeights;
+
+    private final int[] weights;
+
+    /**
+     * Default constructor for Evaluator, which uses the weights from WEIGHTS_FILE, or DEFAULT_WEIGHTS if it hasn't been
+     * written.
+     */
+    public Evaluator(){
+        this(getStartupWeights());
+    }
+
+    /**
+     * Evaluator 1 argument constructor.
+     * @param weights the weights to use, in the same order as DEFAULT_WEIGHTS.
+     */
+    public Evaluator(int[] weights){
+        this.weights = weights.clone();
+    }
+
+    /**
+     * Method to get the weights of an Evaluator object.
+     * @return a copy of the weights, in the same order as DEFAULT_WEIGHTS.
+     */
+    public int[] getWeights(){
+        return weights.clone();
+    }
+
+    /**
+     * Method to get the version of an Evaluator object, which is different for different weights (or a different
+     * FORMULA_VERSION), since they score positions differently.
+     * @return a 64 bit version number.
+     */
+    public long getVersion(){
+        long version = FORMULA_VERSION;
+        for(int weight : weights){
+            version = (version ^ weight) * 0x100000001B3L;
+        }
+        return version;
+    }
+
+    /**
+     * Method to get the weights the default constructor uses, which are read from WEIGHTS_FILE the first time this is
+     * called. If the file doesn't exist or can't be read, DEFAULT_WEIGHTS are used.
+     * @return a copy of the weights.
+     */
+    public static synchronized int[] getStartupWeights(){
+        if(startupWeights == null){
+            startupWeights = DEFAULT_WEIGHTS;
+            if(WEIGHTS_FILE.exists()){
+                try {
+                    startupWeights = readWeights(WEIGHTS_FILE);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        return startupWeights.clone();
+    }
+
+    /**
+     * Method to read weights from a file written by writeWeights().
+     * @param file the file.
+     * @return the weights, in the same order as DEFAULT_WEIGHTS.
+     * @throws IOException if the file can't be read, or is missing a weight.
+     */
+    public static int[] readWeights(File file) throws IOException {
+        Properties properties = new Properties();
+        try(Reader reader = new FileReader(file)){
+            properties.load(reader);
+        }
+        int[] weights = new int[WEIGHT_NAMES.length];
+        for(int i = 0; i < weights.length; i++){
+            String value = properties.getProperty(WEIGHT_NAMES[i]);
+            if(value == null){
+                throw new IOException(file + " doesn't have a " + WEIGHT_NAMES[i] + " weight");
+            }
+            try {
+                weights[i] = Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                throw new IOException(file + " has an invalid " + WEIGHT_NAMES[i] + " weight", e);
+            }
+        }
+        return weights;
+    }
+
+    /**
+     * Method to write weights to a file. They're written to a temporary file first, which is then moved over the old
+     * file, so a half written file is never left behind.
+     * @param file the file.
+     * @param weights the weights, in the same order as DEFAULT_WEIGHTS.
+     * @param comment a comment to write at the top of the file, or null.
+     * @throws IOException if the file can't be written.
+     */
+    public static void writeWeights(File file, int[] weights, String comment) throws IOException {
+        Properties properties = new Properties();
+        for(int i = 0; i < WEIGHT_NAMES.length; i++){
+            properties.setProperty(WEIGHT_NAMES[i], Integer.toString(weights[i]));
+        }
+        File temporary = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+        try(Writer writer = new FileWriter(temporary)){
+            properties.store(writer, comment);
+        } catch (IOException e) {
+            temporary.delete();
+            throw e;
+        }
+        try {
+            Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Method which scores a position from the point of view of the player whose turn it is.
+     * @param position the position to score.
+     * @return a positive number if the player to move is better off, negative if their opponent is.
+     */
+    public int evaluate(Position position){
+        int size = position.getSize();
+        int player = position.getPlayer();
+        byte[] ownCounts = position.getWindowCounts(player);
+        byte[] opponentCounts = position.getWindowCounts(3 - player);
+        int score = 0;
+
+        //the position keeps count of each player's tiles in every window, so they don't have to be counted here
+        for(int i = 0; i < ownCounts.length; i++){
+            int own = ownCounts[i];
+            int opponent = opponentCounts[i];
+            if(opponent == 0){
+                score += lineScore(own);
+            } else if(own == 0){
+                score -= lineScore(opponent);
+            }
+        }
+
+        //centre column(s) - even sized boards have two
+        for(int col = (size - 1) / 2; col <= size / 2; col++){
+            for(int row = 0; row < position.getHeight(col); row++){
+                score += position.getTile(col, row) == player ? weights[2] : -weights[2];
+            }
+        }
+        return score;
+    }
+
+    /**
+     * Method to get the features of a position, from the point of view of the player whose turn it is. The score
+     * evaluate() gives is the sum of each feature multiplied by its weight, which is what lets EvaluatorTuner fit the
+     * weights.
+     * @param position the position.
+     * @param features filled in with, in the same order as the weights: the player's open lines with 2 tiles minus the
+     *                 opponent's, the same for 3 tiles, and the player's tiles in a centre column minus the opponent's.
+     */
+    public static void getFeatures(Position position, int[] features){
+        int size = position.getSize();
+        int player = position.getPlayer();
+        byte[] ownCounts = position.getWindowCounts(player);
+        byte[] opponentCounts = position.getWindowCounts(3 - player);
+        features[0] = 0;
+        features[1] = 0;
+        features[2] = 0;
+
+        for(int i = 0; i < ownCounts.length; i++){
+            int own = ownCounts[i];
+            int opponent = opponentCounts[i];
+            if(opponent == 0 && (own == 2 || own == 3)){
+                features[own - 2]++;
+            } else if(own == 0 && (opponent == 2 || opponent == 3)){
+                features[opponent - 2]--;
+            }
+        }
+
+        for(int col = (size - 1) / 2; col <= size / 2; col++){
+            for(int row = 0; row < position.getHeight(col); row++){
+                features[2] += position.getTile(col, row) == player ? 1 : -1;
+            }
+        }
+    }
+
+    /**
+     * Method to get the value of an open line with a number of tiles in it.
+     */
+    private int lineScore(int tiles){
+        if(tiles == 2){
+            return weights[0];
+        } else if(tiles == 3){
+            return weights[1];
+        }
+        return 0;
+    }
+}
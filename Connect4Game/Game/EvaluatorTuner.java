@@ -0,0 +1,441 @@
+package Game;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.*;
+
+/**
+ * An instantiable class which tunes the Evaluator's weights from self-play, so they don't have to be picked by hand.
+ *
+ * Games are played between copies of the AI on every processor, each starting with a few random moves so they don't
+ * all repeat the same game. Every quiet position they reach (where neither player can win straight away, which are
+ * the positions the search actually evaluates) is kept along with how the game ended for the player to move in it.
+ * The weights are then fitted so that the evaluation, passed through a sigmoid, predicts those results as well as
+ * possible (the "Texel" method, which is logistic regression on the evaluation's features). The sigmoid's scale is
+ * fitted to the starting weights first and then kept fixed, so the tuned weights are on the same scale as the old
+ * ones.
+ *
+ * Finally the tuned weights play a match against the weights they started from, with each opening played once with
+ * each side, and they're only written to Evaluator.WEIGHTS_FILE if they scored at least half the points.
+ *
+ * @author Daniel Arefjev
+ */
+public class EvaluatorTuner {
+    private static final int FEATURES = Evaluator.DEFAULT_WEIGHTS.length;
+    private static final int MIN_RANDOM_PLIES = 2;
+    private static final int MAX_RANDOM_PLIES = 8;
+    private static final int MATCH_RANDOM_PLIES = 4;
+
+    private final int boardSize;
+    private final int depth;
+    private final int threads;
+    private final ExecutorService executor;
+
+    //samples - FEATURES features per position, and the result for the player to move in halves (0 loss, 1 draw, 2 win)
+    private int[] features = new int[0];
+    private byte[] results = new byte[0];
+    private int samples;
+
+    /**
+     * EvaluatorTuner 3 argument constructor.
+     * @param boardSize the width/height of the board the games are played on.
+     * @param depth the number of moves ahead the AI searches in the games.
+     * @param threads the number of games played, and gradient chunks worked out, at once.
+     */
+    public EvaluatorTuner(int boardSize, int depth, int threads){
+        this.boardSize = boardSize;
+        this.depth = depth;
+        this.threads = threads;
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "Evaluator Tuner");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Method to get the number of positions which have been collected.
+     * @return the number of positions.
+     */
+    public int getSampleCount(){
+        return samples;
+    }
+
+    //self-play
+
+    /**
+     * Method which plays games between copies of the AI using the same weights, and keeps their quiet positions.
+     * @param games the number of games.
+     * @param weights the weights both sides use.
+     * @param seed the seed the random opening moves are chosen with.
+     * @return the number of positions collected.
+     */
+    public int generate(int games, int[] weights, long seed) throws InterruptedException, ExecutionException {
+        List<Future<Object[]>> futures = new ArrayList<>();
+        SplittableRandom seeds = new SplittableRandom(seed);
+        for(int t = 0; t < threads; t++){
+            int count = games / threads + (t < games % threads ? 1 : 0);
+            SplittableRandom random = seeds.split();
+            futures.add(executor.submit(() -> playGames(count, weights, random)));
+        }
+        for(Future<Object[]> future : futures){
+            Object[] chunk = future.get();
+            int[] chunkFeatures = (int[]) chunk[0];
+            byte[] chunkResults = (byte[]) chunk[1];
+            int chunkSamples = chunkResults.length;
+            features = Arrays.copyOf(features, (samples + chunkSamples) * FEATURES);
+            results = Arrays.copyOf(results, samples + chunkSamples);
+            System.arraycopy(chunkFeatures, 0, features, samples * FEATURES, chunkSamples * FEATURES);
+            System.arraycopy(chunkResults, 0, results, samples, chunkSamples);
+            samples += chunkSamples;
+        }
+        return samples;
+    }
+
+    /**
+     * Method which plays some of the self-play games on one thread.
+     * @return {features, results} of the positions collected.
+     */
+    private Object[] playGames(int games, int[] weights, SplittableRandom random){
+        SearchEngine engine = new SearchEngine(new TranspositionTable(1 << 16), new Evaluator(weights));
+        int[] positionFeatures = new int[FEATURES];
+        int[] gameFeatures = new int[boardSize * boardSize * FEATURES];
+        int[] players = new int[boardSize * boardSize];
+        int[] chunkFeatures = new int[1024 * FEATURES];
+        byte[] chunkResults = new byte[1024];
+        int chunkSamples = 0;
+
+        for(int g = 0; g < games; g++){
+            Position position = new Position(boardSize);
+            int randomPlies = random.nextInt(MIN_RANDOM_PLIES, MAX_RANDOM_PLIES + 1);
+            int gameSamples = 0;
+            int winner = 0;
+            while(winner == 0){
+                if(position.getMoveCount() >= randomPlies && isQuiet(position)){
+                    Evaluator.getFeatures(position, positionFeatures);
+                    System.arraycopy(positionFeatures, 0, gameFeatures, gameSamples * FEATURES, FEATURES);
+                    players[gameSamples++] = position.getPlayer();
+                }
+                int column = position.getMoveCount() < randomPlies ? randomColumn(position, random) : bestColumn(engine, position);
+                int player = position.getPlayer();
+                boolean won = position.isWinningMove(column);
+                position.play(column);
+                winner = won ? player : position.isDeadDraw() ? 3 : 0;
+            }
+
+            if(chunkSamples + gameSamples > chunkResults.length){
+                int length = Math.max(chunkResults.length * 2, chunkSamples + gameSamples);
+                chunkFeatures = Arrays.copyOf(chunkFeatures, length * FEATURES);
+                chunkResults = Arrays.copyOf(chunkResults, length);
+            }
+            System.arraycopy(gameFeatures, 0, chunkFeatures, chunkSamples * FEATURES, gameSamples * FEATURES);
+            for(int i = 0; i < gameSamples; i++){
+                chunkResults[chunkSamples + i] = (byte) (winner == 3 ? 1 : winner == players[i] ? 2 : 0);
+            }
+            chunkSamples += gameSamples;
+        }
+        return new Object[]{Arrays.copyOf(chunkFeatures, chunkSamples * FEATURES), Arrays.copyOf(chunkResults, chunkSamples)};
+    }
+
+    /**
+     * Method to check whether a position is quiet - neither player has a tile which would win straight away. Noisy
+     * positions are settled by the search rather than the evaluation, so they'd only confuse the fitting.
+     */
+    private static boolean isQuiet(Position position){
+        for(int column = 0; column < position.getSize(); column++){
+            if(position.canPlay(column) && (position.isWinningMove(column, 1) || position.isWinningMove(column, 2))){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int randomColumn(Position position, SplittableRandom random){
+        int column;
+        do {
+            column = random.nextInt(position.getSize());
+        } while(!position.canPlay(column));
+        return column;
+    }
+
+    private int bestColumn(SearchEngine engine, Position position){
+        SearchLimits limits = new SearchLimits();
+        limits.setDepth(depth);
+        return engine.search(position, limits, null).getBestColumn();
+    }
+
+    //fitting
+
+    /**
+     * Method to work out the mean squared error of the predicted results of every position, and optionally its
+     * gradient, with the positions split between the threads.
+     * @param scale the sigmoid's scale.
+     * @param weights the weights.
+     * @param gradient filled in with the gradient of the error with respect to each weight, or null.
+     * @return the mean squared error.
+     */
+    public double error(double scale, double[] weights, double[] gradient) throws InterruptedException, ExecutionException {
+        List<Callable<double[]>> tasks = new ArrayList<>();
+        int chunk = (samples + threads - 1) / threads;
+        for(int start = 0; start < samples; start += chunk){
+            int from = start;
+            int to = Math.min(samples, start + chunk);
+            tasks.add(() -> errorOf(from, to, scale, weights));
+        }
+        double error = 0;
+        if(gradient != null){
+            Arrays.fill(gradient, 0);
+        }
+        for(Future<double[]> future : executor.invokeAll(tasks)){
+            double[] partial = future.get();
+            error += partial[FEATURES];
+            if(gradient != null){
+                for(int j = 0; j < FEATURES; j++){
+                    gradient[j] += partial[j] / samples;
+                }
+            }
+        }
+        return error / samples;
+    }
+
+    /**
+     * Method which works out the error of a range of positions.
+     * @return the summed gradient of each weight, followed by the summed squared error.
+     */
+    private double[] errorOf(int from, int to, double scale, double[] weights){
+        double[] sums = new double[FEATURES + 1];
+        for(int i = from; i < to; i++){
+            int offset = i * FEATURES;
+            double evaluation = 0;
+            for(int j = 0; j < FEATURES; j++){
+                evaluation += weights[j] * features[offset + j];
+            }
+            double predicted = 1 / (1 + Math.exp(-scale * evaluation));
+            double difference = predicted - results[i] / 2.0;
+            sums[FEATURES] += difference * difference;
+            double slope = 2 * difference * predicted * (1 - predicted) * scale;
+            for(int j = 0; j < FEATURES; j++){
+                sums[j] += slope * features[offset + j];
+            }
+        }
+        return sums;
+    }
+
+    /**
+     * Method which finds the sigmoid scale where some weights predict the results best, by a golden section search of
+     * its logarithm.
+     * @param weights the weights.
+     * @return the scale.
+     */
+    public double fitScale(int[] weights) throws InterruptedException, ExecutionException {
+        double[] doubleWeights = toDouble(weights);
+        double ratio = (Math.sqrt(5) - 1) / 2;
+        double low = -5;
+        double high = 1;
+        double a = high - ratio * (high - low);
+        double b = low + ratio * (high - low);
+        double errorA = error(Math.pow(10, a), doubleWeights, null);
+        double errorB = error(Math.pow(10, b), doubleWeights, null);
+        for(int i = 0; i < 40; i++){
+            if(errorA < errorB){
+                high = b;
+                b = a;
+                errorB = errorA;
+                a = high - ratio * (high - low);
+                errorA = error(Math.pow(10, a), doubleWeights, null);
+            } else {
+                low = a;
+                a = b;
+                errorA = errorB;
+                b = low + ratio * (high - low);
+                errorB = error(Math.pow(10, b), doubleWeights, null);
+            }
+        }
+        return Math.pow(10, (low + high) / 2);
+    }
+
+    /**
+     * Method which fits the weights by gradient descent (using Adam, since the weights' gradients are on very
+     * different scales), starting from some weights.
+     * @param scale the sigmoid's scale.
+     * @param weights the weights to start from.
+     * @param iterations the number of gradient steps.
+     * @param rate the learning rate - roughly how far a weight can move in one step.
+     * @return the fitted weights, rounded to whole numbers.
+     */
+    public int[] tune(double scale, int[] weights, int iterations, double rate) throws InterruptedException, ExecutionException {
+        double[] current = toDouble(weights);
+        double[] gradient = new double[FEATURES];
+        double[] mean = new double[FEATURES];
+        double[] variance = new double[FEATURES];
+        for(int step = 1; step <= iterations; step++){
+            error(scale, current, gradient);
+            for(int j = 0; j < FEATURES; j++){
+                mean[j] = 0.9 * mean[j] + 0.1 * gradient[j];
+                variance[j] = 0.999 * variance[j] + 0.001 * gradient[j] * gradient[j];
+                double meanEstimate = mean[j] / (1 - Math.pow(0.9, step));
+                double varianceEstimate = variance[j] / (1 - Math.pow(0.999, step));
+                current[j] -= rate * meanEstimate / (Math.sqrt(varianceEstimate) + 1e-12);
+            }
+        }
+        int[] tuned = new int[FEATURES];
+        for(int j = 0; j < FEATURES; j++){
+            tuned[j] = (int) Math.round(current[j]);
+        }
+        return tuned;
+    }
+
+    private static double[] toDouble(int[] weights){
+        double[] doubleWeights = new double[weights.length];
+        for(int j = 0; j < weights.length; j++){
+            doubleWeights[j] = weights[j];
+        }
+        return doubleWeights;
+    }
+
+    //match
+
+    /**
+     * Method which plays a match between two sets of weights. Each opening (a few random moves) is played twice, with
+     * each set of weights moving first once.
+     * @param weights the weights being tested.
+     * @param opponentWeights the weights they play against.
+     * @param openings the number of openings.
+     * @param seed the seed the openings are chosen with.
+     * @return {wins, draws, losses} of the weights being tested.
+     */
+    public int[] match(int[] weights, int[] opponentWeights, int openings, long seed) throws InterruptedException, ExecutionException {
+        List<Future<int[]>> futures = new ArrayList<>();
+        SplittableRandom seeds = new SplittableRandom(seed);
+        for(int t = 0; t < threads; t++){
+            int count = openings / threads + (t < openings % threads ? 1 : 0);
+            SplittableRandom random = seeds.split();
+            futures.add(executor.submit(() -> {
+                SearchEngine engine = new SearchEngine(new TranspositionTable(1 << 16), new Evaluator(weights));
+                SearchEngine opponent = new SearchEngine(new TranspositionTable(1 << 16), new Evaluator(opponentWeights));
+                int[] score = new int[3];
+                for(int g = 0; g < count; g++){
+                    int[] opening = new int[MATCH_RANDOM_PLIES];
+                    Position position = new Position(boardSize);
+                    for(int i = 0; i < opening.length; i++){
+                        opening[i] = randomColumn(position, random);
+                        position.play(opening[i]);
+                    }
+                    for(int first = 1; first <= 2; first++){
+                        int winner = playMatchGame(opening, first == 1 ? engine : opponent, first == 1 ? opponent : engine);
+                        score[winner == 3 ? 1 : winner == first ? 0 : 2]++;
+                    }
+                }
+                return score;
+            }));
+        }
+        int[] score = new int[3];
+        for(Future<int[]> future : futures){
+            int[] partial = future.get();
+            for(int i = 0; i < 3; i++){
+                score[i] += partial[i];
+            }
+        }
+        return score;
+    }
+
+    /**
+     * Method which plays one match game after an opening.
+     * @return the winner, or 3 for a draw.
+     */
+    private int playMatchGame(int[] opening, SearchEngine player1, SearchEngine player2){
+        Position position = new Position(boardSize);
+        int winner = 0;
+        for(int i = 0; i < opening.length && winner == 0; i++){
+            int player = position.getPlayer();
+            boolean won = position.isWinningMove(opening[i]);
+            position.play(opening[i]);
+            winner = won ? player : position.isDeadDraw() ? 3 : 0;
+        }
+        while(winner == 0){
+            int player = position.getPlayer();
+            int column = bestColumn(player == 1 ? player1 : player2, position);
+            boolean won = position.isWinningMove(column);
+            position.play(column);
+            winner = won ? player : position.isDeadDraw() ? 3 : 0;
+        }
+        return winner;
+    }
+
+    /**
+     * Method to get the Elo difference a match score suggests.
+     * @param score {wins, draws, losses}.
+     * @return the Elo difference, which is infinite if every game was won or lost.
+     */
+    public static double eloDifference(int[] score){
+        double games = score[0] + score[1] + score[2];
+        double fraction = (score[0] + score[1] / 2.0) / games;
+        return -400 * Math.log10(1 / fraction - 1);
+    }
+
+    /**
+     * Method which stops the tuner's threads.
+     */
+    public void shutdown(){
+        executor.shutdownNow();
+    }
+
+    /**
+     * Method which runs the whole pipeline: self-play with the current weights, fitting, and a match between the
+     * tuned weights and the current ones. The tuned weights are written to Evaluator.WEIGHTS_FILE if they didn't lose
+     * the match.
+     *
+     * Usage: EvaluatorTuner [games] [boardSize] [depth] [threads] [iterations] [matchOpenings]
+     * The defaults are 2000 games on a 7x7 board searched 4 moves deep, a thread per processor, 500 gradient steps and
+     * 200 match openings.
+     * @param args see above.
+     */
+    public static void main(String[] args) throws InterruptedException, ExecutionException, IOException {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int boardSize = args.length > 1 ? Integer.parseInt(args[1]) : 7;
+        int depth = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        int iterations = args.length > 4 ? Integer.parseInt(args[4]) : 500;
+        int openings = args.length > 5 ? Integer.parseInt(args[5]) : 200;
+
+        int[] previous = Evaluator.getStartupWeights();
+        EvaluatorTuner tuner = new EvaluatorTuner(boardSize, depth, threads);
+        System.out.printf("Previous weights: %s%s%n", Arrays.toString(previous),
+                Evaluator.WEIGHTS_FILE.exists() ? " (from " + Evaluator.WEIGHTS_FILE + ")" : " (defaults)");
+
+        long start = System.nanoTime();
+        int positions = tuner.generate(games, previous, 42);
+        long generateNanos = System.nanoTime() - start;
+        System.out.printf("Self-play: %d games, %d positions in %.1f s (%.0f positions/s on %d threads)%n", games, positions,
+                generateNanos / 1e9, positions / (generateNanos / 1e9), threads);
+
+        start = System.nanoTime();
+        double scale = tuner.fitScale(previous);
+        double before = tuner.error(scale, toDouble(previous), null);
+        int[] tuned = tuner.tune(scale, previous, iterations, 0.1);
+        double after = tuner.error(scale, toDouble(tuned), null);
+        long tuneNanos = System.nanoTime() - start;
+        System.out.printf("Fitting: scale %.5f, error %.5f -> %.5f, %d steps in %.1f s (%.0f positions/s)%n", scale, before,
+                after, iterations, tuneNanos / 1e9, (double) positions * iterations / (tuneNanos / 1e9));
+        System.out.printf("Tuned weights: %s%n", Arrays.toString(tuned));
+
+        start = System.nanoTime();
+        int[] score = tuner.match(tuned, previous, openings, 7);
+        long matchNanos = System.nanoTime() - start;
+        tuner.shutdown();
+        System.out.printf("Match against the previous weights: +%d =%d -%d (%.1f%%, %+.0f Elo) in %.1f s%n", score[0],
+                score[1], score[2], (score[0] + score[1] / 2.0) * 100 / (score[0] + score[1] + score[2]),
+                eloDifference(score), matchNanos / 1e9);
+
+        if(score[0] >= score[2]){
+            Evaluator.writeWeights(Evaluator.WEIGHTS_FILE, tuned, "Tuned from " + games + " self-play games on a "
+                    + boardSize + "x" + boardSize + " board");
+            System.out.println("Written to " + Evaluator.WEIGHTS_FILE);
+        } else {
+            System.out.println("Kept the previous weights");
+        }
+    }
+}
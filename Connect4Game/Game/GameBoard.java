@@ -4,6 +4,7 @@ import javax.swing.*;
 import java.awt.*;
 import java.util.Arrays;
 import java.util.GregorianCalendar;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * An instantiable class which defines a Game Board.
@@ -21,6 +22,13 @@ public class GameBoard {
     private GregorianCalendar timeStarted, timeElapsed;
     private boolean aiToggle;
     private int aiDifficulty, lastAIMove;
+    private AIPlayer aiPlayer;
+    private AIScheduler.Client aiClient;
+    private ThreatSearch threatSearch;
+    private PlayerClock playerClock;
+    private int[] moves;
+    private int moveCount;
+    private int[] windows;
 
     /**
      * GameBoard 1 argument constructor. Calls the initializeBoard() method with a user-supplied value,
@@ -42,12 +50,15 @@ public class GameBoard {
      */
     public void initializeBoard(int boardSize){
         this.gameTiles = new GameTile[boardSize][boardSize];
+        this.moves = new int[boardSize * boardSize];
+        this.moveCount = 0;
+        this.windows = Position.getWindows(boardSize);
         for(int i = 0; i < boardSize; i++){
             for(int j = 0; j < boardSize; j++){
                 this.gameTiles[i][j] = new GameTile();
                 this.gameTiles[i][j].setBorder(BorderFactory.createLineBorder(Color.DARK_GRAY, 2));
                 this.gameTiles[i][j].setName(String.format("%s", i));
-                getGameBoard()[i][j].setOpaque(true);
+                gameTiles[i][j].setOpaque(true);
             }
         }
     }
@@ -56,12 +67,12 @@ public class GameBoard {
      * A method which sets the icons of GameTile objects within a GameBoard object appropriate to their state.
      */
     public void loadIcons(){
-        for(int i = 0; i<getGameBoard().length; i++){
-            for(int j = 0; j<getGameBoard().length; j++){
-                if(getGameBoard()[i][j].getState() == 1){
-                    getGameBoard()[i][j].setIcon(player1Icon);
-                } else if (getGameBoard()[i][j].getState() == 2){
-                    getGameBoard()[i][j].setIcon(player2Icon);
+        for(int i = 0; i<gameTiles.length; i++){
+            for(int j = 0; j<gameTiles.length; j++){
+                if(gameTiles[i][j].getState() == 1){
+                    gameTiles[i][j].setIcon(player1Icon);
+                } else if (gameTiles[i][j].getState() == 2){
+                    gameTiles[i][j].setIcon(player2Icon);
                 }
             }
         }
@@ -75,7 +86,8 @@ public class GameBoard {
      */
     public void setAIStuff(boolean aiToggle, int aiDifficulty){
         this.aiToggle = aiToggle;
-        this.aiDifficulty = aiDifficulty; //0 = v.easy, 1 = easy
+        this.aiDifficulty = aiDifficulty; //0 = v.easy, 1 = easy, 2 = medium, 3 = hard
+        this.aiPlayer = null;
     }
 
     /**
@@ -111,16 +123,113 @@ public class GameBoard {
     }
 
     /**
-     * Method which generates a number using different algorithms and calls addTile(), passing in that number as the parameter.
+     * Method to get the searching AI used by the medium and hard difficulties, creating it the first time it's needed.
+     * @return the AIPlayer for this GameBoard's difficulty.
      */
-    public void doAIMove(){
-        switchPlayer();
+    public AIPlayer getAIPlayer(){
+        if(aiPlayer == null){
+            if(getAiDifficulty() == 2){
+                aiPlayer = new AIPlayer(6, 1500, aiClient);
+            } else {
+                aiPlayer = new AIPlayer(AIPlayer.MAX_FIXED_DEPTH, 3000, aiClient);
+            }
+        }
+        return aiPlayer;
+    }
+
+    /**
+     * Method to set the scheduler client the AI searches on. Without one, the AI searches on whichever thread asks it
+     * to move, and ponders on a thread of its own. Should be set before the AI is first used.
+     * @param aiClient the client, or null.
+     */
+    public void setAIClient(AIScheduler.Client aiClient){
+        this.aiClient = aiClient;
+        this.aiPlayer = null;
+    }
+
+    /**
+     * Method to set the clocks the players are playing on, so the AI can manage its time.
+     * @param playerClock the clocks, or null if the game isn't timed.
+     */
+    public void setPlayerClock(PlayerClock playerClock){
+        this.playerClock = playerClock;
+    }
+
+    /**
+     * Method to get the clocks the players are playing on.
+     * @return the PlayerClock, or null if the game isn't timed.
+     */
+    public PlayerClock getPlayerClock(){
+        return playerClock;
+    }
+
+    /**
+     * Method which lets the AI think about the human's possible replies while it's the human's turn.
+     * Only the searching difficulties (medium and up) ponder.
+     */
+    public void startPondering(){
+        if(getAIToggle() && getAiDifficulty() >= 2){
+            getAIPlayer().startPondering(Position.fromGameBoard(this));
+        }
+    }
+
+    /**
+     * Method which stops the AI pondering, e.g when the game ends or the window loses focus.
+     */
+    public void stopPondering(){
+        if(aiPlayer != null){
+            aiPlayer.stopPondering();
+        }
+    }
+
+    /**
+     * Method which chooses the AI's next column without playing it. It should already be the AI's turn. The searching
+     * difficulties (and every difficulty on big boards, where a threat-space search runs first) search on the AI
+     * scheduler if a client has been set, and the others choose straight away.
+     * @return a future which completes with the column, to be passed to playAIMove() on the Swing thread.
+     */
+    public CompletableFuture<Integer> chooseAIMove(){
+        boolean searching = getAiDifficulty() >= 2;
+        boolean threatSearching = gameTiles.length >= ThreatSearch.MIN_BOARD_SIZE;
+        if(!searching && !threatSearching){
+            return CompletableFuture.completedFuture(chooseColumn(null, 0, 0));
+        }
+        if(searching){
+            //stopped here rather than in the search, which can't start while a ponder task holds this game's worker
+            getAIPlayer().stopPondering();
+        }
+        Position position = Position.fromGameBoard(this);
+        long remaining = playerClock != null ? playerClock.getRemaining(getPlayer()) : 0;
+        long increment = playerClock != null ? playerClock.getIncrement() : 0;
+        if(aiClient != null){
+            return aiClient.submit(() -> chooseColumn(position, remaining, increment));
+        }
+        return CompletableFuture.completedFuture(chooseColumn(position, remaining, increment));
+    }
+
+    /**
+     * Method which chooses the AI's column. On big boards a threat-space search looks for a forced win first, whatever
+     * the difficulty, and the difficulty's own way of choosing is only used if it doesn't find one.
+     * @param position the board as a Position - only needed for the medium/hard difficulties and on big boards.
+     * @param remaining the time left on the AI's clock, or 0 if there isn't a clock.
+     * @param increment the time added to the AI's clock after each move.
+     * @return the column.
+     */
+    private int chooseColumn(Position position, long remaining, long increment){
+        if(gameTiles.length >= ThreatSearch.MIN_BOARD_SIZE){
+            int column = getThreatSearch().findWin(position);
+            if(column >= 0){
+                return column;
+            }
+        }
+        long start = System.nanoTime();
+        int column;
         int currentAIMove;
 
         switch (getAiDifficulty()){
             case 0: //v.easy
                 //ai places move randomly within the board's bounds.
-                addTile((int)(Math.random() * getGameBoard().length));
+                column = (int)(Math.random() * gameTiles.length);
                 break;
             case 1: //easy
 
@@ -128,26 +237,133 @@ public class GameBoard {
                 currentAIMove = (int) (getLastAIMove() + Math.floor(Math.random()*3) - 1);
 
                 //limit AI moves to board boundaries
-                if(currentAIMove>getGameBoard().length){
-                    currentAIMove = getGameBoard().length;
+                if(currentAIMove>gameTiles.length){
+                    currentAIMove = gameTiles.length;
                 } else if (currentAIMove<0){
                     currentAIMove = 0;
                 }
+                column = currentAIMove;
+                break;
+            default: //medium/hard
+                //searches ahead, using whatever it worked out while the human was thinking
+                column = getAIPlayer().chooseMove(position, remaining, increment);
+                break;
+        }
+        if(gameTiles.length >= ThreatSearch.MIN_BOARD_SIZE){
+            getThreatSearch().recordMainSearch(System.nanoTime() - start);
+        }
+        return column;
+    }
 
-                addTile(currentAIMove);
-                setLastAIMove(currentAIMove);
+    /**
+     * Method to get the threat-space search the AI runs before its normal search on big boards, creating it the
+     * first time it's needed. Its statistics say how often it found a win and how much time that saved.
+     * @return the ThreatSearch for this GameBoard.
+     */
+    public synchronized ThreatSearch getThreatSearch(){
+        if(threatSearch == null){
+            threatSearch = new ThreatSearch();
         }
+        return threatSearch;
+    }
+
+    /**
+     * Method which plays a column chosen by chooseAIMove() for the AI.
+     * @param column the column.
+     */
+    public void playAIMove(int column){
+        addTile(column);
+        if(getAiDifficulty() > 0){
+            setLastAIMove(column);
+        }
+    }
+
+    //moves
+    /**
+     * Method to get the columns which have been played in a GameBoard object, in the order they were played.
+     * Games loaded from saves made before moves were recorded will only have the moves played since loading.
+     * @return an array of column indices.
+     */
+    public int[] getMoves(){
+        return Arrays.copyOf(moves, moveCount);
+    }
+
+    /**
+     * Method to set the moves which have been played in a GameBoard object, e.g when loading a save file.
+     * Doesn't change the tiles themselves.
+     * @param moves the columns played, in order.
+     */
+    public void setMoves(int[] moves){
+        this.moveCount = Math.min(moves.length, this.moves.length);
+        System.arraycopy(moves, 0, this.moves, 0, moveCount);
+    }
+
+    /**
+     * Method to get the number of moves which have been recorded in a GameBoard object.
+     * @return the number of moves.
+     */
+    public int getMoveCount(){
+        return moveCount;
+    }
+
+    /**
+     * Method to get the last column a tile was added to.
+     * @return the column index, or -1 if no moves have been recorded.
+     */
+    public int getLastMove(){
+        return moveCount == 0 ? -1 : moves[moveCount - 1];
     }
 
     //gameTiles
     /**
-     * Method to get the current GameTiles of a GameBoard object.
+     * Method to get the current GameTiles of a GameBoard object. This copies the array on every call, so anything
+     * which is called often (e.g once per move) should use getSize() and getTileState() instead.
      * @return a 2D array of GameTile representing the state of a GameBoard object.
      */
     public GameTile[][] getGameBoard(){
         return Arrays.copyOf(gameTiles, gameTiles.length);
     }
 
+    /**
+     * Method to get the width/height of a GameBoard object, without copying anything.
+     * @return the number of columns (and rows).
+     */
+    public int getSize(){
+        return gameTiles.length;
+    }
+
+    /**
+     * Method to get one of the GameTiles of a GameBoard object, without copying anything. The tile can change the
+     * board, so this is only for adding the tiles to the window - everything else reads the board with getTileState().
+     * @param column the column of the tile.
+     * @param row the row of the tile, where 0 is the top of the board.
+     * @return the tile.
+     */
+    GameTile getTile(int column, int row){
+        return gameTiles[column][row];
+    }
+
+    /**
+     * Method to set the state of one of the tiles of a GameBoard object directly, when a saved or recovered game is
+     * loaded. The tile's icon isn't changed until loadIcons() is called.
+     * @param column the column of the tile.
+     * @param row the row of the tile, where 0 is the top of the board.
+     * @param state 0 for unoccupied, otherwise the player who occupies it.
+     */
+    void setTileState(int column, int row, int state){
+        gameTiles[column][row].setState(state);
+    }
+
+    /**
+     * Method to get the state of one of the tiles of a GameBoard object, without copying anything.
+     * @param column the column of the tile.
+     * @param row the row of the tile, where 0 is the top of the board.
+     * @return 0 if the tile is unoccupied, otherwise the player who occupies it.
+     */
+    public int getTileState(int column, int row){
+        return gameTiles[column][row].getState();
+    }
+
     //player
     /**
      * Method to get the current player of a GameBoard object.
@@ -296,13 +512,34 @@ public class GameBoard {
      * @param column the column to add a tile to.
      */
     public void addTile(int column){
-        for(int i=getGameBoard().length-1; i!=-1; i--){
-            if(getGameBoard()[column][i].getState() == 0){
-                getGameBoard()[column][i].setState(getPlayer());
+        for(int i=gameTiles.length-1; i!=-1; i--){
+            if(gameTiles[column][i].getState() == 0){
+                gameTiles[column][i].setState(getPlayer());
                 if(getPlayer() == 1){
-                    getGameBoard()[column][i].setIcon(getPlayer1Icon());
+                    gameTiles[column][i].setIcon(getPlayer1Icon());
                 } else {
-                    getGameBoard()[column][i].setIcon(getPlayer2Icon());
+                    gameTiles[column][i].setIcon(getPlayer2Icon());
+                }
+                if(moveCount < moves.length){
+                    moves[moveCount++] = column;
+                }
+                break;
+            }
+        }
+    }
+
+    /**
+     * Method to take the top tile back out of a column, e.g to walk through every position after this one and back.
+     * Doesn't change the current player.
+     * @param column the column to remove a tile from.
+     */
+    public void removeTile(int column){
+        for(int i = 0; i < gameTiles.length; i++){
+            if(gameTiles[column][i].getState() != 0){
+                gameTiles[column][i].setState(0);
+                gameTiles[column][i].setIcon(null);
+                if(moveCount > 0 && moves[moveCount - 1] == column){
+                    moveCount--;
                 }
                 break;
             }
@@ -314,8 +551,8 @@ public class GameBoard {
      * @param column the column to highlight.
      */
     public void highlightColumn(int column){
-        for(int i = 0; i < getGameBoard().length; i++){
-            getGameBoard()[column][i].setBackground(Color.PINK);
+        for(int i = 0; i < gameTiles.length; i++){
+            gameTiles[column][i].setBackground(Color.PINK);
         }
     }
 
@@ -324,8 +561,8 @@ public class GameBoard {
      * @param column the column to de-highlight.
      */
     public void dehighlightColumn(int column){
-        for(int i = 0; i < getGameBoard().length; i++){
-            getGameBoard()[column][i].setBackground(Color.WHITE);
+        for(int i = 0; i < gameTiles.length; i++){
+            gameTiles[column][i].setBackground(Color.WHITE);
         }
     }
 
@@ -335,11 +572,11 @@ public class GameBoard {
      * @return the tile index - or -1 if none are available.
      */
     public int getLowestAvailableTile(int column){
-        for(int i=getGameBoard().length-1; i!=-1; i--){
-            if(getGameBoard()[column][0].getState() != 0){
+        for(int i=gameTiles.length-1; i!=-1; i--){
+            if(gameTiles[column][0].getState() != 0){
                 return -1;
             }
-            if(getGameBoard()[column][i].getState() == 0){
+            if(gameTiles[column][i].getState() == 0){
                 return i;
             }
         }
@@ -347,7 +584,8 @@ public class GameBoard {
     }
 
     /**
-     * Method which checks the game board to see if there is a winner or a draw.
+     * Method which checks the game board to see if there is a winner or a draw. It's a draw as soon as neither player
+     * can make a line of four any more, rather than only once the board is full.
      * @return the winning player (0, for no winner/no draw and 3 for a draw.)
      */
     public int checkForWinner(){
@@ -360,32 +598,15 @@ public class GameBoard {
         3 - draw
         */
 
-        //draw check
-        /*
-         * Checks each of the tiles along the top of the board -- if any of them are unoccupied we assume it's still possible
-         * for there to be a winner, so we break out of the loop and continue checking for any winners.
-         */
-        boolean isDraw = true;
-        for(int i = 0; i < getGameBoard().length; i++){
-            if(getGameBoard()[i][0].getState() == 0){
-                isDraw = false;
-                break;
-            }
-        }
-        if(isDraw){
-            setWinner(3);
-            return 3;
-        }
-
         /*
          * the loops below scan through each tile (besides in the last 3 rows/columns, depending on which check it is)
          * in the grid and check the 3 tiles following to see if they match states. If they match states, the winner
          * is set to the current player, and the current player is returned.
          */
         //vertical check
-        for(int i = 0; i < getGameBoard().length; i++){
-            for(int j = 0; j < getGameBoard().length-3; j++){
-                if(getGameBoard()[i][j].getState() == player && getGameBoard()[i][j+1].getState() == player && getGameBoard()[i][j+2].getState() == player && getGameBoard()[i][j+3].getState() == player){
+        for(int i = 0; i < gameTiles.length; i++){
+            for(int j = 0; j < gameTiles.length-3; j++){
+                if(gameTiles[i][j].getState() == player && gameTiles[i][j+1].getState() == player && gameTiles[i][j+2].getState() == player && gameTiles[i][j+3].getState() == player){
                     setWinner(player);
                     return player;
                 }
@@ -393,9 +614,9 @@ public class GameBoard {
         }
 
         //horizontal check
-        for(int i = 0; i < getGameBoard().length; i++){
-            for(int j = 0; j < getGameBoard().length-3; j++){
-                if(getGameBoard()[j][i].getState() == player && getGameBoard()[j+1][i].getState() == player && getGameBoard()[j+2][i].getState() == player && getGameBoard()[j+3][i].getState() == player){
+        for(int i = 0; i < gameTiles.length; i++){
+            for(int j = 0; j < gameTiles.length-3; j++){
+                if(gameTiles[j][i].getState() == player && gameTiles[j+1][i].getState() == player && gameTiles[j+2][i].getState() == player && gameTiles[j+3][i].getState() == player){
                     setWinner(player);
                     return player;
                 }
@@ -403,9 +624,9 @@ public class GameBoard {
         }
 
         //asc diagonal
-        for(int i = getGameBoard().length-1; i>4; i--){
-            for(int j = 0; j < getGameBoard().length-3; j++){
-                if(getGameBoard()[j][i].getState() == player && getGameBoard()[j+1][i-1].getState() == player && getGameBoard()[j+2][i-2].getState() == player && getGameBoard()[j+3][i-3].getState() == player){
+        for(int i = gameTiles.length-1; i>=3; i--){
+            for(int j = 0; j < gameTiles.length-3; j++){
+                if(gameTiles[j][i].getState() == player && gameTiles[j+1][i-1].getState() == player && gameTiles[j+2][i-2].getState() == player && gameTiles[j+3][i-3].getState() == player){
                     setWinner(player);
                     return player;
                 }
@@ -413,14 +634,35 @@ public class GameBoard {
         }
 
         //desc diagonal
-        for(int i = 0; i< getGameBoard().length-3; i++){
-            for(int j = 0; j < getGameBoard().length-3; j++){
-                if(getGameBoard()[j][i].getState()==player && getGameBoard()[j+1][i+1].getState()==player && getGameBoard()[j+2][i+2].getState()==player && getGameBoard()[j+3][i+3].getState()==player){
+        for(int i = 0; i< gameTiles.length-3; i++){
+            for(int j = 0; j < gameTiles.length-3; j++){
+                if(gameTiles[j][i].getState()==player && gameTiles[j+1][i+1].getState()==player && gameTiles[j+2][i+2].getState()==player && gameTiles[j+3][i+3].getState()==player){
                     setWinner(player);
                     return player;
                 }
             }
         }
-        return 0;
+
+        //draw check
+        /*
+         * Checks every window (possible line of four, see Position.getWindows()) for one without tiles of both players
+         * in -- if there is one it's still possible for there to be a winner, so we stop looking. Otherwise nobody can win,
+         * however many tiles are left, which is always the case on a full board. This is done after the lines are
+         * checked, as the tile which closes the last window can still win.
+         */
+        int size = gameTiles.length;
+        for(int i = 0; i < windows.length; i += 4){
+            int states = 0;
+            for(int k = 0; k < 4; k++){
+                int tile = windows[i + k];
+                //windows count rows from the bottom of the board, GameBoard from the top
+                states |= 1 << gameTiles[tile / size][size - 1 - tile % size].getState();
+            }
+            if((states & 6) != 6){
+                return 0;
+            }
+        }
+        setWinner(3);
+        return 3;
     }
 }
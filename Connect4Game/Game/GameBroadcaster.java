@@ -0,0 +1,325 @@
+package Game;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An instantiable class which sends the moves and result of a game to any number of spectators.
+ *
+ * Publishing an event only adds it to a queue, so the players are never held up however many spectators there are.
+ * The events are then copied into each spectator's Subscription by a "fan out" task run on the given executor (only one
+ * runs at a time). Each Subscription has its own fixed size ring buffer, so a spectator which isn't keeping up can't
+ * make the broadcaster use more memory - when its buffer is full it is either dropped (DROP_SLOW) or stops being sent
+ * events until it has read everything in its buffer, and is then sent a snapshot of the whole game so it can carry on
+ * from there (SNAPSHOT_SLOW). New spectators start with a snapshot too.
+ *
+ * @author Daniel Arefjev
+ */
+public class GameBroadcaster {
+    /**
+     * Spectators whose buffer is full are dropped.
+     */
+    public static final int DROP_SLOW = 0;
+    /**
+     * Spectators whose buffer is full miss events until they catch up, and are then sent a snapshot.
+     */
+    public static final int SNAPSHOT_SLOW = 1;
+
+    private final Executor executor;
+    private final int bufferSize;
+    private final int slowPolicy;
+    private final ConcurrentLinkedQueue<GameEvent> published = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Subscription> joining = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Subscription> catchingUp = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong snapshotCount = new AtomicLong();
+    private long publishedSequence;
+
+    //only used by the fan out task
+    private final ArrayList<Subscription> subscriptions = new ArrayList<>();
+    private final Position position;
+    private long sequence;
+    private int winner;
+    private GameEvent snapshot;
+
+    /**
+     * GameBroadcaster 4 argument constructor.
+     * @param start the position the game is in now - it's copied, so later changes to it aren't seen.
+     * @param bufferSize the number of events each spectator's buffer holds, rounded up to a power of 2.
+     * @param slowPolicy DROP_SLOW or SNAPSHOT_SLOW.
+     * @param executor the executor to run the fan out task on.
+     */
+    public GameBroadcaster(Position start, int bufferSize, int slowPolicy, Executor executor){
+        this.position = new Position(start);
+        this.bufferSize = Integer.highestOneBit(Math.max(bufferSize - 1, 1)) << 1;
+        this.slowPolicy = slowPolicy;
+        this.executor = executor;
+    }
+
+    /**
+     * Method to get the number of spectators which are still subscribed.
+     * @return the number of spectators.
+     */
+    public int getSubscriberCount(){
+        return subscriberCount.get();
+    }
+
+    /**
+     * Method to get the number of spectators which have been dropped for not keeping up.
+     * @return the number of dropped spectators.
+     */
+    public long getDroppedCount(){
+        return droppedCount.get();
+    }
+
+    /**
+     * Method to get the number of snapshots sent to spectators which fell behind.
+     * @return the number of catch up snapshots.
+     */
+    public long getSnapshotCount(){
+        return snapshotCount.get();
+    }
+
+    /**
+     * Method which adds a spectator. The first event it's sent is a snapshot of the game so far.
+     * @return the new spectator's subscription.
+     */
+    public Subscription subscribe(){
+        Subscription subscription = new Subscription(this, bufferSize);
+        subscriberCount.incrementAndGet();
+        joining.add(subscription);
+        schedule();
+        return subscription;
+    }
+
+    /**
+     * Method which sends a move to every spectator.
+     * @param column the column the tile was added to.
+     * @param player the player who added the tile.
+     */
+    public synchronized void publishMove(int column, int player){
+        published.add(GameEvent.move(++publishedSequence, column, player));
+        schedule();
+    }
+
+    /**
+     * Method which sends the result of the game to every spectator.
+     * @param winner 1 or 2 for a win, or 3 for a draw.
+     */
+    public synchronized void publishResult(int winner){
+        published.add(GameEvent.result(++publishedSequence, winner));
+        schedule();
+    }
+
+    //fan out
+
+    /**
+     * Method which makes sure the fan out task will run, unless it's already waiting to.
+     */
+    private void schedule(){
+        if(scheduled.compareAndSet(false, true)){
+            executor.execute(this::fanOut);
+        }
+    }
+
+    /**
+     * Method which runs as the fan out task. Adds new spectators, copies each published event into every spectator's
+     * buffer, and sends snapshots to spectators which have caught up after falling behind.
+     */
+    private void fanOut(){
+        while(true){
+            Subscription subscription;
+            while((subscription = joining.poll()) != null){
+                if(!subscription.isClosed()){
+                    subscriptions.add(subscription);
+                    subscription.offer(getSnapshot());
+                }
+            }
+
+            GameEvent event;
+            while((event = published.poll()) != null){
+                apply(event);
+                for(int i = subscriptions.size() - 1; i >= 0; i--){
+                    subscription = subscriptions.get(i);
+                    if(subscription.isClosed()){
+                        remove(i);
+                    } else if(!subscription.lagging && !subscription.offer(event)){
+                        if(slowPolicy == DROP_SLOW){
+                            droppedCount.incrementAndGet();
+                            subscription.close();
+                            remove(i);
+                        } else {
+                            subscription.lagging = true;
+                        }
+                    }
+                }
+            }
+
+            while((subscription = catchingUp.poll()) != null){
+                subscription.catchUpRequested = false;
+                //nothing is added to a lagging spectator's buffer, so once it's empty it stays empty
+                if(!subscription.isClosed() && subscription.lagging && subscription.isEmpty()){
+                    subscription.lagging = false;
+                    subscription.offer(getSnapshot());
+                    snapshotCount.incrementAndGet();
+                }
+            }
+
+            scheduled.set(false);
+            if((joining.isEmpty() && published.isEmpty() && catchingUp.isEmpty()) || !scheduled.compareAndSet(false, true)){
+                return;
+            }
+        }
+    }
+
+    private void apply(GameEvent event){
+        sequence = event.getSequence();
+        if(event.getType() == GameEvent.MOVE){
+            //the player is set rather than assumed, since a player can lose a turn (e.g the AI picking a full column)
+            position.setPlayer(event.getPlayer());
+            position.play(event.getColumn());
+        } else if(event.getType() == GameEvent.RESULT){
+            winner = event.getWinner();
+        }
+        snapshot = null;
+    }
+
+    /**
+     * Method to get a snapshot of the game up to the last event, which is shared by every spectator sent it.
+     */
+    private GameEvent getSnapshot(){
+        if(snapshot == null){
+            snapshot = GameEvent.snapshot(sequence, position, winner);
+        }
+        return snapshot;
+    }
+
+    private void remove(int index){
+        int last = subscriptions.size() - 1;
+        subscriptions.set(index, subscriptions.get(last));
+        subscriptions.remove(last);
+    }
+
+    /**
+     * An instantiable class which defines one spectator's view of a GameBroadcaster. The buffer is a single producer,
+     * single consumer ring: only the fan out task adds events to it and only the spectator takes them out, so neither
+     * side needs a lock.
+     */
+    public static class Subscription {
+        private final GameBroadcaster broadcaster;
+        private final GameEvent[] buffer;
+        private final int mask;
+        private volatile long head;
+        private volatile long tail;
+        private volatile boolean lagging;
+        private volatile boolean catchUpRequested;
+        //set once, by whichever of the spectator and the fan-out thread closes the subscription first
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private volatile Thread waiter;
+
+        private Subscription(GameBroadcaster broadcaster, int bufferSize){
+            this.broadcaster = broadcaster;
+            this.buffer = new GameEvent[bufferSize];
+            this.mask = bufferSize - 1;
+        }
+
+        /**
+         * Method to take the next event without waiting. Should only be called by one thread at a time.
+         * @return the next event, or null if there isn't one yet.
+         */
+        public GameEvent poll(){
+            long position = head;
+            if(position == tail){
+                if(lagging && !closed.get() && !catchUpRequested){
+                    catchUpRequested = true;
+                    broadcaster.catchingUp.add(this);
+                    broadcaster.schedule();
+                }
+                return null;
+            }
+            int index = (int) position & mask;
+            GameEvent event = buffer[index];
+            buffer[index] = null;
+            head = position + 1;
+            return event;
+        }
+
+        /**
+         * Method to take the next event, waiting for one if there isn't one yet.
+         * @param timeoutMillis the longest time to wait.
+         * @return the next event, or null if there wasn't one in time or the subscription was closed.
+         */
+        public GameEvent take(long timeoutMillis) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            GameEvent event;
+            while((event = poll()) == null && !closed.get()){
+                long remaining = deadline - System.nanoTime();
+                if(remaining <= 0){
+                    return null;
+                }
+                waiter = Thread.currentThread();
+                //checked again after setting waiter, in case an event was added in between
+                if(head == tail && !closed.get()){
+                    LockSupport.parkNanos(this, remaining);
+                }
+                waiter = null;
+                if(Thread.interrupted()){
+                    throw new InterruptedException();
+                }
+            }
+            return event;
+        }
+
+        /**
+         * Method to check whether a subscription has been closed (either by the spectator or by being dropped).
+         * @return true if no more events will be added.
+         */
+        public boolean isClosed(){
+            return closed.get();
+        }
+
+        /**
+         * Method which stops the spectator being sent any more events.
+         */
+        public void close(){
+            if(closed.compareAndSet(false, true)){
+                broadcaster.subscriberCount.decrementAndGet();
+                wake();
+            }
+        }
+
+        private boolean isEmpty(){
+            return head == tail;
+        }
+
+        /**
+         * Method which adds an event to the buffer. Only called by the fan out task.
+         * @return false if the buffer is full.
+         */
+        private boolean offer(GameEvent event){
+            long position = tail;
+            if(position - head == buffer.length){
+                return false;
+            }
+            buffer[(int) position & mask] = event;
+            tail = position + 1;
+            wake();
+            return true;
+        }
+
+        private void wake(){
+            Thread thread = waiter;
+            if(thread != null){
+                LockSupport.unpark(thread);
+            }
+        }
+    }
+}
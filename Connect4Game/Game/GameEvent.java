@@ -0,0 +1,120 @@
+package Game;
+
+/**
+ * An instantiable class which defines something that happened in a game, as sent to spectators by a GameBroadcaster.
+ * Events are numbered in the order they happened, starting from 1. A snapshot isn't something that happened itself -
+ * it holds the whole position up to and including a numbered event, and is sent when a spectator starts watching or
+ * has fallen too far behind to be sent every event.
+ *
+ * @author Daniel Arefjev
+ */
+public class GameEvent {
+    public static final int MOVE = 0;
+    public static final int RESULT = 1;
+    public static final int SNAPSHOT = 2;
+
+    private final int type;
+    private final long sequence;
+    private final int column;
+    private final int player;
+    private final int winner;
+    private final Position position;
+    private final long timeNanos;
+
+    /**
+     * GameEvent 7 argument constructor. Events are created by GameBroadcaster - use the static methods below.
+     */
+    private GameEvent(int type, long sequence, int column, int player, int winner, Position position, long timeNanos){
+        this.type = type;
+        this.sequence = sequence;
+        this.column = column;
+        this.player = player;
+        this.winner = winner;
+        this.position = position;
+        this.timeNanos = timeNanos;
+    }
+
+    static GameEvent move(long sequence, int column, int player){
+        return new GameEvent(MOVE, sequence, column, player, 0, null, System.nanoTime());
+    }
+
+    static GameEvent result(long sequence, int winner){
+        return new GameEvent(RESULT, sequence, -1, 0, winner, null, System.nanoTime());
+    }
+
+    static GameEvent snapshot(long sequence, Position position, int winner){
+        return new GameEvent(SNAPSHOT, sequence, -1, 0, winner, new Position(position), System.nanoTime());
+    }
+
+    /**
+     * Method to get the type of a GameEvent object.
+     * @return MOVE, RESULT or SNAPSHOT.
+     */
+    public int getType(){
+        return type;
+    }
+
+    /**
+     * Method to get the number of a GameEvent object. For a snapshot, this is the number of the last event it includes.
+     * @return the event number.
+     */
+    public long getSequence(){
+        return sequence;
+    }
+
+    /**
+     * Method to get the column of a move.
+     * @return the column, or -1 if the event isn't a move.
+     */
+    public int getColumn(){
+        return column;
+    }
+
+    /**
+     * Method to get the player who made a move.
+     * @return the player, or 0 if the event isn't a move.
+     */
+    public int getPlayer(){
+        return player;
+    }
+
+    /**
+     * Method to get the winner of the game, in the same form as GameBoard.getWinner().
+     * @return 1 or 2 for a win, 3 for a draw, or 0 if the game hasn't ended.
+     */
+    public int getWinner(){
+        return winner;
+    }
+
+    /**
+     * Method to get the position held by a snapshot. It's shared between every spectator sent the snapshot, so it
+     * shouldn't be changed - copy it first.
+     * @return the position, or null if the event isn't a snapshot.
+     */
+    public Position getPosition(){
+        return position;
+    }
+
+    /**
+     * Method to get when a GameEvent object was created.
+     * @return the System.nanoTime() when the event was created.
+     */
+    public long getTimeNanos(){
+        return timeNanos;
+    }
+
+    /**
+     * Method which writes an event as a line of text, as sent by GameServer to spectators.
+     * @return "EVENT sequence MOVE column player", "EVENT sequence RESULT winner" or
+     * "EVENT sequence SNAPSHOT size playerToMove winner moves".
+     */
+    public String toString(){
+        if(type == MOVE){
+            return "EVENT " + sequence + " MOVE " + MoveNotation.toLetter(column) + " " + player;
+        } else if(type == RESULT){
+            return "EVENT " + sequence + " RESULT " + winner;
+        }
+        return "EVENT " + sequence + " SNAPSHOT " + position.getSize() + " " + position.getPlayer() + " " + winner + " "
+                + MoveNotation.format(position);
+    }
+}
@@ -0,0 +1,192 @@
+package Game;
+
+import javax.swing.*;
+import java.io.*;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * An instantiable class which runs all of the game's file I/O on its own threads, so that saving and loading never
+ * holds up the Swing thread.
+ *
+ * Every task is tied to a file, and tasks for the same file run one after another in the order they were submitted
+ * (so a history write can't overtake the one before it, and a read sees every write submitted before it). Tasks for
+ * different files can run at the same time. Results come back as CompletableFutures - use onSwingThread() as the
+ * executor when handling them so they're handled on the Swing thread.
+ *
+ * Files are written to a temporary file first and then moved over the real one, so a crash part way through a write
+ * can't leave a half-written save behind.
+ *
+ * @author Daniel Arefjev
+ */
+public class GamePersistence {
+    private final ExecutorService executor;
+    private final Map<File, CompletableFuture<?>> queues = new HashMap<>();
+    private int pendingWrites;
+    private Runnable statusListener;
+
+    /**
+     * Default constructor for GamePersistence, which creates the I/O threads.
+     */
+    public GamePersistence(){
+        executor = Executors.newFixedThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable, "Game I/O");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Method to get an executor which runs tasks on the Swing thread, for handling the results of I/O tasks.
+     * @return an executor which passes tasks to SwingUtilities.invokeLater().
+     */
+    public static Executor onSwingThread(){
+        return SwingUtilities::invokeLater;
+    }
+
+    /**
+     * Method to set a listener which is called (on an I/O thread) whenever isSaving() might have changed.
+     * @param statusListener the listener.
+     */
+    public void setStatusListener(Runnable statusListener){
+        this.statusListener = statusListener;
+    }
+
+    /**
+     * Method to check whether any writes haven't finished yet.
+     * @return true if something is being saved.
+     */
+    public synchronized boolean isSaving(){
+        return pendingWrites > 0;
+    }
+
+    /**
+     * Method which queues a task behind any other tasks for the same file.
+     * @param file the file the task reads or writes.
+     * @param task the task to run on an I/O thread.
+     * @param isWrite whether the task writes to the file, so it counts towards isSaving().
+     * @return a future which completes with the result of the task.
+     */
+    public <T> CompletableFuture<T> submit(File file, Callable<T> task, boolean isWrite){
+        CompletableFuture<T> future;
+        synchronized(this){
+            CompletableFuture<?> previous = queues.getOrDefault(file, CompletableFuture.completedFuture(null));
+            //the previous task failing shouldn't stop this one running
+            future = previous.handle((result, e) -> null).thenApplyAsync(ignored -> {
+                try {
+                    return task.call();
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                }
+            }, executor);
+            queues.put(file, future);
+            if(isWrite){
+                pendingWrites++;
+            }
+        }
+        if(isWrite){
+            notifyStatus();
+        }
+
+        future.whenComplete((result, e) -> {
+            synchronized(this){
+                if(queues.get(file) == future){
+                    queues.remove(file);
+                }
+                if(isWrite){
+                    pendingWrites--;
+                }
+            }
+            if(isWrite){
+                notifyStatus();
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Method which serialises an object to a file on an I/O thread.
+     * @param file the file to write to.
+     * @param object the object to write. It shouldn't be changed after it has been passed in.
+     * @return a future which completes when the file has been written.
+     */
+    public CompletableFuture<Void> writeObject(File file, Serializable object){
+        return submit(file, () -> {
+            writeObjectNow(file, object);
+            return null;
+        }, true);
+    }
+
+    /**
+     * Method which deserialises an object from a file on an I/O thread.
+     * @param file the file to read from.
+     * @return a future which completes with the object that was read.
+     */
+    public CompletableFuture<Object> readObject(File file){
+        return submit(file, () -> readObjectNow(file), false);
+    }
+
+    /**
+     * Method which serialises an object to a temporary file, and then moves it over the real file. Should only be
+     * called from within a task.
+     * @param file the file to write to.
+     * @param object the object to write.
+     */
+    public static void writeObjectNow(File file, Serializable object) throws IOException {
+        File directory = file.getAbsoluteFile().getParentFile();
+        File temporary = File.createTempFile(file.getName(), ".tmp", directory);
+        try(ObjectOutputStream objectOutputStream = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))){
+            objectOutputStream.writeObject(object);
+        } catch (IOException e) {
+            temporary.delete();
+            throw e;
+        }
+        try {
+            Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Method which deserialises an object from a file. Should only be called from within a task.
+     * @param file the file to read from.
+     * @return the object that was read.
+     */
+    public static Object readObjectNow(File file) throws IOException, ClassNotFoundException {
+        try(ObjectInputStream objectInputStream = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))){
+            return objectInputStream.readObject();
+        }
+    }
+
+    /**
+     * Method which waits for every task that has been submitted to finish, and then stops the I/O threads.
+     * @param timeoutMillis the longest time to wait.
+     */
+    public void shutdown(long timeoutMillis){
+        CompletableFuture<?>[] pending;
+        synchronized(this){
+            pending = queues.values().toArray(new CompletableFuture<?>[0]);
+        }
+        try {
+            CompletableFuture.allOf(pending).get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            //failed tasks are reported by whoever submitted them - all that matters here is that they've finished
+        } catch (TimeoutException e) {
+            e.printStackTrace();
+        }
+        executor.shutdown();
+    }
+
+    private void notifyStatus(){
+        if(statusListener != null){
+            statusListener.run();
+        }
+    }
+}
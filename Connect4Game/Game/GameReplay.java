@@ -0,0 +1,162 @@
+package Game;
+
+/**
+ * An instantiable class which steps through the moves of a finished game, for the replay viewer.
+ *
+ * A copy of the whole board (a "keyframe") is kept for every KEYFRAME_INTERVAL moves, so seeking to any move only ever
+ * needs a keyframe and fewer than KEYFRAME_INTERVAL moves played on top of it, however long the game was. Stepping
+ * back a move just removes the top tile of the column it was played in, so it doesn't need a keyframe at all.
+ *
+ * The player who made each move is worked out from the final board rather than assumed to alternate, since a player
+ * can lose a turn (e.g the AI picking a full column). Games which were loaded from a save made before moves were
+ * recorded only know the moves played since loading, so the replay starts from the board as it was when loaded.
+ *
+ * @author Daniel Arefjev
+ */
+public class GameReplay {
+    public static final int KEYFRAME_INTERVAL = 16;
+
+    private final int size;
+    private final int[] moves;
+    private final byte[] players;
+    private final byte[][] keyframeTiles;
+    private final int[][] keyframeHeights;
+    private final byte[] tiles;
+    private final int[] heights;
+    private int current;
+    private int lastSeekCost;
+
+    /**
+     * GameReplay 1 argument constructor, which builds the keyframes of a game.
+     * @param game the finished game.
+     * @throws IllegalArgumentException if the game's moves don't match its board.
+     */
+    public GameReplay(SimpleGameBoard game){
+        int[][] gameState = game.getGameState();
+        this.size = game.getBoardSize();
+        this.moves = game.getMoves() != null ? game.getMoves().clone() : new int[0];
+        this.players = new byte[moves.length];
+        this.tiles = new byte[size * size];
+        this.heights = new int[size];
+
+        //start with the final board (where row 0 is the bottom, unlike SimpleGameBoard) and take the moves back off it
+        for(int i = 0; i < size; i++){
+            for(int j = size - 1; j >= 0 && gameState[i][j] != 0; j--){
+                tiles[i * size + heights[i]++] = (byte) gameState[i][j];
+            }
+        }
+        for(int i = moves.length - 1; i >= 0; i--){
+            int column = moves[i];
+            if(column < 0 || column >= size || heights[column] == 0){
+                throw new IllegalArgumentException("Moves don't match the board");
+            }
+            int index = column * size + --heights[column];
+            players[i] = tiles[index];
+            tiles[index] = 0;
+        }
+
+        int keyframes = moves.length / KEYFRAME_INTERVAL + 1;
+        this.keyframeTiles = new byte[keyframes][];
+        this.keyframeHeights = new int[keyframes][];
+        for(int i = 0; i <= moves.length; i++){
+            if(i % KEYFRAME_INTERVAL == 0){
+                keyframeTiles[i / KEYFRAME_INTERVAL] = tiles.clone();
+                keyframeHeights[i / KEYFRAME_INTERVAL] = heights.clone();
+            }
+            if(i < moves.length){
+                apply(i);
+            }
+        }
+        current = moves.length;
+        seek(0);
+    }
+
+    /**
+     * Method to get the size of the board being replayed.
+     * @return the width/height of the board.
+     */
+    public int getSize(){
+        return size;
+    }
+
+    /**
+     * Method to get the number of moves in the replay.
+     * @return the number of moves.
+     */
+    public int getMoveCount(){
+        return moves.length;
+    }
+
+    /**
+     * Method to get how many moves have been played on the board being shown.
+     * @return the current move, from 0 (the start) to getMoveCount() (the end).
+     */
+    public int getCurrentMove(){
+        return current;
+    }
+
+    /**
+     * Method to get the state of a tile on the board being shown.
+     * @param column the column of the tile.
+     * @param row the row of the tile, where 0 is the bottom of the board.
+     * @return 0 if the tile is unoccupied, otherwise the player who occupies it.
+     */
+    public int getTile(int column, int row){
+        return tiles[column * size + row];
+    }
+
+    /**
+     * Method to get the column of the last move played on the board being shown.
+     * @return the column, or -1 at the start of the replay.
+     */
+    public int getLastColumn(){
+        return current == 0 ? -1 : moves[current - 1];
+    }
+
+    /**
+     * Method to get the number of moves which were played or taken back by the last call to seek().
+     * @return the number of moves, which is never more than KEYFRAME_INTERVAL.
+     */
+    public int getLastSeekCost(){
+        return lastSeekCost;
+    }
+
+    /**
+     * Method which shows the board as it was after a given number of moves. Nearby moves are stepped to directly, and
+     * further ones start from the closest keyframe before them.
+     * @param move the number of moves, which is clamped to the length of the replay.
+     */
+    public void seek(int move){
+        int target = Math.max(0, Math.min(move, moves.length));
+        int distance = target - current;
+        lastSeekCost = Math.abs(distance);
+        if(distance >= 0 && distance < KEYFRAME_INTERVAL){
+            while(current < target){
+                apply(current++);
+            }
+        } else if(distance < 0 && -distance <= KEYFRAME_INTERVAL){
+            while(current > target){
+                undo(--current);
+            }
+        } else {
+            int keyframe = target / KEYFRAME_INTERVAL;
+            System.arraycopy(keyframeTiles[keyframe], 0, tiles, 0, tiles.length);
+            System.arraycopy(keyframeHeights[keyframe], 0, heights, 0, size);
+            current = keyframe * KEYFRAME_INTERVAL;
+            lastSeekCost = target - current;
+            while(current < target){
+                apply(current++);
+            }
+        }
+    }
+
+    private void apply(int move){
+        int column = moves[move];
+        tiles[column * size + heights[column]++] = players[move];
+    }
+
+    private void undo(int move){
+        int column = moves[move];
+        tiles[column * size + --heights[column]] = 0;
+    }
+}
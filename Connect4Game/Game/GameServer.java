@@ -0,0 +1,325 @@
+package Game;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An instantiable class which hosts many Connect Four games at once without any UI, over a line based TCP protocol.
+ * Each connection is handled by its own thread (a virtual thread where the JVM supports them), and may play in any
+ * number of sessions at once.
+ *
+ * Commands (one per line, case insensitive) and their replies:
+ * <pre>
+ * CREATE size [aiDepth]  -> OK CREATED id 1       (create a session and sit as Player 1, optionally against the AI)
+ * JOIN id                -> OK JOINED id 2        (sit as Player 2)
+ * MOVE id column         -> OK STATE ...          (column is a letter, 'a' being the leftmost column)
+ * RESIGN id              -> OK STATE ...
+ * STATE id               -> OK STATE ...          (see GameSession.getStateFor())
+ * WATCH id               -> OK WATCHING id, then an EVENT line for everything that happens in the game (see
+ *                           GameEvent.toString()), starting with a snapshot, then OK END id once the game is over
+ * QUIT                   -> OK BYE
+ * </pre>
+ * Any command which fails gets "ERR reason" instead. Sessions are thrown away once their game is over and every player
+ * in them has been sent the final state (or has disconnected).
+ *
+ * @author Daniel Arefjev
+ */
+public class GameServer implements Runnable {
+    public static final int DEFAULT_PORT = 4444;
+
+    private final ServerSocket serverSocket;
+    private final ExecutorService executor;
+    private final Map<Long, GameSession> sessions = new ConcurrentHashMap<>();
+    private final Set<Socket> sockets = ConcurrentHashMap.newKeySet();
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final LongAdder commands = new LongAdder();
+    private final TranspositionTable aiTable = new TranspositionTable(1 << 22);
+    private Thread acceptThread;
+
+    /**
+     * GameServer 2 argument constructor. The server doesn't accept connections until start() is called.
+     * @param address the address to listen on, or null for every address.
+     * @param port the port to listen on, or 0 for any free port.
+     */
+    public GameServer(InetAddress address, int port) throws IOException {
+        this.serverSocket = new ServerSocket(port, 1024, address);
+        this.executor = newThreadPerTaskExecutor("Game Server Connection");
+    }
+
+    /**
+     * Method which creates an executor that runs each task on a new virtual thread. Virtual threads need Java 21, so
+     * they're looked up reflectively, and on older JVMs each task gets a new daemon platform thread instead.
+     * @param name the name given to platform threads.
+     * @return the executor.
+     */
+    public static ExecutorService newThreadPerTaskExecutor(String name){
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(null, runnable, name, 256 * 1024);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Method to get the port a GameServer object is listening on.
+     * @return the port.
+     */
+    public int getPort(){
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Method to get the number of sessions which haven't been thrown away yet.
+     * @return the number of sessions.
+     */
+    public int getSessionCount(){
+        return sessions.size();
+    }
+
+    /**
+     * Method to get the number of connections which are open.
+     * @return the number of connections.
+     */
+    public int getConnectionCount(){
+        return sockets.size();
+    }
+
+    /**
+     * Method to get the number of commands handled so far.
+     * @return the number of commands.
+     */
+    public long getCommandCount(){
+        return commands.sum();
+    }
+
+    /**
+     * Method which starts accepting connections on a background thread.
+     */
+    public void start(){
+        acceptThread = new Thread(this, "Game Server");
+        acceptThread.start();
+    }
+
+    /**
+     * Method which stops accepting connections and closes every open connection.
+     */
+    public void close(){
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        for(Socket socket : sockets){
+            try {
+                socket.close();
+            } catch (IOException e) {
+                //already closed
+            }
+        }
+        executor.shutdown();
+    }
+
+    /**
+     * Method which runs on the accept thread, handing each new connection to its own thread.
+     */
+    public void run(){
+        while(!serverSocket.isClosed()){
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                sockets.add(socket);
+                executor.execute(() -> handle(socket));
+            } catch (SocketException e) {
+                //server socket was closed
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Method which reads commands from a connection until it closes, and then resigns any of its unfinished games.
+     */
+    private void handle(Socket socket){
+        Object owner = new Object();
+        Set<Long> seated = new HashSet<>();
+        try(BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+            Writer writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII))){
+            String line;
+            while((line = reader.readLine()) != null){
+                if(line.trim().toUpperCase().startsWith("WATCH")){
+                    watch(line.trim(), writer);
+                    continue;
+                }
+                String reply = execute(line.trim(), owner, seated);
+                writer.write(reply);
+                writer.write('\n');
+                writer.flush();
+                if(reply.equals("OK BYE")){
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            //the connection was closed - its games are dealt with below
+        } finally {
+            sockets.remove(socket);
+            for(long id : seated){
+                GameSession session = sessions.get(id);
+                if(session != null){
+                    session.leave(owner);
+                    removeIfFinished(session);
+                }
+            }
+        }
+    }
+
+    /**
+     * Method which carries out one command for a connection.
+     * @param line the command.
+     * @param owner the connection.
+     * @param seated the ids of the sessions the connection is playing in.
+     * @return the reply.
+     */
+    private String execute(String line, Object owner, Set<Long> seated){
+        commands.increment();
+        String[] parts = line.split("\\s+");
+        String command = parts[0].toUpperCase();
+        try {
+            if(command.equals("QUIT")){
+                return "OK BYE";
+            } else if(command.equals("CREATE")){
+                int size = Integer.parseInt(parts[1]);
+                int aiDepth = parts.length > 2 ? Math.max(1, Math.min(Integer.parseInt(parts[2]), AIPlayer.MAX_FIXED_DEPTH)) : 0;
+                long id = nextId.getAndIncrement();
+                sessions.put(id, new GameSession(id, size, owner, aiDepth, aiTable));
+                seated.add(id);
+                return "OK CREATED " + id + " 1";
+            }
+
+            if(parts.length < 2){
+                return "ERR Missing session id";
+            }
+            long id = Long.parseLong(parts[1]);
+            GameSession session = sessions.get(id);
+            if(session == null){
+                return "ERR Unknown session " + id;
+            }
+
+            String reply;
+            if(command.equals("JOIN")){
+                reply = "OK JOINED " + id + " " + session.join(owner);
+                seated.add(id);
+            } else if(command.equals("STATE")){
+                reply = "OK " + session.getStateFor(owner);
+            } else if(!session.isSeated(owner)){
+                return "ERR Not playing in session " + id;
+            } else if(command.equals("MOVE")){
+                if(parts.length < 3 || parts[2].length() != 1){
+                    return "ERR Missing column";
+                }
+                reply = "OK " + session.move(owner, MoveNotation.toColumn(parts[2].charAt(0)));
+            } else if(command.equals("RESIGN")){
+                reply = "OK " + session.resign(owner);
+            } else {
+                return "ERR Unknown command " + parts[0];
+            }
+            if(removeIfFinished(session)){
+                seated.remove(id);
+            }
+            return reply;
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            return "ERR Bad arguments for " + parts[0];
+        } catch (IllegalStateException | IllegalArgumentException e) {
+            return "ERR " + e.getMessage();
+        }
+    }
+
+    /**
+     * Method which streams the events of a session to a connection until the game is over. The connection can't send
+     * any other commands in the meantime.
+     */
+    private void watch(String line, Writer writer) throws IOException {
+        commands.increment();
+        String[] parts = line.split("\\s+");
+        GameSession session = null;
+        try {
+            session = sessions.get(Long.parseLong(parts[1]));
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            writer.write("ERR Bad arguments for " + parts[0] + "\n");
+            writer.flush();
+            return;
+        }
+        if(session == null){
+            writer.write("ERR Unknown session " + parts[1] + "\n");
+            writer.flush();
+            return;
+        }
+
+        GameBroadcaster.Subscription subscription = session.getBroadcaster(executor).subscribe();
+        try {
+            writer.write("OK WATCHING " + session.getId() + "\n");
+            writer.flush();
+            boolean over = false;
+            while(!over){
+                GameEvent event = subscription.take(1000);
+                if(event == null){
+                    if(subscription.isClosed()){
+                        writer.write("ERR Dropped\n");
+                        writer.flush();
+                        return;
+                    }
+                    continue;
+                }
+                //everything which is already waiting is written before flushing
+                while(event != null){
+                    writer.write(event.toString());
+                    writer.write('\n');
+                    over = event.getWinner() != 0;
+                    event = over ? null : subscription.poll();
+                }
+                writer.flush();
+            }
+            writer.write("OK END " + session.getId() + "\n");
+            writer.flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            subscription.close();
+        }
+    }
+
+    private boolean removeIfFinished(GameSession session){
+        if(session.isFinished()){
+            sessions.remove(session.getId());
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Method which runs a server from the command line.
+     * @param args the port to listen on (optional).
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        GameServer server = new GameServer(null, port);
+        server.start();
+        System.out.println("Listening on port " + server.getPort());
+    }
+}
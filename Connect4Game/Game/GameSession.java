@@ -0,0 +1,267 @@
+package Game;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An instantiable class which defines one game hosted by a GameServer.
+ *
+ * A session has two seats. Whoever creates it sits as Player 1, and Player 2's seat is either taken by whoever joins it
+ * or by the AI. The same connection may take both seats, for a hotseat game. The game itself is a headless Position,
+ * rather than a GameBoard, so thousands of sessions only cost a few hundred bytes each.
+ *
+ * Spectators can watch a session through its GameBroadcaster, which is only created once someone starts watching.
+ *
+ * Every method locks the session, so moves for the same game from different connections are applied one at a time,
+ * while moves in different games never wait for each other. A ReentrantLock is used instead of synchronized, since a
+ * virtual thread waiting on a monitor can't be unmounted from its carrier thread.
+ *
+ * @author Daniel Arefjev
+ */
+public class GameSession {
+    /**
+     * The longest an AI move may take, whatever its depth.
+     */
+    public static final long AI_TIME_MILLIS = 1000;
+
+    private final long id;
+    private final Position position;
+    private final int aiDepth;
+    private final TranspositionTable aiTable;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Object[] seats = new Object[3];
+    private final boolean[] seenEnd = new boolean[3];
+    private SearchEngine aiEngine;
+    private GameBroadcaster broadcaster;
+    private int winner;
+
+    /**
+     * GameSession 5 argument constructor.
+     * @param id the id of the session.
+     * @param size the width/height of the board, from 4 to 24.
+     * @param creator the connection creating the session, which sits as Player 1.
+     * @param aiDepth the search depth of the AI in Player 2's seat, or 0 if Player 2 is a person.
+     * @param aiTable the transposition table used by the AI, which may be shared with other sessions.
+     */
+    public GameSession(long id, int size, Object creator, int aiDepth, TranspositionTable aiTable){
+        if(size < 4 || size > 24){
+            throw new IllegalArgumentException("Board size must be from 4 to 24");
+        }
+        this.id = id;
+        this.position = new Position(size);
+        this.aiDepth = aiDepth;
+        this.aiTable = aiTable;
+        this.seats[1] = creator;
+        if(aiDepth > 0){
+            this.seats[2] = this;
+            this.seenEnd[2] = true;
+        }
+    }
+
+    /**
+     * Method to get the id of a GameSession object.
+     * @return the id.
+     */
+    public long getId(){
+        return id;
+    }
+
+    /**
+     * Method to check whether a connection is sitting in either seat.
+     * @param owner the connection.
+     * @return true if the connection is playing in this session.
+     */
+    public boolean isSeated(Object owner){
+        lock.lock();
+        try {
+            return seats[1] == owner || seats[2] == owner;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Method which gives Player 2's seat to a connection.
+     * @param owner the connection joining.
+     * @return the player number of the seat which was taken.
+     * @throws IllegalStateException if both seats are already taken.
+     */
+    public int join(Object owner){
+        lock.lock();
+        try {
+            if(seats[2] != null){
+                throw new IllegalStateException("Session " + id + " is full");
+            }
+            seats[2] = owner;
+            return 2;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Method which adds a tile to a column for the player to move, as long as the connection is sitting in their seat.
+     * If Player 2 is the AI, it replies straight away.
+     * @param owner the connection making the move.
+     * @param column the column to add a tile to.
+     * @return the state of the session after the move(s), as returned by getState().
+     * @throws IllegalStateException if the game is over, waiting for Player 2, or it isn't the connection's turn.
+     * @throws IllegalArgumentException if the column is full or isn't on the board.
+     */
+    public String move(Object owner, int column){
+        lock.lock();
+        try {
+            if(winner != 0){
+                throw new IllegalStateException("Game is over");
+            }
+            if(seats[2] == null){
+                throw new IllegalStateException("Waiting for Player 2 to join");
+            }
+            if(seats[position.getPlayer()] != owner){
+                throw new IllegalStateException("Not your turn");
+            }
+            if(!position.canPlay(column)){
+                throw new IllegalArgumentException("Column can't be played");
+            }
+            play(column);
+
+            if(winner == 0 && aiDepth > 0){
+                if(aiEngine == null){
+                    aiEngine = new SearchEngine(aiTable);
+                }
+                SearchLimits limits = new SearchLimits();
+                limits.setDepth(aiDepth);
+                limits.setTimeMillis(AI_TIME_MILLIS);
+                play(aiEngine.search(position, limits, null).getBestColumn());
+            }
+            return getStateFor(owner);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Method which ends the game with the connection's opponent as the winner. If the connection is sitting in both
+     * seats, the player to move resigns.
+     * @param owner the connection resigning.
+     * @return the state of the session after resigning.
+     * @throws IllegalStateException if the game is already over.
+     */
+    public String resign(Object owner){
+        lock.lock();
+        try {
+            if(winner != 0){
+                throw new IllegalStateException("Game is over");
+            }
+            int player = seats[position.getPlayer()] == owner ? position.getPlayer() : 3 - position.getPlayer();
+            setWinner(3 - player);
+            return getStateFor(owner);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Method to get the state of a session, in the form "STATE id size playerToMove winner moves", where winner is 0
+     * while the game is being played, 1 or 2 when a player has won and 3 for a draw, and moves is a MoveNotation
+     * string.
+     * @param owner the connection asking, which is recorded as having seen the end of the game if it's over.
+     * @return the state.
+     */
+    public String getStateFor(Object owner){
+        lock.lock();
+        try {
+            if(winner != 0){
+                for(int i = 1; i <= 2; i++){
+                    if(seats[i] == owner){
+                        seenEnd[i] = true;
+                    }
+                }
+            }
+            return "STATE " + id + " " + position.getSize() + " " + position.getPlayer() + " " + winner + " "
+                    + MoveNotation.format(position);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Method which is called when a connection closes. If the game is still being played the connection resigns, and
+     * its seat is treated as having seen the end.
+     * @param owner the connection which closed.
+     */
+    public void leave(Object owner){
+        lock.lock();
+        try {
+            if(winner == 0 && isSeated(owner)){
+                int player = seats[1] == owner ? 1 : 2;
+                setWinner(3 - player);
+            }
+            for(int i = 1; i <= 2; i++){
+                if(seats[i] == owner){
+                    seenEnd[i] = true;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Method to get the broadcaster which sends a session's moves to spectators, creating it if nobody has watched the
+     * session before.
+     * @param executor the executor to run the broadcaster's fan out task on, if it needs creating.
+     * @return the broadcaster.
+     */
+    public GameBroadcaster getBroadcaster(Executor executor){
+        lock.lock();
+        try {
+            if(broadcaster == null){
+                broadcaster = new GameBroadcaster(position, 64, GameBroadcaster.SNAPSHOT_SLOW, executor);
+                if(winner != 0){
+                    broadcaster.publishResult(winner);
+                }
+            }
+            return broadcaster;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Method to check whether a session can be thrown away - the game is over and everyone playing in it has been told.
+     * @return true if the session is finished with.
+     */
+    public boolean isFinished(){
+        lock.lock();
+        try {
+            return winner != 0 && seenEnd[1] && (seats[2] == null || seenEnd[2]);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Method which plays a move and checks whether it ended the game.
+     */
+    private void play(int column){
+        boolean won = position.isWinningMove(column);
+        int player = position.getPlayer();
+        position.play(column);
+        if(broadcaster != null){
+            broadcaster.publishMove(column, player);
+        }
+        if(won){
+            setWinner(player);
+        } else if(position.isDeadDraw()){
+            setWinner(3);
+        }
+    }
+
+    private void setWinner(int winner){
+        this.winner = winner;
+        if(broadcaster != null){
+            broadcaster.publishResult(winner);
+        }
+    }
+}
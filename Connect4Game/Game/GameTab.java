@@ -0,0 +1,405 @@
+package Game;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseListener;
+import java.io.IOException;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * An instantiable class which defines one of the games open in the main window, each of which has its own tab.
+ *
+ * A tab holds everything which belongs to a single game - the board, its timer and clocks, its move journal and its
+ * AI - so any number of games can be played at once. AI moves are searched on the window's shared AIScheduler
+ * (each tab being one client, with a budget of AI_BUDGET tasks) and played back on the Swing thread once they've been
+ * found, so a tab waiting for its AI never holds up the other tabs.
+ *
+ * @author Daniel Arefjev
+ */
+public class GameTab extends JPanel implements MouseListener {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The most AI tasks (a move search or pondering) a tab may have running at once.
+     */
+    public static final int AI_BUDGET = 1;
+
+    private final Connect4Game window;
+    private final GameBoard gameBoard;
+    private final GameTimer timer;
+    private final AIScheduler.Client aiClient;
+    private PlayerClock playerClock;
+    private MoveJournal journal;
+    private int journaledMoves;
+    private CompletableFuture<Integer> aiMove;
+    private boolean selected;
+    private boolean closed;
+
+    /**
+     * GameTab 3 argument constructor, which lays out the board and starts the game timer.
+     * @param window the main window.
+     * @param gameBoard the game, which should already have its players and any tiles set.
+     * @param timeElapsed how long the game has been going, or null for a new game.
+     */
+    public GameTab(Connect4Game window, GameBoard gameBoard, GregorianCalendar timeElapsed){
+        this.window = window;
+        this.gameBoard = gameBoard;
+        this.aiClient = AIScheduler.getShared().register(gameBoard.getPlayer1Name() + " vs " + gameBoard.getPlayer2Name(), AI_BUDGET);
+        gameBoard.setAIClient(aiClient);
+
+        int boardSize = gameBoard.getSize();
+        setLayout(new GridLayout(boardSize, boardSize));
+        for(int i = 0; i < boardSize; i++){
+            for(int j = 0; j < boardSize; j++){
+                add(gameBoard.getTile(j, i));
+                gameBoard.getTile(j, i).addMouseListener(this);
+            }
+        }
+
+        timer = new GameTimer();
+        if(timeElapsed != null){
+            timer.setTimeElapsed(timeElapsed);
+        }
+        timer.startTimer();
+    }
+
+    /**
+     * Method to get the game being played in a tab.
+     * @return the GameBoard.
+     */
+    public GameBoard getGameBoard(){
+        return gameBoard;
+    }
+
+    /**
+     * Method to get the timer of a tab, which is shown in the menu bar while the tab is selected.
+     * @return the GameTimer.
+     */
+    public GameTimer getTimer(){
+        return timer;
+    }
+
+    /**
+     * Method to get the player clocks of a tab, which are shown in the menu bar while the tab is selected.
+     * @return the PlayerClock, or null if the game isn't timed.
+     */
+    public PlayerClock getPlayerClock(){
+        return playerClock;
+    }
+
+    /**
+     * Method to get the title of a tab.
+     * @return the names of the players.
+     */
+    public String getTitle(){
+        return gameBoard.getPlayer1Name() + " vs " + gameBoard.getPlayer2Name();
+    }
+
+    /**
+     * Method to check whether a tab's AI is choosing its move.
+     * @return true if the AI is thinking.
+     */
+    public boolean isAIThinking(){
+        return aiMove != null;
+    }
+
+    /**
+     * Method which is called when a tab is selected or deselected. Only the selected tab's AI ponders, so the tabs in
+     * the background only use the AI scheduler for their actual moves.
+     * @param selected true if the tab is now selected.
+     */
+    public void setSelected(boolean selected){
+        this.selected = selected;
+        if(selected && aiMove == null && !closed){
+            gameBoard.startPondering();
+        } else {
+            gameBoard.stopPondering();
+        }
+    }
+
+    /**
+     * Method which converts the game into a SimpleGameBoard object, so it can be written to a save file, the history
+     * file or a move journal.
+     * @return a SimpleGameBoard containing the state of the game.
+     */
+    public SimpleGameBoard createSimpleGameBoard(){
+        int boardSize = gameBoard.getSize();
+
+        int[][] boardStateAsInt = new int[boardSize][boardSize];
+        for(int i = 0; i<boardSize; i++){
+            for(int j = 0; j<boardSize; j++){
+                boardStateAsInt[i][j] = gameBoard.getTileState(i, j);
+            }
+        }
+        SimpleGameBoard simpleGameBoard = new SimpleGameBoard(boardSize, boardStateAsInt);
+        simpleGameBoard.setAIStuff(gameBoard.getAIToggle(), gameBoard.getAiDifficulty());
+        //the icons are looked up rather than taken from the settings menu, which won't exist if the game was loaded
+        simpleGameBoard.setPlayerIcons(window.getIconIndex(gameBoard.getPlayer1Icon()), window.getIconIndex(gameBoard.getPlayer2Icon()));
+        simpleGameBoard.setPlayerNames(gameBoard.getPlayer1Name(), gameBoard.getPlayer2Name());
+        simpleGameBoard.setLastAIMove(gameBoard.getLastAIMove());
+        simpleGameBoard.setWinner(gameBoard.getWinner());
+        simpleGameBoard.setPlayer(gameBoard.getPlayer());
+        simpleGameBoard.setTimeStarted(gameBoard.getTimeStarted());
+        //copied, since the timer thread keeps changing it while the snapshot is being written
+        simpleGameBoard.setTimeElapsed((GregorianCalendar) timer.getTimeElapsed().clone());
+        simpleGameBoard.setMoves(gameBoard.getMoves());
+        if(playerClock != null){
+            simpleGameBoard.setClocks(playerClock.getRemaining(1), playerClock.getRemaining(2), playerClock.getIncrement());
+        }
+        return simpleGameBoard;
+    }
+
+    //clocks
+
+    /**
+     * Method which creates the player clocks and starts the clock of the player whose turn it is.
+     * @param player1Millis the time on Player 1's clock.
+     * @param player2Millis the time on Player 2's clock.
+     * @param incrementMillis the time added after each move.
+     */
+    public void startPlayerClock(long player1Millis, long player2Millis, long incrementMillis){
+        playerClock = new PlayerClock(player1Millis, player2Millis, incrementMillis);
+        playerClock.setTimeoutListener(this::playerTimedOut);
+        gameBoard.setPlayerClock(playerClock);
+        playerClock.start(gameBoard.getPlayer());
+    }
+
+    /**
+     * Method which is called when a player's clock runs out, ending the game with their opponent as the winner. This
+     * can happen while the tab is in the background.
+     */
+    public void playerTimedOut(){
+        if(!closed && playerClock != null && playerClock.getFlagged() != 0){
+            gameBoard.setWinner(3 - playerClock.getFlagged());
+            gameEnded();
+        }
+    }
+
+    //move journal
+
+    /**
+     * Method which starts journaling the game, so it can be recovered if the program is closed or crashes before the
+     * game ends.
+     */
+    public void startJournal(){
+        try {
+            journal = MoveJournal.create(window.journalDirectory, createSimpleGameBoard(), MoveJournal.getDefaultSyncPolicy());
+            journaledMoves = gameBoard.getMoveCount();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Method which adds the last move played to the journal. It's called after every move, before the player switches.
+     * Turns where no tile was actually added aren't journaled.
+     */
+    public void journalMove(){
+        if(journal != null && gameBoard.getMoveCount() > journaledMoves){
+            journaledMoves = gameBoard.getMoveCount();
+            GregorianCalendar timeElapsed = timer.getTimeElapsed();
+            //measured from the timer's zero point rather than read off the hour of the day, so it keeps counting past 24 hours
+            GregorianCalendar timeStarted = (GregorianCalendar) timeElapsed.clone();
+            timeStarted.set(Calendar.ERA, GregorianCalendar.AD);
+            timeStarted.set(0, 0, 0, 0, 0, 0);
+            int elapsedSeconds = (int) ((timeElapsed.getTimeInMillis() - timeStarted.getTimeInMillis()) / 1000);
+            long clockMillis = playerClock != null ? playerClock.getRemaining(gameBoard.getPlayer()) : 0;
+            journal.append(gameBoard.getLastMove(), gameBoard.getPlayer(), elapsedSeconds, clockMillis);
+        }
+    }
+
+    /**
+     * Method which closes and deletes the journal, once the game has ended or been abandoned.
+     */
+    public void finishJournal(){
+        if(journal != null){
+            MoveJournal finished = journal;
+            journal = null;
+            //waiting for the writer thread and deleting the file are done on an I/O thread
+            window.persistence.submit(finished.getFile(), () -> {
+                finished.finish();
+                return null;
+            }, true).whenComplete((result, e) -> {
+                if(e != null){
+                    e.printStackTrace();
+                }
+            });
+        }
+    }
+
+    /**
+     * Method which closes the journal but keeps it, so the game can be resumed next time, e.g when the window closes.
+     */
+    public void closeJournal(){
+        if(journal != null){
+            MoveJournal closing = journal;
+            journal = null;
+            window.persistence.submit(closing.getFile(), () -> {
+                closing.close();
+                return null;
+            }, true);
+        }
+    }
+
+    //game stuff
+
+    /**
+     * Method which stops everything the game has running - its timer, clocks and AI. Called when the game ends or the
+     * tab is closed.
+     */
+    public void close(){
+        closed = true;
+        gameBoard.stopPondering();
+        aiClient.close();
+        timer.stopTimer();
+        if(playerClock != null){
+            playerClock.stop();
+        }
+    }
+
+    /**
+     * Method which is called when the game ends, which stops the game timer, displays a win/draw message, adds the
+     * game to the history and closes the tab.
+     */
+    public void gameEnded() {
+        close();
+        gameBoard.setTimeElapsed(timer.getTimeElapsed());
+        if(gameBoard.getWinner() == 1 || gameBoard.getWinner() == 2){
+            String winnerName = "";
+            if(gameBoard.getWinner() == 1){
+                winnerName = gameBoard.getPlayer1Name();
+            } else if (gameBoard.getWinner() == 2){
+                winnerName = gameBoard.getPlayer2Name();
+            }
+            JOptionPane.showMessageDialog(null, winnerName + " wins!", "Victory", JOptionPane.INFORMATION_MESSAGE );
+        } else if (gameBoard.getWinner() == 3){
+            JOptionPane.showMessageDialog(null, "Draw, you both suck!", "Draw", JOptionPane.INFORMATION_MESSAGE);
+        } else {
+            JOptionPane.showMessageDialog(null, "Descriptive error message", "Error", JOptionPane.ERROR_MESSAGE);
+        }
+        window.saveToHistory(createSimpleGameBoard());
+        finishJournal();
+        window.closeTab(this);
+    }
+
+    /**
+     * Method which starts the AI's move if it's the AI's turn, e.g when a game which was saved or journaled while the AI
+     * was thinking is opened. Otherwise the human's next click would be played as the AI.
+     */
+    public void resumeAIMove(){
+        if(!closed && aiMove == null && gameBoard.getAIToggle() && gameBoard.getPlayer() == 2 && gameBoard.getWinner() == 0){
+            startAIMove();
+        }
+    }
+
+    /**
+     * Method which starts the AI choosing its move on the AI scheduler. It should already be the AI's turn. Clicks on the
+     * board are ignored until the move has been played.
+     */
+    private void startAIMove(){
+        CompletableFuture<Integer> move = gameBoard.chooseAIMove();
+        aiMove = move;
+        window.tabChanged(this);
+        move.whenCompleteAsync((column, e) -> {
+            if(aiMove != move || closed){
+                return;
+            }
+            aiMove = null;
+            if(e != null){
+                if(!(e instanceof CancellationException || e.getCause() instanceof CancellationException)){
+                    (e instanceof CompletionException ? e.getCause() : e).printStackTrace();
+                    //the AI loses its turn, like it does when it picks a full column, so the human doesn't move as the AI
+                    if(playerClock != null){
+                        playerClock.press(gameBoard.getPlayer());
+                    }
+                    gameBoard.switchPlayer();
+                    if(selected){
+                        gameBoard.startPondering();
+                    }
+                    window.tabChanged(this);
+                }
+                return;
+            }
+            gameBoard.playAIMove(column);
+            if(playerClock != null){
+                playerClock.press(gameBoard.getPlayer());
+            }
+            journalMove();
+            if(gameBoard.checkForWinner() != 0){
+                gameEnded();
+            } else {
+                gameBoard.switchPlayer();
+                if(selected){
+                    gameBoard.startPondering();
+                }
+                window.tabChanged(this);
+            }
+        }, GamePersistence.onSwingThread());
+    }
+
+    //listeners
+
+    /**
+     * Listener method which handles when a player clicks on any of the game tiles.
+     * It gets the name of the tile which was clicked which contains the index of the column the tile is in and
+     * passes that into GameBoard.addTile. After a tile is added, it checks if there is a winner, if so, it calls gameEnded().
+     * Otherwise, it checks if the player has opted to play vs the AI, and if so it starts the AI choosing its move.
+     * @param e the event which activated the mouseClicked() listener.
+     */
+    public void mouseClicked(MouseEvent e) {
+        if(closed || aiMove != null){
+            return;
+        }
+        JLabel buttonClicked = (JLabel) e.getSource();
+        int colClicked = Integer.parseInt(buttonClicked.getName());
+        if(gameBoard.getLowestAvailableTile(colClicked) >= 0){
+            gameBoard.addTile(colClicked);
+            if(playerClock != null){
+                playerClock.press(gameBoard.getPlayer());
+            }
+            journalMove();
+            if(gameBoard.checkForWinner() != 0){
+                gameEnded();
+            } else if(!gameBoard.getAIToggle()){
+                gameBoard.switchPlayer();
+                window.tabChanged(this);
+            } else {
+                gameBoard.switchPlayer();
+                startAIMove();
+            }
+        }
+    }
+
+    public void mousePressed(MouseEvent e) {}
+
+    public void mouseReleased(MouseEvent e) {}
+
+    /**
+     *  Listener method which handles when a player hovers over any of the game tiles.
+     *  It gets the name of the tile which was hovered which contains the index of the column the tile is in and
+     *  passes that into the GameBoard.highlightColumn() method, which changes the background of all the tiles within
+     *  the column to "highlight" it.
+     */
+    public void mouseEntered(MouseEvent e) {
+        JLabel buttonEntered = (JLabel) e.getSource();
+        int colEntered = Integer.parseInt(buttonEntered.getName());
+        gameBoard.highlightColumn(colEntered);
+    }
+
+    /**
+     *  Listener method which handles when a player hovers out any of the game tiles.
+     *  It gets the name of the tile which was hovered out of, which contains the index of the column the tile is in and
+     *  passes that into the GameBoard.dehighlightColumn() method, which changes the background of all the tiles within
+     *  the column back to their regular colour, white.
+     */
+    public void mouseExited(MouseEvent e) {
+        JLabel buttonEntered = (JLabel) e.getSource();
+        int colEntered = Integer.parseInt(buttonEntered.getName());
+        gameBoard.dehighlightColumn(colEntered);
+    }
+}
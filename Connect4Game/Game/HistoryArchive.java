@@ -0,0 +1,851 @@
+package Game;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * An instantiable class which stores the game history in a compact archive file, where a single game can be read
+ * without reading the rest of the file.
+ *
+ * Games are grouped into blocks of up to GAMES_PER_BLOCK games, and each block is compressed on its own. Inside a block
+ * every number is a varint, each move is stored as the distance from the column before it, each start time as the
+ * time since the game before it, and player names are stored once per block and referred to by number. The final
+ * board isn't stored at all if the moves rebuild it, which they do for every game started since moves were recorded.
+ *
+ * File layout: a header, the compressed blocks, an index (the offset, length, number of games and CRC of each block)
+ * and a fixed size trailer pointing to the index. Appending never overwrites anything - the new blocks, index and
+ * trailer go on the end of the file, replacing the last block if it wasn't full. So a crash part way through an append
+ * only leaves a torn tail behind, which is skipped by looking back for the last trailer which checks out. The space
+ * taken by replaced blocks and indexes is reclaimed by rewriting the file once it outgrows the live data.
+ *
+ * A HistoryArchive object isn't thread safe - in the game it's only used from within tasks queued on its file.
+ *
+ * @author Daniel Arefjev
+ */
+public class HistoryArchive implements Closeable {
+    public static final int GAMES_PER_BLOCK = 64;
+
+    private static final int MAGIC = 0x43344841;
+    private static final int TRAILER_MAGIC = 0x43344849;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 8;
+    private static final int INDEX_ENTRY_BYTES = 20;
+    private static final int TRAILER_BYTES = 20;
+    private static final long COMPACT_MIN_BYTES = 64 * 1024;
+
+    //game flags
+    private static final int AI_TOGGLE = 1;
+    private static final int HAS_MOVES = 2;
+    private static final int BOARD_STORED = 4;
+    private static final int ALTERNATING = 8;
+    private static final int HAS_TIME_STARTED = 16;
+    private static final int HAS_TIME_ELAPSED = 32;
+    private static final int HAS_CLOCKS = 64;
+
+    private final File file;
+    private FileChannel channel;
+    private long end;
+    private int blockCount;
+    private long[] blockOffsets = new long[16];
+    private int[] blockLengths = new int[16];
+    private int[] blockGames = new int[16];
+    private int[] blockCrcs = new int[16];
+    private int[] firstGames = new int[17];
+
+    private int cachedBlock = -1;
+    private List<SimpleGameBoard> cachedGames;
+
+    /**
+     * HistoryArchive 1 argument constructor, which opens an archive file and reads its index. The file is created the
+     * first time a game is appended.
+     * @param file the archive file.
+     * @throws IOException if the file can't be read, or isn't an archive.
+     */
+    public HistoryArchive(File file) throws IOException {
+        this.file = file;
+        open();
+    }
+
+    private void open() throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        blockCount = 0;
+        firstGames[0] = 0;
+        cachedBlock = -1;
+        long size = channel.size();
+        if(size == 0){
+            end = 0;
+            return;
+        }
+        ByteBuffer header = readFully(0, HEADER_BYTES);
+        if(header.getInt() != MAGIC || header.getInt() != VERSION){
+            channel.close();
+            throw new IOException(file + " isn't a history archive");
+        }
+        end = HEADER_BYTES;
+        //the last trailer which checks out marks the end of the archive - anything after it is a torn append
+        for(long position = size - TRAILER_BYTES; position >= HEADER_BYTES; position--){
+            if(readTrailer(position)){
+                end = position + TRAILER_BYTES;
+                return;
+            }
+            position = findTrailerMagic(position);
+        }
+    }
+
+    /**
+     * Method which looks backwards from a position for the next place a trailer could start.
+     * @return one past the position of the next candidate, so the caller's decrement lands on it.
+     */
+    private long findTrailerMagic(long position) throws IOException {
+        long scanEnd = position;
+        while(scanEnd > HEADER_BYTES){
+            long scanStart = Math.max(HEADER_BYTES, scanEnd - 64 * 1024);
+            ByteBuffer buffer = readFully(scanStart, (int) (scanEnd - scanStart) + TRAILER_BYTES - 1);
+            for(long candidate = scanEnd - 1; candidate >= scanStart; candidate--){
+                if(buffer.getInt((int) (candidate - scanStart) + TRAILER_BYTES - 4) == TRAILER_MAGIC){
+                    return candidate + 1;
+                }
+            }
+            scanEnd = scanStart;
+        }
+        return HEADER_BYTES;
+    }
+
+    /**
+     * Method which reads the trailer at a position, and the index it points to, if they check out.
+     * @return true if the index was read.
+     */
+    private boolean readTrailer(long position) throws IOException {
+        ByteBuffer trailer = readFully(position, TRAILER_BYTES);
+        long indexOffset = trailer.getLong();
+        int count = trailer.getInt();
+        int indexCrc = trailer.getInt();
+        if(trailer.getInt() != TRAILER_MAGIC || count < 0 || indexOffset < HEADER_BYTES
+                || indexOffset + (long) count * INDEX_ENTRY_BYTES != position){
+            return false;
+        }
+        ByteBuffer index = readFully(indexOffset, count * INDEX_ENTRY_BYTES);
+        CRC32 crc = new CRC32();
+        crc.update(index.duplicate());
+        if((int) crc.getValue() != indexCrc){
+            return false;
+        }
+        blockCount = 0;
+        for(int i = 0; i < count; i++){
+            addBlock(index.getLong(), index.getInt(), index.getInt(), index.getInt());
+        }
+        return true;
+    }
+
+    private void addBlock(long offset, int length, int games, int crc){
+        if(blockCount == blockOffsets.length){
+            int capacity = blockCount * 2;
+            blockOffsets = Arrays.copyOf(blockOffsets, capacity);
+            blockLengths = Arrays.copyOf(blockLengths, capacity);
+            blockGames = Arrays.copyOf(blockGames, capacity);
+            blockCrcs = Arrays.copyOf(blockCrcs, capacity);
+            firstGames = Arrays.copyOf(firstGames, capacity + 1);
+        }
+        blockOffsets[blockCount] = offset;
+        blockLengths[blockCount] = length;
+        blockGames[blockCount] = games;
+        blockCrcs[blockCount] = crc;
+        firstGames[blockCount + 1] = firstGames[blockCount] + games;
+        blockCount++;
+    }
+
+    /**
+     * Method to get the number of games in the archive.
+     * @return the number of games.
+     */
+    public int getGameCount(){
+        return firstGames[blockCount];
+    }
+
+    /**
+     * Method to get the number of blocks the games are stored in.
+     * @return the number of blocks.
+     */
+    public int getBlockCount(){
+        return blockCount;
+    }
+
+    /**
+     * Method to get the size of the archive, including any space which hasn't been reclaimed yet.
+     * @return the size of the file in bytes.
+     */
+    public long getFileLength() throws IOException {
+        return channel.size();
+    }
+
+    /**
+     * Method which reads one game, decompressing only the block it's in. The last block read is kept, so reading the
+     * games next to it doesn't decompress it again.
+     * @param index the index of the game, 0 being the oldest.
+     * @return the game.
+     * @throws IOException if the block can't be read or is corrupt.
+     */
+    public SimpleGameBoard getGame(int index) throws IOException {
+        if(index < 0 || index >= getGameCount()){
+            throw new IndexOutOfBoundsException("Game " + index + " of " + getGameCount());
+        }
+        //the block is found with a binary search on the index of the first game in each block
+        int low = 0;
+        int high = blockCount - 1;
+        while(low < high){
+            int middle = (low + high + 1) >>> 1;
+            if(firstGames[middle] <= index){
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return readBlock(low).get(index - firstGames[low]);
+    }
+
+    /**
+     * Method which reads every game in the archive.
+     * @return the games, oldest first.
+     * @throws IOException if a block can't be read or is corrupt.
+     */
+    public ArrayList<SimpleGameBoard> getAll() throws IOException {
+        ArrayList<SimpleGameBoard> games = new ArrayList<>(getGameCount());
+        for(int i = 0; i < blockCount; i++){
+            games.addAll(readBlock(i));
+        }
+        return games;
+    }
+
+    private List<SimpleGameBoard> readBlock(int block) throws IOException {
+        if(block == cachedBlock){
+            return cachedGames;
+        }
+        ByteBuffer compressed = readFully(blockOffsets[block], blockLengths[block]);
+        CRC32 crc = new CRC32();
+        crc.update(compressed.duplicate());
+        if((int) crc.getValue() != blockCrcs[block]){
+            throw new IOException("Block " + block + " of " + file + " is corrupt");
+        }
+        List<SimpleGameBoard> games = decodeBlock(inflate(compressed));
+        if(games.size() != blockGames[block]){
+            throw new IOException("Block " + block + " of " + file + " has the wrong number of games");
+        }
+        cachedBlock = block;
+        cachedGames = games;
+        return games;
+    }
+
+    /**
+     * Method which adds a game to the end of the archive.
+     * @param game the finished game.
+     * @throws IOException if the file can't be written.
+     */
+    public void append(SimpleGameBoard game) throws IOException {
+        append(Collections.singletonList(game));
+    }
+
+    /**
+     * Method which adds games to the end of the archive, filling up the last block first. Everything is on disk by the
+     * time this returns.
+     * @param games the finished games, oldest first.
+     * @throws IOException if the file can't be written.
+     */
+    public void append(List<SimpleGameBoard> games) throws IOException {
+        if(games.isEmpty()){
+            return;
+        }
+        List<SimpleGameBoard> pending = new ArrayList<>(games);
+        if(end == 0){
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC).putInt(VERSION).flip();
+            writeFully(0, header);
+            end = HEADER_BYTES;
+        }
+        //a torn append from before is thrown away
+        channel.truncate(end);
+        if(blockCount > 0 && blockGames[blockCount - 1] < GAMES_PER_BLOCK){
+            pending.addAll(0, readBlock(blockCount - 1));
+            blockCount--;
+        }
+        cachedBlock = -1;
+
+        long position = end;
+        for(int i = 0; i < pending.size(); i += GAMES_PER_BLOCK){
+            List<SimpleGameBoard> chunk = pending.subList(i, Math.min(pending.size(), i + GAMES_PER_BLOCK));
+            ByteBuffer compressed = ByteBuffer.wrap(deflate(encodeBlock(chunk)));
+            CRC32 crc = new CRC32();
+            crc.update(compressed.duplicate());
+            int length = compressed.remaining();
+            writeFully(position, compressed);
+            addBlock(position, length, chunk.size(), (int) crc.getValue());
+            position += length;
+        }
+        end = writeIndex(position);
+        channel.force(true);
+
+        long live = HEADER_BYTES + (long) blockCount * INDEX_ENTRY_BYTES + TRAILER_BYTES;
+        for(int i = 0; i < blockCount; i++){
+            live += blockLengths[i];
+        }
+        if(end - live > live && end - live > COMPACT_MIN_BYTES){
+            compact();
+        }
+    }
+
+    /**
+     * Method which writes the index and trailer at a position in the file.
+     * @return the end of the trailer.
+     */
+    private long writeIndex(long position) throws IOException {
+        ByteBuffer index = ByteBuffer.allocate(blockCount * INDEX_ENTRY_BYTES);
+        for(int i = 0; i < blockCount; i++){
+            index.putLong(blockOffsets[i]).putInt(blockLengths[i]).putInt(blockGames[i]).putInt(blockCrcs[i]);
+        }
+        index.flip();
+        CRC32 crc = new CRC32();
+        crc.update(index.duplicate());
+        ByteBuffer trailer = ByteBuffer.allocate(TRAILER_BYTES);
+        trailer.putLong(position).putInt(blockCount).putInt((int) crc.getValue()).putInt(TRAILER_MAGIC).flip();
+        writeFully(position, index);
+        writeFully(position + index.capacity(), trailer);
+        return position + index.capacity() + TRAILER_BYTES;
+    }
+
+    /**
+     * Method which rewrites the archive without the replaced blocks and indexes, to a temporary file which is then
+     * moved over the archive.
+     */
+    private void compact() throws IOException {
+        File directory = file.getAbsoluteFile().getParentFile();
+        File temporary = File.createTempFile(file.getName(), ".tmp", directory);
+        try(FileChannel out = FileChannel.open(temporary.toPath(), StandardOpenOption.WRITE)){
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC).putInt(VERSION).flip();
+            out.write(header);
+            long position = HEADER_BYTES;
+            for(int i = 0; i < blockCount; i++){
+                ByteBuffer block = readFully(blockOffsets[i], blockLengths[i]);
+                while(block.hasRemaining()){
+                    out.write(block);
+                }
+                blockOffsets[i] = position;
+                position += blockLengths[i];
+            }
+            FileChannel old = channel;
+            channel = out;
+            try {
+                writeIndex(position);
+            } finally {
+                channel = old;
+            }
+            out.force(true);
+        } catch (IOException e) {
+            temporary.delete();
+            //the block offsets were changed part way through, so they're read back from the untouched file
+            channel.close();
+            open();
+            throw e;
+        }
+        channel.close();
+        try {
+            Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        open();
+    }
+
+    /**
+     * Method which closes the archive file.
+     */
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private ByteBuffer readFully(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while(buffer.hasRemaining()){
+            if(channel.read(buffer, position + buffer.position()) < 0){
+                throw new EOFException(file + " ends part way through a block");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private void writeFully(long position, ByteBuffer buffer) throws IOException {
+        long start = position - buffer.position();
+        while(buffer.hasRemaining()){
+            channel.write(buffer, start + buffer.position());
+        }
+    }
+
+    //block encoding
+
+    /**
+     * Method which encodes a block of games, before compression.
+     * @param games the games in the block.
+     * @return the encoded block.
+     */
+    static byte[] encodeBlock(List<SimpleGameBoard> games){
+        ByteArrayOutputStream out = new ByteArrayOutputStream(games.size() * 64);
+        //the name dictionary comes first, with 0 kept for no name
+        Map<String, Integer> names = new LinkedHashMap<>();
+        for(SimpleGameBoard game : games){
+            for(String name : new String[]{game.getPlayer1Name(), game.getPlayer2Name()}){
+                if(name != null){
+                    names.putIfAbsent(name, names.size() + 1);
+                }
+            }
+        }
+        writeVarLong(out, games.size());
+        writeVarLong(out, names.size());
+        for(String name : names.keySet()){
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(out, bytes.length);
+            out.write(bytes, 0, bytes.length);
+        }
+
+        long previousStart = 0;
+        for(SimpleGameBoard game : games){
+            int size = game.getBoardSize();
+            int[] moves = game.getMoves();
+            byte[] players = moves != null ? playersFromBoard(game) : null;
+            boolean alternating = players != null;
+            for(int i = 0; players != null && i < players.length && alternating; i++){
+                alternating = players[i] == (i % 2 == 0 ? 1 : 2);
+            }
+            boolean clocks = game.getPlayer1Clock() != 0 || game.getPlayer2Clock() != 0 || game.getClockIncrement() != 0;
+
+            int flags = (game.getAIToggle() ? AI_TOGGLE : 0) | (moves != null ? HAS_MOVES : 0)
+                    | (players == null ? BOARD_STORED : 0) | (alternating ? ALTERNATING : 0)
+                    | (game.getTimeStarted() != null ? HAS_TIME_STARTED : 0)
+                    | (game.getTimeElapsed() != null ? HAS_TIME_ELAPSED : 0) | (clocks ? HAS_CLOCKS : 0);
+            writeVarLong(out, flags);
+            writeVarLong(out, size);
+            writeVarLong(out, game.getAiDifficulty());
+            writeVarLong(out, game.getPlayer1Icon());
+            writeVarLong(out, game.getPlayer2Icon());
+            writeVarLong(out, zigzag(game.getLastAIMove()));
+            writeVarLong(out, game.getWinner());
+            writeVarLong(out, game.getPlayer());
+            writeVarLong(out, game.getPlayer1Name() == null ? 0 : names.get(game.getPlayer1Name()));
+            writeVarLong(out, game.getPlayer2Name() == null ? 0 : names.get(game.getPlayer2Name()));
+            if(game.getTimeStarted() != null){
+                long start = game.getTimeStarted().getTimeInMillis();
+                writeVarLong(out, zigzag(start - previousStart));
+                previousStart = start;
+            }
+            if(game.getTimeElapsed() != null){
+                writeVarLong(out, zigzag(elapsedSeconds(game.getTimeElapsed())));
+            }
+            if(clocks){
+                writeVarLong(out, zigzag(game.getPlayer1Clock()));
+                writeVarLong(out, zigzag(game.getPlayer2Clock()));
+                writeVarLong(out, zigzag(game.getClockIncrement()));
+            }
+            if(moves != null){
+                writeVarLong(out, moves.length);
+                int previous = 0;
+                for(int move : moves){
+                    writeVarLong(out, zigzag(move - previous));
+                    previous = move;
+                }
+            }
+            if(players == null){
+                //2 bits a tile, column by column
+                int[][] gameState = game.getGameState();
+                int bits = 0;
+                int count = 0;
+                for(int i = 0; i < size; i++){
+                    for(int j = 0; j < size; j++){
+                        bits |= (gameState[i][j] & 3) << (count++ * 2);
+                        if(count == 4){
+                            out.write(bits);
+                            bits = 0;
+                            count = 0;
+                        }
+                    }
+                }
+                if(count > 0){
+                    out.write(bits);
+                }
+            } else if(!alternating){
+                for(int i = 0; i < players.length; i += 8){
+                    int bits = 0;
+                    for(int j = i; j < Math.min(players.length, i + 8); j++){
+                        bits |= (players[j] - 1) << (j - i);
+                    }
+                    out.write(bits);
+                }
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Method which works out who made each move by taking the moves back off the final board, as long as the moves
+     * rebuild the whole board.
+     * @return the player who made each move, or null if the board has to be stored.
+     */
+    private static byte[] playersFromBoard(SimpleGameBoard game){
+        int size = game.getBoardSize();
+        int[][] gameState = game.getGameState();
+        int[] moves = game.getMoves();
+        int[] heights = new int[size];
+        for(int i = 0; i < size; i++){
+            while(heights[i] < size && gameState[i][size - 1 - heights[i]] != 0){
+                heights[i]++;
+            }
+        }
+        byte[] players = new byte[moves.length];
+        for(int i = moves.length - 1; i >= 0; i--){
+            int column = moves[i];
+            if(column < 0 || column >= size || heights[column] == 0){
+                return null;
+            }
+            int state = gameState[column][size - heights[column]--];
+            if(state != 1 && state != 2){
+                return null;
+            }
+            players[i] = (byte) state;
+        }
+        for(int height : heights){
+            if(height != 0){
+                return null;
+            }
+        }
+        //the moves have to account for every tile, including any floating above a gap
+        return Arrays.deepEquals(buildGameState(size, moves, players), gameState) ? players : null;
+    }
+
+    private static int[][] buildGameState(int size, int[] moves, byte[] players){
+        int[][] gameState = new int[size][size];
+        int[] heights = new int[size];
+        for(int i = 0; i < moves.length; i++){
+            gameState[moves[i]][size - 1 - heights[moves[i]]++] = players[i];
+        }
+        return gameState;
+    }
+
+    /**
+     * Method which decodes a block of games, after decompression.
+     * @param block the encoded block.
+     * @return the games in the block.
+     */
+    static List<SimpleGameBoard> decodeBlock(ByteBuffer block){
+        int count = (int) readVarLong(block);
+        String[] names = new String[(int) readVarLong(block) + 1];
+        for(int i = 1; i < names.length; i++){
+            byte[] bytes = new byte[(int) readVarLong(block)];
+            block.get(bytes);
+            names[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        List<SimpleGameBoard> games = new ArrayList<>(count);
+        long previousStart = 0;
+        for(int g = 0; g < count; g++){
+            int flags = (int) readVarLong(block);
+            int size = (int) readVarLong(block);
+            SimpleGameBoard game = new SimpleGameBoard();
+            game.setBoardSize(size);
+            game.setAIStuff((flags & AI_TOGGLE) != 0, (int) readVarLong(block));
+            int player1Icon = (int) readVarLong(block);
+            game.setPlayerIcons(player1Icon, (int) readVarLong(block));
+            game.setLastAIMove((int) unzigzag(readVarLong(block)));
+            game.setWinner((int) readVarLong(block));
+            game.setPlayer((int) readVarLong(block));
+            String player1Name = names[(int) readVarLong(block)];
+            game.setPlayerNames(player1Name, names[(int) readVarLong(block)]);
+            if((flags & HAS_TIME_STARTED) != 0){
+                previousStart += unzigzag(readVarLong(block));
+                GregorianCalendar timeStarted = new GregorianCalendar();
+                timeStarted.setTimeInMillis(previousStart);
+                game.setTimeStarted(timeStarted);
+            }
+            if((flags & HAS_TIME_ELAPSED) != 0){
+                GregorianCalendar timeElapsed = new GregorianCalendar();
+                timeElapsed.set(0, 0, 0, 0, 0, 0);
+                timeElapsed.add(Calendar.SECOND, (int) unzigzag(readVarLong(block)));
+                game.setTimeElapsed(timeElapsed);
+            }
+            if((flags & HAS_CLOCKS) != 0){
+                long player1Clock = unzigzag(readVarLong(block));
+                long player2Clock = unzigzag(readVarLong(block));
+                game.setClocks(player1Clock, player2Clock, unzigzag(readVarLong(block)));
+            }
+            int[] moves = null;
+            if((flags & HAS_MOVES) != 0){
+                moves = new int[(int) readVarLong(block)];
+                int previous = 0;
+                for(int i = 0; i < moves.length; i++){
+                    previous += (int) unzigzag(readVarLong(block));
+                    moves[i] = previous;
+                }
+                game.setMoves(moves);
+            }
+            if((flags & BOARD_STORED) != 0){
+                int[][] gameState = new int[size][size];
+                int bits = 0;
+                int shift = 0;
+                for(int i = 0; i < size; i++){
+                    for(int j = 0; j < size; j++){
+                        if(shift == 0){
+                            bits = block.get() & 0xFF;
+                        }
+                        gameState[i][j] = (bits >> shift) & 3;
+                        shift = (shift + 2) % 8;
+                    }
+                }
+                game.setGameState(gameState);
+            } else {
+                byte[] players = new byte[moves.length];
+                int bits = 0;
+                for(int i = 0; i < moves.length; i++){
+                    if((flags & ALTERNATING) != 0){
+                        players[i] = (byte) (i % 2 == 0 ? 1 : 2);
+                    } else {
+                        if(i % 8 == 0){
+                            bits = block.get() & 0xFF;
+                        }
+                        players[i] = (byte) (((bits >> (i % 8)) & 1) + 1);
+                    }
+                }
+                game.setGameState(buildGameState(size, moves, players));
+            }
+            games.add(game);
+        }
+        return games;
+    }
+
+    private static long elapsedSeconds(GregorianCalendar timeElapsed){
+        GregorianCalendar zero = new GregorianCalendar();
+        zero.set(0, 0, 0, 0, 0, 0);
+        zero.set(Calendar.MILLISECOND, 0);
+        return Math.floorDiv(timeElapsed.getTimeInMillis() - zero.getTimeInMillis(), 1000);
+    }
+
+    private static byte[] deflate(byte[] block){
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        deflater.setInput(block);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(block.length / 2 + 64);
+        byte[] buffer = new byte[4096];
+        while(!deflater.finished()){
+            out.write(buffer, 0, deflater.deflate(buffer));
+        }
+        deflater.end();
+        return out.toByteArray();
+    }
+
+    private static ByteBuffer inflate(ByteBuffer compressed) throws IOException {
+        Inflater inflater = new Inflater();
+        inflater.setInput(compressed);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(compressed.remaining() * 4);
+        byte[] buffer = new byte[4096];
+        try {
+            while(!inflater.finished()){
+                int length = inflater.inflate(buffer);
+                if(length == 0 && (inflater.needsInput() || inflater.needsDictionary())){
+                    throw new IOException("Block ends too soon");
+                }
+                out.write(buffer, 0, length);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        } finally {
+            inflater.end();
+        }
+        return ByteBuffer.wrap(out.toByteArray());
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value){
+        while((value & ~0x7FL) != 0){
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(ByteBuffer in){
+        long value = 0;
+        for(int shift = 0; shift < 64; shift += 7){
+            int b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if(b >= 0){
+                return value;
+            }
+        }
+        throw new IllegalStateException("Varint is too long");
+    }
+
+    private static long zigzag(long value){
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value){
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Method which compares the archive with the serialised ArrayList the history used to be stored in, printing the
+     * bytes per game and how long it takes to read one game from each.
+     *
+     * Usage: HistoryArchive [games] [boardSize] [oldHistoryFile]
+     * The defaults are 10000 random games on a 7x7 board. If an old history file is given, its games are used instead.
+     * @param args see above.
+     */
+    @SuppressWarnings("unchecked")
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int boardSize = args.length > 1 ? Integer.parseInt(args[1]) : 7;
+        ArrayList<SimpleGameBoard> games;
+        if(args.length > 2){
+            games = (ArrayList<SimpleGameBoard>) GamePersistence.readObjectNow(new File(args[2]));
+        } else {
+            games = randomGames(count, boardSize, new SplittableRandom(42));
+        }
+        File oldFile = File.createTempFile("history", ".c4g");
+        File archiveFile = File.createTempFile("history", ".c4h");
+        oldFile.deleteOnExit();
+        archiveFile.deleteOnExit();
+        archiveFile.delete();
+
+        GamePersistence.writeObjectNow(oldFile, games);
+        long start = System.nanoTime();
+        try(HistoryArchive archive = new HistoryArchive(archiveFile)){
+            archive.append(games);
+        }
+        long writeNanos = System.nanoTime() - start;
+
+        //every game has to come back exactly as it went in
+        int mismatches = 0;
+        ArrayList<SimpleGameBoard> read;
+        try(HistoryArchive archive = new HistoryArchive(archiveFile)){
+            read = archive.getAll();
+        }
+        for(int i = 0; i < games.size(); i++){
+            if(!describe(games.get(i)).equals(describe(read.get(i)))){
+                mismatches++;
+            }
+        }
+
+        SplittableRandom random = new SplittableRandom(7);
+        int oldReads = 20;
+        start = System.nanoTime();
+        for(int i = 0; i < oldReads; i++){
+            ((ArrayList<SimpleGameBoard>) GamePersistence.readObjectNow(oldFile)).get(random.nextInt(games.size()));
+        }
+        long oldNanos = (System.nanoTime() - start) / oldReads;
+
+        int archiveReads = 2000;
+        long[] archiveNanos = new long[archiveReads];
+        for(int i = 0; i < archiveReads; i++){
+            long before = System.nanoTime();
+            //opened each time, so nothing is cached between reads
+            try(HistoryArchive archive = new HistoryArchive(archiveFile)){
+                archive.getGame(random.nextInt(games.size()));
+            }
+            archiveNanos[i] = System.nanoTime() - before;
+        }
+        Arrays.sort(archiveNanos);
+
+        start = System.nanoTime();
+        GamePersistence.readObjectNow(oldFile);
+        long oldAllNanos = System.nanoTime() - start;
+        start = System.nanoTime();
+        try(HistoryArchive archive = new HistoryArchive(archiveFile)){
+            archive.getAll();
+        }
+        long archiveAllNanos = System.nanoTime() - start;
+
+        System.out.printf("Games: %d%s%n", games.size(), args.length > 2 ? " from " + args[2] : " (random, " + boardSize + "x" + boardSize + ")");
+        System.out.printf("Serialised ArrayList: %d bytes, %.1f bytes per game%n", oldFile.length(), (double) oldFile.length() / games.size());
+        System.out.printf("Archive: %d bytes, %.1f bytes per game (%d blocks, written in %.1f ms)%n", archiveFile.length(),
+                (double) archiveFile.length() / games.size(), (games.size() + GAMES_PER_BLOCK - 1) / GAMES_PER_BLOCK, writeNanos / 1e6);
+        System.out.printf("Reading one game: serialised %.2f ms, archive p50 %.1f us, p99 %.1f us%n", oldNanos / 1e6,
+                archiveNanos[archiveReads / 2] / 1e3, archiveNanos[archiveReads * 99 / 100] / 1e3);
+        System.out.printf("Reading every game: serialised %.1f ms, archive %.1f ms%n", oldAllNanos / 1e6, archiveAllNanos / 1e6);
+        System.out.printf("Games which didn't match: %d%n", mismatches);
+        if(mismatches > 0){
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Method which plays random games, for the benchmarks.
+     * @param count the number of games.
+     * @param boardSize the width/height of the board.
+     * @param random the random number generator.
+     * @return the games.
+     */
+    static ArrayList<SimpleGameBoard> randomGames(int count, int boardSize, SplittableRandom random){
+        String[] names = {"Player 1", "Player 2", "Daniel", "Computer", "Guest"};
+        ArrayList<SimpleGameBoard> games = new ArrayList<>(count);
+        long time = 1_600_000_000_000L;
+        for(int g = 0; g < count; g++){
+            Position position = new Position(boardSize);
+            int[] moves = new int[boardSize * boardSize];
+            int length = 0;
+            int winner = 0;
+            while(winner == 0){
+                int column;
+                do {
+                    column = random.nextInt(boardSize);
+                } while(!position.canPlay(column));
+                boolean won = position.isWinningMove(column);
+                int player = position.getPlayer();
+                position.play(column);
+                moves[length++] = column;
+                winner = won ? player : position.isFull() ? 3 : 0;
+            }
+            int[][] gameState = new int[boardSize][boardSize];
+            for(int i = 0; i < boardSize; i++){
+                for(int j = 0; j < boardSize; j++){
+                    gameState[i][boardSize - 1 - j] = position.getTile(i * boardSize + j);
+                }
+            }
+            SimpleGameBoard game = new SimpleGameBoard(boardSize, gameState);
+            boolean ai = random.nextInt(3) == 0;
+            game.setAIStuff(ai, ai ? random.nextInt(1, 4) : 0);
+            game.setPlayerIcons(random.nextInt(6), random.nextInt(6));
+            game.setPlayerNames(names[random.nextInt(names.length)], ai ? "Computer" : names[random.nextInt(names.length)]);
+            game.setLastAIMove(ai ? moves[length - 1] : -1);
+            game.setWinner(winner);
+            game.setPlayer(position.getPlayer());
+            time += random.nextLong(30_000, 3_600_000);
+            GregorianCalendar timeStarted = new GregorianCalendar();
+            timeStarted.setTimeInMillis(time);
+            game.setTimeStarted(timeStarted);
+            GregorianCalendar timeElapsed = new GregorianCalendar();
+            timeElapsed.set(0, 0, 0, 0, 0, 0);
+            timeElapsed.add(Calendar.SECOND, random.nextInt(20, 900));
+            game.setTimeElapsed(timeElapsed);
+            game.setMoves(Arrays.copyOf(moves, length));
+            games.add(game);
+        }
+        return games;
+    }
+
+    private static String describe(SimpleGameBoard game){
+        return game.getBoardSize() + " " + Arrays.deepToString(game.getGameState()) + " " + game.getAIToggle() + " "
+                + game.getAiDifficulty() + " " + game.getPlayer1Icon() + " " + game.getPlayer2Icon() + " "
+                + game.getPlayer1Name() + " " + game.getPlayer2Name() + " " + game.getLastAIMove() + " "
+                + game.getWinner() + " " + game.getPlayer() + " "
+                + (game.getTimeStarted() == null ? null : game.getTimeStarted().getTimeInMillis()) + " "
+                + (game.getTimeElapsed() == null ? null : elapsedSeconds(game.getTimeElapsed())) + " "
+                + game.getPlayer1Clock() + " " + game.getPlayer2Clock() + " " + game.getClockIncrement() + " "
+                + Arrays.toString(game.getMoves());
+    }
+}
@@ -0,0 +1,241 @@
+package Game;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A class which load tests a GameServer. It opens a number of connections, each of which keeps its share of the
+ * sessions going at once - playing both seats of each game with random moves, and starting a new game whenever one
+ * ends - and then reports how many moves per second the server handled and how long moves took.
+ *
+ * Usage: LoadTestClient [sessions] [connections] [seconds] [boardSize] [aiDepth] [host] [port]
+ * Without a host, a server is started in the same JVM on the loopback address. The defaults are 10000 sessions over
+ * 200 connections for 10 seconds on a 7x7 board without the AI.
+ *
+ * @author Daniel Arefjev
+ */
+public class LoadTestClient implements Runnable {
+    private final String host;
+    private final int port;
+    private final int sessionCount;
+    private final int boardSize;
+    private final int aiDepth;
+    private final CountDownLatch ready;
+    private final CountDownLatch go;
+    private final AtomicLong gamesFinished;
+    private final SplittableRandom random;
+    private volatile long endTime;
+    private long[] latencies = new long[1 << 16];
+    private int moveCount;
+    private IOException failure;
+    private boolean setUp;
+
+    /**
+     * LoadTestClient constructor - each LoadTestClient is one connection.
+     */
+    private LoadTestClient(String host, int port, int sessionCount, int boardSize, int aiDepth, CountDownLatch ready,
+                           CountDownLatch go, AtomicLong gamesFinished, long seed){
+        this.host = host;
+        this.port = port;
+        this.sessionCount = sessionCount;
+        this.boardSize = boardSize;
+        this.aiDepth = aiDepth;
+        this.ready = ready;
+        this.go = go;
+        this.gamesFinished = gamesFinished;
+        this.random = new SplittableRandom(seed);
+    }
+
+    /**
+     * Method which runs on each connection's thread. Every session is created first, so they're all open at once, and
+     * then a move is played in each of them in turn until the time is up.
+     */
+    public void run(){
+        try(Socket socket = new Socket(host, port)){
+            socket.setTcpNoDelay(true);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+            Writer writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII));
+
+            long[] ids = new long[sessionCount];
+            Position[] positions = new Position[sessionCount];
+            for(int i = 0; i < sessionCount; i++){
+                ids[i] = newSession(reader, writer);
+                positions[i] = new Position(boardSize);
+            }
+            ready.countDown();
+            setUp = true;
+            go.await();
+
+            while(System.currentTimeMillis() < endTime){
+                for(int i = 0; i < sessionCount; i++){
+                    Position position = positions[i];
+                    int column;
+                    do {
+                        column = random.nextInt(boardSize);
+                    } while(!position.canPlay(column));
+
+                    long start = System.nanoTime();
+                    String reply = send(reader, writer, "MOVE " + ids[i] + " " + MoveNotation.toLetter(column));
+                    recordLatency(System.nanoTime() - start);
+
+                    //OK STATE id size playerToMove winner moves
+                    String[] parts = reply.split(" ");
+                    if(!parts[0].equals("OK")){
+                        throw new IOException("Move failed: " + reply);
+                    }
+                    if(!parts[5].equals("0")){
+                        gamesFinished.incrementAndGet();
+                        ids[i] = newSession(reader, writer);
+                        positions[i] = new Position(boardSize);
+                    } else {
+                        position.play(column);
+                        if(aiDepth > 0){
+                            String moves = parts[6];
+                            position.play(MoveNotation.toColumn(moves.charAt(moves.length() - 1)));
+                        }
+                    }
+                }
+            }
+            send(reader, writer, "QUIT");
+        } catch (IOException e) {
+            failure = e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            //let the test start even if this connection couldn't set up its sessions
+            if(!setUp){
+                ready.countDown();
+            }
+        }
+    }
+
+    /**
+     * Method which creates a session and, unless it's against the AI, joins it as the other player too.
+     */
+    private long newSession(BufferedReader reader, Writer writer) throws IOException {
+        String reply = send(reader, writer, "CREATE " + boardSize + (aiDepth > 0 ? " " + aiDepth : ""));
+        if(!reply.startsWith("OK CREATED ")){
+            throw new IOException("Create failed: " + reply);
+        }
+        long id = Long.parseLong(reply.split(" ")[2]);
+        if(aiDepth == 0){
+            send(reader, writer, "JOIN " + id);
+        }
+        return id;
+    }
+
+    private static String send(BufferedReader reader, Writer writer, String command) throws IOException {
+        writer.write(command);
+        writer.write('\n');
+        writer.flush();
+        String reply = reader.readLine();
+        if(reply == null){
+            throw new EOFException("Server closed the connection");
+        }
+        return reply;
+    }
+
+    private void recordLatency(long nanos){
+        if(moveCount == latencies.length){
+            latencies = Arrays.copyOf(latencies, moveCount * 2);
+        }
+        latencies[moveCount++] = nanos;
+    }
+
+    /**
+     * Method which runs the load test and prints its results.
+     * @param args see the class comment.
+     */
+    public static void main(String[] args) throws Exception {
+        int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int connections = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        int boardSize = args.length > 3 ? Integer.parseInt(args[3]) : 7;
+        int aiDepth = args.length > 4 ? Integer.parseInt(args[4]) : 0;
+
+        GameServer server = null;
+        String host;
+        int port;
+        if(args.length > 5){
+            host = args[5];
+            port = args.length > 6 ? Integer.parseInt(args[6]) : GameServer.DEFAULT_PORT;
+        } else {
+            server = new GameServer(InetAddress.getLoopbackAddress(), 0);
+            server.start();
+            host = InetAddress.getLoopbackAddress().getHostAddress();
+            port = server.getPort();
+        }
+        connections = Math.max(1, Math.min(connections, sessions));
+
+        CountDownLatch ready = new CountDownLatch(connections);
+        CountDownLatch go = new CountDownLatch(1);
+        AtomicLong gamesFinished = new AtomicLong();
+        List<LoadTestClient> clients = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        long setupStart = System.nanoTime();
+        for(int i = 0; i < connections; i++){
+            int share = sessions / connections + (i < sessions % connections ? 1 : 0);
+            LoadTestClient client = new LoadTestClient(host, port, share, boardSize, aiDepth, ready, go, gamesFinished, i);
+            clients.add(client);
+            Thread thread = new Thread(client, "Load Test " + i);
+            threads.add(thread);
+            thread.start();
+        }
+        ready.await();
+        long setupNanos = System.nanoTime() - setupStart;
+        if(server != null){
+            System.out.println("Sessions open on server: " + server.getSessionCount() + ", connections: " + server.getConnectionCount());
+        }
+        //moves only start once every session is open
+        long runStart = System.nanoTime();
+        long endTime = System.currentTimeMillis() + seconds * 1000L;
+        for(LoadTestClient client : clients){
+            client.endTime = endTime;
+        }
+        go.countDown();
+        for(Thread thread : threads){
+            thread.join();
+        }
+        long runNanos = System.nanoTime() - runStart;
+
+        int total = 0;
+        for(LoadTestClient client : clients){
+            if(client.failure != null){
+                System.out.println("Connection failed: " + client.failure);
+            }
+            total += client.moveCount;
+        }
+        long[] all = new long[total];
+        int offset = 0;
+        for(LoadTestClient client : clients){
+            System.arraycopy(client.latencies, 0, all, offset, client.moveCount);
+            offset += client.moveCount;
+        }
+        Arrays.sort(all);
+
+        System.out.printf("Sessions: %d over %d connections, %dx%d board, %s%n", sessions, connections, boardSize, boardSize,
+                aiDepth > 0 ? "AI depth " + aiDepth : "hotseat");
+        System.out.printf("Set up: %.1f s%n", setupNanos / 1e9);
+        System.out.printf("Moves: %d in %.1f s (%.0f moves/s), games finished: %d%n", total, runNanos / 1e9,
+                total / (runNanos / 1e9), gamesFinished.get());
+        if(total > 0){
+            System.out.printf("Move latency: p50 %.3f ms, p99 %.3f ms, p99.9 %.3f ms, max %.3f ms%n",
+                    percentile(all, 0.50), percentile(all, 0.99), percentile(all, 0.999), all[total - 1] / 1e6);
+        }
+        if(server != null){
+            server.close();
+        }
+    }
+
+    private static double percentile(long[] sorted, double fraction){
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * fraction))] / 1e6;
+    }
+}
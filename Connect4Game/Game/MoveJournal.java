@@ -0,0 +1,352 @@
+package Game;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+
+/**
+ * An instantiable class which defines a write-ahead journal of the moves in a game, so that a game can be recovered if
+ * the program crashes or is killed before it's saved.
+ *
+ * A journal file starts with a serialised SimpleGameBoard of the game as it was when the journal was created, followed
+ * by one fixed size record per move. append() only copies the record into a buffer and wakes up the writer thread, so
+ * it takes microseconds on the Swing thread. The writer thread writes everything that has built up since its last
+ * write in one go (a "group commit") using a FileChannel, and then forces it to disk depending on the sync policy.
+ *
+ * Each record is 8 bytes: the column in the low 5 bits of the first byte (with the top bit set if Player 2 moved), a
+ * check byte, the game time in seconds and the time left on the mover's clock in milliseconds (4 bytes). The game time
+ * is 18 bits - the 2 bytes after the check byte, with its top 2 bits in bits 5 and 6 of the first byte - so it's exact
+ * for about 72 hours and stays at MAX_SECONDS after that. Recovery stops at the first record whose check byte doesn't
+ * match, so a record which was only half written when the program died is ignored. A recovered game is opened like a
+ * loaded save, which starts a new journal, so the old journal can then be deleted. If the program died while the AI
+ * was thinking, the journal ends on the human's move and the recovered game has the AI to move, so opening it starts
+ * the AI's move again.
+ *
+ * @author Daniel Arefjev
+ */
+public class MoveJournal implements Runnable {
+    /**
+     * Journal records are written by the OS whenever it decides to.
+     */
+    public static final int SYNC_NONE = 0;
+    /**
+     * Journal records are forced to disk at most once every SYNC_INTERVAL_MILLIS.
+     */
+    public static final int SYNC_INTERVAL = 1;
+    /**
+     * Journal records are forced to disk after every group commit.
+     */
+    public static final int SYNC_ALWAYS = 2;
+
+    public static final long SYNC_INTERVAL_MILLIS = 200;
+    public static final String FILE_EXTENSION = ".c4j";
+
+    private static final int MAGIC = 0x43344A31; //"C4J1"
+    private static final int RECORD_SIZE = 8;
+    private static final int CHECK = 0xC4;
+    private static final int MAX_SECONDS = 0x3FFFF;
+
+    private final File file;
+    private final FileChannel channel;
+    private final int syncPolicy;
+    private final Thread writer;
+    private ByteBuffer pending = ByteBuffer.allocate(RECORD_SIZE * 64);
+    private ByteBuffer writing = ByteBuffer.allocate(RECORD_SIZE * 64);
+    private boolean closed;
+    private boolean dirty;
+    private long lastSync;
+    private IOException failure;
+
+    /**
+     * Private constructor - journals are made with create().
+     */
+    private MoveJournal(File file, FileChannel channel, int syncPolicy){
+        this.file = file;
+        this.channel = channel;
+        this.syncPolicy = syncPolicy;
+        this.writer = new Thread(this, "Move Journal");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Method to get the sync policy set with the c4.journal.sync system property ("none", "interval" or "always").
+     * @return one of the SYNC_ constants, SYNC_ALWAYS by default.
+     */
+    public static int getDefaultSyncPolicy(){
+        String policy = System.getProperty("c4.journal.sync", "always");
+        if(policy.equals("none")){
+            return SYNC_NONE;
+        } else if(policy.equals("interval")){
+            return SYNC_INTERVAL;
+        }
+        return SYNC_ALWAYS;
+    }
+
+    /**
+     * Method which creates a new journal file for a game, and writes the game as it is now at the start of it. The
+     * header is written and forced to disk by the caller, since it's only written once per game, while moves are
+     * written by the writer thread.
+     * @param directory the directory to create the journal in.
+     * @param game the game as it is when the journal is created.
+     * @param syncPolicy one of the SYNC_ constants.
+     * @return the new journal.
+     */
+    public static MoveJournal create(File directory, SimpleGameBoard game, int syncPolicy) throws IOException {
+        if(!directory.isDirectory() && !directory.mkdirs()){
+            throw new IOException("Could not create journal directory " + directory);
+        }
+        //a temp file gets a unique name, so games started in the same millisecond don't collide
+        File file = Files.createTempFile(directory.toPath(), "game_", FILE_EXTENSION).toFile();
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        ObjectOutputStream objectOutputStream = new ObjectOutputStream(header);
+        objectOutputStream.writeObject(game);
+        objectOutputStream.close();
+
+        //the header is forced to disk before any moves can be appended, so a crash can only tear the move records
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate(8 + header.size());
+            buffer.putInt(MAGIC).putInt(header.size()).put(header.toByteArray()).flip();
+            while(buffer.hasRemaining()){
+                channel.write(buffer);
+            }
+            channel.force(true);
+        } catch (IOException e) {
+            channel.close();
+            file.delete();
+            throw e;
+        }
+        return new MoveJournal(file, channel, syncPolicy);
+    }
+
+    /**
+     * Method to find journals which were left behind by games that didn't finish.
+     * @param directory the journal directory.
+     * @return the journal files, newest first.
+     */
+    public static File[] findUnfinished(File directory){
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(FILE_EXTENSION));
+        if(files == null){
+            return new File[0];
+        }
+        Arrays.sort(files, (a, b) -> Long.compare(b.lastModified(), a.lastModified()));
+        return files;
+    }
+
+    /**
+     * Method to get the file a MoveJournal object is writing to.
+     * @return the journal file.
+     */
+    public File getFile(){
+        return file;
+    }
+
+    /**
+     * Method which adds a move to the journal. The record is written to disk on the writer thread.
+     * @param column the column the tile was added to.
+     * @param player the player who added the tile.
+     * @param elapsedSeconds how long the game has been going.
+     * @param clockMillis the time left on the mover's clock, or 0 if the game isn't timed.
+     */
+    public synchronized void append(int column, int player, int elapsedSeconds, long clockMillis){
+        if(closed){
+            return;
+        }
+        ensureCapacity(RECORD_SIZE);
+        int seconds = Math.max(0, Math.min(elapsedSeconds, MAX_SECONDS));
+        int move = column | (seconds >>> 16) << 5 | (player - 1) << 7;
+        pending.put((byte) move);
+        pending.put((byte) (move ^ CHECK));
+        pending.putShort((short) seconds);
+        pending.putInt((int) Math.max(0, Math.min(clockMillis, Integer.MAX_VALUE)));
+        notifyAll();
+    }
+
+    /**
+     * Method which makes sure the pending buffer has room for a number of bytes. Must be called while synchronized.
+     */
+    private void ensureCapacity(int bytes){
+        if(pending.remaining() < bytes){
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + bytes));
+            pending.flip();
+            bigger.put(pending);
+            pending = bigger;
+        }
+    }
+
+    /**
+     * Method which writes any pending moves, stops the writer thread and closes the file, but keeps it on disk so the
+     * game can be recovered (e.g when the program is closed mid-game).
+     */
+    public void close() throws IOException {
+        synchronized(this){
+            if(closed){
+                return;
+            }
+            closed = true;
+            notifyAll();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+        if(failure != null){
+            throw failure;
+        }
+    }
+
+    /**
+     * Method which is called when the game ends normally - the journal is closed and deleted, since the game is now
+     * in the history file instead.
+     */
+    public void finish() throws IOException {
+        close();
+        if(!file.delete()){
+            throw new IOException("Could not delete journal " + file);
+        }
+    }
+
+    /**
+     * Method which runs on the writer thread. Waits for records, swaps the pending buffer with the writing buffer and
+     * writes the whole batch, syncing according to the policy.
+     */
+    public void run(){
+        while(true){
+            boolean finished;
+            synchronized(this){
+                while(pending.position() == 0 && !closed && !(dirty && syncDue())){
+                    try {
+                        if(dirty){
+                            wait(Math.max(1, SYNC_INTERVAL_MILLIS - (System.currentTimeMillis() - lastSync)));
+                        } else {
+                            wait();
+                        }
+                    } catch (InterruptedException e) {
+                        closed = true;
+                    }
+                }
+                ByteBuffer swap = writing;
+                writing = pending;
+                pending = swap;
+                pending.clear();
+                finished = closed;
+            }
+
+            try {
+                writing.flip();
+                while(writing.hasRemaining()){
+                    channel.write(writing);
+                    dirty = true;
+                }
+                writing.clear();
+                if(dirty && (syncPolicy == SYNC_ALWAYS || (syncPolicy == SYNC_INTERVAL && (syncDue() || finished)))){
+                    channel.force(false);
+                    dirty = false;
+                    lastSync = System.currentTimeMillis();
+                }
+            } catch (IOException e) {
+                failure = e;
+                return;
+            }
+            if(finished){
+                return;
+            }
+        }
+    }
+
+    private boolean syncDue(){
+        return syncPolicy == SYNC_INTERVAL && System.currentTimeMillis() - lastSync >= SYNC_INTERVAL_MILLIS;
+    }
+
+    //recovery
+
+    /**
+     * Method which reads a journal file and replays its moves into a GameBoard, returning the game as it was at the
+     * last move which made it to disk.
+     * @param file the journal file.
+     * @return the recovered game.
+     */
+    public static SimpleGameBoard recover(File file) throws IOException, ClassNotFoundException {
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)){
+            ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+            while(buffer.hasRemaining() && channel.read(buffer) >= 0){
+                //keep reading
+            }
+            buffer.flip();
+            if(buffer.remaining() < 8 || buffer.getInt() != MAGIC){
+                throw new IOException("Not a journal file: " + file);
+            }
+            int headerSize = buffer.getInt();
+            if(headerSize < 0 || headerSize > buffer.remaining()){
+                throw new IOException("Truncated journal: " + file);
+            }
+            byte[] header = new byte[headerSize];
+            buffer.get(header);
+            Object object = new ObjectInputStream(new ByteArrayInputStream(header)).readObject();
+            if(!(object instanceof SimpleGameBoard)){
+                throw new IOException("Not a journal file: " + file);
+            }
+            SimpleGameBoard game = (SimpleGameBoard) object;
+
+            int boardSize = game.getBoardSize();
+            GameBoard gameBoard = new GameBoard(boardSize);
+            for(int i = 0; i < boardSize; i++){
+                for(int j = 0; j < boardSize; j++){
+                    gameBoard.setTileState(i, j, game.getGameState()[i][j]);
+                }
+            }
+            gameBoard.setPlayer(game.getPlayer());
+            if(game.getMoves() != null){
+                gameBoard.setMoves(game.getMoves());
+            }
+
+            long[] clocks = {0, game.getPlayer1Clock(), game.getPlayer2Clock()};
+            int elapsedSeconds = -1;
+            while(buffer.remaining() >= RECORD_SIZE){
+                int move = buffer.get() & 0xFF;
+                int check = buffer.get() & 0xFF;
+                int seconds = (move >> 5 & 0x3) << 16 | buffer.getShort() & 0xFFFF;
+                int clock = buffer.getInt();
+                int column = move & 0x1F;
+                if(check != (move ^ CHECK) || column >= boardSize || gameBoard.getLowestAvailableTile(column) < 0){
+                    break;
+                }
+                //the mover is stored rather than assumed, since a player can lose a turn (e.g the AI picking a full column)
+                gameBoard.setPlayer((move >> 7) + 1);
+                if(clocks[gameBoard.getPlayer()] > 0){
+                    clocks[gameBoard.getPlayer()] = clock;
+                }
+                gameBoard.addTile(column);
+                gameBoard.switchPlayer();
+                elapsedSeconds = seconds;
+            }
+
+            int[][] gameState = new int[boardSize][boardSize];
+            for(int i = 0; i < boardSize; i++){
+                for(int j = 0; j < boardSize; j++){
+                    gameState[i][j] = gameBoard.getTileState(i, j);
+                }
+            }
+            game.setGameState(gameState);
+            game.setPlayer(gameBoard.getPlayer());
+            game.setMoves(gameBoard.getMoves());
+            game.setClocks(clocks[1], clocks[2], game.getClockIncrement());
+            if(elapsedSeconds >= 0){
+                GregorianCalendar timeElapsed = new GregorianCalendar();
+                timeElapsed.set(0, 0, 0, 0, 0, 0);
+                timeElapsed.add(Calendar.SECOND, elapsedSeconds);
+                game.setTimeElapsed(timeElapsed);
+            }
+            return game;
+        }
+    }
+}
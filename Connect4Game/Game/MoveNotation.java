@@ -0,0 +1,115 @@
+package Game;
+
+/**
+ * A static class which converts between positions and move strings, so games can be sent over a network or typed in
+ * by hand. Each move is written as the letter of its column, where 'a' is the leftmost column (so boards up to 24
+ * wide only need a..x). For example "ddce" is four moves: two in the fourth column, then the third and the fifth.
+ * An empty game is written as "-".
+ *
+ * @author Daniel Arefjev
+ */
+public class MoveNotation {
+    public static final String EMPTY = "-";
+
+    /**
+     * Private constructor - MoveNotation only has static methods.
+     */
+    private MoveNotation(){
+    }
+
+    /**
+     * Method to get the letter of a column.
+     * @param column the column, starting from 0.
+     * @return the column's letter.
+     */
+    public static char toLetter(int column){
+        return (char) ('a' + column);
+    }
+
+    /**
+     * Method to get the column of a letter. Upper case letters are accepted too.
+     * @param letter the column's letter.
+     * @return the column, or -1 if the character isn't a letter.
+     */
+    public static int toColumn(char letter){
+        if(letter >= 'a' && letter <= 'z'){
+            return letter - 'a';
+        } else if(letter >= 'A' && letter <= 'Z'){
+            return letter - 'A';
+        }
+        return -1;
+    }
+
+    /**
+     * Method which writes the moves of a position as a move string. Moves whose column isn't known (e.g tiles
+     * converted from a GameBoard) can't be written, so they're skipped.
+     * @param position the position to write.
+     * @return the move string.
+     */
+    public static String format(Position position){
+        StringBuilder builder = new StringBuilder(Math.max(position.getMoveCount(), 1));
+        format(position, builder);
+        return builder.toString();
+    }
+
+    /**
+     * Method which writes the moves of a position onto the end of a StringBuilder, so lots of positions can be written
+     * without creating a String for each of them.
+     * @param position the position to write.
+     * @param builder the builder to append to.
+     */
+    public static void format(Position position, StringBuilder builder){
+        int moveCount = position.getMoveCount();
+        if(moveCount == 0){
+            builder.append(EMPTY);
+            return;
+        }
+        for(int i = 0; i < moveCount; i++){
+            int column = position.getMove(i);
+            if(column >= 0){
+                builder.append(toLetter(column));
+            }
+        }
+    }
+
+    /**
+     * Method which plays a move string from the start of a game.
+     * @param moves the move string.
+     * @param size the width/height of the board.
+     * @return the position after the moves.
+     * @throws IllegalArgumentException if a move isn't a column on the board, is in a full column, or is played after
+     * the game has already been won.
+     */
+    public static Position parse(String moves, int size){
+        Position position = new Position(size);
+        parse(moves, 0, moves.length(), position);
+        return position;
+    }
+
+    /**
+     * Method which plays part of a string of characters as a move string from the start of a game, reusing a Position
+     * rather than creating one, so lots of positions can be read without creating a String or Position for each.
+     * @param moves the characters containing the move string, e.g a whole line of input.
+     * @param start the index of the first move.
+     * @param end the index after the last move.
+     * @param position the position to play the moves on, which is reset first.
+     * @throws IllegalArgumentException if a move isn't a column on the board, is in a full column, or is played after
+     * the game has already been won.
+     */
+    public static void parse(CharSequence moves, int start, int end, Position position){
+        position.reset();
+        if(end - start == 1 && moves.charAt(start) == EMPTY.charAt(0)){
+            return;
+        }
+        for(int i = start; i < end; i++){
+            int column = toColumn(moves.charAt(i));
+            if(!position.canPlay(column)){
+                throw new IllegalArgumentException("Illegal move '" + moves.charAt(i) + "' at " + (i - start + 1));
+            }
+            if(position.lastMoveWon()){
+                throw new IllegalArgumentException("Move " + (i - start + 1) + " is after the end of the game");
+            }
+            position.play(column);
+        }
+    }
+}
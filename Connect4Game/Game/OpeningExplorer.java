@@ -0,0 +1,417 @@
+package Game;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * An instantiable class which defines the opening explorer - how every position reached in the first moves of the
+ * games in the history turned out, so the UI can show how often each column has been played from the current board
+ * and how those games ended.
+ *
+ * The positions are kept in a hash table in a memory-mapped file: each entry is the position's hash followed by the
+ * number of games from it which Player 1 won, which were drawn and which Player 2 won. Looking up a column is looking
+ * up the position after it, so the stats of a column include games which reached the same position by a different
+ * move order, or its mirror image (positions are stored under their canonical hash). The table is doubled (rewritten
+ * to a temporary file which is then moved over it) when it's 3/4 full.
+ *
+ * Games are added one at a time as they're saved to the history. Games whose moves weren't all recorded (e.g games
+ * loaded from saves made before moves were recorded) aren't added, as where they started from isn't known.
+ *
+ * @author Daniel Arefjev
+ */
+public class OpeningExplorer implements Closeable {
+    /**
+     * Positions after more than this many moves aren't added.
+     */
+    public static final int MAX_PLIES = 40;
+
+    private static final int MAGIC = 0x4334454F;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 24;
+    private static final int ENTRY_BYTES = 20;
+    private static final int MIN_CAPACITY = 1 << 12;
+
+    private final File file;
+    private FileChannel channel;
+    private MappedByteBuffer table;
+    private int capacity;
+    private int count;
+    private long games;
+    //the position getColumnStats() plays each column on, so looking up every column doesn't copy the board
+    private Position scratch;
+
+    /**
+     * OpeningExplorer 1 argument constructor, which opens (or creates) an explorer file.
+     * @param file the file.
+     * @throws IOException if the file can't be opened, or isn't an explorer file.
+     */
+    public OpeningExplorer(File file) throws IOException {
+        this.file = file;
+        open();
+    }
+
+    private void open() throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if(channel.size() == 0){
+            capacity = MIN_CAPACITY;
+            count = 0;
+            games = 0;
+            map();
+            writeHeader();
+            return;
+        }
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+        capacity = header.getInt(8);
+        if(header.getInt(0) != MAGIC || header.getInt(4) != VERSION || Integer.bitCount(capacity) != 1
+                || channel.size() != HEADER_BYTES + (long) capacity * ENTRY_BYTES){
+            channel.close();
+            throw new IOException(file + " isn't an opening explorer file");
+        }
+        count = header.getInt(12);
+        games = header.getLong(16);
+        map();
+    }
+
+    private void map() throws IOException {
+        table = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + (long) capacity * ENTRY_BYTES);
+    }
+
+    private void writeHeader(){
+        table.putInt(0, MAGIC);
+        table.putInt(4, VERSION);
+        table.putInt(8, capacity);
+        table.putInt(12, count);
+        table.putLong(16, games);
+    }
+
+    /**
+     * Method to get the number of games which have been added.
+     * @return the number of games.
+     */
+    public synchronized long getGameCount(){
+        return games;
+    }
+
+    /**
+     * Method to get the number of positions stored.
+     * @return the number of positions.
+     */
+    public synchronized int getPositionCount(){
+        return count;
+    }
+
+    /**
+     * Method to get the length of the explorer file.
+     * @return the length in bytes.
+     */
+    public synchronized long getFileLength(){
+        return HEADER_BYTES + (long) capacity * ENTRY_BYTES;
+    }
+
+    //lookup
+
+    /**
+     * Method to get how the games which reached a position ended.
+     * @param position the position.
+     * @return {Player 1 wins, draws, Player 2 wins}, or null if no game has reached the position.
+     */
+    public synchronized int[] getStats(Position position){
+        int slot = find(keyOf(position));
+        if(table.getLong(offsetOf(slot)) == 0){
+            return null;
+        }
+        int offset = offsetOf(slot);
+        return new int[]{table.getInt(offset + 8), table.getInt(offset + 12), table.getInt(offset + 16)};
+    }
+
+    /**
+     * Method to get how the games which played each column from a position ended.
+     * @param position the position.
+     * @return for each column, {Player 1 wins, draws, Player 2 wins}, or null if no game has played it.
+     */
+    public synchronized int[][] getColumnStats(Position position){
+        int size = position.getSize();
+        int[][] stats = new int[size][];
+        if(scratch == null || scratch.getSize() != size){
+            scratch = new Position(size);
+        }
+        scratch.copyFrom(position);
+        for(int column = 0; column < size; column++){
+            if(scratch.canPlay(column)){
+                scratch.play(column);
+                stats[column] = getStats(scratch);
+                scratch.undo();
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Method to get the key a position is stored under, which is the same for its mirror image. Hashes don't include the
+     * board size (and the empty board hashes to 0 on every size), so the size is mixed in, which also keeps 0 free to
+     * mark empty slots.
+     */
+    private static long keyOf(Position position){
+        return position.getCanonicalHash() ^ (position.getSize() * 0x9E3779B97F4A7C15L);
+    }
+
+    private static int offsetOf(int slot){
+        return HEADER_BYTES + slot * ENTRY_BYTES;
+    }
+
+    /**
+     * Method to find the slot a key is in, or the empty slot it would go in.
+     */
+    private int find(long key){
+        int mask = capacity - 1;
+        int slot = (int) (key ^ (key >>> 32)) & mask;
+        while(true){
+            long stored = table.getLong(offsetOf(slot));
+            if(stored == 0 || stored == key){
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    //adding games
+
+    /**
+     * Method which adds a finished game. Games which weren't finished, or whose moves weren't all recorded, are
+     * skipped.
+     * @param game the game.
+     * @return true if the game was added.
+     * @throws IOException if the table needed to grow and couldn't be.
+     */
+    public synchronized boolean addGame(SimpleGameBoard game) throws IOException {
+        int[] moves = game.getMoves();
+        int[] players = getPlayers(game);
+        int winner = game.getWinner();
+        if(players == null || winner < 1 || winner > 3){
+            return false;
+        }
+        //the result goes in the first count for Player 1 wins, the second for draws and the third for Player 2 wins
+        int result = winner == 1 ? 0 : winner == 3 ? 1 : 2;
+        Position position = new Position(game.getBoardSize());
+        int plies = Math.min(moves.length, MAX_PLIES);
+        for(int i = 0; i <= plies; i++){
+            if(i > 0){
+                //positions are stored with the other player to move, as they're looked up after playing a column
+                position.setPlayer(players[i - 1]);
+                position.play(moves[i - 1]);
+            }
+            if(count + 1 > capacity / 4 * 3){
+                grow();
+            }
+            int slot = find(keyOf(position));
+            int offset = offsetOf(slot);
+            if(table.getLong(offset) == 0){
+                table.putLong(offset, keyOf(position));
+                count++;
+            }
+            table.putInt(offset + 8 + result * 4, table.getInt(offset + 8 + result * 4) + 1);
+        }
+        games++;
+        writeHeader();
+        return true;
+    }
+
+    /**
+     * Method which adds every game in a list, e.g when the explorer is first built from the history.
+     * @param history the games.
+     * @return the number of games added.
+     * @throws IOException if the table needed to grow and couldn't be.
+     */
+    public synchronized int addGames(List<SimpleGameBoard> history) throws IOException {
+        int added = 0;
+        for(SimpleGameBoard game : history){
+            if(addGame(game)){
+                added++;
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Method to work out which player played each move of a game, by taking the moves back off its final board (players
+     * can lose their turn when their clock runs out, so it can't be assumed they took turns).
+     * @return the player of each move, or null if the moves don't account for every tile on the board.
+     */
+    private static int[] getPlayers(SimpleGameBoard game){
+        int[] moves = game.getMoves();
+        int[][] gameState = game.getGameState();
+        int size = game.getBoardSize();
+        if(moves == null || gameState == null || gameState.length != size){
+            return null;
+        }
+        int[] heights = new int[size];
+        int tiles = 0;
+        for(int i = 0; i < size; i++){
+            for(int j = size - 1; j >= 0 && gameState[i][j] != 0; j--){
+                heights[i]++;
+                tiles++;
+            }
+        }
+        if(tiles != moves.length){
+            return null;
+        }
+        int[] players = new int[moves.length];
+        for(int i = moves.length - 1; i >= 0; i--){
+            int column = moves[i];
+            if(column < 0 || column >= size || heights[column] == 0){
+                return null;
+            }
+            //row 0 is the top of the board in SimpleGameBoard
+            players[i] = gameState[column][size - heights[column]--];
+        }
+        return players;
+    }
+
+    /**
+     * Method which doubles the size of the table, by writing a new file and moving it over the old one.
+     */
+    private void grow() throws IOException {
+        File directory = file.getAbsoluteFile().getParentFile();
+        File temporary = File.createTempFile(file.getName(), ".tmp", directory);
+        int newCapacity = capacity * 2;
+        try(FileChannel out = FileChannel.open(temporary.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)){
+            MappedByteBuffer newTable = out.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + (long) newCapacity * ENTRY_BYTES);
+            int mask = newCapacity - 1;
+            for(int slot = 0; slot < capacity; slot++){
+                int offset = offsetOf(slot);
+                long key = table.getLong(offset);
+                if(key == 0){
+                    continue;
+                }
+                int newSlot = (int) (key ^ (key >>> 32)) & mask;
+                while(newTable.getLong(offsetOf(newSlot)) != 0){
+                    newSlot = (newSlot + 1) & mask;
+                }
+                int newOffset = offsetOf(newSlot);
+                newTable.putLong(newOffset, key);
+                newTable.putInt(newOffset + 8, table.getInt(offset + 8));
+                newTable.putInt(newOffset + 12, table.getInt(offset + 12));
+                newTable.putInt(newOffset + 16, table.getInt(offset + 16));
+            }
+            newTable.putInt(0, MAGIC);
+            newTable.putInt(4, VERSION);
+            newTable.putInt(8, newCapacity);
+            newTable.putInt(12, count);
+            newTable.putLong(16, games);
+            newTable.force();
+        } catch (IOException e) {
+            temporary.delete();
+            throw e;
+        }
+        table.force();
+        channel.close();
+        try {
+            Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        open();
+    }
+
+    /**
+     * Method which writes any changes to disk and closes the explorer file.
+     */
+    public synchronized void close() throws IOException {
+        table.force();
+        channel.close();
+    }
+
+    /**
+     * Method which builds an explorer from a history and times looking up the stats of every column, which the UI does
+     * every time the board changes.
+     *
+     * Usage: OpeningExplorer [games] [boardSize] [historyFile]
+     * The defaults are 100000 random games on a 7x7 board. If a history archive is given, its games are used instead.
+     * @param args see above.
+     */
+    public static void main(String[] args) throws IOException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int boardSize = args.length > 1 ? Integer.parseInt(args[1]) : 7;
+        ArrayList<SimpleGameBoard> games;
+        if(args.length > 2){
+            try(HistoryArchive archive = new HistoryArchive(new File(args[2]))){
+                games = archive.getAll();
+            }
+        } else {
+            games = HistoryArchive.randomGames(count, boardSize, new SplittableRandom(42));
+        }
+        File file = File.createTempFile("explorer", ".c4o");
+        file.deleteOnExit();
+        file.delete();
+
+        long start = System.nanoTime();
+        int added;
+        try(OpeningExplorer explorer = new OpeningExplorer(file)){
+            added = explorer.addGames(games);
+        }
+        long buildNanos = System.nanoTime() - start;
+
+        try(OpeningExplorer explorer = new OpeningExplorer(file)){
+            //every game added has to be counted under the empty board it started from
+            int[] results = new int[3];
+            for(SimpleGameBoard game : games){
+                if(game.getWinner() >= 1 && game.getWinner() <= 3){
+                    results[game.getWinner() == 1 ? 0 : game.getWinner() == 3 ? 1 : 2]++;
+                }
+            }
+            int[] root = explorer.getStats(new Position(games.get(0).getBoardSize()));
+            boolean rootMatches = added == games.size() && Arrays.equals(root, results);
+
+            //the positions the games went through, so most lookups find something
+            SplittableRandom random = new SplittableRandom(7);
+            int lookups = 100_000;
+            Position[] positions = new Position[1000];
+            for(int i = 0; i < positions.length; i++){
+                SimpleGameBoard game = games.get(random.nextInt(games.size()));
+                positions[i] = new Position(game.getBoardSize());
+                int plies = random.nextInt(Math.min(game.getMoves().length, 12));
+                for(int j = 0; j < plies; j++){
+                    positions[i].play(game.getMoves()[j]);
+                }
+            }
+            for(int i = 0; i < lookups; i++){
+                explorer.getColumnStats(positions[i % positions.length]);
+            }
+            long[] nanos = new long[lookups];
+            int found = 0;
+            for(int i = 0; i < lookups; i++){
+                long before = System.nanoTime();
+                int[][] stats = explorer.getColumnStats(positions[i % positions.length]);
+                nanos[i] = System.nanoTime() - before;
+                for(int[] column : stats){
+                    if(column != null){
+                        found++;
+                    }
+                }
+            }
+            Arrays.sort(nanos);
+
+            System.out.printf("Games: %d%s, %d added%n", games.size(), args.length > 2 ? " from " + args[2]
+                    : " (random, " + boardSize + "x" + boardSize + ")", added);
+            System.out.printf("Built in %.1f ms: %d positions, %d bytes (%.1f bytes per position)%n", buildNanos / 1e6,
+                    explorer.getPositionCount(), explorer.getFileLength(), (double) explorer.getFileLength() / explorer.getPositionCount());
+            System.out.printf("Stats of every column: p50 %.1f us, p99 %.1f us, max %.1f us (%.1f columns found per lookup)%n",
+                    nanos[lookups / 2] / 1e3, nanos[lookups * 99 / 100] / 1e3, nanos[lookups - 1] / 1e3, (double) found / lookups);
+            System.out.printf("Empty board stats: %s, expected %s%n", Arrays.toString(root), Arrays.toString(results));
+            if(!rootMatches){
+                System.exit(1);
+            }
+        }
+    }
+}
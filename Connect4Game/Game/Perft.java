@@ -0,0 +1,277 @@
+package Game;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A class which counts every position a number of moves ahead of a position ("perft", as chess programs call it), to
+ * check that the different ways the game's rules are written agree with each other and to measure how fast a tree of
+ * moves can be walked.
+ *
+ * The count can be made by walking a Position (play(), isWinningMove(), undo()) on one thread or split between
+ * threads, or by walking a GameBoard (getLowestAvailableTile(), addTile(), checkForWinner(), removeTile()). A game
+ * which ends before the depth is reached (with a win, or a draw once neither player can make a line of four) counts as
+ * an ending rather than a leaf, and nothing is played after it, so leaves are the positions exactly depth moves ahead,
+ * including games which end on the last move.
+ *
+ * REFERENCE holds counts for every board size, which check() compares all the walks against, so any change to the
+ * rules code which changes them is caught.
+ *
+ * @author Daniel Arefjev
+ */
+public class Perft {
+    /**
+     * Counts from the empty board: {size, depth, leaves, wins, draws}, where wins and draws are the games which end
+     * on or before the last move.
+     */
+    static final long[][] REFERENCE = {
+            {4, 8, 57504L, 564L, 0L},
+            {4, 16, 13326790L, 17312364L, 24073648L},
+            {5, 8, 380860L, 4060L, 0L},
+            {5, 10, 8945804L, 212004L, 0L},
+            {6, 7, 279930L, 5070L, 0L},
+            {6, 10, 57111174L, 1221468L, 0L},
+            {7, 8, 5673570L, 57462L, 0L},
+            {7, 9, 39403644L, 1144344L, 0L},
+            {8, 7, 2097152L, 27944L, 0L},
+            {10, 7, 10000000L, 91962L, 0L},
+            {16, 5, 1048576L, 0L, 0L},
+            {24, 4, 331776L, 0L, 0L}
+    };
+
+    /**
+     * Method to count the positions a number of moves ahead of a position, on one thread.
+     * @param position the position to count from. It's changed while counting, but put back afterwards.
+     * @param depth the number of moves ahead.
+     * @param endings {wins, draws}, which the games ending on or before the last move are added to.
+     * @return the number of leaves.
+     */
+    public static long count(Position position, int depth, long[] endings){
+        if(position.lastMoveWon() || position.isDeadDraw()){
+            return depth == 0 ? 1 : 0;
+        }
+        return walk(position, depth, endings);
+    }
+
+    private static long walk(Position position, int depth, long[] endings){
+        if(depth == 0){
+            return 1;
+        }
+        long leaves = 0;
+        for(int column = 0; column < position.getSize(); column++){
+            if(!position.canPlay(column)){
+                continue;
+            }
+            if(position.isWinningMove(column)){
+                endings[0]++;
+                if(depth == 1){
+                    leaves++;
+                }
+                continue;
+            }
+            position.play(column);
+            if(position.isDeadDraw()){
+                endings[1]++;
+                if(depth == 1){
+                    leaves++;
+                }
+            } else {
+                leaves += walk(position, depth - 1, endings);
+            }
+            position.undo();
+        }
+        return leaves;
+    }
+
+    /**
+     * Method to count the positions a number of moves ahead of a position, with the positions up to 2 moves ahead
+     * shared out between threads.
+     * @param position the position to count from. It isn't changed.
+     * @param depth the number of moves ahead.
+     * @param endings {wins, draws}, which the games ending on or before the last move are added to.
+     * @param threads the number of threads.
+     * @return the number of leaves.
+     */
+    public static long countParallel(Position position, int depth, long[] endings, int threads) throws InterruptedException, ExecutionException {
+        if(depth < 2 || position.lastMoveWon() || position.isDeadDraw()){
+            return count(position, depth, endings);
+        }
+        //games which end before the split can't be leaves, as the split is always short of the full depth
+        int splitPlies = depth >= 3 ? 2 : 1;
+        List<Position> roots = new ArrayList<>();
+        split(new Position(position), splitPlies, roots, endings);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<long[]>> futures = new ArrayList<>();
+            for(Position root : roots){
+                futures.add(executor.submit(() -> {
+                    long[] partial = new long[3];
+                    partial[2] = walk(root, depth - splitPlies, partial);
+                    return partial;
+                }));
+            }
+            long leaves = 0;
+            for(Future<long[]> future : futures){
+                long[] partial = future.get();
+                endings[0] += partial[0];
+                endings[1] += partial[1];
+                leaves += partial[2];
+            }
+            return leaves;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static void split(Position position, int plies, List<Position> roots, long[] endings){
+        if(plies == 0){
+            roots.add(new Position(position));
+            return;
+        }
+        for(int column = 0; column < position.getSize(); column++){
+            if(!position.canPlay(column)){
+                continue;
+            }
+            if(position.isWinningMove(column)){
+                endings[0]++;
+                continue;
+            }
+            position.play(column);
+            if(position.isDeadDraw()){
+                endings[1]++;
+            } else {
+                split(position, plies - 1, roots, endings);
+            }
+            position.undo();
+        }
+    }
+
+    /**
+     * Method to count the positions a number of moves ahead of a GameBoard, using the same methods the game itself
+     * does to play moves and check for a winner.
+     * @param gameBoard the board to count from, which must not be over. It's changed while counting, but put back
+     * afterwards.
+     * @param depth the number of moves ahead.
+     * @param endings {wins, draws}, which the games ending on or before the last move are added to.
+     * @return the number of leaves.
+     */
+    public static long count(GameBoard gameBoard, int depth, long[] endings){
+        if(depth == 0){
+            return 1;
+        }
+        long leaves = 0;
+        for(int column = 0; column < gameBoard.getSize(); column++){
+            if(gameBoard.getLowestAvailableTile(column) == -1){
+                continue;
+            }
+            gameBoard.addTile(column);
+            int winner = gameBoard.checkForWinner();
+            if(winner != 0){
+                gameBoard.setWinner(0);
+                endings[winner == 3 ? 1 : 0]++;
+                if(depth == 1){
+                    leaves++;
+                }
+            } else {
+                gameBoard.switchPlayer();
+                leaves += count(gameBoard, depth - 1, endings);
+                gameBoard.switchPlayer();
+            }
+            gameBoard.removeTile(column);
+        }
+        return leaves;
+    }
+
+    /**
+     * Method which compares every walk against the REFERENCE counts. GameBoard is only walked for the smaller counts,
+     * as it's much slower, and for the full 4x4 game, which is the only one with draws.
+     * @param threads the number of threads for the parallel walk.
+     * @return the number of counts which didn't match.
+     */
+    public static int check(int threads) throws InterruptedException, ExecutionException {
+        int failures = 0;
+        for(long[] reference : REFERENCE){
+            int size = (int) reference[0];
+            int depth = (int) reference[1];
+            long[] endings = new long[2];
+            long leaves = count(new Position(size), depth, endings);
+            failures += report("Position", reference, leaves, endings);
+
+            endings = new long[2];
+            leaves = countParallel(new Position(size), depth, endings, threads);
+            failures += report("Position, " + threads + (threads == 1 ? " thread" : " threads"), reference, leaves, endings);
+
+            if(reference[2] <= 6_000_000 || reference[4] > 0){
+                GameBoard gameBoard = new GameBoard(size);
+                endings = new long[2];
+                leaves = count(gameBoard, depth, endings);
+                failures += report("GameBoard", reference, leaves, endings);
+            }
+        }
+        return failures;
+    }
+
+    private static int report(String walk, long[] reference, long leaves, long[] endings){
+        boolean matches = leaves == reference[2] && endings[0] == reference[3] && endings[1] == reference[4];
+        System.out.printf("%dx%d depth %2d %-22s %,16d leaves %,14d wins %,10d draws %s%n", reference[0], reference[0],
+                reference[1], walk, leaves, endings[0], endings[1], matches ? "ok" : "FAIL (expected " + reference[2]
+                + " leaves, " + reference[3] + " wins, " + reference[4] + " draws)");
+        return matches ? 0 : 1;
+    }
+
+    /**
+     * Method which either checks the reference counts (exiting with 1 if any don't match), or counts from a position
+     * and prints how many leaves per second each walk gets through.
+     *
+     * Usage: Perft check [threads]
+     *        Perft [boardSize] [depth] [threads] [moves]
+     * The defaults are a 7x7 board, depth 8, a thread per processor and the empty board. moves is a move string
+     * (see MoveNotation) to count from instead.
+     * @param args see above.
+     */
+    public static void main(String[] args) throws InterruptedException, ExecutionException {
+        if(args.length > 0 && args[0].equals("check")){
+            int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+            int failures = check(threads);
+            System.out.println(failures == 0 ? "All counts match" : failures + " counts don't match");
+            System.exit(failures == 0 ? 0 : 1);
+        }
+        int boardSize = args.length > 0 ? Integer.parseInt(args[0]) : 7;
+        int depth = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        String moves = args.length > 3 ? args[3] : "";
+        Position position = MoveNotation.parse(moves, boardSize);
+
+        long[] endings = new long[2];
+        long start = System.nanoTime();
+        long leaves = count(position, depth, endings);
+        print("Position", leaves, endings, System.nanoTime() - start, 1);
+
+        endings = new long[2];
+        start = System.nanoTime();
+        leaves = countParallel(position, depth, endings, threads);
+        print("Position", leaves, endings, System.nanoTime() - start, threads);
+
+        if(!position.lastMoveWon() && !position.isDeadDraw()){
+            GameBoard gameBoard = new GameBoard(boardSize);
+            for(int i = 0; i < position.getMoveCount(); i++){
+                gameBoard.addTile(position.getMove(i));
+                gameBoard.switchPlayer();
+            }
+            endings = new long[2];
+            start = System.nanoTime();
+            leaves = count(gameBoard, depth, endings);
+            print("GameBoard", leaves, endings, System.nanoTime() - start, 1);
+        }
+    }
+
+    private static void print(String walk, long leaves, long[] endings, long nanos, int threads){
+        System.out.printf("%-10s %2d thread%s %,16d leaves %,14d wins %,10d draws %8.2fs %,14.0f leaves/s%n", walk,
+                threads, threads == 1 ? " " : "s", leaves, endings[0], endings[1], nanos / 1e9, leaves / (nanos / 1e9));
+    }
+}
@@ -0,0 +1,176 @@
+package Game;
+
+import javax.swing.*;
+
+/**
+ * An instantiable class which defines a pair of chess-style countdown clocks, one per player.
+ * Only the clock of the player whose turn it is runs, and when a player finishes their move press() stops their clock,
+ * adds the increment to it and starts their opponent's. Like GameTimer it extends JLabel and runs on its own thread,
+ * updating its text a few times a second. If a player runs out of time, the timeout listener is called on the Swing
+ * thread.
+ *
+ * Time is measured with System.nanoTime() rather than by counting ticks, so the clocks stay accurate even when the
+ * Swing thread is busy (e.g while the AI is searching).
+ *
+ * @author Daniel Arefjev
+ */
+public class PlayerClock extends JLabel implements Runnable {
+    private static final long serialVersionUID = 1L;
+
+    private final long[] remaining = new long[3];
+    private final long increment;
+    private int running;
+    private long runningSince;
+    private int flagged;
+    private Runnable timeoutListener;
+    private Thread clockThread;
+
+    /**
+     * PlayerClock 3 argument constructor.
+     * @param player1Millis the time on Player 1's clock.
+     * @param player2Millis the time on Player 2's clock.
+     * @param incrementMillis the time added to a player's clock after each of their moves.
+     */
+    public PlayerClock(long player1Millis, long player2Millis, long incrementMillis){
+        this.remaining[1] = player1Millis;
+        this.remaining[2] = player2Millis;
+        this.increment = incrementMillis;
+        updateText();
+    }
+
+    /**
+     * Method to set what happens when a player runs out of time.
+     * @param timeoutListener called on the Swing thread when a clock reaches 0.
+     */
+    public void setTimeoutListener(Runnable timeoutListener){
+        this.timeoutListener = timeoutListener;
+    }
+
+    /**
+     * Method to get the time left on a player's clock, including the time used on the current move.
+     * @param player 1 or 2.
+     * @return the remaining time in milliseconds.
+     */
+    public synchronized long getRemaining(int player){
+        if(player == running){
+            return remaining[player] - (System.nanoTime() - runningSince) / 1_000_000L;
+        }
+        return remaining[player];
+    }
+
+    /**
+     * Method to get the increment of a PlayerClock object.
+     * @return the time added after each move, in milliseconds.
+     */
+    public long getIncrement(){
+        return increment;
+    }
+
+    /**
+     * Method to get the player who ran out of time.
+     * @return the player whose clock reached 0, or 0 if neither has.
+     */
+    public synchronized int getFlagged(){
+        return flagged;
+    }
+
+    /**
+     * Method which starts a player's clock, and the thread which updates the label.
+     * @param player the player whose turn it is.
+     */
+    public synchronized void start(int player){
+        running = player;
+        runningSince = System.nanoTime();
+        if(clockThread == null){
+            clockThread = new Thread(this, "Player Clock");
+            clockThread.setDaemon(true);
+            clockThread.start();
+        }
+    }
+
+    /**
+     * Method which is called when a player finishes their move. Their clock is stopped and given the increment (unless
+     * they ran out of time), and their opponent's clock is started.
+     * @param player the player who just moved.
+     */
+    public synchronized void press(int player){
+        if(running != player){
+            return;
+        }
+        remaining[player] = getRemaining(player);
+        if(remaining[player] <= 0){
+            timeout(player);
+            return;
+        }
+        remaining[player] += increment;
+        start(3 - player);
+    }
+
+    /**
+     * Method which stops both clocks and the thread which updates the label.
+     */
+    public synchronized void stop(){
+        if(running != 0){
+            remaining[running] = getRemaining(running);
+            running = 0;
+        }
+        if(clockThread != null){
+            clockThread.interrupt();
+            clockThread = null;
+        }
+    }
+
+    /**
+     * Method which stops the clocks when a player runs out of time, and lets the listener know.
+     */
+    private void timeout(int player){
+        remaining[player] = 0;
+        flagged = player;
+        stop();
+        if(timeoutListener != null){
+            SwingUtilities.invokeLater(timeoutListener);
+        }
+    }
+
+    /**
+     * Method which updates the label with both players' remaining time, with the running clock in bold.
+     */
+    private void updateText(){
+        String player1 = format(getRemaining(1));
+        String player2 = format(getRemaining(2));
+        if(running == 1){
+            player1 = "<b>" + player1 + "</b>";
+        } else if(running == 2){
+            player2 = "<b>" + player2 + "</b>";
+        }
+        String text = "<html>P1 " + player1 + " &nbsp;P2 " + player2 + "</html>";
+        SwingUtilities.invokeLater(() -> setText(text));
+    }
+
+    private static String format(long millis){
+        long seconds = Math.max(0, (millis + 999) / 1000);
+        return String.format("%02d:%02d", seconds / 60, seconds % 60);
+    }
+
+    /**
+     * Method which runs on a thread - updates the label and checks whether the running clock has reached 0.
+     */
+    public void run(){
+        try {
+            while(!Thread.currentThread().isInterrupted()){
+                synchronized(this){
+                    if(running != 0 && getRemaining(running) <= 0){
+                        timeout(running);
+                    }
+                    updateText();
+                }
+                Thread.sleep(100);
+            }
+        } catch (InterruptedException e) {
+            //clock was stopped
+        }
+        synchronized(this){
+            updateText();
+        }
+    }
+}
@@ -0,0 +1,333 @@
+package Game;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * An instantiable class which plays random games to the end as fast as possible, for anything that works out how good
+ * a position is by simulating games from it (rollouts, win rate statistics and so on).
+ *
+ * A batch of games is played at once, a move in each game in turn, with the boards kept as one flat array per field
+ * rather than an object per board: every game's tiles are in one byte array, every game's column heights in one int
+ * array and so on. Each game also keeps a list of the columns which aren't full, so a random move is a single random
+ * number with no retries, and only the lines through the tile just played are checked for a win.
+ *
+ * A PlayoutKernel has its own SplittableRandom and isn't thread safe - each thread should have its own, which is what
+ * playParallel() does.
+ *
+ * @author Daniel Arefjev
+ */
+public class PlayoutKernel {
+    /**
+     * The number of games played at once by default.
+     */
+    public static final int DEFAULT_BATCH = 256;
+
+    private final int size;
+    private final int cells;
+    private final int batch;
+    private final SplittableRandom random;
+
+    //one entry (or one board's worth of entries) per game in the batch
+    private final byte[] tiles;
+    private final int[] heights;
+    private final int[] openColumns;
+    private final int[] openCounts;
+    private final int[] moveCounts;
+    private final byte[] players;
+    private final int[] active;
+
+    //the starting position, copied into each game
+    private final byte[] startTiles;
+    private final int[] startHeights;
+    private final int[] startOpenColumns;
+
+    /**
+     * PlayoutKernel 3 argument constructor.
+     * @param size the width/height of the board.
+     * @param batch the number of games played at once.
+     * @param random where the random moves come from.
+     */
+    public PlayoutKernel(int size, int batch, SplittableRandom random){
+        this.size = size;
+        this.cells = size * size;
+        this.batch = batch;
+        this.random = random;
+        this.tiles = new byte[batch * cells];
+        this.heights = new int[batch * size];
+        this.openColumns = new int[batch * size];
+        this.openCounts = new int[batch];
+        this.moveCounts = new int[batch];
+        this.players = new byte[batch];
+        this.active = new int[batch];
+        this.startTiles = new byte[cells];
+        this.startHeights = new int[size];
+        this.startOpenColumns = new int[size];
+    }
+
+    /**
+     * Method to get the width/height of the board a PlayoutKernel plays on.
+     * @return the board size.
+     */
+    public int getSize(){
+        return size;
+    }
+
+    /**
+     * Method which plays random games from a position to the end.
+     * @param start the position to play from, which must be the kernel's size. It isn't changed.
+     * @param games the number of games.
+     * @return {Player 1 wins, draws, Player 2 wins}.
+     */
+    public long[] play(Position start, long games){
+        long[] results = new long[3];
+        play(start, games, results);
+        return results;
+    }
+
+    /**
+     * Method which plays random games from a position to the end, adding how they ended to a results array.
+     * @param start the position to play from, which must be the kernel's size. It isn't changed.
+     * @param games the number of games.
+     * @param results {Player 1 wins, draws, Player 2 wins}, which are added to.
+     */
+    public void play(Position start, long games, long[] results){
+        if(start.getSize() != size){
+            throw new IllegalArgumentException("Position is " + start.getSize() + "x" + start.getSize() + ", not " + size + "x" + size);
+        }
+        //a game which is already over (or can only be drawn) ends the same way every time
+        if(start.lastMoveWon()){
+            results[start.getPlayer() == 1 ? 2 : 0] += games;
+            return;
+        } else if(start.isDeadDraw()){
+            results[1] += games;
+            return;
+        }
+        int startOpen = 0;
+        for(int column = 0; column < size; column++){
+            startHeights[column] = start.getHeight(column);
+            for(int row = 0; row < size; row++){
+                startTiles[column * size + row] = (byte) start.getTile(column, row);
+            }
+            if(start.canPlay(column)){
+                startOpenColumns[startOpen++] = column;
+            }
+        }
+        while(games > 0){
+            int count = (int) Math.min(games, batch);
+            playBatch(count, startOpen, start.getMoveCount(), (byte) start.getPlayer(), results);
+            games -= count;
+        }
+    }
+
+    /**
+     * Method which plays one batch of games from the starting position.
+     */
+    private void playBatch(int count, int startOpen, int startMoves, byte startPlayer, long[] results){
+        for(int g = 0; g < count; g++){
+            System.arraycopy(startTiles, 0, tiles, g * cells, cells);
+            System.arraycopy(startHeights, 0, heights, g * size, size);
+            System.arraycopy(startOpenColumns, 0, openColumns, g * size, startOpen);
+            openCounts[g] = startOpen;
+            moveCounts[g] = startMoves;
+            players[g] = startPlayer;
+            active[g] = g;
+        }
+        int activeCount = count;
+        while(activeCount > 0){
+            for(int k = 0; k < activeCount; k++){
+                int g = active[k];
+                int open = g * size + random.nextInt(openCounts[g]);
+                int column = openColumns[open];
+                int row = heights[g * size + column]++;
+                byte player = players[g];
+                tiles[g * cells + column * size + row] = player;
+                if(row == size - 1){
+                    //the column is full, so it's swapped out of the open columns
+                    openColumns[open] = openColumns[g * size + --openCounts[g]];
+                }
+
+                int result = -1;
+                if(wins(g * cells, column, row, player)){
+                    result = player == 1 ? 0 : 2;
+                } else if(++moveCounts[g] == cells){
+                    result = 1;
+                } else {
+                    players[g] = (byte) (3 - player);
+                }
+                if(result >= 0){
+                    results[result]++;
+                    //the finished game is replaced by the last active one, which still gets its move this round
+                    active[k--] = active[--activeCount];
+                }
+            }
+        }
+    }
+
+    /**
+     * Method to check whether the tile just played in a game completes a line of four, by counting the tiles in a row
+     * either side of it in each direction.
+     */
+    private boolean wins(int base, int column, int row, byte player){
+        //vertical - only downwards, as nothing is above the tile just played
+        if(row >= 3 && tiles[base + column * size + row - 1] == player && tiles[base + column * size + row - 2] == player
+                && tiles[base + column * size + row - 3] == player){
+            return true;
+        }
+        return count(base, column, row, player, 1, 0) >= 3
+                || count(base, column, row, player, 1, 1) >= 3
+                || count(base, column, row, player, 1, -1) >= 3;
+    }
+
+    /**
+     * Method to count the player's tiles next to (column, row) in both directions along a line, up to 3.
+     */
+    private int count(int base, int column, int row, byte player, int columnStep, int rowStep){
+        int total = 0;
+        for(int sign = -1; sign <= 1; sign += 2){
+            int c = column + sign * columnStep;
+            int r = row + sign * rowStep;
+            while(total < 3 && c >= 0 && c < size && r >= 0 && r < size && tiles[base + c * size + r] == player){
+                total++;
+                c += sign * columnStep;
+                r += sign * rowStep;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Method which plays random games after each playable column of a position, e.g to pick a move by rollouts.
+     * @param start the position, which must be the kernel's size. It isn't changed.
+     * @param gamesPerColumn the number of games after each column.
+     * @return for each column, the fraction of points the player to move in the position scored (a draw is half a
+     * point), or NaN if the column can't be played.
+     */
+    public double[] scoreColumns(Position start, long gamesPerColumn){
+        double[] scores = new double[size];
+        Position child = new Position(start);
+        long[] results = new long[3];
+        for(int column = 0; column < size; column++){
+            if(!child.canPlay(column)){
+                scores[column] = Double.NaN;
+                continue;
+            }
+            int player = child.getPlayer();
+            child.play(column);
+            results[0] = results[1] = results[2] = 0;
+            play(child, gamesPerColumn, results);
+            child.undo();
+            long won = results[player == 1 ? 0 : 2];
+            scores[column] = (won + results[1] / 2.0) / gamesPerColumn;
+        }
+        return scores;
+    }
+
+    /**
+     * Method which plays random games from a position on several threads at once, each with its own kernel.
+     * @param start the position to play from. It isn't changed.
+     * @param games the number of games.
+     * @param threads the number of threads.
+     * @param seed the seed each thread's SplittableRandom is split from.
+     * @return {Player 1 wins, draws, Player 2 wins}.
+     */
+    public static long[] playParallel(Position start, long games, int threads, long seed) throws InterruptedException, ExecutionException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            SplittableRandom seeds = new SplittableRandom(seed);
+            List<Future<long[]>> futures = new ArrayList<>();
+            for(int t = 0; t < threads; t++){
+                long count = games / threads + (t < games % threads ? 1 : 0);
+                PlayoutKernel kernel = new PlayoutKernel(start.getSize(), DEFAULT_BATCH, seeds.split());
+                Position copy = new Position(start);
+                futures.add(executor.submit(() -> kernel.play(copy, count)));
+            }
+            long[] results = new long[3];
+            for(Future<long[]> future : futures){
+                long[] partial = future.get();
+                for(int i = 0; i < 3; i++){
+                    results[i] += partial[i];
+                }
+            }
+            return results;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Method which compares the kernel with playing random games the way the "Very Easy" AI chooses its moves (one
+     * Math.random() call per move) on a Position, and prints playouts per second on one thread and on every thread.
+     *
+     * Usage: PlayoutKernel [playouts] [boardSize] [threads]
+     * The defaults are 1000000 playouts from the empty 7x7 board, and a thread per processor.
+     * @param args see above.
+     */
+    public static void main(String[] args) throws InterruptedException, ExecutionException {
+        long games = args.length > 0 ? Long.parseLong(args[0]) : 1_000_000;
+        int boardSize = args.length > 1 ? Integer.parseInt(args[1]) : 7;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        Position empty = new Position(boardSize);
+
+        //warm up both, so the JIT has compiled them before they're timed
+        new PlayoutKernel(boardSize, DEFAULT_BATCH, new SplittableRandom(1)).play(empty, games / 10);
+        playNaively(empty, games / 10);
+
+        long start = System.nanoTime();
+        long[] naive = playNaively(empty, games);
+        long naiveNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        long[] kernel = new PlayoutKernel(boardSize, DEFAULT_BATCH, new SplittableRandom(42)).play(empty, games);
+        long kernelNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        long[] parallel = playParallel(empty, games, threads, 42);
+        long parallelNanos = System.nanoTime() - start;
+
+        System.out.printf("%d playouts from the empty %dx%d board%n", games, boardSize, boardSize);
+        print("Position + Math.random()", naive, games, naiveNanos, 1);
+        print("PlayoutKernel", kernel, games, kernelNanos, 1);
+        print("PlayoutKernel", parallel, games, parallelNanos, threads);
+        System.out.printf("Speed up on one thread: %.1fx%n", (double) naiveNanos / kernelNanos);
+    }
+
+    private static void print(String name, long[] results, long games, long nanos, int threads){
+        System.out.printf("%-26s %d thread%s: %,.0f playouts/s (%,.0f per core), Player 1 %.2f%% draw %.2f%% Player 2 %.2f%%%n",
+                name, threads, threads == 1 ? " " : "s", games / (nanos / 1e9), games / (nanos / 1e9) / threads,
+                results[0] * 100.0 / games, results[1] * 100.0 / games, results[2] * 100.0 / games);
+    }
+
+    /**
+     * Method which plays random games one at a time on a Position, choosing columns like the "Very Easy" AI, for the
+     * benchmark to compare against.
+     */
+    private static long[] playNaively(Position start, long games){
+        long[] results = new long[3];
+        int size = start.getSize();
+        for(long g = 0; g < games; g++){
+            Position position = new Position(start);
+            while(true){
+                int column;
+                do {
+                    column = (int) (Math.random() * size);
+                } while(!position.canPlay(column));
+                int player = position.getPlayer();
+                position.play(column);
+                if(position.lastMoveWon()){
+                    results[player == 1 ? 0 : 2]++;
+                    break;
+                } else if(position.isFull()){
+                    results[1]++;
+                    break;
+                }
+            }
+        }
+        return results;
+    }
+}
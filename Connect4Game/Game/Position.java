@@ -0,0 +1,581 @@
+package Game;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * An instantiable class which defines a headless Connect Four position.
+ * Unlike GameBoard it doesn't hold any Swing objects, so it can be copied, searched and played through quickly by the
+ * AI and analysis code. Tiles are stored in a flat byte array (column * size + row, where row 0 is the bottom of the
+ * board, unlike GameBoard where index 0 is the top), alongside the height of each column and a Zobrist hash of the
+ * position which is updated every time a tile is added or removed.
+ *
+ * The hash of the position's mirror image (the board flipped left to right) is kept up to date as well. A position and
+ * its mirror are equally good, so anything which stores positions (e.g a transposition table) can store them under
+ * their canonical hash - whichever of the two hashes is smaller - so a position and its mirror share one entry. Columns
+ * stored with a canonical hash have to be mapped with canonicalColumn() on the way in and the way out.
+ *
+ * It also keeps count of each player's live windows - lines of four with none of the other player's tiles in, which
+ * they could still complete. Once neither player has one left the game can only be drawn, however many empty tiles
+ * there are, which isDeadDraw() reports.
+ *
+ * @author Daniel Arefjev
+ */
+public class Position {
+    private static final long[][] zobristKeys = new long[25][];
+    private static final int[][] windows = new int[25][];
+    private static final int[][][] tileWindows = new int[25][][];
+
+    private final int size;
+    private final byte[] tiles;
+    private final int[] heights;
+    private final int[] moves;
+    private final long[] keys;
+    private final int[][] windowsOfTile;
+    //the number of each player's tiles in each window
+    private final byte[] windowCounts1;
+    private final byte[] windowCounts2;
+    private int liveWindows1;
+    private int liveWindows2;
+    private int moveCount;
+    private int player;
+    private long hash;
+    private long mirrorHash;
+
+    /**
+     * Position 1 argument constructor. Creates an empty board where Player 1 is the first to move.
+     * @param size the width/height of the board.
+     */
+    public Position(int size){
+        this.size = size;
+        this.tiles = new byte[size * size];
+        this.heights = new int[size];
+        this.moves = new int[size * size];
+        this.keys = getZobristKeys(size);
+        this.windowsOfTile = getTileWindows(size);
+        this.windowCounts1 = new byte[getWindows(size).length / 4];
+        this.windowCounts2 = new byte[windowCounts1.length];
+        this.liveWindows1 = windowCounts1.length;
+        this.liveWindows2 = windowCounts1.length;
+        this.player = 1;
+    }
+
+    /**
+     * Copy constructor for Position, so that searches running on other threads can play through their own copy.
+     * @param other the position to copy.
+     */
+    public Position(Position other){
+        this.size = other.size;
+        this.tiles = other.tiles.clone();
+        this.heights = other.heights.clone();
+        this.moves = other.moves.clone();
+        this.keys = other.keys;
+        this.windowsOfTile = other.windowsOfTile;
+        this.windowCounts1 = other.windowCounts1.clone();
+        this.windowCounts2 = other.windowCounts2.clone();
+        this.liveWindows1 = other.liveWindows1;
+        this.liveWindows2 = other.liveWindows2;
+        this.moveCount = other.moveCount;
+        this.player = other.player;
+        this.hash = other.hash;
+        this.mirrorHash = other.mirrorHash;
+    }
+
+    /**
+     * Method which makes a Position a copy of another one on the same size board without allocating anything, so one
+     * Position can be reused for copies of many others.
+     * @param other the position to copy.
+     */
+    public void copyFrom(Position other){
+        if(other.size != size){
+            throw new IllegalArgumentException("Can't copy a " + other.size + "x" + other.size + " position to a " + size + "x" + size + " one");
+        }
+        System.arraycopy(other.tiles, 0, tiles, 0, tiles.length);
+        System.arraycopy(other.heights, 0, heights, 0, heights.length);
+        System.arraycopy(other.moves, 0, moves, 0, other.moveCount);
+        System.arraycopy(other.windowCounts1, 0, windowCounts1, 0, windowCounts1.length);
+        System.arraycopy(other.windowCounts2, 0, windowCounts2, 0, windowCounts2.length);
+        this.liveWindows1 = other.liveWindows1;
+        this.liveWindows2 = other.liveWindows2;
+        this.moveCount = other.moveCount;
+        this.player = other.player;
+        this.hash = other.hash;
+        this.mirrorHash = other.mirrorHash;
+    }
+
+    /**
+     * Method which empties a Position so it can be used again, e.g for the next of many positions read from a file,
+     * without allocating a new one. Player 1 is the first to move.
+     */
+    public void reset(){
+        for(int i = 0; i < moveCount; i++){
+            int column = moves[i];
+            if(column >= 0){
+                tiles[column * size + --heights[column]] = 0;
+            }
+        }
+        //moves converted from a GameBoard aren't recorded, so anything left over is cleared the slow way
+        for(int column = 0; column < size; column++){
+            while(heights[column] > 0){
+                tiles[column * size + --heights[column]] = 0;
+            }
+        }
+        Arrays.fill(windowCounts1, (byte) 0);
+        Arrays.fill(windowCounts2, (byte) 0);
+        liveWindows1 = windowCounts1.length;
+        liveWindows2 = windowCounts1.length;
+        moveCount = 0;
+        player = 1;
+        hash = 0;
+        mirrorHash = 0;
+    }
+
+    /**
+     * Method which converts the tiles of a GameBoard object into a Position. The order the tiles were played in isn't
+     * known, so those moves can't be undone - only moves played on the Position afterwards can.
+     * @param gameBoard the GameBoard to convert.
+     * @return a Position with the same tiles and player to move as the GameBoard.
+     */
+    public static Position fromGameBoard(GameBoard gameBoard){
+        int size = gameBoard.getSize();
+        Position position = new Position(size);
+        for(int i = 0; i < size; i++){
+            //GameBoard stores row 0 at the top, so walk each column upwards from the bottom.
+            for(int j = size - 1; j >= 0; j--){
+                int state = gameBoard.getTileState(i, j);
+                if(state == 0){
+                    break;
+                }
+                position.placeTile(i, state);
+                position.moves[position.moveCount++] = -1;
+            }
+        }
+        position.setPlayer(gameBoard.getPlayer());
+        return position;
+    }
+
+    /**
+     * Method which converts a game state in the layout used by SimpleGameBoard (gameState[column][row], where row 0
+     * is the top of the board) into a Position. As with fromGameBoard(), the moves can't be undone.
+     * @param gameState the state of each tile - 0 for unoccupied, otherwise the player who occupies it.
+     * @param player the player to move.
+     * @return a Position with the same tiles and player to move.
+     * @throws IllegalArgumentException if the board isn't square, a tile isn't 0, 1 or 2, or a tile is floating above an
+     * unoccupied one.
+     */
+    public static Position fromGameState(int[][] gameState, int player){
+        int size = gameState.length;
+        if(size < 4 || size > 24){
+            throw new IllegalArgumentException("Board size must be from 4 to 24");
+        }
+        Position position = new Position(size);
+        for(int i = 0; i < size; i++){
+            if(gameState[i].length != size){
+                throw new IllegalArgumentException("Board isn't square");
+            }
+            for(int j = size - 1; j >= 0; j--){
+                int state = gameState[i][j];
+                if(state < 0 || state > 2){
+                    throw new IllegalArgumentException("Tile state must be 0, 1 or 2");
+                } else if(state != 0 && position.heights[i] != size - 1 - j){
+                    throw new IllegalArgumentException("Tile floating in column " + i);
+                } else if(state != 0){
+                    position.placeTile(i, state);
+                    position.moves[position.moveCount++] = -1;
+                }
+            }
+        }
+        position.setPlayer(player);
+        return position;
+    }
+
+    //zobrist keys/windows
+
+    /**
+     * Method to get the Zobrist keys for a board size. Keys are generated from a fixed seed so that hashes are the same
+     * between runs (which lets them be stored on disk), and cached so every Position of the same size shares them.
+     * The last key is xor'd in when it's Player 2's turn.
+     * @param size the width/height of the board.
+     * @return an array of keys, 2 per tile followed by the player key.
+     */
+    static synchronized long[] getZobristKeys(int size){
+        if(zobristKeys[size] == null){
+            SplittableRandom random = new SplittableRandom(0xC4C4C4C4L + size);
+            long[] sizeKeys = new long[size * size * 2 + 1];
+            for(int i = 0; i < sizeKeys.length; i++){
+                sizeKeys[i] = random.nextLong();
+            }
+            zobristKeys[size] = sizeKeys;
+        }
+        return zobristKeys[size];
+    }
+
+    /**
+     * Method to get every possible line of four on a board of a given size, as tile indices. Every 4 consecutive values
+     * in the returned array make up one line (vertical, horizontal and both diagonals).
+     * @param size the width/height of the board.
+     * @return a flat array of tile indices, 4 per line.
+     */
+    static synchronized int[] getWindows(int size){
+        if(windows[size] == null){
+            int[][] directions = {{0, 1}, {1, 0}, {1, 1}, {1, -1}};
+            int[] sizeWindows = new int[4 * 4 * size * size];
+            int count = 0;
+            for(int[] direction : directions){
+                for(int col = 0; col < size; col++){
+                    for(int row = 0; row < size; row++){
+                        int endCol = col + 3 * direction[0];
+                        int endRow = row + 3 * direction[1];
+                        if(endCol < 0 || endCol >= size || endRow < 0 || endRow >= size){
+                            continue;
+                        }
+                        for(int k = 0; k < 4; k++){
+                            sizeWindows[count++] = (col + k * direction[0]) * size + row + k * direction[1];
+                        }
+                    }
+                }
+            }
+            int[] trimmed = new int[count];
+            System.arraycopy(sizeWindows, 0, trimmed, 0, count);
+            windows[size] = trimmed;
+        }
+        return windows[size];
+    }
+
+    /**
+     * Method to get the windows (see getWindows()) each tile is part of.
+     * @param size the width/height of the board.
+     * @return for each tile index, the indices of the windows containing it (the window's position in getWindows()
+     * divided by 4).
+     */
+    static synchronized int[][] getTileWindows(int size){
+        if(tileWindows[size] == null){
+            int[] sizeWindows = getWindows(size);
+            int[] counts = new int[size * size];
+            for(int tile : sizeWindows){
+                counts[tile]++;
+            }
+            int[][] sizeTileWindows = new int[size * size][];
+            for(int tile = 0; tile < counts.length; tile++){
+                sizeTileWindows[tile] = new int[counts[tile]];
+                counts[tile] = 0;
+            }
+            for(int i = 0; i < sizeWindows.length; i++){
+                int tile = sizeWindows[i];
+                sizeTileWindows[tile][counts[tile]++] = i / 4;
+            }
+            tileWindows[size] = sizeTileWindows;
+        }
+        return tileWindows[size];
+    }
+
+    //getters
+
+    /**
+     * Method to get the size of a Position.
+     * @return the width/height of the board.
+     */
+    public int getSize(){
+        return size;
+    }
+
+    /**
+     * Method to get the player whose turn it is.
+     * @return 1 or 2.
+     */
+    public int getPlayer(){
+        return player;
+    }
+
+    /**
+     * Method to set the player whose turn it is, updating the hash accordingly.
+     * @param player 1 or 2.
+     */
+    public void setPlayer(int player){
+        if(player != this.player){
+            this.player = player;
+            hash ^= keys[keys.length - 1];
+            mirrorHash ^= keys[keys.length - 1];
+        }
+    }
+
+    /**
+     * Method to get the number of tiles on the board.
+     * @return the number of tiles which have been played.
+     */
+    public int getMoveCount(){
+        return moveCount;
+    }
+
+    /**
+     * Method to get the Zobrist hash of a Position.
+     * @return a 64 bit hash of the tiles and the player to move.
+     */
+    public long getHash(){
+        return hash;
+    }
+
+    /**
+     * Method to get the Zobrist hash of the mirror image of a Position, as if it were flipped left to right.
+     * @return a 64 bit hash of the mirrored tiles and the player to move.
+     */
+    public long getMirrorHash(){
+        return mirrorHash;
+    }
+
+    /**
+     * Method to get the canonical hash of a Position, which is the same for the position and its mirror image.
+     * @return the smaller of getHash() and getMirrorHash().
+     */
+    public long getCanonicalHash(){
+        return Math.min(hash, mirrorHash);
+    }
+
+    /**
+     * Method to check whether the canonical hash of a Position is the hash of its mirror image.
+     * @return true if columns have to be mirrored to go between the position and its canonical form.
+     */
+    public boolean isCanonicalMirrored(){
+        return mirrorHash < hash;
+    }
+
+    /**
+     * Method which maps a column between the position and its canonical form - a column being stored under the
+     * canonical hash, or one which was stored under it. Mirroring a column twice gives the column back, so it works
+     * both ways.
+     * @param column the column, or a negative number for no column (which is returned unchanged).
+     * @return the column as it is in the canonical form, or as it is in the position if it came from the canonical form.
+     */
+    public int canonicalColumn(int column){
+        return column >= 0 && mirrorHash < hash ? size - 1 - column : column;
+    }
+
+    /**
+     * Method to get the number of tiles in a column.
+     * @param column the column to check.
+     * @return the height of the column.
+     */
+    public int getHeight(int column){
+        return heights[column];
+    }
+
+    /**
+     * Method to get the state of a tile.
+     * @param column the column of the tile.
+     * @param row the row of the tile, where 0 is the bottom of the board.
+     * @return 0 if the tile is unoccupied, otherwise the player who occupies it.
+     */
+    public int getTile(int column, int row){
+        return tiles[column * size + row];
+    }
+
+    /**
+     * Method to get the state of a tile by its flat index (column * size + row).
+     * @param index the index of the tile.
+     * @return 0 if the tile is unoccupied, otherwise the player who occupies it.
+     */
+    int getTile(int index){
+        return tiles[index];
+    }
+
+    /**
+     * Method to get a move which was played on a Position.
+     * @param index the index of the move, where 0 is the first move.
+     * @return the column played, or -1 if the tile was loaded from a GameBoard.
+     */
+    public int getMove(int index){
+        return moves[index];
+    }
+
+    /**
+     * Method to get the last move which was played on a Position.
+     * @return the column played, or -1 if there have been no moves or the move isn't known.
+     */
+    public int getLastMove(){
+        return moveCount == 0 ? -1 : moves[moveCount - 1];
+    }
+
+    //game logic stuff
+
+    /**
+     * Method to check whether a tile can be added to a column.
+     * @param column the column to check.
+     * @return true if the column exists and isn't full.
+     */
+    public boolean canPlay(int column){
+        return column >= 0 && column < size && heights[column] < size;
+    }
+
+    /**
+     * Method to check whether every tile on the board is occupied.
+     * @return true if the board is full.
+     */
+    public boolean isFull(){
+        return moveCount == size * size;
+    }
+
+    /**
+     * Method to get the number of windows a player could still make a line of four in - those without any of the
+     * other player's tiles.
+     * @param tilePlayer 1 or 2.
+     * @return the number of live windows.
+     */
+    public int getLiveWindows(int tilePlayer){
+        return tilePlayer == 1 ? liveWindows1 : liveWindows2;
+    }
+
+    /**
+     * Method to get how many of a player's tiles are in each window, for the evaluation. The array is the Position's
+     * own, so it mustn't be changed.
+     * @param tilePlayer 1 or 2.
+     * @return the number of tiles in each window, in the same order as getWindows().
+     */
+    byte[] getWindowCounts(int tilePlayer){
+        return tilePlayer == 1 ? windowCounts1 : windowCounts2;
+    }
+
+    /**
+     * Method to check whether neither player can make a line of four any more, so the game can only be drawn. This is
+     * always true of a full board which nobody has won.
+     * @return true if neither player has a live window left.
+     */
+    public boolean isDeadDraw(){
+        return liveWindows1 == 0 && liveWindows2 == 0;
+    }
+
+    /**
+     * Method to add a tile for the current player to a column, and switch to the other player.
+     * The column must be playable.
+     * @param column the column to add a tile to.
+     */
+    public void play(int column){
+        placeTile(column, player);
+        moves[moveCount++] = column;
+        setPlayer(3 - player);
+    }
+
+    /**
+     * Method to remove the last tile which was played and switch back to the player who played it.
+     */
+    public void undo(){
+        int column = moves[--moveCount];
+        setPlayer(3 - player);
+        int row = --heights[column];
+        int index = column * size + row;
+        int tilePlayer = tiles[index];
+        hash ^= keys[index * 2 + tilePlayer - 1];
+        mirrorHash ^= keys[((size - 1 - column) * size + row) * 2 + tilePlayer - 1];
+        tiles[index] = 0;
+        //a window which loses the last of a player's tiles is live for the other player again
+        if(tilePlayer == 1){
+            liveWindows2 += removeFromWindows(windowCounts1, windowsOfTile[index]);
+        } else {
+            liveWindows1 += removeFromWindows(windowCounts2, windowsOfTile[index]);
+        }
+    }
+
+    /**
+     * Method to add a tile to the top of a column without recording it as a move.
+     * @param column the column to add a tile to.
+     * @param tilePlayer the player who owns the tile.
+     */
+    private void placeTile(int column, int tilePlayer){
+        int row = heights[column]++;
+        int index = column * size + row;
+        tiles[index] = (byte) tilePlayer;
+        hash ^= keys[index * 2 + tilePlayer - 1];
+        mirrorHash ^= keys[((size - 1 - column) * size + row) * 2 + tilePlayer - 1];
+        //a window which gets its first tile of a player's is no longer live for the other player
+        if(tilePlayer == 1){
+            liveWindows2 -= addToWindows(windowCounts1, windowsOfTile[index]);
+        } else {
+            liveWindows1 -= addToWindows(windowCounts2, windowsOfTile[index]);
+        }
+    }
+
+    /**
+     * Method which adds a tile to a player's count for each window it's in.
+     * @return the number of windows which didn't have any of the player's tiles before.
+     */
+    private static int addToWindows(byte[] windowCounts, int[] containing){
+        int opened = 0;
+        for(int window : containing){
+            if(windowCounts[window]++ == 0){
+                opened++;
+            }
+        }
+        return opened;
+    }
+
+    /**
+     * Method which takes a tile off a player's count for each window it's in.
+     * @return the number of windows which don't have any of the player's tiles any more.
+     */
+    private static int removeFromWindows(byte[] windowCounts, int[] containing){
+        int emptied = 0;
+        for(int window : containing){
+            if(--windowCounts[window] == 0){
+                emptied++;
+            }
+        }
+        return emptied;
+    }
+
+    /**
+     * Method to check whether the current player would win by adding a tile to a column.
+     * @param column the column to check, which must be playable.
+     * @return true if the tile would complete a line of four.
+     */
+    public boolean isWinningMove(int column){
+        return isWinningMove(column, player);
+    }
+
+    /**
+     * Method to check whether a player would win by adding a tile to a column.
+     * @param column the column to check, which must be playable.
+     * @param tilePlayer the player to check for.
+     * @return true if the tile would complete a line of four.
+     */
+    public boolean isWinningMove(int column, int tilePlayer){
+        return connectsFour(column, heights[column], tilePlayer);
+    }
+
+    /**
+     * Method to check whether the last move played completed a line of four.
+     * @return true if the player who just moved has won.
+     */
+    public boolean lastMoveWon(){
+        int column = getLastMove();
+        if(column < 0){
+            return false;
+        }
+        int row = heights[column] - 1;
+        return connectsFour(column, row, tiles[column * size + row]);
+    }
+
+    /**
+     * Method which counts tiles in a line through (column, row) in each of the four directions - only the tiles around
+     * the given tile are checked, rather than the whole board.
+     */
+    private boolean connectsFour(int column, int row, int tilePlayer){
+        return count(column, row, 0, -1, tilePlayer) >= 3
+                || count(column, row, 1, 0, tilePlayer) + count(column, row, -1, 0, tilePlayer) >= 3
+                || count(column, row, 1, 1, tilePlayer) + count(column, row, -1, -1, tilePlayer) >= 3
+                || count(column, row, 1, -1, tilePlayer) + count(column, row, -1, 1, tilePlayer) >= 3;
+    }
+
+    /**
+     * Method which counts how many of a player's tiles follow (column, row) in a direction, up to 3.
+     */
+    private int count(int column, int row, int dCol, int dRow, int tilePlayer){
+        int total = 0;
+        int c = column + dCol;
+        int r = row + dRow;
+        while(total < 3 && c >= 0 && c < size && r >= 0 && r < size && tiles[c * size + r] == tilePlayer){
+            total++;
+            c += dCol;
+            r += dRow;
+        }
+        return total;
+    }
+}
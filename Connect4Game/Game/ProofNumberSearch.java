@@ -0,0 +1,582 @@
+package Game;
+
+/**
+ * An instantiable class which defines a depth-first proof-number (df-pn) solver, which works out whether a position is
+ * won, lost or drawn with perfect play.
+ *
+ * Rather than searching every move to the same depth like SearchEngine, proof-number search keeps two numbers for each
+ * position: the proof number (how many positions would at least still need to be solved to prove it's won) and the
+ * disproof number (the same, to prove it isn't). It always carries on from the position which is cheapest to settle,
+ * so it spends most of its time on the forced lines that actually decide the game. The depth-first version only keeps
+ * positions in a TranspositionTable-like table rather than a tree, so it runs in a fixed amount of memory: when the
+ * table fills up, the positions whose subtrees took the least work to search are thrown away, and when a position is
+ * solved the positions below it are thrown away, as only the solved result is needed from then on.
+ *
+ * A df-pn search only answers yes or no, so a position is solved in two passes: first "can the player to move win?",
+ * then, if not, "can the other player win?" - if neither, it's a draw.
+ *
+ * @author Daniel Arefjev
+ */
+public class ProofNumberSearch {
+    public static final int UNKNOWN = 0;
+    public static final int WIN = 1;
+    public static final int DRAW = 2;
+    public static final int LOSS = 3;
+
+    /**
+     * The proof/disproof number of a position which has been disproved/proved.
+     */
+    public static final int INFINITY = 100_000_000;
+
+    private static final int CHECK_INTERVAL = 1023;
+    private static final int BUCKET = 4;
+
+    //table - a slot is empty if its work is 0, as every stored position has at least 1
+    private final long[] keys;
+    private final int[] phis;
+    private final int[] deltas;
+    private final int[] works;
+    private final byte[] bestMoves;
+    private final int mask;
+    private int entries;
+    private int collections;
+
+    private Position position;
+    private SearchLimits limits;
+    private int attacker;
+    private int[] order;
+    private long nodes;
+    private long deadline;
+    private boolean aborted;
+    private int lastPhi, lastDelta;
+
+    //results of the last solve()
+    private int result;
+    private int bestColumn;
+    private int winProof, winDisproof, lossProof, lossDisproof;
+    private long totalNodes;
+    private long timeNanos;
+
+    /**
+     * ProofNumberSearch 1 argument constructor.
+     * @param tableEntries the number of positions the table can hold, rounded up to a power of 2. Each takes 21 bytes.
+     */
+    public ProofNumberSearch(int tableEntries){
+        int capacity = Integer.highestOneBit(Math.max(tableEntries - 1, BUCKET)) << 1;
+        this.keys = new long[capacity];
+        this.phis = new int[capacity];
+        this.deltas = new int[capacity];
+        this.works = new int[capacity];
+        this.bestMoves = new byte[capacity];
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Method which solves a position, or gets as far as it can within the limits.
+     * @param root the position to solve.
+     * @param limits when to give up (the depth isn't used).
+     * @return WIN, DRAW or LOSS for the player to move, or UNKNOWN if the limits were reached first.
+     */
+    public int solve(Position root, SearchLimits limits){
+        long start = System.nanoTime();
+        this.limits = limits;
+        this.order = SearchEngine.centreOrder(root.getSize());
+        this.deadline = limits.getTimeMillis() > 0 ? start + limits.getTimeMillis() * 1_000_000L : Long.MAX_VALUE;
+        this.nodes = 0;
+        this.aborted = false;
+        this.collections = 0;
+        result = UNKNOWN;
+        bestColumn = -1;
+        winProof = winDisproof = lossProof = lossDisproof = 0;
+
+        if(root.lastMoveWon()){
+            result = LOSS;
+            winProof = INFINITY;
+            lossProof = 0;
+        } else {
+            //can the player to move win? The root is an OR node, so its proof number is phi
+            runPass(root, root.getPlayer());
+            winProof = lastPhi;
+            winDisproof = lastDelta;
+            int winMove = bestMoveOf(root);
+            if(winProof == 0){
+                result = WIN;
+                bestColumn = winMove;
+            } else if(!aborted){
+                //can the other player win? Now the root is an AND node, so phi is the disproof number
+                runPass(root, 3 - root.getPlayer());
+                lossProof = lastDelta;
+                lossDisproof = lastPhi;
+                bestColumn = bestMoveOf(root);
+                if(lossProof == 0){
+                    result = LOSS;
+                } else if(lossDisproof == 0){
+                    result = DRAW;
+                }
+            }
+        }
+        if(bestColumn < 0 && result != UNKNOWN && !root.lastMoveWon()){
+            //the root was settled without searching (e.g a win on the next move), so it has no stored move
+            bestColumn = settlingColumn(root);
+        }
+        totalNodes = nodes;
+        timeNanos = System.nanoTime() - start;
+        return result;
+    }
+
+    /**
+     * Method which runs one pass of df-pn from the root, trying to prove a win for the attacker. The table is cleared
+     * first, as what's proved depends on which player is attacking.
+     */
+    private void runPass(Position root, int attacker){
+        clearTable();
+        this.attacker = attacker;
+        this.position = new Position(root);
+        mid(INFINITY, INFINITY);
+    }
+
+    /**
+     * Method which searches the current position until its phi reaches thPhi or its delta reaches thDelta, then
+     * stores them in the table (and leaves them in lastPhi and lastDelta).
+     *
+     * Everything is from the point of view of the player to move: phi is the proof number if they're the attacker,
+     * or the disproof number if they're the defender, and delta is the other one. So a position's phi is the smallest
+     * of its children's deltas, and its delta is the sum of its children's phis.
+     */
+    private void mid(int thPhi, int thDelta){
+        if((++nodes & CHECK_INTERVAL) == 0){
+            checkLimits();
+        }
+        Position p = position;
+        long hash = p.getCanonicalHash();
+        long startNodes = nodes;
+        if(evaluate(p)){
+            store(hash, lastPhi, lastDelta, 1, -1);
+            return;
+        }
+        int[] children = children(p);
+        int n = children.length;
+        int phi, delta, best;
+        while(true){
+            phi = INFINITY;
+            delta = 0;
+            best = 0;
+            int bestPhi = 0;
+            int secondDelta = INFINITY;
+            for(int i = 0; i < n; i++){
+                p.play(children[i]);
+                lookUp(p);
+                p.undo();
+                if(lastDelta < phi){
+                    secondDelta = phi;
+                    phi = lastDelta;
+                    best = i;
+                    bestPhi = lastPhi;
+                } else if(lastDelta < secondDelta){
+                    secondDelta = lastDelta;
+                }
+                delta = Math.min(INFINITY, delta + lastPhi);
+            }
+            if(phi >= thPhi || delta >= thDelta || aborted){
+                break;
+            }
+            //the child is searched until it stops being the best, or the parent would reach its thresholds
+            int childThPhi = thDelta >= INFINITY ? INFINITY : Math.min(INFINITY, thDelta - delta + bestPhi);
+            int childThDelta = Math.min(thPhi, secondDelta >= INFINITY ? INFINITY : secondDelta + 1);
+            p.play(children[best]);
+            mid(childThPhi, childThDelta);
+            p.undo();
+        }
+        int work = (int) Math.min(Integer.MAX_VALUE, nodes - startNodes + 1);
+        store(hash, phi, delta, work, p.canonicalColumn(children[best]));
+        if(phi == 0 || delta == 0){
+            collectChildren(children, children[best]);
+        }
+        lastPhi = phi;
+        lastDelta = delta;
+    }
+
+    /**
+     * Method which checks whether the game is over (or as good as over) in the current position, and if so sets
+     * lastPhi and lastDelta.
+     * @return true if the position is settled without searching any further.
+     */
+    private boolean evaluate(Position p){
+        int player = p.getPlayer();
+        int threats = 0;
+        for(int column = 0; column < p.getSize(); column++){
+            if(!p.canPlay(column)){
+                continue;
+            }
+            if(p.isWinningMove(column, player)){
+                //the player to move wins, which settles it whichever side they're on
+                lastPhi = 0;
+                lastDelta = INFINITY;
+                return true;
+            }
+            if(p.isWinningMove(column, 3 - player)){
+                threats++;
+            }
+        }
+        //once the attacker has no live window left (always true of a full board) the best they can get is a draw
+        boolean attackerBlocked = p.getLiveWindows(attacker) == 0;
+        if(threats > 1 || (attackerBlocked && player == attacker)){
+            //the player to move loses (or it's a draw, which only helps the defender)
+            lastPhi = INFINITY;
+            lastDelta = 0;
+            return true;
+        } else if(attackerBlocked){
+            lastPhi = 0;
+            lastDelta = INFINITY;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Method to get the columns to search from a position which isn't settled - the one block if the other player has
+     * a threat, otherwise every playable column from the centre outwards.
+     */
+    private int[] children(Position p){
+        int opponent = 3 - p.getPlayer();
+        int count = 0;
+        for(int column = 0; column < p.getSize(); column++){
+            if(p.canPlay(column) && p.isWinningMove(column, opponent)){
+                return new int[]{column};
+            }
+        }
+        int[] columns = new int[p.getSize()];
+        for(int column : order){
+            if(p.canPlay(column)){
+                columns[count++] = column;
+            }
+        }
+        int[] trimmed = new int[count];
+        System.arraycopy(columns, 0, trimmed, 0, count);
+        return trimmed;
+    }
+
+    /**
+     * Method which sets lastPhi and lastDelta for a child position - from the table if it's there, otherwise 1 and 1
+     * unless the game is settled.
+     */
+    private void lookUp(Position p){
+        int slot = find(p.getCanonicalHash());
+        if(slot >= 0){
+            lastPhi = phis[slot];
+            lastDelta = deltas[slot];
+        } else {
+            if(!evaluate(p)){
+                lastPhi = 1;
+                lastDelta = 1;
+            }
+            //stored either way, so the same child isn't checked again every time its parent looks at its children
+            store(p.getCanonicalHash(), lastPhi, lastDelta, 1, -1);
+        }
+    }
+
+    private void checkLimits(){
+        AIScheduler.checkpoint();
+        if(limits.isStopped() || nodes >= limits.getNodes() || System.nanoTime() > deadline){
+            aborted = true;
+        }
+    }
+
+    //table
+
+    private int find(long hash){
+        int bucket = (int) hash & mask & ~(BUCKET - 1);
+        for(int slot = bucket; slot < bucket + BUCKET; slot++){
+            if(works[slot] != 0 && keys[slot] == hash){
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Method which stores a position in the table. If its bucket is full, the entry with the least work behind it is
+     * replaced, and if the table is getting full, a garbage collection is run.
+     */
+    private void store(long hash, int phi, int delta, int work, int move){
+        int bucket = (int) hash & mask & ~(BUCKET - 1);
+        int slot = -1;
+        int empty = -1;
+        int smallest = -1;
+        for(int i = bucket; i < bucket + BUCKET; i++){
+            if(works[i] != 0 && keys[i] == hash){
+                slot = i;
+                break;
+            } else if(works[i] == 0 && empty < 0){
+                empty = i;
+            } else if(works[i] != 0 && (smallest < 0 || works[i] < works[smallest])){
+                smallest = i;
+            }
+        }
+        if(slot >= 0){
+            work = (int) Math.min(Integer.MAX_VALUE, (long) works[slot] + work);
+        } else if(empty >= 0){
+            slot = empty;
+            entries++;
+        } else {
+            slot = smallest;
+        }
+        keys[slot] = hash;
+        phis[slot] = phi;
+        deltas[slot] = delta;
+        works[slot] = work;
+        bestMoves[slot] = (byte) move;
+        if(entries > keys.length / 4 * 3){
+            collectGarbage();
+        }
+    }
+
+    private void remove(int slot){
+        works[slot] = 0;
+        entries--;
+    }
+
+    /**
+     * Method which throws away the entries of a solved position's children, apart from the move which settled it.
+     */
+    private void collectChildren(int[] children, int keep){
+        Position p = position;
+        //on a symmetric board the mirror of the kept move leads to the same entry, which has to be kept too
+        p.play(keep);
+        long keepHash = p.getCanonicalHash();
+        p.undo();
+        for(int column : children){
+            if(column == keep){
+                continue;
+            }
+            p.play(column);
+            int slot = p.getCanonicalHash() == keepHash ? -1 : find(p.getCanonicalHash());
+            if(slot >= 0){
+                remove(slot);
+            }
+            p.undo();
+        }
+    }
+
+    /**
+     * Method which frees up half of the table by throwing away the entries with the least work behind them, as those
+     * are the cheapest to search again if they're needed.
+     */
+    private void collectGarbage(){
+        collections++;
+        int threshold = 1;
+        while(entries > keys.length / 2){
+            for(int slot = 0; slot < keys.length; slot++){
+                if(works[slot] != 0 && works[slot] <= threshold){
+                    remove(slot);
+                }
+            }
+            threshold *= 2;
+        }
+    }
+
+    private void clearTable(){
+        for(int slot = 0; slot < works.length; slot++){
+            works[slot] = 0;
+        }
+        entries = 0;
+    }
+
+    /**
+     * Method to get the column to play in a position settled by evaluate() - the winning move if there is one,
+     * otherwise a block, otherwise the most central playable column.
+     */
+    private int settlingColumn(Position root){
+        int block = -1;
+        int fallback = -1;
+        for(int column : order){
+            if(!root.canPlay(column)){
+                continue;
+            }
+            if(root.isWinningMove(column)){
+                return column;
+            }
+            if(block < 0 && root.isWinningMove(column, 3 - root.getPlayer())){
+                block = column;
+            }
+            if(fallback < 0){
+                fallback = column;
+            }
+        }
+        return block >= 0 ? block : fallback;
+    }
+
+    private int bestMoveOf(Position p){
+        int slot = find(p.getCanonicalHash());
+        return slot >= 0 ? p.canonicalColumn(bestMoves[slot]) : -1;
+    }
+
+    //results
+
+    /**
+     * Method to get the result of the last solve().
+     * @return WIN, DRAW, LOSS or UNKNOWN.
+     */
+    public int getResult(){
+        return result;
+    }
+
+    /**
+     * Method to get the best column found by the last solve() - the winning move for a win, a drawing move for a
+     * draw, and the move which holds out longest for a loss.
+     * @return the column, or -1 if there isn't one.
+     */
+    public int getBestColumn(){
+        return bestColumn;
+    }
+
+    /**
+     * Method to get the proof and disproof numbers of "the player to move can win" at the end of the last solve().
+     * @return {proof number, disproof number}.
+     */
+    public int[] getWinNumbers(){
+        return new int[]{winProof, winDisproof};
+    }
+
+    /**
+     * Method to get the proof and disproof numbers of "the other player can win" at the end of the last solve(). Both
+     * are 0 if the second pass wasn't needed.
+     * @return {proof number, disproof number}.
+     */
+    public int[] getLossNumbers(){
+        return new int[]{lossProof, lossDisproof};
+    }
+
+    /**
+     * Method to get the number of positions the last solve() searched.
+     * @return the number of nodes.
+     */
+    public long getNodes(){
+        return totalNodes;
+    }
+
+    /**
+     * Method to get how long the last solve() took.
+     * @return the time in nanoseconds.
+     */
+    public long getTimeNanos(){
+        return timeNanos;
+    }
+
+    /**
+     * Method to get the number of positions searched per second by the last solve().
+     * @return the nodes per second.
+     */
+    public long getNodesPerSecond(){
+        return timeNanos == 0 ? 0 : totalNodes * 1_000_000_000L / timeNanos;
+    }
+
+    /**
+     * Method to get the number of garbage collections the last solve() needed.
+     * @return the number of collections.
+     */
+    public int getCollections(){
+        return collections;
+    }
+
+    /**
+     * Method to get the name of a result.
+     * @param result WIN, DRAW, LOSS or UNKNOWN.
+     * @return the name.
+     */
+    public static String resultName(int result){
+        switch(result){
+            case WIN:
+                return "win";
+            case DRAW:
+                return "draw";
+            case LOSS:
+                return "loss";
+            default:
+                return "unknown";
+        }
+    }
+
+    /**
+     * Method which solves a position from the command line and prints the result, the proof and disproof numbers and
+     * the speed. With -openings, every position after the given number of moves is solved instead (positions reached
+     * by more than one move order, or mirror images of each other, are only solved once).
+     *
+     * Usage: ProofNumberSearch size [moves] [seconds] [tableEntries]
+     *        ProofNumberSearch size -openings plies [seconds] [tableEntries]
+     * The moves are in MoveNotation, and default to the empty board. The defaults are 60 seconds (per position) and
+     * 4M table entries.
+     * @param args see above.
+     */
+    public static void main(String[] args){
+        if(args.length < 1){
+            System.out.println("Usage: ProofNumberSearch size [moves] [seconds] [tableEntries]");
+            System.out.println("       ProofNumberSearch size -openings plies [seconds] [tableEntries]");
+            return;
+        }
+        int size = Integer.parseInt(args[0]);
+        boolean openings = args.length > 1 && args[1].equals("-openings");
+        int next = openings ? 3 : 2;
+        long seconds = args.length > next ? Long.parseLong(args[next]) : 60;
+        int tableEntries = args.length > next + 1 ? Integer.parseInt(args[next + 1]) : 1 << 22;
+        ProofNumberSearch solver = new ProofNumberSearch(tableEntries);
+
+        if(!openings){
+            Position position = MoveNotation.parse(args.length > 1 ? args[1] : MoveNotation.EMPTY, size);
+            SearchLimits limits = new SearchLimits();
+            limits.setTimeMillis(seconds * 1000);
+            solver.solve(position, limits);
+            int[] win = solver.getWinNumbers();
+            int[] loss = solver.getLossNumbers();
+            System.out.printf("%dx%d %s: %s for player %d%s%n", size, size, MoveNotation.format(position),
+                    resultName(solver.getResult()), position.getPlayer(), solver.getBestColumn() >= 0
+                    ? ", best move " + MoveNotation.toLetter(solver.getBestColumn()) : "");
+            System.out.printf("Win pass: proof %s, disproof %s%n", number(win[0]), number(win[1]));
+            if(solver.getResult() != WIN && solver.getResult() != UNKNOWN || loss[0] != 0 || loss[1] != 0){
+                System.out.printf("Loss pass: proof %s, disproof %s%n", number(loss[0]), number(loss[1]));
+            }
+            System.out.printf("%d nodes in %.2f s, %d nodes/s, %d garbage collections%n", solver.getNodes(),
+                    solver.getTimeNanos() / 1e9, solver.getNodesPerSecond(), solver.getCollections());
+            return;
+        }
+
+        int plies = Integer.parseInt(args[2]);
+        java.util.Map<Long, String> positions = new java.util.LinkedHashMap<>();
+        collectOpenings(new Position(size), plies, positions);
+        int[] counts = new int[4];
+        long nodes = 0;
+        long nanos = 0;
+        for(String moves : positions.values()){
+            Position position = MoveNotation.parse(moves, size);
+            SearchLimits limits = new SearchLimits();
+            limits.setTimeMillis(seconds * 1000);
+            int result = solver.solve(position, limits);
+            counts[result]++;
+            nodes += solver.getNodes();
+            nanos += solver.getTimeNanos();
+            System.out.printf("%-8s %-7s %10d nodes %8.2f s%n", moves, resultName(result), solver.getNodes(),
+                    solver.getTimeNanos() / 1e9);
+        }
+        System.out.printf("%d positions after %d moves on %dx%d: %d won, %d drawn, %d lost, %d unknown (for the player to move)%n",
+                positions.size(), plies, size, size, counts[WIN], counts[DRAW], counts[LOSS], counts[UNKNOWN]);
+        System.out.printf("%d nodes in %.1f s, %d nodes/s%n", nodes, nanos / 1e9, nanos == 0 ? 0 : nodes * 1_000_000_000L / nanos);
+    }
+
+    private static void collectOpenings(Position position, int plies, java.util.Map<Long, String> positions){
+        if(plies == 0 || position.lastMoveWon()){
+            positions.putIfAbsent(position.getCanonicalHash(), MoveNotation.format(position));
+            return;
+        }
+        for(int column = 0; column < position.getSize(); column++){
+            if(position.canPlay(column)){
+                position.play(column);
+                collectOpenings(position, plies - 1, positions);
+                position.undo();
+            }
+        }
+    }
+
+    private static String number(int value){
+        return value >= INFINITY ? "infinity" : Integer.toString(value);
+    }
+}
@@ -0,0 +1,240 @@
+package Game;
+
+import javax.swing.*;
+import javax.swing.border.Border;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.KeyEvent;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * An instantiable class which defines the replay window, which is opened from the history window to watch a finished
+ * game again. The game can be stepped through a move at a time (with the buttons or the arrow keys) or scrubbed through
+ * with the slider, and the previous/next games in the history can be opened from the same window.
+ *
+ * Building a GameReplay means replaying the whole game, so while one game is being watched the games either side of it
+ * in the history are built on a background thread, ready for when the user moves on to them.
+ *
+ * @author Daniel Arefjev
+ */
+public class ReplayViewer extends JFrame implements ActionListener {
+    private static final long serialVersionUID = 1L;
+
+    private static final ExecutorService prefetcher = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Replay Prefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final Border tileBorder = BorderFactory.createLineBorder(Color.DARK_GRAY, 2);
+    private static final Border lastMoveBorder = BorderFactory.createLineBorder(Color.ORANGE, 2);
+
+    private final List<SimpleGameBoard> history;
+    private final ImageIcon[] imageIcons;
+    private final Map<Integer, CompletableFuture<GameReplay>> replays = new HashMap<>();
+    private int index = -1;
+    private GameReplay replay;
+    private ImageIcon player1Icon;
+    private ImageIcon player2Icon;
+
+    private final JPanel boardPanel = new JPanel();
+    private JLabel[][] tiles = new JLabel[0][0];
+    private final JSlider slider = new JSlider(0, 0, 0);
+    private final JLabel moveLabel = new JLabel();
+    private final JButton previousGameButton = new JButton("Previous Game");
+    private final JButton nextGameButton = new JButton("Next Game");
+    private boolean updatingSlider;
+
+    /**
+     * ReplayViewer 3 argument constructor.
+     * @param history the games in the history window.
+     * @param index the index of the game to show first.
+     * @param imageIcons the icons players can choose from, as indexed by SimpleGameBoard.getPlayer1Icon().
+     */
+    public ReplayViewer(List<SimpleGameBoard> history, int index, ImageIcon[] imageIcons){
+        super("Replay");
+        this.history = history;
+        this.imageIcons = imageIcons;
+        setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+        setLayout(new BorderLayout());
+        add(boardPanel, BorderLayout.CENTER);
+
+        JPanel controls = new JPanel(new BorderLayout());
+        JPanel buttons = new JPanel();
+        String[] buttonNames = {"|<", "<", ">", ">|"};
+        for(String name : buttonNames){
+            JButton button = new JButton(name);
+            button.setFocusable(false);
+            button.addActionListener(this);
+            buttons.add(button);
+        }
+        buttons.add(moveLabel);
+        controls.add(buttons, BorderLayout.NORTH);
+        controls.add(slider, BorderLayout.CENTER);
+        JPanel games = new JPanel();
+        previousGameButton.setFocusable(false);
+        nextGameButton.setFocusable(false);
+        previousGameButton.addActionListener(this);
+        nextGameButton.addActionListener(this);
+        games.add(previousGameButton);
+        games.add(nextGameButton);
+        controls.add(games, BorderLayout.SOUTH);
+        add(controls, BorderLayout.SOUTH);
+
+        slider.setFocusable(false);
+        slider.addChangeListener(e -> {
+            if(!updatingSlider && replay != null){
+                seek(slider.getValue());
+            }
+        });
+
+        //arrow keys step through the game, home/end jump to the start/end
+        bindKey(KeyEvent.VK_LEFT, "<");
+        bindKey(KeyEvent.VK_RIGHT, ">");
+        bindKey(KeyEvent.VK_HOME, "|<");
+        bindKey(KeyEvent.VK_END, ">|");
+
+        showGame(index);
+    }
+
+    private void bindKey(int keyCode, String command){
+        getRootPane().getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke(keyCode, 0), command);
+        getRootPane().getActionMap().put(command, new AbstractAction(){
+            public void actionPerformed(ActionEvent e){
+                step(command);
+            }
+        });
+    }
+
+    /**
+     * Method to get the replay of a game in the history, building it on the prefetch thread if it hasn't been already.
+     */
+    private CompletableFuture<GameReplay> getReplay(int gameIndex){
+        return replays.computeIfAbsent(gameIndex,
+                i -> CompletableFuture.supplyAsync(() -> new GameReplay(history.get(i)), prefetcher));
+    }
+
+    /**
+     * Method which switches to another game in the history, and starts building the replays of the games either side
+     * of it.
+     * @param gameIndex the index of the game in the history.
+     */
+    public void showGame(int gameIndex){
+        GameReplay newReplay;
+        try {
+            newReplay = getReplay(gameIndex).join();
+        } catch (CompletionException e) {
+            replays.remove(gameIndex);
+            JOptionPane.showMessageDialog(this, "This game can't be replayed.", "Error", JOptionPane.ERROR_MESSAGE);
+            if(replay == null){
+                dispose();
+            }
+            return;
+        }
+        index = gameIndex;
+        replay = newReplay;
+        SimpleGameBoard game = history.get(index);
+        player1Icon = imageIcons[game.getPlayer1Icon()];
+        player2Icon = imageIcons[game.getPlayer2Icon()];
+        setTitle("Replay: " + game.getPlayer1Name() + " vs " + game.getPlayer2Name());
+
+        //only the games next to this one are kept
+        replays.keySet().removeIf(i -> Math.abs(i - index) > 1);
+        if(index > 0){
+            getReplay(index - 1);
+        }
+        if(index < history.size() - 1){
+            getReplay(index + 1);
+        }
+        previousGameButton.setEnabled(index > 0);
+        nextGameButton.setEnabled(index < history.size() - 1);
+
+        int size = replay.getSize();
+        if(tiles.length != size){
+            boardPanel.removeAll();
+            boardPanel.setLayout(new GridLayout(size, size));
+            tiles = new JLabel[size][size];
+            //added row by row, since GridLayout fills the top row first
+            for(int row = size - 1; row >= 0; row--){
+                for(int column = 0; column < size; column++){
+                    tiles[column][row] = new JLabel();
+                    tiles[column][row].setOpaque(true);
+                    boardPanel.add(tiles[column][row]);
+                }
+            }
+            setSize(72 * size, 72 * size + 110);
+        }
+        updatingSlider = true;
+        slider.setMaximum(replay.getMoveCount());
+        updatingSlider = false;
+        seek(replay.getMoveCount());
+    }
+
+    /**
+     * Method which shows the board after a given number of moves.
+     * @param move the number of moves.
+     */
+    public void seek(int move){
+        replay.seek(move);
+        int size = replay.getSize();
+        int lastColumn = replay.getLastColumn();
+        int lastRow = lastColumn < 0 ? -1 : topRow(lastColumn);
+        for(int column = 0; column < size; column++){
+            for(int row = 0; row < size; row++){
+                int state = replay.getTile(column, row);
+                tiles[column][row].setIcon(state == 1 ? player1Icon : state == 2 ? player2Icon : null);
+                boolean last = column == lastColumn && row == lastRow;
+                tiles[column][row].setBorder(last ? lastMoveBorder : tileBorder);
+            }
+        }
+        moveLabel.setText("Move " + replay.getCurrentMove() + " / " + replay.getMoveCount());
+        updatingSlider = true;
+        slider.setValue(replay.getCurrentMove());
+        updatingSlider = false;
+    }
+
+    private int topRow(int column){
+        int row = replay.getSize() - 1;
+        while(row > 0 && replay.getTile(column, row) == 0){
+            row--;
+        }
+        return row;
+    }
+
+    private void step(String command){
+        switch(command){
+            case "|<":
+                seek(0);
+                break;
+            case "<":
+                seek(replay.getCurrentMove() - 1);
+                break;
+            case ">":
+                seek(replay.getCurrentMove() + 1);
+                break;
+            case ">|":
+                seek(replay.getMoveCount());
+                break;
+        }
+    }
+
+    /**
+     * Listener method which handles the buttons.
+     */
+    public void actionPerformed(ActionEvent e){
+        if(e.getSource() == previousGameButton){
+            showGame(index - 1);
+        } else if(e.getSource() == nextGameButton){
+            showGame(index + 1);
+        } else {
+            step(e.getActionCommand());
+        }
+    }
+}
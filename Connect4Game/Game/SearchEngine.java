@@ -0,0 +1,385 @@
+package Game;
+
+import java.util.Arrays;
+
+/**
+ * An instantiable class which defines the AI's search. It uses iterative deepening negamax with alpha-beta pruning:
+ * the position is searched 1 move deep, then 2, then 3 and so on until one of the SearchLimits is reached, and the
+ * result of each completed depth is passed to a SearchListener. Positions which have already been searched are
+ * stored in a TranspositionTable, which can be shared with other SearchEngine objects.
+ *
+ * A SearchEngine can only run one search at a time, but the SearchLimits of a running search can be stopped from
+ * any thread. The search checks its limits every few hundred nodes so it stops within a few milliseconds.
+ *
+ * A SearchEngine can also be given an AnalysisCache, which keeps the results of positions searched at least
+ * AnalysisCache.MIN_DEPTH deep on disk, so they can be used again after the game has been closed and opened again.
+ *
+ * @author Daniel Arefjev
+ */
+public class SearchEngine {
+    /**
+     * The score of a win on the very next move. Wins further away score 1 less for every extra move.
+     */
+    public static final int WIN_SCORE = 1_000_000;
+    /**
+     * The score given to columns which can't be played.
+     */
+    public static final int NO_SCORE = Integer.MIN_VALUE;
+
+    private static final int INFINITY = 2_000_000;
+    private static final int WIN_THRESHOLD = WIN_SCORE - 1000;
+    private static final int CHECK_INTERVAL = 255;
+
+    private final TranspositionTable table;
+    private final Evaluator evaluator;
+    private boolean persistent;
+    private AnalysisCache fixedCache;
+    private AnalysisCache cache;
+    private Position position;
+    private SearchLimits limits;
+    private int[] order;
+    private long nodes;
+    private long startTime;
+    private long deadline;
+    private boolean aborted;
+
+    /**
+     * SearchEngine 1 argument constructor, which uses the default Evaluator.
+     * @param table the transposition table to use.
+     */
+    public SearchEngine(TranspositionTable table){
+        this(table, new Evaluator());
+    }
+
+    /**
+     * SearchEngine 2 argument constructor.
+     * @param table the transposition table to use.
+     * @param evaluator the evaluator to score unfinished positions with.
+     */
+    public SearchEngine(TranspositionTable table, Evaluator evaluator){
+        this.table = table;
+        this.evaluator = evaluator;
+    }
+
+    /**
+     * Method to set whether a SearchEngine uses the shared AnalysisCache for the size of the board it's searching, if
+     * the cache is turned on.
+     * @param persistent true to keep results between sessions.
+     */
+    public void setPersistent(boolean persistent){
+        this.persistent = persistent;
+    }
+
+    /**
+     * Method to set an AnalysisCache for a SearchEngine to use instead of the shared one, e.g a benchmark's. Every
+     * position searched has to be the cache's size.
+     * @param cache the cache, or null for none.
+     */
+    public void setCache(AnalysisCache cache){
+        this.fixedCache = cache;
+    }
+
+    /**
+     * Method to check whether a score means one of the players can force a win.
+     * @param score the score to check.
+     * @return true if the score is a forced win or loss.
+     */
+    public static boolean isWinScore(int score){
+        return score != NO_SCORE && Math.abs(score) > WIN_THRESHOLD;
+    }
+
+    /**
+     * Method to get how many moves away a forced win or loss is.
+     * @param score a score where isWinScore() is true.
+     * @return the number of moves (by both players) until the game is won.
+     */
+    public static int movesToWin(int score){
+        return WIN_SCORE - Math.abs(score) + 1;
+    }
+
+    /**
+     * Method to get the columns of a board in the order they should be searched - from the centre outwards, as the
+     * centre columns are usually the best.
+     * @param size the width of the board.
+     * @return an array of every column.
+     */
+    public static int[] centreOrder(int size){
+        int[] columns = new int[size];
+        int centre = (size - 1) / 2;
+        for(int i = 0; i < size; i++){
+            int offset = (i + 1) / 2;
+            columns[i] = i % 2 == 1 ? centre + offset : centre - offset;
+        }
+        return columns;
+    }
+
+    /**
+     * Method to get the number of nodes searched by the current or last search.
+     * @return the node count.
+     */
+    public long getNodes(){
+        return nodes;
+    }
+
+    /**
+     * Method which searches a position until one of its limits is reached.
+     * @param root the position to search. It isn't changed.
+     * @param limits when to stop searching.
+     * @param listener told about each completed depth, or null.
+     * @return the result of the deepest completed search. If not even the first depth completed, the first playable
+     * column in centreOrder() is returned with a depth of 0.
+     */
+    public SearchResult search(Position root, SearchLimits limits, SearchListener listener){
+        this.position = new Position(root);
+        this.limits = limits;
+        this.nodes = 0;
+        this.aborted = false;
+        this.startTime = System.nanoTime();
+        this.deadline = limits.getTimeMillis() > 0 ? startTime + limits.getTimeMillis() * 1_000_000L : Long.MAX_VALUE;
+
+        int size = position.getSize();
+        order = centreOrder(size);
+        boolean allColumns = limits.getAllColumns();
+        int maxDepth = Math.min(limits.getDepth(), size * size - position.getMoveCount());
+
+        int bestColumn = -1;
+        for(int column : order){
+            if(position.canPlay(column)){
+                bestColumn = column;
+                break;
+            }
+        }
+        int[] emptyScores = new int[size];
+        Arrays.fill(emptyScores, NO_SCORE);
+        SearchResult result = new SearchResult(bestColumn, 0, 0, 0, 0, emptyScores);
+
+        cache = fixedCache != null ? fixedCache : persistent ? AnalysisCache.forSize(size, evaluator) : null;
+        if(cache != null && !allColumns){
+            //the same position searched at least as deep in an earlier session doesn't need searching again
+            long entry = cache.probe(position.getCanonicalHash());
+            int column = position.canonicalColumn(TranspositionTable.moveOf(entry));
+            int score = TranspositionTable.scoreOf(entry);
+            if(entry != 0 && TranspositionTable.flagOf(entry) == TranspositionTable.EXACT && column >= 0
+                    && position.canPlay(column) && (TranspositionTable.depthOf(entry) >= maxDepth || isWinScore(score))){
+                int[] scores = emptyScores.clone();
+                scores[column] = score;
+                result = new SearchResult(column, score, TranspositionTable.depthOf(entry), 0, System.nanoTime() - startTime, scores);
+                if(listener != null){
+                    listener.depthCompleted(result);
+                }
+                return result;
+            }
+        }
+
+        for(int depth = 1; depth <= maxDepth; depth++){
+            int[] scores = new int[size];
+            Arrays.fill(scores, NO_SCORE);
+            int alpha = -INFINITY;
+            int bestScore = -INFINITY;
+            int best = -1;
+            boolean decided = true;
+
+            for(int i = -1; i < size; i++){
+                //the best column from the last depth is searched first, which makes the rest cut off sooner
+                int column = i < 0 ? bestColumn : order[i];
+                if((i >= 0 && column == bestColumn) || !position.canPlay(column)){
+                    continue;
+                }
+                int score;
+                if(position.isWinningMove(column)){
+                    score = WIN_SCORE;
+                } else {
+                    position.play(column);
+                    score = -negamax(depth - 1, -INFINITY, allColumns ? INFINITY : -alpha, 1);
+                    position.undo();
+                }
+                if(aborted){
+                    break;
+                }
+                scores[column] = score;
+                decided &= isWinScore(score);
+                if(score > bestScore){
+                    bestScore = score;
+                    best = column;
+                }
+                if(!allColumns && score > alpha){
+                    alpha = score;
+                }
+            }
+            if(aborted){
+                break;
+            }
+
+            bestColumn = best;
+            result = new SearchResult(best, bestScore, depth, nodes, System.nanoTime() - startTime, scores);
+            if(cache != null && depth >= AnalysisCache.MIN_DEPTH && !allColumns){
+                //the best column's score is exact, as it was searched with the full window above alpha
+                cache.store(position.getCanonicalHash(), bestScore, depth, TranspositionTable.EXACT, position.canonicalColumn(best));
+            }
+            if(listener != null){
+                listener.depthCompleted(result);
+            }
+            //a forced win or loss can't change by searching deeper
+            if(isWinScore(bestScore) && (!allColumns || decided || bestScore < 0)){
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Method which searches a position to a given depth and returns its score for the player to move.
+     */
+    private int negamax(int depth, int alpha, int beta, int ply){
+        if((++nodes & CHECK_INTERVAL) == 0){
+            checkLimits();
+        }
+        if(aborted){
+            return 0;
+        }
+        Position p = position;
+        //neither player can make a line of four any more (which includes a full board)
+        if(p.isDeadDraw()){
+            return 0;
+        }
+
+        int size = p.getSize();
+        int player = p.getPlayer();
+        int opponent = 3 - player;
+        int forced = -1;
+        int threats = 0;
+        for(int column = 0; column < size; column++){
+            if(!p.canPlay(column)){
+                continue;
+            }
+            if(p.isWinningMove(column, player)){
+                return WIN_SCORE - ply;
+            }
+            if(p.isWinningMove(column, opponent)){
+                threats++;
+                forced = column;
+            }
+        }
+        //the opponent has two places to win and only one can be blocked
+        if(threats >= 2){
+            return -(WIN_SCORE - ply - 1);
+        }
+        //a player without a live window can't win, so the best they can hope for is a draw - and likewise the worst
+        //their opponent can get
+        boolean canWin = p.getLiveWindows(player) > 0;
+        boolean canLose = p.getLiveWindows(opponent) > 0;
+        if(!canWin && beta > 0){
+            beta = 0;
+            if(alpha >= beta){
+                return beta;
+            }
+        } else if(!canLose && alpha < 0){
+            alpha = 0;
+            if(alpha >= beta){
+                return alpha;
+            }
+        }
+        if(depth <= 0){
+            int score = evaluator.evaluate(p);
+            return !canWin ? Math.min(score, 0) : !canLose ? Math.max(score, 0) : score;
+        }
+        if(forced >= 0){
+            p.play(forced);
+            int score = -negamax(depth - 1, -beta, -alpha, ply + 1);
+            p.undo();
+            return score;
+        }
+
+        //mirror images share an entry, so the stored move is mirrored back if this is the mirrored one
+        long hash = p.getCanonicalHash();
+        long entry = table.probe(hash);
+        if(cache != null && depth >= AnalysisCache.MIN_DEPTH && (entry == 0 || TranspositionTable.depthOf(entry) < depth)){
+            long cached = cache.probe(hash);
+            if(cached != 0 && (entry == 0 || TranspositionTable.depthOf(cached) > TranspositionTable.depthOf(entry))){
+                entry = cached;
+                table.store(hash, TranspositionTable.scoreOf(entry), TranspositionTable.depthOf(entry),
+                        TranspositionTable.flagOf(entry), TranspositionTable.moveOf(entry));
+            }
+        }
+        int tableMove = -1;
+        if(entry != 0){
+            tableMove = p.canonicalColumn(TranspositionTable.moveOf(entry));
+            if(TranspositionTable.depthOf(entry) >= depth){
+                int score = fromTable(TranspositionTable.scoreOf(entry), ply);
+                int flag = TranspositionTable.flagOf(entry);
+                if(flag == TranspositionTable.EXACT
+                        || (flag == TranspositionTable.LOWER_BOUND && score >= beta)
+                        || (flag == TranspositionTable.UPPER_BOUND && score <= alpha)){
+                    return score;
+                }
+            }
+        }
+
+        int originalAlpha = alpha;
+        int bestScore = -INFINITY;
+        int bestMove = -1;
+        for(int i = -1; i < size; i++){
+            int column = i < 0 ? tableMove : order[i];
+            if((i >= 0 && column == tableMove) || !p.canPlay(column)){
+                continue;
+            }
+            p.play(column);
+            int score = -negamax(depth - 1, -beta, -alpha, ply + 1);
+            p.undo();
+            if(aborted){
+                return 0;
+            }
+            if(score > bestScore){
+                bestScore = score;
+                bestMove = column;
+            }
+            if(score > alpha){
+                alpha = score;
+                if(alpha >= beta){
+                    break;
+                }
+            }
+        }
+
+        int flag = bestScore <= originalAlpha ? TranspositionTable.UPPER_BOUND
+                : bestScore >= beta ? TranspositionTable.LOWER_BOUND : TranspositionTable.EXACT;
+        table.store(hash, toTable(bestScore, ply), depth, flag, p.canonicalColumn(bestMove));
+        if(cache != null && depth >= AnalysisCache.MIN_DEPTH){
+            cache.store(hash, toTable(bestScore, ply), depth, flag, p.canonicalColumn(bestMove));
+        }
+        return bestScore;
+    }
+
+    /**
+     * Method which stops the search if it has been running too long, searched too many nodes or been stopped.
+     */
+    private void checkLimits(){
+        //searches run by an AIScheduler give other games a turn every so often
+        AIScheduler.checkpoint();
+        if(limits.isStopped() || nodes >= limits.getNodes() || System.nanoTime() > deadline){
+            aborted = true;
+        }
+    }
+
+    /*
+     * Win scores depend on how far from the root they are, so they're stored in the table relative to the position
+     * itself and converted back when they're read.
+     */
+    private static int toTable(int score, int ply){
+        if(score > WIN_THRESHOLD){
+            return score + ply;
+        } else if(score < -WIN_THRESHOLD){
+            return score - ply;
+        }
+        return score;
+    }
+
+    private static int fromTable(int score, int ply){
+        if(score > WIN_THRESHOLD){
+            return score - ply;
+        } else if(score < -WIN_THRESHOLD){
+            return score + ply;
+        }
+        return score;
+    }
+}
@@ -0,0 +1,103 @@
+package Game;
+
+/**
+ * An instantiable class which defines when a search should stop - after a certain depth, number of nodes or amount
+ * of time, or when stop() is called from another thread. Each search should be given its own SearchLimits object, so
+ * that stopping one search can't accidentally stop the next one.
+ *
+ * @author Daniel Arefjev
+ */
+public class SearchLimits {
+    private int depth = Integer.MAX_VALUE;
+    private long nodes = Long.MAX_VALUE;
+    private long timeMillis;
+    private boolean allColumns;
+    private volatile boolean stopped;
+
+    /**
+     * Default constructor for SearchLimits. With nothing set, the search only stops when the position is solved or
+     * stop() is called.
+     */
+    public SearchLimits(){
+    }
+
+    /**
+     * Method to set the maximum depth (in moves) to search to.
+     * @param depth the maximum depth.
+     */
+    public void setDepth(int depth){
+        this.depth = depth;
+    }
+
+    /**
+     * Method to get the maximum depth to search to.
+     * @return the maximum depth, or Integer.MAX_VALUE if there isn't one.
+     */
+    public int getDepth(){
+        return depth;
+    }
+
+    /**
+     * Method to set the maximum number of nodes to search.
+     * @param nodes the maximum number of nodes.
+     */
+    public void setNodes(long nodes){
+        this.nodes = nodes;
+    }
+
+    /**
+     * Method to get the maximum number of nodes to search.
+     * @return the maximum number of nodes, or Long.MAX_VALUE if there isn't one.
+     */
+    public long getNodes(){
+        return nodes;
+    }
+
+    /**
+     * Method to set the maximum amount of time to search for.
+     * @param timeMillis the time in milliseconds, or 0 for no limit.
+     */
+    public void setTimeMillis(long timeMillis){
+        this.timeMillis = timeMillis;
+    }
+
+    /**
+     * Method to get the maximum amount of time to search for.
+     * @return the time in milliseconds, or 0 if there isn't a limit.
+     */
+    public long getTimeMillis(){
+        return timeMillis;
+    }
+
+    /**
+     * Method to set whether every column should get an exact score (used by the analysis overlay), rather than just
+     * proving the other columns are worse than the best one.
+     * @param allColumns true to score every column exactly.
+     */
+    public void setAllColumns(boolean allColumns){
+        this.allColumns = allColumns;
+    }
+
+    /**
+     * Method to get whether every column should get an exact score.
+     * @return true if every column is scored exactly.
+     */
+    public boolean getAllColumns(){
+        return allColumns;
+    }
+
+    /**
+     * Method which asks a running search to stop as soon as possible. Can be called from any thread.
+     */
+    public void stop(){
+        this.stopped = true;
+    }
+
+    /**
+     * Method to check whether stop() has been called.
+     * @return true if the search should stop.
+     */
+    public boolean isStopped(){
+        return stopped;
+    }
+}
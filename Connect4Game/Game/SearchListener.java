@@ -0,0 +1,14 @@
+package Game;
+
+/**
+ * An interface for anything which wants to be told about a search's progress, such as the analysis overlay.
+ *
+ * @author Daniel Arefjev
+ */
+public interface SearchListener {
+    /**
+     * Method which is called (on the searching thread) every time the search finishes another depth.
+     * @param result the result of the depth which was just completed.
+     */
+    void depthCompleted(SearchResult result);
+}
@@ -0,0 +1,90 @@
+package Game;
+
+/**
+ * An instantiable class which defines the result of searching a position to a certain depth.
+ * Scores are from the point of view of the player whose turn it was in the searched position.
+ *
+ * @author Daniel Arefjev
+ */
+public class SearchResult {
+    private final int bestColumn;
+    private final int score;
+    private final int depth;
+    private final long nodes;
+    private final long timeNanos;
+    private final int[] columnScores;
+
+    /**
+     * SearchResult 6 argument constructor.
+     * @param bestColumn the best column found.
+     * @param score the score of the best column.
+     * @param depth the depth which was fully searched.
+     * @param nodes the number of nodes searched so far.
+     * @param timeNanos the time spent searching so far.
+     * @param columnScores the score of each column, or SearchEngine.NO_SCORE for columns which can't be played.
+     */
+    public SearchResult(int bestColumn, int score, int depth, long nodes, long timeNanos, int[] columnScores){
+        this.bestColumn = bestColumn;
+        this.score = score;
+        this.depth = depth;
+        this.nodes = nodes;
+        this.timeNanos = timeNanos;
+        this.columnScores = columnScores;
+    }
+
+    /**
+     * Method to get the column the search found best.
+     * @return the column.
+     */
+    public int getBestColumn(){
+        return bestColumn;
+    }
+
+    /**
+     * Method to get the score of the best column, from the point of view of the player to move.
+     * @return the score.
+     */
+    public int getScore(){
+        return score;
+    }
+
+    /**
+     * Method to get the depth which was fully searched.
+     * @return the depth.
+     */
+    public int getDepth(){
+        return depth;
+    }
+
+    /**
+     * Method to get the number of nodes searched.
+     * @return the number of nodes.
+     */
+    public long getNodes(){
+        return nodes;
+    }
+
+    /**
+     * Method to get the time spent searching.
+     * @return the time in nanoseconds.
+     */
+    public long getTimeNanos(){
+        return timeNanos;
+    }
+
+    /**
+     * Method to get the score of each column.
+     * @return a copy of the column scores, where unplayable columns are SearchEngine.NO_SCORE.
+     */
+    public int[] getColumnScores(){
+        return columnScores.clone();
+    }
+
+    /**
+     * Method to get the search speed.
+     * @return the number of nodes searched per second.
+     */
+    public long getNodesPerSecond(){
+        return timeNanos == 0 ? 0 : nodes * 1_000_000_000L / timeNanos;
+    }
+}
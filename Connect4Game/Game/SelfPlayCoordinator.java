@@ -0,0 +1,455 @@
+package Game;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An instantiable class which shares a list of self-play games out between worker processes (see SelfPlayWorker) over
+ * a line based TCP protocol, and collects how each game ended.
+ *
+ * Commands a worker sends (one per line) and their replies:
+ * <pre>
+ * HELLO name              -> OK
+ * GET                     -> BATCH n, then n lines written by SelfPlayGame.toLine()
+ *                            WAIT millis     (nothing to hand out yet - ask again after that long)
+ *                            DONE            (every game has been played)
+ * RESULT id winner moves  -> OK [DROP id id ...]
+ * FAIL id reason          -> OK [DROP id id ...]
+ * QUIT                    -> OK BYE
+ * </pre>
+ * Games are handed out in batches from a queue. Once the queue is empty, a worker asking for more steals the back half
+ * of the games still waiting on the worker with the most of them, and that worker is told to drop them in the reply to
+ * its next RESULT. If a worker disconnects, or goes longer than the timeout without sending anything, the games it
+ * hadn't finished go back on the front of the queue, and a game which fails MAX_ATTEMPTS times is given up on. A game
+ * played twice (e.g by a worker which hadn't dropped it yet) keeps the first result.
+ *
+ * @author Daniel Arefjev
+ */
+public class SelfPlayCoordinator implements Runnable {
+    public static final int DEFAULT_PORT = 4445;
+    public static final int DEFAULT_BATCH = 16;
+    public static final int MAX_ATTEMPTS = 3;
+    private static final int WAIT_MILLIS = 200;
+
+    private final ServerSocket serverSocket;
+    private final ExecutorService executor;
+    private final Set<Socket> sockets = Collections.synchronizedSet(new HashSet<>());
+    private final Map<Long, SelfPlayGame> games = new LinkedHashMap<>();
+    private final int batchSize;
+    private final int timeoutMillis;
+    private Thread acceptThread;
+
+    //everything below is guarded by this object's lock
+    private final ArrayDeque<SelfPlayGame> queue = new ArrayDeque<>();
+    private final Map<Object, LinkedHashSet<SelfPlayGame>> assigned = new HashMap<>();
+    private final Map<Object, List<Long>> dropped = new HashMap<>();
+    private int finished;
+    private int failed;
+    private int retries;
+    private int steals;
+
+    /**
+     * SelfPlayCoordinator 5 argument constructor. The coordinator doesn't accept workers until start() is called.
+     * @param address the address to listen on, or null for every address.
+     * @param port the port to listen on, or 0 for any free port.
+     * @param games the games to play, whose ids must be unique.
+     * @param batchSize the number of games handed to a worker at once.
+     * @param timeoutMillis how long a worker can go without sending anything before it's treated as dead, or 0 to
+     * wait forever. This should be longer than the slowest game takes to play.
+     */
+    public SelfPlayCoordinator(InetAddress address, int port, List<SelfPlayGame> games, int batchSize, int timeoutMillis) throws IOException {
+        for(SelfPlayGame game : games){
+            if(this.games.put(game.getId(), game) != null){
+                throw new IllegalArgumentException("Duplicate game id " + game.getId());
+            }
+            queue.add(game);
+        }
+        this.batchSize = batchSize;
+        this.timeoutMillis = timeoutMillis;
+        this.serverSocket = new ServerSocket(port, 64, address);
+        this.executor = GameServer.newThreadPerTaskExecutor("Self-Play Coordinator Connection");
+    }
+
+    /**
+     * Method to get the port the coordinator is listening on, e.g when it was created with port 0.
+     * @return the port.
+     */
+    public int getPort(){
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Method to get the games, which have their results once they've been played.
+     * @return the games, in the order they were given.
+     */
+    public Collection<SelfPlayGame> getGames(){
+        return Collections.unmodifiableCollection(games.values());
+    }
+
+    /**
+     * Method to get the number of games which have been played.
+     * @return the number of finished games.
+     */
+    public synchronized int getFinishedCount(){
+        return finished;
+    }
+
+    /**
+     * Method to get the number of games given up on after failing MAX_ATTEMPTS times.
+     * @return the number of failed games.
+     */
+    public synchronized int getFailedCount(){
+        return failed;
+    }
+
+    /**
+     * Method to get the number of times a game has gone back on the queue because its worker died or couldn't play it.
+     * @return the number of retries.
+     */
+    public synchronized int getRetryCount(){
+        return retries;
+    }
+
+    /**
+     * Method to get the number of games taken from one worker and given to another.
+     * @return the number of stolen games.
+     */
+    public synchronized int getStealCount(){
+        return steals;
+    }
+
+    /**
+     * Method which starts accepting workers on a background thread.
+     */
+    public void start(){
+        acceptThread = new Thread(this, "Self-Play Coordinator");
+        acceptThread.start();
+    }
+
+    /**
+     * Method which waits until every game has either been played or given up on.
+     * @param timeoutMillis the longest to wait, or 0 to wait forever.
+     * @return true if every game was dealt with in time.
+     */
+    public synchronized boolean await(long timeoutMillis) throws InterruptedException {
+        long end = System.currentTimeMillis() + timeoutMillis;
+        while(finished + failed < games.size()){
+            long left = end - System.currentTimeMillis();
+            if(timeoutMillis > 0 && left <= 0){
+                return false;
+            }
+            wait(timeoutMillis > 0 ? left : 0);
+        }
+        return true;
+    }
+
+    /**
+     * Method which stops accepting workers and closes every open connection.
+     */
+    public void close(){
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        synchronized(sockets){
+            for(Socket socket : sockets){
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    //already closed
+                }
+            }
+        }
+        executor.shutdown();
+    }
+
+    /**
+     * Method which runs on the accept thread, handing each new worker to its own thread.
+     */
+    public void run(){
+        while(!serverSocket.isClosed()){
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                socket.setSoTimeout(timeoutMillis);
+                sockets.add(socket);
+                executor.execute(() -> handle(socket));
+            } catch (SocketException e) {
+                //server socket was closed
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Method which reads commands from a worker until it quits or its connection closes, and then puts back any games
+     * it hadn't finished.
+     */
+    private void handle(Socket socket){
+        Object worker = new Object();
+        synchronized(this){
+            assigned.put(worker, new LinkedHashSet<>());
+            dropped.put(worker, new ArrayList<>());
+        }
+        try(BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+            Writer writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII))){
+            String line;
+            while((line = reader.readLine()) != null){
+                String reply = execute(line.trim(), worker);
+                writer.write(reply);
+                writer.write('\n');
+                writer.flush();
+                if(reply.equals("OK BYE")){
+                    break;
+                }
+            }
+        } catch (SocketTimeoutException e) {
+            System.err.println("Self-play worker timed out, putting its games back");
+        } catch (IOException e) {
+            //the connection was closed - its games are dealt with below
+        } finally {
+            sockets.remove(socket);
+            try {
+                socket.close();
+            } catch (IOException e) {
+                //already closed
+            }
+            release(worker);
+        }
+    }
+
+    /**
+     * Method which carries out one command for a worker.
+     * @param line the command.
+     * @param worker the worker.
+     * @return the reply, which may be several lines.
+     */
+    private synchronized String execute(String line, Object worker){
+        String[] parts = line.split("\\s+");
+        String command = parts[0].toUpperCase();
+        try {
+            if(command.equals("HELLO")){
+                return "OK";
+            } else if(command.equals("QUIT")){
+                return "OK BYE";
+            } else if(command.equals("GET")){
+                return handOut(worker);
+            } else if(command.equals("RESULT")){
+                SelfPlayGame game = games.get(Long.parseLong(parts[1]));
+                int winner = Integer.parseInt(parts[2]);
+                if(game == null || winner < 1 || winner > 3){
+                    return "ERR Unknown game or winner";
+                }
+                assigned.get(worker).remove(game);
+                if(!game.isFinished()){
+                    game.setResult(winner, parts.length > 3 ? parts[3] : MoveNotation.EMPTY);
+                    //a game stolen from this worker which it finished first - the thief needn't play it as well
+                    if(game.owner != null && game.owner != worker && assigned.containsKey(game.owner)){
+                        assigned.get(game.owner).remove(game);
+                        dropped.get(game.owner).add(game.getId());
+                    }
+                    game.owner = null;
+                    finished++;
+                    notifyAll();
+                }
+                return withDrops(worker);
+            } else if(command.equals("FAIL")){
+                SelfPlayGame game = games.get(Long.parseLong(parts[1]));
+                if(game == null){
+                    return "ERR Unknown game";
+                }
+                System.err.println("Self-play game " + game.getId() + " failed: " + line);
+                if(assigned.get(worker).remove(game) && game.owner == worker){
+                    retry(game);
+                }
+                return withDrops(worker);
+            }
+            return "ERR Unknown command " + parts[0];
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            return "ERR Bad command " + line;
+        }
+    }
+
+    /**
+     * Method which hands a worker its next batch of games, from the queue or else stolen from another worker.
+     */
+    private String handOut(Object worker){
+        List<SelfPlayGame> batch = new ArrayList<>();
+        while(batch.size() < batchSize && !queue.isEmpty()){
+            SelfPlayGame game = queue.poll();
+            //a game put back when its worker died may have been finished since by a worker it was stolen from
+            if(!game.isFinished()){
+                batch.add(game);
+            }
+        }
+        if(batch.isEmpty()){
+            //the victim is probably playing the first of its games already, so only ever the back half is taken
+            Object victim = null;
+            int most = 1;
+            for(Map.Entry<Object, LinkedHashSet<SelfPlayGame>> entry : assigned.entrySet()){
+                if(entry.getKey() != worker && entry.getValue().size() > most){
+                    victim = entry.getKey();
+                    most = entry.getValue().size();
+                }
+            }
+            if(victim == null){
+                return finished + failed == games.size() ? "DONE" : "WAIT " + WAIT_MILLIS;
+            }
+            LinkedHashSet<SelfPlayGame> victimGames = assigned.get(victim);
+            int keep = (most + 1) / 2;
+            Iterator<SelfPlayGame> iterator = victimGames.iterator();
+            for(int i = 0; iterator.hasNext(); i++){
+                SelfPlayGame game = iterator.next();
+                if(i >= keep && batch.size() < batchSize){
+                    iterator.remove();
+                    batch.add(game);
+                    dropped.get(victim).add(game.getId());
+                    steals++;
+                }
+            }
+        }
+
+        StringBuilder reply = new StringBuilder("BATCH ").append(batch.size());
+        for(SelfPlayGame game : batch){
+            game.owner = worker;
+            assigned.get(worker).add(game);
+            reply.append('\n').append(game.toLine());
+        }
+        return reply.toString();
+    }
+
+    /**
+     * Method to build the reply to a RESULT or FAIL, telling the worker about any games which have been stolen from it.
+     */
+    private String withDrops(Object worker){
+        List<Long> ids = dropped.get(worker);
+        if(ids.isEmpty()){
+            return "OK";
+        }
+        StringBuilder reply = new StringBuilder("OK DROP");
+        for(long id : ids){
+            reply.append(' ').append(id);
+        }
+        ids.clear();
+        return reply.toString();
+    }
+
+    /**
+     * Method which puts a game which wasn't played back on the front of the queue, unless it's failed too many times.
+     */
+    private void retry(SelfPlayGame game){
+        game.owner = null;
+        if(game.addAttempt() >= MAX_ATTEMPTS){
+            failed++;
+            notifyAll();
+        } else {
+            retries++;
+            queue.addFirst(game);
+        }
+    }
+
+    /**
+     * Method which puts back the games a worker which has gone away hadn't finished.
+     */
+    private synchronized void release(Object worker){
+        LinkedHashSet<SelfPlayGame> unfinished = assigned.remove(worker);
+        dropped.remove(worker);
+        List<SelfPlayGame> games = new ArrayList<>(unfinished);
+        //backwards, so they end up on the front of the queue in their original order
+        for(int i = games.size() - 1; i >= 0; i--){
+            if(!games.get(i).isFinished()){
+                retry(games.get(i));
+            }
+        }
+    }
+
+    /**
+     * Method which plays self-play games between two search depths on local worker processes, each game being played
+     * once with each depth as Player 1, and prints the results. With -kill, one worker is killed part way through to
+     * show its games being retried by the others.
+     *
+     * Usage: SelfPlayCoordinator [games] [workers] [boardSize] [depth1] [depth2] [batchSize] [-kill]
+     * The defaults are 400 games on 4 workers, on a 7x7 board between depths 4 and 2, in batches of 16.
+     * @param args see above.
+     */
+    public static void main(String[] args) throws Exception {
+        List<String> arguments = new ArrayList<>(Arrays.asList(args));
+        boolean kill = arguments.remove("-kill");
+        int count = arguments.size() > 0 ? Integer.parseInt(arguments.get(0)) : 400;
+        int workerCount = arguments.size() > 1 ? Integer.parseInt(arguments.get(1)) : 4;
+        int boardSize = arguments.size() > 2 ? Integer.parseInt(arguments.get(2)) : 7;
+        int depth1 = arguments.size() > 3 ? Integer.parseInt(arguments.get(3)) : 4;
+        int depth2 = arguments.size() > 4 ? Integer.parseInt(arguments.get(4)) : 2;
+        int batchSize = arguments.size() > 5 ? Integer.parseInt(arguments.get(5)) : DEFAULT_BATCH;
+
+        SplittableRandom random = new SplittableRandom(1);
+        List<SelfPlayGame> games = new ArrayList<>();
+        for(int i = 0; i < count; i++){
+            //pairs of games share an opening, with the depths swapped
+            boolean swapped = i % 2 == 1;
+            long seed = swapped ? games.get(i - 1).getSeed() : random.nextLong();
+            int openingPlies = swapped ? games.get(i - 1).getOpeningPlies() : random.nextInt(2, 9);
+            games.add(new SelfPlayGame(i, boardSize, swapped ? depth2 : depth1, swapped ? depth1 : depth2, openingPlies, seed));
+        }
+
+        SelfPlayCoordinator coordinator = new SelfPlayCoordinator(InetAddress.getLoopbackAddress(), 0, games, batchSize, 120_000);
+        coordinator.start();
+        long start = System.nanoTime();
+        List<Process> workers = new ArrayList<>();
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        for(int i = 0; i < workerCount; i++){
+            ProcessBuilder builder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), "Game.SelfPlayWorker",
+                    InetAddress.getLoopbackAddress().getHostAddress(), String.valueOf(coordinator.getPort()), "worker-" + (i + 1));
+            builder.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+            builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+            workers.add(builder.start());
+        }
+        if(kill){
+            while(coordinator.getFinishedCount() < count / 3){
+                Thread.sleep(20);
+            }
+            workers.get(0).destroyForcibly();
+            System.out.println("Killed worker-1 after " + coordinator.getFinishedCount() + " games");
+        }
+        coordinator.await(0);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        for(Process worker : workers){
+            worker.waitFor(10, TimeUnit.SECONDS);
+        }
+        coordinator.close();
+
+        //depth1's score, from its point of view
+        int wins = 0, draws = 0, losses = 0;
+        long plies = 0;
+        for(SelfPlayGame game : coordinator.getGames()){
+            if(!game.isFinished()){
+                continue;
+            }
+            plies += game.getMoves().length();
+            int depth1Player = game.getDepth(1) == depth1 ? 1 : 2;
+            if(game.getWinner() == 3){
+                draws++;
+            } else if(game.getWinner() == depth1Player){
+                wins++;
+            } else {
+                losses++;
+            }
+        }
+        int played = coordinator.getFinishedCount();
+        System.out.printf("%d of %d games played on %d workers in %.1fs (%.1f games/s), %.1f moves per game%n", played,
+                count, workerCount, seconds, played / seconds, played == 0 ? 0.0 : (double) plies / played);
+        System.out.printf("Depth %d against depth %d: %d wins, %d draws, %d losses%n", depth1, depth2, wins, draws, losses);
+        System.out.printf("%d retries, %d stolen, %d failed%n", coordinator.getRetryCount(), coordinator.getStealCount(),
+                coordinator.getFailedCount());
+    }
+}
@@ -0,0 +1,184 @@
+package Game;
+
+import java.util.SplittableRandom;
+
+/**
+ * An instantiable class which defines one self-play game handed out by a SelfPlayCoordinator: the board size, how
+ * each player chooses its moves and the seed for the random opening, and once it's been played, how it ended.
+ *
+ * A player's depth is how many moves ahead it searches, or 0 to play random columns like the "Very Easy" AI. The
+ * first few moves of every game are random (chosen with the game's seed) so games between the same players differ,
+ * and the searches start from an empty transposition table, so playing the same game twice gives the same result.
+ *
+ * @author Daniel Arefjev
+ */
+public class SelfPlayGame {
+    private final long id;
+    private final int size;
+    private final int depth1;
+    private final int depth2;
+    private final int openingPlies;
+    private final long seed;
+
+    //the result, and the coordinator's bookkeeping, which are only touched while holding the coordinator's lock
+    private int winner;
+    private String moves;
+    private int attempts;
+    Object owner;
+
+    /**
+     * SelfPlayGame 6 argument constructor.
+     * @param id the game's id, unique within a coordinator.
+     * @param size the width/height of the board.
+     * @param depth1 Player 1's search depth, or 0 for random moves.
+     * @param depth2 Player 2's search depth, or 0 for random moves.
+     * @param openingPlies the number of random moves the game starts with.
+     * @param seed the seed for the random moves.
+     */
+    public SelfPlayGame(long id, int size, int depth1, int depth2, int openingPlies, long seed){
+        this.id = id;
+        this.size = size;
+        this.depth1 = depth1;
+        this.depth2 = depth2;
+        this.openingPlies = openingPlies;
+        this.seed = seed;
+    }
+
+    /**
+     * Method to get the game's id.
+     * @return the id, unique within a coordinator.
+     */
+    public long getId(){
+        return id;
+    }
+
+    /**
+     * Method to get the size of the board the game is played on.
+     * @return the width/height of the board.
+     */
+    public int getSize(){
+        return size;
+    }
+
+    /**
+     * Method to get a player's search depth.
+     * @param player 1 or 2.
+     * @return the depth, or 0 for random moves.
+     */
+    public int getDepth(int player){
+        return player == 1 ? depth1 : depth2;
+    }
+
+    /**
+     * Method to get the number of random moves the game starts with.
+     * @return the number of random moves.
+     */
+    public int getOpeningPlies(){
+        return openingPlies;
+    }
+
+    /**
+     * Method to get the seed for the game's random moves.
+     * @return the seed.
+     */
+    public long getSeed(){
+        return seed;
+    }
+
+    /**
+     * Method to get how the game ended.
+     * @return 1 or 2 for the winner, 3 for a draw, or 0 if it hasn't been played yet.
+     */
+    public int getWinner(){
+        return winner;
+    }
+
+    /**
+     * Method to get the moves of the game.
+     * @return the moves in MoveNotation, or null if it hasn't been played yet.
+     */
+    public String getMoves(){
+        return moves;
+    }
+
+    /**
+     * Method to get the number of times the game has been handed to a worker which then died or couldn't play it.
+     * @return the number of failed attempts.
+     */
+    public int getAttempts(){
+        return attempts;
+    }
+
+    /**
+     * Method to check whether the game has been played.
+     * @return true if the game has a result.
+     */
+    public boolean isFinished(){
+        return winner != 0;
+    }
+
+    void setResult(int winner, String moves){
+        this.winner = winner;
+        this.moves = moves;
+    }
+
+    int addAttempt(){
+        return ++attempts;
+    }
+
+    /**
+     * Method which plays the game.
+     * @param engine the engine the searching players use. Its transposition table is cleared first.
+     * @param table the engine's transposition table.
+     * @param moves set to the moves of the game in MoveNotation.
+     * @return 1 or 2 for the winner, or 3 for a draw.
+     */
+    public int play(SearchEngine engine, TranspositionTable table, StringBuilder moves){
+        table.clear();
+        SplittableRandom random = new SplittableRandom(seed);
+        SearchLimits limits = new SearchLimits();
+        Position position = new Position(size);
+        int winner = 0;
+        while(winner == 0){
+            int player = position.getPlayer();
+            int depth = getDepth(player);
+            int column;
+            if(position.getMoveCount() < openingPlies || depth == 0){
+                do {
+                    column = random.nextInt(size);
+                } while(!position.canPlay(column));
+            } else {
+                limits.setDepth(depth);
+                column = engine.search(position, limits, null).getBestColumn();
+            }
+            boolean won = position.isWinningMove(column);
+            position.play(column);
+            winner = won ? player : position.isDeadDraw() ? 3 : 0;
+        }
+        moves.setLength(0);
+        MoveNotation.format(position, moves);
+        return winner;
+    }
+
+    /**
+     * Method to write the game's configuration as the coordinator sends it to workers.
+     * @return "GAME id size depth1 depth2 openingPlies seed".
+     */
+    public String toLine(){
+        return "GAME " + id + " " + size + " " + depth1 + " " + depth2 + " " + openingPlies + " " + seed;
+    }
+
+    /**
+     * Method to read a game's configuration written by toLine().
+     * @param line the line.
+     * @return the game.
+     */
+    public static SelfPlayGame parse(String line){
+        String[] parts = line.split(" ");
+        if(parts.length != 7 || !parts[0].equals("GAME")){
+            throw new IllegalArgumentException("Not a game: " + line);
+        }
+        return new SelfPlayGame(Long.parseLong(parts[1]), Integer.parseInt(parts[2]), Integer.parseInt(parts[3]),
+                Integer.parseInt(parts[4]), Integer.parseInt(parts[5]), Long.parseLong(parts[6]));
+    }
+}
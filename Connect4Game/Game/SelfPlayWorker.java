@@ -0,0 +1,157 @@
+package Game;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * An instantiable class which plays self-play games handed out by a SelfPlayCoordinator, one at a time, until the
+ * coordinator has none left. Each worker has its own search engine, which starts every game with an empty
+ * transposition table. See SelfPlayCoordinator for the protocol.
+ *
+ * @author Daniel Arefjev
+ */
+public class SelfPlayWorker implements Runnable {
+    private final String host;
+    private final int port;
+    private final String name;
+    private final TranspositionTable table = new TranspositionTable(1 << 18);
+    private final SearchEngine engine = new SearchEngine(table);
+    private int gamesPlayed;
+    private IOException failure;
+
+    /**
+     * SelfPlayWorker 3 argument constructor.
+     * @param host the coordinator's host.
+     * @param port the coordinator's port.
+     * @param name the name the worker gives the coordinator.
+     */
+    public SelfPlayWorker(String host, int port, String name){
+        this.host = host;
+        this.port = port;
+        this.name = name;
+    }
+
+    /**
+     * Method to get the number of games the worker has played.
+     * @return the number of games played.
+     */
+    public int getGamesPlayed(){
+        return gamesPlayed;
+    }
+
+    /**
+     * Method to get what stopped the worker, if it didn't finish normally.
+     * @return the exception, or null.
+     */
+    public IOException getFailure(){
+        return failure;
+    }
+
+    /**
+     * Method which asks the coordinator for games and plays them until there are none left.
+     */
+    public void run(){
+        try(Socket socket = new Socket(host, port)){
+            socket.setTcpNoDelay(true);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+            Writer writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII));
+            send(reader, writer, "HELLO " + name);
+            ArrayDeque<SelfPlayGame> games = new ArrayDeque<>();
+            StringBuilder moves = new StringBuilder();
+            while(true){
+                String reply = send(reader, writer, "GET");
+                if(reply.equals("DONE")){
+                    break;
+                } else if(reply.startsWith("WAIT ")){
+                    Thread.sleep(Long.parseLong(reply.substring(5)));
+                    continue;
+                } else if(!reply.startsWith("BATCH ")){
+                    throw new IOException("Unexpected reply: " + reply);
+                }
+                int count = Integer.parseInt(reply.substring(6));
+                for(int i = 0; i < count; i++){
+                    games.add(SelfPlayGame.parse(readLine(reader)));
+                }
+
+                while(!games.isEmpty()){
+                    SelfPlayGame game = games.poll();
+                    String result;
+                    try {
+                        int winner = game.play(engine, table, moves);
+                        result = "RESULT " + game.getId() + " " + winner + " " + moves;
+                        gamesPlayed++;
+                    } catch (RuntimeException e) {
+                        e.printStackTrace();
+                        result = "FAIL " + game.getId() + " " + e;
+                    }
+                    drop(games, send(reader, writer, result));
+                }
+            }
+            send(reader, writer, "QUIT");
+        } catch (IOException e) {
+            failure = e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Method which removes the games a reply says have been given to another worker.
+     */
+    private static void drop(ArrayDeque<SelfPlayGame> games, String reply) throws IOException {
+        if(!reply.startsWith("OK")){
+            throw new IOException("Unexpected reply: " + reply);
+        }
+        if(!reply.startsWith("OK DROP ")){
+            return;
+        }
+        String[] ids = reply.substring(8).split(" ");
+        for(String id : ids){
+            long dropped = Long.parseLong(id);
+            for(Iterator<SelfPlayGame> iterator = games.iterator(); iterator.hasNext();){
+                if(iterator.next().getId() == dropped){
+                    iterator.remove();
+                    break;
+                }
+            }
+        }
+    }
+
+    private static String send(BufferedReader reader, Writer writer, String command) throws IOException {
+        writer.write(command);
+        writer.write('\n');
+        writer.flush();
+        return readLine(reader);
+    }
+
+    private static String readLine(BufferedReader reader) throws IOException {
+        String line = reader.readLine();
+        if(line == null){
+            throw new EOFException("Coordinator closed the connection");
+        }
+        return line;
+    }
+
+    /**
+     * Method which runs a worker until the coordinator runs out of games.
+     *
+     * Usage: SelfPlayWorker [host] [port] [name]
+     * The defaults are localhost, SelfPlayCoordinator.DEFAULT_PORT and "worker".
+     * @param args see above.
+     */
+    public static void main(String[] args){
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : SelfPlayCoordinator.DEFAULT_PORT;
+        String name = args.length > 2 ? args[2] : "worker";
+        SelfPlayWorker worker = new SelfPlayWorker(host, port, name);
+        worker.run();
+        System.out.println(name + " played " + worker.getGamesPlayed() + " games");
+        if(worker.getFailure() != null){
+            worker.getFailure().printStackTrace();
+            System.exit(1);
+        }
+    }
+}
@@ -12,6 +12,9 @@ import java.util.GregorianCalendar;
  * @author Daniel Arefjev
  */
 public class SimpleGameBoard implements Serializable {
+    //kept the same as before the clock fields were added, so older save files can still be loaded
+    private static final long serialVersionUID = 2751577051286823337L;
+
     private int boardSize;
     private int[][] gameState;
     private int player1Icon;
@@ -24,6 +27,10 @@ public class SimpleGameBoard implements Serializable {
     private int player;
     private GregorianCalendar timeStarted;
     private GregorianCalendar timeElapsed;
+    private long player1Clock;
+    private long player2Clock;
+    private long clockIncrement;
+    private int[] moves;
 
     private int winner;
 
@@ -83,11 +90,11 @@ public class SimpleGameBoard implements Serializable {
      * Method to set AI related parameters of a SimpleGameBoard object.
      * @param aiToggle a boolean value, where false means the AI is toggled off, true is on.
      * @param aiDifficulty an integer value corrosponding to the difficulty of the AI, where 0 is the easiest and
-     * higher values get harder. (Currently at a max of 2)
+     * higher values get harder. (Currently at a max of 3)
      */
     public void setAIStuff(boolean aiToggle, int aiDifficulty){
         this.aiToggle = aiToggle;
-        this.aiDifficulty = aiDifficulty; //0 = v.easy, 1 = easy
+        this.aiDifficulty = aiDifficulty; //0 = v.easy, 1 = easy, 2 = medium, 3 = hard
     }
 
     /**
@@ -117,7 +124,7 @@ public class SimpleGameBoard implements Serializable {
     /**
      * Method to get the AI difficulty of a SimpleGameBoard object.
      * @return an integer value corresponding to the difficulty of the AI, where 0 is the easiest and
-     * higher values get harder. (Currently at a max of 2)
+     * higher values get harder. (Currently at a max of 3)
      */
     public int getAiDifficulty() {
         return aiDifficulty;
@@ -241,4 +248,55 @@ public class SimpleGameBoard implements Serializable {
         return timeElapsed;
     }
 
+    //moves
+
+    /**
+     * Method to set the moves played in a SimpleGameBoard object.
+     * @param moves the columns played, in the order they were played.
+     */
+    public void setMoves(int[] moves){
+        this.moves = moves;
+    }
+
+    /**
+     * Method to get the moves played in a SimpleGameBoard object.
+     * @return the columns played in order, or null for saves made before moves were recorded.
+     */
+    public int[] getMoves(){
+        return moves;
+    }
+
+    //clocks
+
+    /**
+     * Method to set the time left on each player's clock in a SimpleGameBoard object.
+     * @param player1Clock the time left for player 1, in milliseconds.
+     * @param player2Clock the time left for player 2, in milliseconds.
+     * @param clockIncrement the time added after each move, in milliseconds.
+     */
+    public void setClocks(long player1Clock, long player2Clock, long clockIncrement){
+        this.player1Clock = player1Clock;
+        this.player2Clock = player2Clock;
+        this.clockIncrement = clockIncrement;
+    }
+
+    /**
+     * Methods to get the time left on each player's clock in a SimpleGameBoard object.
+     * @return the time left in milliseconds - 0 for both players means the game isn't timed.
+     */
+    public long getPlayer1Clock(){
+        return player1Clock;
+    }
+    public long getPlayer2Clock(){
+        return player2Clock;
+    }
+
+    /**
+     * Method to get the clock increment of a SimpleGameBoard object.
+     * @return the time added after each move, in milliseconds.
+     */
+    public long getClockIncrement(){
+        return clockIncrement;
+    }
+
 }
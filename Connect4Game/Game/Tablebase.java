@@ -0,0 +1,588 @@
+package Game;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * An instantiable class which defines an endgame tablebase - the exact result of every reachable position on a small
+ * board (4x4 or 5x5), so the AI and analysis mode can look positions up rather than search them.
+ *
+ * Each position has one byte in the file, which says whether the player to move wins, loses or draws with perfect
+ * play, and for a win or loss in how many moves. Only positions where the players have taken turns are stored (Player
+ * 1 has as many tiles as Player 2, or one more), and they're addressed by their column heights and which of their
+ * tiles are Player 1's: the file starts with a block for every combination of column heights, and within a block the
+ * tiles (column by column, from the bottom up) are numbered and a position is the rank of the set of Player 1's tiles
+ * among every set of that size. So the file has no gaps for impossible positions, and a lookup is a few additions.
+ *
+ * The file is memory-mapped, so opening it is instant and only the parts which are used are read from disk.
+ * Tablebases are made with the main method, which works out every position's result by working backwards from the
+ * full board, one number of tiles at a time, with the positions of each layer shared between threads.
+ *
+ * @author Daniel Arefjev
+ */
+public class Tablebase implements Closeable {
+    public static final int MIN_SIZE = 4;
+    public static final int MAX_SIZE = 5;
+
+    /**
+     * Entry values: 0 means the position isn't in the tablebase (it can't be reached without the game ending first),
+     * 1 is a draw, WIN + n is a win in n moves (by both players) and LOSS + n is a loss in n moves, where a loss in
+     * 0 moves means the other player has already won.
+     */
+    public static final int NOT_FOUND = 0;
+    public static final int DRAW = 1;
+    public static final int WIN = 1;
+    public static final int LOSS = 128;
+    private static final int REACHED = 255;
+
+    private static final int MAGIC = 0x43345442;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 24;
+    private static final int[][] binomials = new int[26][26];
+    private static final Tablebase[] tablebases = new Tablebase[MAX_SIZE + 1];
+    private static final boolean[] opened = new boolean[MAX_SIZE + 1];
+
+    private final int size;
+    private final long[] offsets;
+    private final FileChannel channel;
+    private final MappedByteBuffer data;
+
+    static {
+        for(int n = 0; n < binomials.length; n++){
+            binomials[n][0] = 1;
+            for(int k = 1; k <= n; k++){
+                binomials[n][k] = binomials[n - 1][k - 1] + (k < n ? binomials[n - 1][k] : 0);
+            }
+        }
+    }
+
+    /**
+     * Tablebase 1 argument constructor, which maps a tablebase file.
+     * @param file the file.
+     * @throws IOException if the file can't be read or isn't a tablebase.
+     */
+    public Tablebase(File file) throws IOException {
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            while(header.hasRemaining() && channel.read(header) >= 0){
+            }
+            header.flip();
+            if(header.remaining() < HEADER_BYTES || header.getInt() != MAGIC || header.getInt() != VERSION){
+                throw new IOException(file + " isn't a tablebase");
+            }
+            this.size = header.getInt();
+            if(size < MIN_SIZE || size > MAX_SIZE){
+                throw new IOException(file + " has an unsupported board size");
+            }
+            this.offsets = getOffsets(size);
+            long entries = header.getLong(16);
+            if(entries != offsets[offsets.length - 1] || channel.size() != HEADER_BYTES + entries){
+                throw new IOException(file + " is the wrong length");
+            }
+            this.data = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES, entries);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Method to get the file the tablebase for a board size is kept in.
+     * @param size the width/height of the board.
+     * @return the file, in the working directory.
+     */
+    public static File getFile(int size){
+        return new File("tablebase_" + size + "x" + size + ".c4t");
+    }
+
+    /**
+     * Method to get the tablebase for a board size, opening it the first time it's asked for.
+     * @param size the width/height of the board.
+     * @return the tablebase, or null if there isn't one for the size (or it couldn't be opened).
+     */
+    public static synchronized Tablebase forSize(int size){
+        if(size < MIN_SIZE || size > MAX_SIZE){
+            return null;
+        }
+        if(!opened[size]){
+            opened[size] = true;
+            File file = getFile(size);
+            if(file.exists()){
+                try {
+                    tablebases[size] = new Tablebase(file);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        return tablebases[size];
+    }
+
+    /**
+     * Method to get the width/height of the board a tablebase is for.
+     * @return the board size.
+     */
+    public int getSize(){
+        return size;
+    }
+
+    /**
+     * Method to get the number of entries in a tablebase.
+     * @return the number of entries.
+     */
+    public long getEntryCount(){
+        return offsets[offsets.length - 1];
+    }
+
+    //lookup
+
+    /**
+     * Method to look up a position.
+     * @param position the position.
+     * @return the entry (see NOT_FOUND), which is NOT_FOUND if the position isn't in the tablebase, e.g because a
+     * player lost a turn.
+     */
+    public int probe(Position position){
+        if(position.getSize() != size){
+            return NOT_FOUND;
+        }
+        long index = indexOf(position);
+        return index < 0 ? NOT_FOUND : data.get((int) index) & 0xFF;
+    }
+
+    /**
+     * Method to get the score of a position in the same terms as SearchEngine - a win or loss in n moves scores
+     * the same as SearchEngine's win or loss n moves away, and a draw scores 0.
+     * @param position the position.
+     * @return the score, or SearchEngine.NO_SCORE if the position isn't in the tablebase.
+     */
+    public int getScore(Position position){
+        return toScore(probe(position));
+    }
+
+    /**
+     * Method which scores every column of a position from the tablebase, as a SearchResult like SearchEngine's.
+     * @param position the position.
+     * @return the result, or null if the position (or one of the positions after it) isn't in the tablebase or the
+     * game is already over.
+     */
+    public SearchResult analyse(Position position){
+        long start = System.nanoTime();
+        if(probe(position) == NOT_FOUND || position.lastMoveWon() || position.isFull()){
+            return null;
+        }
+        int[] scores = new int[size];
+        Arrays.fill(scores, SearchEngine.NO_SCORE);
+        int best = -1;
+        Position child = new Position(position);
+        for(int column : SearchEngine.centreOrder(size)){
+            if(!child.canPlay(column)){
+                continue;
+            }
+            child.play(column);
+            int score = toScore(probe(child));
+            child.undo();
+            if(score == SearchEngine.NO_SCORE){
+                return null;
+            }
+            scores[column] = -score;
+            if(best < 0 || scores[column] > scores[best]){
+                best = column;
+            }
+        }
+        int depth = size * size - position.getMoveCount();
+        return new SearchResult(best, scores[best], depth, 0, System.nanoTime() - start, scores);
+    }
+
+    /**
+     * Method to convert an entry into a SearchEngine score.
+     */
+    private static int toScore(int entry){
+        if(entry == NOT_FOUND){
+            return SearchEngine.NO_SCORE;
+        } else if(entry == DRAW){
+            return 0;
+        } else if(entry >= LOSS){
+            return -(SearchEngine.WIN_SCORE - (entry - LOSS) + 1);
+        }
+        return SearchEngine.WIN_SCORE - (entry - WIN) + 1;
+    }
+
+    /**
+     * Method to get the index of a position's entry.
+     * @return the index, or -1 if the players haven't taken turns.
+     */
+    private long indexOf(Position position){
+        int tiles = position.getMoveCount();
+        int heightsId = 0;
+        int tile = 0;
+        int rank = 0;
+        int ones = 0;
+        for(int column = size - 1; column >= 0; column--){
+            heightsId = heightsId * (size + 1) + position.getHeight(column);
+        }
+        for(int column = 0; column < size; column++){
+            for(int row = 0; row < position.getHeight(column); row++){
+                if(position.getTile(column, row) == 1){
+                    ones++;
+                    rank += binomials[tile][ones];
+                }
+                tile++;
+            }
+        }
+        if(ones != (tiles + 1) / 2 || position.getPlayer() != (tiles % 2 == 0 ? 1 : 2)){
+            return -1;
+        }
+        return offsets[heightsId] + rank;
+    }
+
+    /**
+     * Method to get where the block of each combination of column heights starts. A combination is numbered by its
+     * heights as digits in base size + 1, with column 0 as the lowest digit. The last value is the number of entries.
+     */
+    private static long[] getOffsets(int size){
+        int combinations = 1;
+        for(int i = 0; i < size; i++){
+            combinations *= size + 1;
+        }
+        long[] offsets = new long[combinations + 1];
+        for(int id = 0; id < combinations; id++){
+            int tiles = 0;
+            for(int rest = id; rest > 0; rest /= size + 1){
+                tiles += rest % (size + 1);
+            }
+            offsets[id + 1] = offsets[id] + binomials[tiles][(tiles + 1) / 2];
+        }
+        return offsets;
+    }
+
+    /**
+     * Method which unmaps (when the garbage collector gets to it) and closes the tablebase file.
+     */
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    //generation
+
+    /**
+     * An instantiable class which works out the entries of a tablebase in a file mapped for writing. Positions are
+     * handled as bitboards: each column takes size + 1 bits (the extra one is always empty, so lines can't wrap from one
+     * column to the next), with a board of Player 1's tiles and a board of every tile.
+     */
+    private static class Generator {
+        private final int size;
+        private final int height;
+        private final long[] offsets;
+        private final MappedByteBuffer data;
+        private final ForkJoinPool pool;
+        private final int[][] layers;
+
+        Generator(int size, MappedByteBuffer data, int threads){
+            this.size = size;
+            this.height = size + 1;
+            this.offsets = getOffsets(size);
+            this.data = data;
+            this.pool = new ForkJoinPool(threads);
+            //the combinations of heights with each number of tiles
+            int[] counts = new int[size * size + 1];
+            for(int id = 0; id < offsets.length - 1; id++){
+                counts[tilesOf(id)]++;
+            }
+            this.layers = new int[size * size + 1][];
+            for(int tiles = 0; tiles <= size * size; tiles++){
+                layers[tiles] = new int[counts[tiles]];
+                counts[tiles] = 0;
+            }
+            for(int id = 0; id < offsets.length - 1; id++){
+                int tiles = tilesOf(id);
+                layers[tiles][counts[tiles]++] = id;
+            }
+        }
+
+        private int tilesOf(int id){
+            int tiles = 0;
+            for(int rest = id; rest > 0; rest /= height){
+                tiles += rest % height;
+            }
+            return tiles;
+        }
+
+        /**
+         * Method which marks every position which can be reached from the empty board, one layer at a time.
+         */
+        void markReachable() throws InterruptedException, ExecutionException {
+            data.put(0, (byte) REACHED);
+            for(int tiles = 0; tiles < size * size; tiles++){
+                int[] layer = layers[tiles];
+                pool.submit(() -> IntStream.range(0, layer.length).parallel().forEach(i -> forEachPosition(layer[i], true)))
+                        .get();
+            }
+        }
+
+        /**
+         * Method which works out the entry of every reachable position, from the full board back to the empty one,
+         * so the positions after each move have always been done already.
+         */
+        void solve() throws InterruptedException, ExecutionException {
+            for(int tiles = size * size; tiles >= 0; tiles--){
+                int[] layer = layers[tiles];
+                pool.submit(() -> IntStream.range(0, layer.length).parallel().forEach(i -> forEachPosition(layer[i], false)))
+                        .get();
+            }
+            pool.shutdown();
+        }
+
+        /**
+         * Method which goes through every position with a combination of heights. The sets of Player 1's tiles are
+         * gone through in increasing order as bit patterns, which is the same order as their rank.
+         */
+        private void forEachPosition(int heightsId, boolean marking){
+            int[] heights = new int[size];
+            int tiles = 0;
+            long all = 0;
+            for(int column = 0, rest = heightsId; column < size; column++, rest /= height){
+                heights[column] = rest % height;
+                tiles += heights[column];
+                all |= ((1L << heights[column]) - 1) << (column * height);
+            }
+            int ones = (tiles + 1) / 2;
+            long index = offsets[heightsId];
+            long last = offsets[heightsId + 1];
+            int pattern = (1 << ones) - 1;
+            for(; index < last; index++){
+                int entry = data.get((int) index) & 0xFF;
+                if(entry != NOT_FOUND){
+                    long player1 = toBitboard(pattern, heights);
+                    if(marking){
+                        markChildren(heightsId, heights, tiles, pattern, player1, all);
+                    } else {
+                        data.put((int) index, (byte) solvePosition(heightsId, heights, tiles, pattern, player1, all));
+                    }
+                }
+                //the next pattern with the same number of bits set
+                if(pattern != 0){
+                    int lowest = pattern & -pattern;
+                    int ripple = pattern + lowest;
+                    pattern = (((ripple ^ pattern) >>> 2) / lowest) | ripple;
+                }
+            }
+        }
+
+        private long toBitboard(int pattern, int[] heights){
+            long board = 0;
+            for(int column = 0, shift = 0; column < size; column++){
+                long columnBits = (pattern >>> shift) & ((1 << heights[column]) - 1);
+                board |= columnBits << (column * height);
+                shift += heights[column];
+            }
+            return board;
+        }
+
+        private void markChildren(int heightsId, int[] heights, int tiles, int pattern, long player1, long all){
+            long last = tiles % 2 == 0 ? all ^ player1 : player1;
+            if(isFour(last)){
+                return;
+            }
+            for(int column = 0; column < size; column++){
+                if(heights[column] < size){
+                    data.put((int) childIndex(heightsId, heights, tiles, pattern, column), (byte) REACHED);
+                }
+            }
+        }
+
+        private int solvePosition(int heightsId, int[] heights, int tiles, int pattern, long player1, long all){
+            long last = tiles % 2 == 0 ? all ^ player1 : player1;
+            if(isFour(last)){
+                return LOSS;
+            } else if(tiles == size * size){
+                return DRAW;
+            }
+            int bestWin = Integer.MAX_VALUE;
+            int longestLoss = -1;
+            boolean draw = false;
+            for(int column = 0; column < size; column++){
+                if(heights[column] == size){
+                    continue;
+                }
+                int child = data.get((int) childIndex(heightsId, heights, tiles, pattern, column)) & 0xFF;
+                if(child == DRAW){
+                    draw = true;
+                } else if(child >= LOSS){
+                    bestWin = Math.min(bestWin, child - LOSS + 1);
+                } else {
+                    longestLoss = Math.max(longestLoss, child - WIN + 1);
+                }
+            }
+            if(bestWin != Integer.MAX_VALUE){
+                return WIN + bestWin;
+            }
+            return draw ? DRAW : LOSS + longestLoss;
+        }
+
+        /**
+         * Method to get the index of the position after a tile is added to a column. The new tile goes into the
+         * pattern at its place in the order (after every tile in the columns to its left).
+         */
+        private long childIndex(int heightsId, int[] heights, int tiles, int pattern, int column){
+            int place = 0;
+            int power = 1;
+            for(int i = 0; i < column; i++){
+                place += heights[i];
+                power *= height;
+            }
+            place += heights[column];
+            int low = pattern & ((1 << place) - 1);
+            int mover = tiles % 2 == 0 ? 1 : 0;
+            int child = low | (mover << place) | ((pattern >>> place) << (place + 1));
+            int rank = 0;
+            int ones = 0;
+            while(child != 0){
+                int tile = Integer.numberOfTrailingZeros(child);
+                rank += binomials[tile][++ones];
+                child &= child - 1;
+            }
+            return offsets[heightsId + power] + rank;
+        }
+
+        private boolean isFour(long board){
+            return isFour(board, 1) || isFour(board, height) || isFour(board, height - 1) || isFour(board, height + 1);
+        }
+
+        private static boolean isFour(long board, int shift){
+            long pairs = board & (board >>> shift);
+            return (pairs & (pairs >>> (2 * shift))) != 0;
+        }
+    }
+
+    /**
+     * Method which makes the tablebase for a board size, writing it to a temporary file which is then moved over the
+     * tablebase file.
+     * @param size the width/height of the board.
+     * @param file the file to write.
+     * @param threads the number of threads to work out the entries on.
+     * @throws IOException if the file can't be written.
+     */
+    public static void generate(int size, File file, int threads) throws IOException {
+        if(size < MIN_SIZE || size > MAX_SIZE){
+            throw new IllegalArgumentException("Tablebases can only be made for " + MIN_SIZE + "x" + MIN_SIZE + " to "
+                    + MAX_SIZE + "x" + MAX_SIZE);
+        }
+        long entries = getOffsets(size)[getOffsets(size).length - 1];
+        File directory = file.getAbsoluteFile().getParentFile();
+        File temporary = File.createTempFile(file.getName(), ".tmp", directory);
+        try(FileChannel out = FileChannel.open(temporary.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)){
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC).putInt(VERSION).putInt(size).putInt(0).putLong(entries).flip();
+            out.write(header, 0);
+            //mapping past the end of the file makes it that long, with every entry 0
+            MappedByteBuffer data = out.map(FileChannel.MapMode.READ_WRITE, HEADER_BYTES, entries);
+            Generator generator = new Generator(size, data, threads);
+            generator.markReachable();
+            generator.solve();
+            data.force();
+        } catch (IOException | RuntimeException e) {
+            temporary.delete();
+            throw e;
+        } catch (InterruptedException | ExecutionException e) {
+            temporary.delete();
+            throw new IOException(e);
+        }
+        try {
+            Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Method which makes the tablebase for a board size in the working directory, then checks it: the result of the
+     * empty board, how long lookups take, and whether a sample of positions agrees with ProofNumberSearch.
+     *
+     * Usage: Tablebase size [threads] [samples]
+     * The defaults are one thread per processor and 200 samples.
+     * @param args see above.
+     */
+    public static void main(String[] args) throws IOException {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : MIN_SIZE;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int samples = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+        File file = getFile(size);
+        long start = System.nanoTime();
+        generate(size, file, threads);
+        long generateNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        Tablebase tablebase = new Tablebase(file);
+        long openNanos = System.nanoTime() - start;
+        long reached = 0;
+        long[] counts = new long[3];
+        for(int i = 0; i < tablebase.getEntryCount(); i++){
+            int entry = tablebase.data.get(i) & 0xFF;
+            if(entry != NOT_FOUND){
+                reached++;
+                counts[entry == DRAW ? 1 : entry >= LOSS ? 2 : 0]++;
+            }
+        }
+        Position empty = new Position(size);
+        SearchResult root = tablebase.analyse(empty);
+        System.out.printf("%dx%d: %d entries (%d bytes), %d reachable positions, generated in %.1f s on %d threads%n",
+                size, size, tablebase.getEntryCount(), file.length(), reached, generateNanos / 1e9, threads);
+        System.out.printf("Player to move wins %d, draws %d, loses %d%n", counts[0], counts[1], counts[2]);
+        System.out.printf("Empty board: %s, best move %c, opened in %.2f ms%n", AnalysisOverlay.formatScore(root.getScore()),
+                MoveNotation.toLetter(root.getBestColumn()), openNanos / 1e6);
+
+        //random positions from random games, each checked against the solver
+        java.util.Random random = new java.util.Random(40);
+        ProofNumberSearch solver = new ProofNumberSearch(1 << 20);
+        Position[] positions = new Position[samples];
+        int agreed = 0;
+        for(int i = 0; i < samples; i++){
+            Position position = new Position(size);
+            int moves = random.nextInt(size * size);
+            while(position.getMoveCount() < moves && !position.lastMoveWon()){
+                int column = random.nextInt(size);
+                if(position.canPlay(column)){
+                    position.play(column);
+                }
+            }
+            positions[i] = position;
+            int score = tablebase.getScore(position);
+            int expected = solver.solve(position, new SearchLimits());
+            int result = score == 0 ? ProofNumberSearch.DRAW : score > 0 ? ProofNumberSearch.WIN : ProofNumberSearch.LOSS;
+            if(score != SearchEngine.NO_SCORE && result == expected){
+                agreed++;
+            } else {
+                System.out.println("Mismatch: " + MoveNotation.format(position) + " tablebase "
+                        + AnalysisOverlay.formatScore(score) + ", solver " + ProofNumberSearch.resultName(expected));
+            }
+        }
+        //the same positions again, now the pages they're on have been read in
+        int lookups = 0;
+        long checksum = 0;
+        start = System.nanoTime();
+        while(lookups < 1_000_000){
+            for(Position position : positions){
+                checksum += tablebase.probe(position);
+                lookups++;
+            }
+        }
+        long lookupNanos = System.nanoTime() - start;
+        System.out.printf("%d/%d random positions agree with ProofNumberSearch; lookups take %.0f ns (checksum %d)%n",
+                agreed, samples, (double) lookupNanos / lookups, checksum);
+        tablebase.close();
+    }
+}
@@ -0,0 +1,404 @@
+package Game;
+
+/**
+ * An instantiable class which defines the threat-space search, which looks for forced wins on big boards before the
+ * AI's normal search runs.
+ *
+ * On a big board alpha-beta has too many columns to look at to see more than a few moves ahead, but most games are
+ * actually won with a forcing sequence: the attacker keeps making threats (moves which leave them able to win on the
+ * next move), the defender has to block each one, and eventually the attacker makes two threats at once, or a threat
+ * the block can't stop. This search only looks at those moves - for the attacker, moves which make a threat (or block
+ * one of the defender's threats, if that's all it can do), and for the defender, the one block - so it has very few
+ * moves to look at in each position and can see a forced win many moves deep.
+ *
+ * It only proves wins: if it doesn't find one, that doesn't mean there isn't one. Positions which have been searched
+ * are kept in a TranspositionTable (1 for a forced win, 0 for none within the depth searched), which is cleared
+ * between searches.
+ *
+ * @author Daniel Arefjev
+ */
+public class ThreatSearch {
+    /**
+     * The smallest board the AI runs a threat-space search on before its normal search.
+     */
+    public static final int MIN_BOARD_SIZE = 16;
+    /**
+     * The default limits on each search - how many moves deep (by both players) to look, and for how long.
+     */
+    public static final int DEFAULT_PLIES = 41;
+    public static final long DEFAULT_TIME_MILLIS = 100;
+
+    private static final int CHECK_INTERVAL = 255;
+
+    private final TranspositionTable table = new TranspositionTable(1 << 16);
+    private Position position;
+    private SearchLimits limits;
+    private int[] order;
+    private long nodes;
+    private long deadline;
+    private boolean aborted;
+    private int winPlies;
+
+    //statistics
+    private int searches;
+    private int wins;
+    private long searchNanos;
+    private int mainSearches;
+    private long mainSearchNanos;
+
+    /**
+     * Method which looks for a forced win for the player to move, with the default limits.
+     * @param root the position to search.
+     * @return the column which starts the forced win, or -1 if none was found.
+     */
+    public int findWin(Position root){
+        SearchLimits limits = new SearchLimits();
+        limits.setDepth(DEFAULT_PLIES);
+        limits.setTimeMillis(DEFAULT_TIME_MILLIS);
+        return findWin(root, limits);
+    }
+
+    /**
+     * Method which looks for a forced win for the player to move. The search deepens a move at a time, so the shortest
+     * forced win it can find is the one returned. Only one search can run at a time.
+     * @param root the position to search.
+     * @param limits when to give up - the depth is the most moves (by both players) the win may take.
+     * @return the column which starts the forced win, or -1 if none was found.
+     */
+    public synchronized int findWin(Position root, SearchLimits limits){
+        long start = System.nanoTime();
+        this.position = new Position(root);
+        this.limits = limits;
+        this.order = SearchEngine.centreOrder(root.getSize());
+        this.nodes = 0;
+        this.aborted = false;
+        this.winPlies = 0;
+        this.deadline = limits.getTimeMillis() > 0 ? start + limits.getTimeMillis() * 1_000_000L : Long.MAX_VALUE;
+        table.clear();
+
+        int maxPlies = Math.min(limits.getDepth(), root.getSize() * root.getSize() - root.getMoveCount());
+        int column = -1;
+        //the attacker moves on odd plies, so a win always takes an odd number of them
+        for(int plies = 1; plies <= maxPlies && column < 0 && !aborted; plies += 2){
+            column = attack(plies);
+            if(column >= 0){
+                winPlies = plies;
+            }
+        }
+        searches++;
+        if(column >= 0){
+            wins++;
+        }
+        searchNanos += System.nanoTime() - start;
+        return column;
+    }
+
+    /**
+     * Method which searches a position where it's the attacker's move.
+     * @return the column which wins within the given number of moves, or -1.
+     */
+    private int attack(int plies){
+        if((++nodes & CHECK_INTERVAL) == 0){
+            checkLimits();
+        }
+        if(aborted){
+            return -1;
+        }
+        Position p = position;
+        int attacker = p.getPlayer();
+        int defender = 3 - attacker;
+        int size = p.getSize();
+        int block = -1;
+        int defenderThreats = 0;
+        for(int column = 0; column < size; column++){
+            if(!p.canPlay(column)){
+                continue;
+            }
+            if(p.isWinningMove(column, attacker)){
+                return column;
+            }
+            if(p.isWinningMove(column, defender)){
+                defenderThreats++;
+                block = column;
+            }
+        }
+        //an attacker move, the block and the winning move
+        if(plies < 3 || defenderThreats > 1){
+            return -1;
+        }
+
+        long entry = table.probe(p.getCanonicalHash());
+        if(entry != 0){
+            if(TranspositionTable.scoreOf(entry) == 1){
+                return p.canonicalColumn(TranspositionTable.moveOf(entry));
+            } else if(TranspositionTable.depthOf(entry) >= plies){
+                return -1;
+            }
+        }
+
+        int win = -1;
+        for(int i = 0; i < size && win < 0 && !aborted; i++){
+            //if the defender has a threat, the attacker has to block it - and it only helps if the block is a threat too
+            int column = defenderThreats == 1 ? block : order[i];
+            if(p.canPlay(column)){
+                p.play(column);
+                if(countThreats(attacker) > 0 && defend(plies - 1)){
+                    win = column;
+                }
+                p.undo();
+            }
+            if(defenderThreats == 1){
+                break;
+            }
+        }
+        if(!aborted){
+            table.store(p.getCanonicalHash(), win >= 0 ? 1 : 0, plies, TranspositionTable.EXACT, p.canonicalColumn(win));
+        }
+        return win;
+    }
+
+    /**
+     * Method which searches a position where it's the defender's move, and the attacker has just made a threat.
+     * @return true if the attacker wins whatever the defender does.
+     */
+    private boolean defend(int plies){
+        Position p = position;
+        int defender = p.getPlayer();
+        int attacker = 3 - defender;
+        int size = p.getSize();
+        for(int column = 0; column < size; column++){
+            if(p.canPlay(column) && p.isWinningMove(column, defender)){
+                return false;
+            }
+        }
+        int block = -1;
+        for(int column = 0; column < size; column++){
+            if(p.canPlay(column) && p.isWinningMove(column, attacker)){
+                if(block >= 0){
+                    //two threats, and only one can be blocked
+                    return true;
+                }
+                block = column;
+            }
+        }
+        p.play(block);
+        boolean won = attack(plies - 1) >= 0;
+        p.undo();
+        return won;
+    }
+
+    /**
+     * Method which counts the columns where a player could win on their next move.
+     */
+    private int countThreats(int player){
+        Position p = position;
+        int threats = 0;
+        for(int column = 0; column < p.getSize(); column++){
+            if(p.canPlay(column) && p.isWinningMove(column, player)){
+                threats++;
+            }
+        }
+        return threats;
+    }
+
+    private void checkLimits(){
+        AIScheduler.checkpoint();
+        if(limits.isStopped() || nodes >= limits.getNodes() || System.nanoTime() > deadline){
+            aborted = true;
+        }
+    }
+
+    /**
+     * Method to get the number of positions the last search looked at.
+     * @return the number of nodes.
+     */
+    public long getNodes(){
+        return nodes;
+    }
+
+    /**
+     * Method to get how many moves (by both players) the win found by the last search takes.
+     * @return the number of moves, or 0 if the last search didn't find a win.
+     */
+    public int getWinPlies(){
+        return winPlies;
+    }
+
+    //statistics
+
+    /**
+     * Method which records how long the AI's normal search took on a move where this search didn't find a win, so
+     * that getEstimatedSavedNanos() knows how long a normal search usually takes.
+     * @param nanos the time the normal search took.
+     */
+    public synchronized void recordMainSearch(long nanos){
+        mainSearches++;
+        mainSearchNanos += nanos;
+    }
+
+    /**
+     * Method to get the number of searches which have been run.
+     * @return the number of searches.
+     */
+    public synchronized int getSearches(){
+        return searches;
+    }
+
+    /**
+     * Method to get the number of searches which found a forced win, so the normal search didn't need to run.
+     * @return the number of short-circuited moves.
+     */
+    public synchronized int getShortCircuits(){
+        return wins;
+    }
+
+    /**
+     * Method to get the total time spent in threat-space searches.
+     * @return the time in nanoseconds.
+     */
+    public synchronized long getSearchNanos(){
+        return searchNanos;
+    }
+
+    /**
+     * Method to get the average time the AI's normal search took on the moves it was needed for.
+     * @return the time in nanoseconds, or 0 if it hasn't been needed yet.
+     */
+    public synchronized long getAverageMainSearchNanos(){
+        return mainSearches == 0 ? 0 : mainSearchNanos / mainSearches;
+    }
+
+    /**
+     * Method to estimate how much time the threat-space search has saved overall: the normal searches it made
+     * unnecessary (at their average time), less the time spent on every threat-space search, successful or not.
+     * @return the time in nanoseconds, which is negative if the threat-space search has cost more than it saved.
+     */
+    public synchronized long getEstimatedSavedNanos(){
+        return wins * getAverageMainSearchNanos() - searchNanos;
+    }
+
+    /**
+     * Method which measures the threat-space search on big boards. The medium AI plays games against a weaker search,
+     * and before each of its moves the threat-space search is run. When it finds a win, the medium AI's normal search
+     * is timed on the same position to see how much time was saved, and the win is checked by playing it out against
+     * a defender which searches every reply.
+     *
+     * Usage: ThreatSearch [games] [boardSize...]
+     * The defaults are 4 games on each of 16x16, 20x20 and 24x24.
+     * @param args see above.
+     */
+    public static void main(String[] args){
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int[] sizes = {16, 20, 24};
+        if(args.length > 1){
+            sizes = new int[args.length - 1];
+            for(int i = 1; i < args.length; i++){
+                sizes[i - 1] = Integer.parseInt(args[i]);
+            }
+        }
+        java.util.Random random = new java.util.Random(38);
+        for(int size : sizes){
+            ThreatSearch threats = new ThreatSearch();
+            java.util.List<Long> threatTimes = new java.util.ArrayList<>();
+            long savedNanos = 0;
+            long mainOnHitsNanos = 0;
+            int hits = 0;
+            int mainFoundWin = 0;
+            int verified = 0;
+            int totalPlies = 0;
+            for(int game = 0; game < games; game++){
+                AIPlayer ai = new AIPlayer(6, 1500);
+                SearchEngine opponent = new SearchEngine(new TranspositionTable(1 << 16));
+                Position position = new Position(size);
+                //a few random moves so the games differ
+                for(int i = 0; i < 4; i++){
+                    position.play(size / 2 - 2 + random.nextInt(4));
+                }
+                boolean aiTurn = true;
+                while(!position.isFull() && !position.lastMoveWon()){
+                    int column;
+                    if(aiTurn){
+                        long start = System.nanoTime();
+                        column = threats.findWin(position);
+                        long threatNanos = System.nanoTime() - start;
+                        threatTimes.add(threatNanos);
+                        start = System.nanoTime();
+                        SearchLimits limits = new SearchLimits();
+                        limits.setDepth(6);
+                        limits.setTimeMillis(1500);
+                        SearchResult main = new SearchEngine(new TranspositionTable(1 << 21)).search(position, limits, null);
+                        long mainNanos = System.nanoTime() - start;
+                        if(column >= 0){
+                            hits++;
+                            totalPlies += threats.getWinPlies();
+                            mainOnHitsNanos += mainNanos;
+                            savedNanos += mainNanos - threatNanos;
+                            if(SearchEngine.isWinScore(main.getScore()) && main.getScore() > 0){
+                                mainFoundWin++;
+                            }
+                            if(playsOut(position, threats.getWinPlies())){
+                                verified++;
+                            }
+                        } else {
+                            threats.recordMainSearch(mainNanos);
+                            column = ai.chooseMove(position);
+                        }
+                    } else {
+                        SearchLimits limits = new SearchLimits();
+                        limits.setDepth(4);
+                        column = opponent.search(position, limits, null).getBestColumn();
+                    }
+                    position.play(column);
+                    aiTurn = !aiTurn;
+                }
+            }
+            java.util.Collections.sort(threatTimes);
+            int n = threatTimes.size();
+            System.out.printf("%dx%d: %d games, %d AI moves, threat search found a forced win on %d (%.1f%%)%n", size, size,
+                    games, threats.getSearches(), hits, 100.0 * hits / Math.max(1, threats.getSearches()));
+            System.out.printf("  threat search: p50 %.2f ms, p99 %.2f ms, max %.2f ms%n", threatTimes.get(n / 2) / 1e6,
+                    threatTimes.get(n * 99 / 100) / 1e6, threatTimes.get(n - 1) / 1e6);
+            System.out.printf("  normal search: %.1f ms on average when needed, %.1f ms on average on the short-circuited moves%n",
+                    threats.getAverageMainSearchNanos() / 1e6, mainOnHitsNanos / 1e6 / Math.max(1, hits));
+            System.out.printf("  measured time saved on short-circuited moves: %.1f ms (%.1f ms per move); estimate incl. misses: %.1f ms%n",
+                    savedNanos / 1e6, savedNanos / 1e6 / Math.max(1, hits), threats.getEstimatedSavedNanos() / 1e6);
+            System.out.printf("  wins: %.1f plies on average, %d also seen by the depth 6 search, %d/%d played out against a full-width defender%n",
+                    (double) totalPlies / Math.max(1, hits), mainFoundWin, verified, hits);
+        }
+    }
+
+    /**
+     * Method which checks a win found by the threat-space search, by playing it against a defender which tries every
+     * reply (rather than only blocking), with the attacker following the threat-space search each move.
+     * @return true if the attacker won within the given number of moves whatever the defender did.
+     */
+    private static boolean playsOut(Position position, int plies){
+        ThreatSearch attacker = new ThreatSearch();
+        SearchLimits limits = new SearchLimits();
+        limits.setDepth(plies);
+        int column = attacker.findWin(position, limits);
+        if(column < 0){
+            return false;
+        }
+        Position next = new Position(position);
+        next.play(column);
+        if(next.lastMoveWon()){
+            return true;
+        }
+        if(plies < 3 || next.isDeadDraw()){
+            return false;
+        }
+        for(int reply = 0; reply < next.getSize(); reply++){
+            if(!next.canPlay(reply)){
+                continue;
+            }
+            next.play(reply);
+            boolean won = !next.lastMoveWon() && !next.isDeadDraw() && playsOut(next, plies - 2);
+            next.undo();
+            if(!won){
+                return false;
+            }
+        }
+        return true;
+    }
+}
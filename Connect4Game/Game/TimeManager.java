@@ -0,0 +1,96 @@
+package Game;
+
+/**
+ * An instantiable class which decides how long the AI should spend on a move when playing with a PlayerClock.
+ *
+ * The remaining time is split evenly between the number of moves the AI still expects to make, plus most of the
+ * increment. That gives a "soft" limit which is checked every time the search finishes a depth: if the best move keeps
+ * changing or the score keeps swinging, the position is volatile and the AI is allowed to go over the soft limit (up
+ * to a hard limit); if the search has settled, it stops early. It also won't start another depth which it doesn't
+ * expect to finish in time.
+ *
+ * @author Daniel Arefjev
+ */
+public class TimeManager implements SearchListener {
+    private static final long SAFETY_MARGIN = 50;
+
+    private final long softLimit;
+    private final long hardLimit;
+    private SearchLimits limits;
+    private double volatility = 1.0;
+    private int lastBestColumn = -1;
+    private int lastScore;
+    private long lastDepthNanos;
+
+    /**
+     * TimeManager 3 argument constructor.
+     * @param remainingMillis the time left on the AI's clock.
+     * @param incrementMillis the time added to the AI's clock after each move.
+     * @param position the position the AI is about to search.
+     */
+    public TimeManager(long remainingMillis, long incrementMillis, Position position){
+        int size = position.getSize();
+        int emptyTiles = size * size - position.getMoveCount();
+        //games rarely fill the board - assume around 60% of what's left gets played, half of that by the AI
+        int movesLeft = Math.max(6, Math.min(60, emptyTiles * 3 / 10));
+
+        long available = Math.max(0, remainingMillis - SAFETY_MARGIN);
+        long soft = available / movesLeft + incrementMillis * 3 / 4;
+        this.softLimit = Math.max(1, Math.min(soft, available / 2));
+        this.hardLimit = Math.max(1, Math.min(softLimit * 4, available / 3));
+    }
+
+    /**
+     * Method to get the most time the search may use - it should be passed to SearchLimits.setTimeMillis().
+     * @return the hard limit in milliseconds.
+     */
+    public long getHardLimit(){
+        return hardLimit;
+    }
+
+    /**
+     * Method to get the time the AI aims to spend on a move before adjusting for volatility.
+     * @return the soft limit in milliseconds.
+     */
+    public long getSoftLimit(){
+        return softLimit;
+    }
+
+    /**
+     * Method to set the limits of the search being managed, so it can be stopped early.
+     * @param limits the limits of the search.
+     */
+    public void setLimits(SearchLimits limits){
+        this.limits = limits;
+    }
+
+    /**
+     * Method which is called after each depth, updating the volatility of the position and stopping the search if it
+     * has used its share of the time.
+     * @param result the result of the completed depth.
+     */
+    public void depthCompleted(SearchResult result){
+        if(result.getDepth() >= 4 && lastBestColumn >= 0){
+            if(result.getBestColumn() != lastBestColumn){
+                volatility = Math.min(2.5, volatility * 1.5);
+            } else if(Math.abs(result.getScore() - lastScore) > 20){
+                volatility = Math.min(2.5, volatility * 1.2);
+            } else {
+                volatility = Math.max(0.5, volatility * 0.85);
+            }
+        }
+        long elapsed = result.getTimeNanos();
+        long depthNanos = elapsed - lastDepthNanos;
+        lastBestColumn = result.getBestColumn();
+        lastScore = result.getScore();
+        lastDepthNanos = elapsed;
+
+        long target = (long) (softLimit * volatility * 1_000_000L);
+        //each depth usually takes a few times as long as the last one
+        if(elapsed >= target || elapsed + depthNanos * 2 >= target){
+            if(limits != null){
+                limits.stop();
+            }
+        }
+    }
+}
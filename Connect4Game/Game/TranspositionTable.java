@@ -0,0 +1,129 @@
+package Game;
+
+/**
+ * An instantiable class which defines a transposition table - a fixed size cache of search results keyed on a
+ * position's hash, so positions which are reached through different move orders only need to be searched once.
+ *
+ * Entries are packed into two long arrays rather than objects. The key is stored xor'd with the data so that a table
+ * can be shared between searches on different threads without locking: if two threads write the same slot at once,
+ * the key won't match on the next probe and the entry is just treated as missing.
+ *
+ * @author Daniel Arefjev
+ */
+public class TranspositionTable {
+    public static final int EXACT = 0;
+    public static final int LOWER_BOUND = 1;
+    public static final int UPPER_BOUND = 2;
+
+    private static final long VALID = 1L << 62;
+
+    private final long[] keys;
+    private final long[] data;
+    private final int mask;
+
+    /**
+     * TranspositionTable 1 argument constructor.
+     * @param entries the number of entries, rounded up to a power of 2.
+     */
+    public TranspositionTable(int entries){
+        int capacity = Integer.highestOneBit(Math.max(entries - 1, 1)) << 1;
+        this.keys = new long[capacity];
+        this.data = new long[capacity];
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Method to get the number of entries in a TranspositionTable object.
+     * @return the capacity of the table.
+     */
+    public int getCapacity(){
+        return keys.length;
+    }
+
+    /**
+     * Method which stores a search result, replacing whatever is in the slot unless it's the same position searched
+     * to a greater depth.
+     * @param hash the hash of the position.
+     * @param score the score of the position.
+     * @param depth the depth the position was searched to.
+     * @param flag EXACT, LOWER_BOUND or UPPER_BOUND.
+     * @param move the best column found, or -1 if there isn't one.
+     */
+    public void store(long hash, int score, int depth, int flag, int move){
+        int slot = (int) hash & mask;
+        long old = data[slot];
+        if((keys[slot] ^ old) == hash && depthOf(old) > depth){
+            return;
+        }
+        long entry = pack(score, depth, flag, move);
+        data[slot] = entry;
+        keys[slot] = hash ^ entry;
+    }
+
+    /**
+     * Method to look up a position in a TranspositionTable object.
+     * @param hash the hash of the position.
+     * @return the packed entry (read with scoreOf, depthOf, flagOf and moveOf), or 0 if the position isn't stored.
+     */
+    public long probe(long hash){
+        int slot = (int) hash & mask;
+        long entry = data[slot];
+        if((keys[slot] ^ entry) == hash && (entry & VALID) != 0){
+            return entry;
+        }
+        return 0;
+    }
+
+    /**
+     * Method which empties a TranspositionTable object.
+     */
+    public void clear(){
+        for(int i = 0; i < keys.length; i++){
+            keys[i] = 0;
+            data[i] = 0;
+        }
+    }
+
+    //entry fields
+
+    /**
+     * Method which packs the fields of an entry into the long returned by probe(), which is also how AnalysisCache
+     * stores them.
+     */
+    static long pack(int score, int depth, int flag, int move){
+        return VALID | ((long) (move + 1) << 42) | ((long) flag << 40) | ((long) Math.min(depth, 255) << 32)
+                | (score & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Method to get the score stored in an entry returned by probe().
+     * @return the score.
+     */
+    public static int scoreOf(long entry){
+        return (int) entry;
+    }
+
+    /**
+     * Method to get the depth stored in an entry returned by probe().
+     * @return the depth.
+     */
+    public static int depthOf(long entry){
+        return (int) (entry >>> 32) & 0xFF;
+    }
+
+    /**
+     * Method to get the bound flag stored in an entry returned by probe().
+     * @return EXACT, LOWER_BOUND or UPPER_BOUND.
+     */
+    public static int flagOf(long entry){
+        return (int) (entry >>> 40) & 0x3;
+    }
+
+    /**
+     * Method to get the best column stored in an entry returned by probe().
+     * @return the column, or -1 if no move was stored.
+     */
+    public static int moveOf(long entry){
+        return ((int) (entry >>> 42) & 0xFF) - 1;
+    }
+}
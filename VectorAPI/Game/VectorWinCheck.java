@@ -0,0 +1,70 @@
+package Game;
+
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * A class which runs BatchWinCheck.wins() with the Vector API, checking as many bitboards per instruction as the
+ * processor's widest vectors hold (e.g 4 with AVX2, 8 with AVX-512), with the same shifts and ANDs as the scalar loop.
+ *
+ * jdk.incubator.vector is an incubator module, which javac can't see unless it's given --add-modules, so this class is
+ * kept out of the game's sources (in VectorAPI rather than Connect4Game) and the game builds without it. To use it,
+ * compile it against the compiled game and run with the module added:
+ * <pre>
+ * javac --add-modules jdk.incubator.vector -cp out -d out VectorAPI/Game/VectorWinCheck.java
+ * java --add-modules jdk.incubator.vector -cp out Game.BatchWinCheck
+ * </pre>
+ * BatchWinCheck loads it by name, and uses its own loop if either the class or the module isn't there.
+ *
+ * @author Daniel Arefjev
+ */
+final class VectorWinCheck implements BatchWinCheck.Batch {
+    private static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_PREFERRED;
+
+    /**
+     * Default constructor for VectorWinCheck, which BatchWinCheck calls reflectively.
+     */
+    VectorWinCheck(){
+    }
+
+    /**
+     * Method which checks a batch of bitboards for lines of four. See BatchWinCheck.wins().
+     * @param boards the bitboards.
+     * @param count how many of the bitboards to check, from index 0.
+     * @param size the width/height of the board they were packed from.
+     * @param lines set to a bit for every line of four in each bitboard, so 0 where a bitboard has no line of four.
+     */
+    public void wins(long[] boards, int count, int size, long[] lines){
+        int left = size + 1;
+        int down = size;
+        int up = size + 2;
+        int i = 0;
+        for(int bound = SPECIES.loopBound(count); i < bound; i += SPECIES.length()){
+            LongVector board = LongVector.fromArray(SPECIES, boards, i);
+            line(board, 1).or(line(board, left)).or(line(board, down)).or(line(board, up)).intoArray(lines, i);
+        }
+        //the bitboards left over after the last whole vector
+        for(; i < count; i++){
+            long board = boards[i];
+            lines[i] = BatchWinCheck.line(board, 1) | BatchWinCheck.line(board, left) | BatchWinCheck.line(board, down)
+                    | BatchWinCheck.line(board, up);
+        }
+    }
+
+    /**
+     * Method to find the lines of four in one direction in each lane of a vector of bitboards.
+     */
+    private static LongVector line(LongVector board, int shift){
+        LongVector pairs = board.and(board.lanewise(VectorOperators.LSHR, shift));
+        return pairs.and(pairs.lanewise(VectorOperators.LSHR, 2 * shift));
+    }
+
+    /**
+     * Method to get how many bitboards are checked at once.
+     * @return the number of lanes in the vectors used.
+     */
+    public int lanes(){
+        return SPECIES.length();
+    }
+}